@@ -54,7 +54,34 @@ import de.affect.appraisal.eec.Agency;
  */
 public class AppraisalVariables {
 
+  /**
+   * The kinds of signals appraisal variables can be related to. The kind is
+   * resolved once from the type name, so that the appraisal does not need to
+   * compare strings.
+   */
+  public enum Kind {
+    EEC, Event, Action, Object, Undefined;
+
+    /**
+     * Returns the kind of a type name.
+     *
+     * @param type the type name
+     * @return the kind, <code>Undefined</code> if the name is unknown
+     */
+    public static Kind forType(String type) {
+      if (type != null) {
+        for (Kind k : values()) {
+          if (k.name().equals(type)) {
+            return k;
+          }
+        }
+      }
+      return Undefined;
+    }
+  }
+
   private String type;
+  private Kind kind;
   private String signal;
   private Desirability desirability;
   private Praiseworthiness praiseworthiness;
@@ -76,6 +103,7 @@ public class AppraisalVariables {
 			    Liking liking,
 			    String elicitor) {
     this.type = type;
+    this.kind = Kind.forType(type);
     this.signal = signal;
     this.desirability = desirability;
     this.praiseworthiness = praiseworthiness;
@@ -91,6 +119,10 @@ public class AppraisalVariables {
     return type;
   }
 
+  public Kind getKind() {
+    return kind;
+  }
+
   public String getSignal() {
     return signal;
   }
@@ -0,0 +1,401 @@
+/*
+ * BatchDecayEngine.java
+ *
+ * Copyright (c) 2008, Patrick Gebhard, DFKI GmbH
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in 
+ *     the documentation and/or other materials provided with the 
+ *     distribution.
+ *
+ *   - Neither the name of the DFKI GmbH nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE 
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE 
+ * POSSIBILITY OF SUCH DAMAGE. 
+ */
+
+package de.affect.compute;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import de.affect.emotion.Emotion;
+
+/**
+ * The <code>BatchDecayEngine</code> class decays the active emotions of many
+ * characters in one pass. Instead of asking each character's
+ * <code>DecayFunction</code> to decay each <code>Emotion</code> object, the
+ * engine stores intensity, baseline and decay progress of all decaying
+ * emotions in primitive columns and updates them in a tight loop, which can
+ * optionally be split across several processors. The intensities are
+ * taken from the <code>ClosedFormDecayFunction</code> of the owner, so
+ * emotions decay exactly as with the function itself. Other decay functions
+ * are not supported. The decay progress is read from and written back to
+ * the emotions, so an emotion that is already decaying continues its curve.
+ *
+ * @author Patrick Gebhard
+ *
+ * @version 1.0
+ */
+public class BatchDecayEngine {
+
+  private static final byte IDLE = 0;
+  private static final byte DECAYED = 1;
+  private static final byte FINISHED = 2;
+  /** the minimal number of emotions decayed by one parallel subtask */
+  private static final int sSEQUENTIALTHRESHOLD = 2048;
+  private ForkJoinPool fPool = null;
+  // emotion columns
+  private int fSize = 0;
+  private Emotion[] fEmotion = new Emotion[64];
+  private int[] fOwner = new int[64];
+  private ClosedFormDecayFunction[] fFunction = new ClosedFormDecayFunction[64];
+  private int[] fX = new int[64];
+  private double[] fIntensity = new double[64];
+  private double[] fBaseline = new double[64];
+  private double[] fRange = new double[64];
+  private byte[] fState = new byte[64];
+  // owner columns
+  private ArrayList<Owner> fOwners = new ArrayList<Owner>();
+  private IdentityHashMap<Owner, Integer> fOwnerIndex = new IdentityHashMap<Owner, Integer>();
+  private LinkedList<Integer> fFreeOwnerIndices = new LinkedList<Integer>();
+  private boolean[] fSuspended = new boolean[16];
+  private boolean[] fTouched = new boolean[16];
+
+  /**
+   * The interface <code>Owner</code> has to be implemented by entities, whose
+   * emotions are decayed by a <code>BatchDecayEngine</code>.
+   */
+  public interface Owner {
+
+    /**
+     * Called after a decay pass has changed at least one of the owner's
+     * emotions. The method is not called while the engine is locked.
+     */
+    public void emotionsDecayed();
+  }
+
+  /**
+   * Creates a batch decay engine that decays all emotions in the calling
+   * thread.
+   */
+  public BatchDecayEngine() {
+  }
+
+  /**
+   * Creates a batch decay engine.
+   *
+   * @param parallel if true, large decay passes are split across the
+   * processors using the common fork/join pool.
+   */
+  public BatchDecayEngine(boolean parallel) {
+    fPool = (parallel) ? ForkJoinPool.commonPool() : null;
+  }
+
+  /**
+   * Queries if the engine is able to reproduce the specified decay function.
+   *
+   * @param decayFunction a decay function
+   *
+   * @return true if the decay function is supported, false otherwise
+   */
+  public static boolean supports(DecayFunction decayFunction) {
+    return (decayFunction instanceof ClosedFormDecayFunction);
+  }
+
+  /**
+   * Adds an emotion that is decayed by the engine until it reaches its
+   * baseline. Emotions whose intensity is not greater than their baseline are
+   * ignored. The decay continues from the emotion's decay progress or starts
+   * from its current intensity if it is not decaying yet.
+   *
+   * @param owner the entity the emotion belongs to
+   * @param emotion the emotion that should be decayed
+   * @param decayFunction the owner's decay function that defines the curve
+   *
+   * @return true if the emotion is decayed by the engine, false otherwise
+   * @throws IllegalArgumentException if the decay function is not supported
+   */
+  public synchronized boolean add(Owner owner, Emotion emotion, DecayFunction decayFunction) {
+    if (!supports(decayFunction)) {
+      throw new IllegalArgumentException("Unsupported decay function "
+        + decayFunction.getClass().getName());
+    }
+    double intensity = emotion.getIntensity();
+    double baseline = emotion.getBaseline();
+    if (intensity <= baseline) {
+      return false;
+    }
+    if (fSize == fEmotion.length) {
+      grow();
+    }
+    int i = fSize++;
+    fEmotion[i] = emotion;
+    fOwner[i] = ownerIndex(owner);
+    fFunction[i] = (ClosedFormDecayFunction) decayFunction;
+    fIntensity[i] = intensity;
+    fBaseline[i] = baseline;
+    fRange[i] = emotion.isDecaying() ? emotion.getDecayRange() : (intensity - baseline);
+    fX[i] = emotion.getDecayStep();
+    fState[i] = IDLE;
+    return true;
+  }
+
+  /**
+   * Removes all emotions of an owner from the engine.
+   *
+   * @param owner the entity whose emotions should not longer be decayed
+   */
+  public synchronized void remove(Owner owner) {
+    Integer index = fOwnerIndex.remove(owner);
+    if (index == null) {
+      return;
+    }
+    for (int i = fSize - 1; i >= 0; i--) {
+      if (fOwner[i] == index) {
+        removeSlot(i);
+      }
+    }
+    fOwners.set(index, null);
+    fSuspended[index] = false;
+    fFreeOwnerIndices.add(index);
+  }
+
+  /**
+   * Suspends or resumes the decay of all emotions of an owner. Suspended
+   * emotions are only decayed by <code>decay(Owner)</code>.
+   *
+   * @param owner the entity whose emotion decay should be suspended or resumed
+   * @param suspend true suspends the emotion decay, false resumes it
+   */
+  public synchronized void suspend(Owner owner, boolean suspend) {
+    fSuspended[ownerIndex(owner)] = suspend;
+  }
+
+  /**
+   * Returns the number of emotions currently decayed by the engine.
+   *
+   * @return the number of decaying emotions
+   */
+  public synchronized int size() {
+    return fSize;
+  }
+
+  /**
+   * Decays all emotions of all owners that are not suspended by one step.
+   *
+   * @return the number of owners whose emotions have been decayed
+   */
+  public int decay() {
+    List<Owner> touched = null;
+    synchronized (this) {
+      if ((fPool != null) && (fSize > sSEQUENTIALTHRESHOLD)) {
+        fPool.invoke(new DecayPass(0, fSize));
+      } else {
+        decayRange(0, fSize, -1);
+      }
+      touched = commit();
+    }
+    for (Owner owner : touched) {
+      owner.emotionsDecayed();
+    }
+    return touched.size();
+  }
+
+  /**
+   * Decays all emotions of one owner by one step, even if the owner is
+   * suspended.
+   *
+   * @param owner the entity whose emotions should be decayed
+   *
+   * @return true if emotions of the owner have been decayed, false otherwise
+   */
+  public boolean decay(Owner owner) {
+    List<Owner> touched = null;
+    synchronized (this) {
+      Integer index = fOwnerIndex.get(owner);
+      if (index == null) {
+        return false;
+      }
+      decayRange(0, fSize, index);
+      touched = commit();
+    }
+    for (Owner o : touched) {
+      o.emotionsDecayed();
+    }
+    return !touched.isEmpty();
+  }
+
+  /**
+   * Decays the emotions in the given slot range. If owner is negative, all
+   * emotions of owners that are not suspended are decayed, otherwise only the
+   * emotions of the given owner.
+   */
+  private void decayRange(int from, int to, int owner) {
+    for (int i = from; i < to; i++) {
+      if ((owner < 0) ? fSuspended[fOwner[i]] : (fOwner[i] != owner)) {
+        continue;
+      }
+      int x = fX[i] + 1;
+      fIntensity[i] = fFunction[i].decay(fIntensity[i], fBaseline[i], fRange[i], x);
+      fX[i] = x;
+      fState[i] = (fIntensity[i] > fBaseline[i]) ? DECAYED : FINISHED;
+    }
+  }
+
+  /**
+   * Writes the decayed intensities and the decay progress back to the
+   * emotions, removes emotions that have reached their baseline and returns
+   * the owners that have to be informed.
+   */
+  private List<Owner> commit() {
+    List<Owner> touched = new ArrayList<Owner>();
+    for (int i = fSize - 1; i >= 0; i--) {
+      byte state = fState[i];
+      if (state == IDLE) {
+        continue;
+      }
+      fEmotion[i].setIntensity(fIntensity[i]);
+      if (state == FINISHED) {
+        fEmotion[i].setDecayProgress(0, 0.0d);
+      } else {
+        fEmotion[i].setDecayProgress(fX[i], fRange[i]);
+      }
+      int owner = fOwner[i];
+      if (!fTouched[owner]) {
+        fTouched[owner] = true;
+        touched.add(fOwners.get(owner));
+      }
+      if (state == FINISHED) {
+        removeSlot(i);
+      } else {
+        fState[i] = IDLE;
+      }
+    }
+    for (Owner owner : touched) {
+      fTouched[fOwnerIndex.get(owner)] = false;
+    }
+    return touched;
+  }
+
+  private int ownerIndex(Owner owner) {
+    Integer index = fOwnerIndex.get(owner);
+    if (index == null) {
+      if (fFreeOwnerIndices.isEmpty()) {
+        index = fOwners.size();
+        fOwners.add(owner);
+        if (index == fSuspended.length) {
+          boolean[] suspended = new boolean[index * 2];
+          System.arraycopy(fSuspended, 0, suspended, 0, index);
+          fSuspended = suspended;
+          fTouched = new boolean[index * 2];
+        }
+      } else {
+        index = fFreeOwnerIndices.removeFirst();
+        fOwners.set(index, owner);
+      }
+      fOwnerIndex.put(owner, index);
+    }
+    return index;
+  }
+
+  /**
+   * Removes a slot by moving the last slot into its place.
+   */
+  private void removeSlot(int i) {
+    int last = --fSize;
+    if (i != last) {
+      fEmotion[i] = fEmotion[last];
+      fOwner[i] = fOwner[last];
+      fFunction[i] = fFunction[last];
+      fX[i] = fX[last];
+      fIntensity[i] = fIntensity[last];
+      fBaseline[i] = fBaseline[last];
+      fRange[i] = fRange[last];
+      fState[i] = fState[last];
+    }
+    fEmotion[last] = null;
+    fFunction[last] = null;
+    fState[last] = IDLE;
+  }
+
+  private void grow() {
+    int capacity = fEmotion.length * 2;
+    Emotion[] emotion = new Emotion[capacity];
+    System.arraycopy(fEmotion, 0, emotion, 0, fSize);
+    fEmotion = emotion;
+    fOwner = copyOf(fOwner, capacity);
+    ClosedFormDecayFunction[] function = new ClosedFormDecayFunction[capacity];
+    System.arraycopy(fFunction, 0, function, 0, fSize);
+    fFunction = function;
+    fX = copyOf(fX, capacity);
+    fIntensity = copyOf(fIntensity, capacity);
+    fBaseline = copyOf(fBaseline, capacity);
+    fRange = copyOf(fRange, capacity);
+    byte[] state = new byte[capacity];
+    System.arraycopy(fState, 0, state, 0, fSize);
+    fState = state;
+  }
+
+  private int[] copyOf(int[] column, int capacity) {
+    int[] result = new int[capacity];
+    System.arraycopy(column, 0, result, 0, fSize);
+    return result;
+  }
+
+  private double[] copyOf(double[] column, int capacity) {
+    double[] result = new double[capacity];
+    System.arraycopy(column, 0, result, 0, fSize);
+    return result;
+  }
+
+  /**
+   * The <code>DecayPass</code> class splits a decay pass into subtasks of at
+   * least <code>sSEQUENTIALTHRESHOLD</code> emotions.
+   */
+  private class DecayPass extends RecursiveAction {
+
+    private static final long serialVersionUID = 1L;
+    private final int fFrom;
+    private final int fTo;
+
+    private DecayPass(int from, int to) {
+      fFrom = from;
+      fTo = to;
+    }
+
+    @Override
+    protected void compute() {
+      if (fTo - fFrom <= sSEQUENTIALTHRESHOLD) {
+        decayRange(fFrom, fTo, -1);
+      } else {
+        int middle = (fFrom + fTo) >>> 1;
+        invokeAll(new DecayPass(fFrom, middle), new DecayPass(middle, fTo));
+      }
+    }
+  }
+}
@@ -0,0 +1,93 @@
+/*
+ * ClosedFormDecayFunction.java
+ *
+ * Copyright (c) 2008, Patrick Gebhard, DFKI GmbH
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in 
+ *     the documentation and/or other materials provided with the 
+ *     distribution.
+ *
+ *   - Neither the name of the DFKI GmbH nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE 
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE 
+ * POSSIBILITY OF SUCH DAMAGE. 
+ */
+
+package de.affect.compute;
+
+/** 
+ * Interface for emotion decay functions whose decay curve can be evaluated
+ * for any number of decay steps without decaying an emotion step by step.
+ * 
+ * @author Patrick Gebhard
+ * @version 1.0
+ */
+public interface ClosedFormDecayFunction extends DecayFunction {
+  /** Returns the intensity of a decaying emotion after the given decay
+   * step. The result is the intensity that <code>decay</code> computes for
+   * an emotion with the given intensity whose decay has started with the
+   * given operating range. The result is never less than the baseline and
+   * it is the baseline if the decay has ended.
+   *
+   * @param intensity the intensity of the emotion before the decay step
+   * @param baseline the baseline of the emotion
+   * @param operatingRange the distance between intensity and baseline when
+   * the decay started
+   * @param step the number of the decay step since the decay started,
+   * starting with 1
+   * @return the intensity after the decay step
+   *
+   * @throws UnsupportedOperationException if the function is not initialized
+   */
+  public double decay(double intensity, double baseline, double operatingRange, int step);
+
+  /** Returns the intensity of an emotion after the given number of decay
+   * steps. The result is the intensity that <code>decay</code> computes if
+   * it is applied steps times to an emotion with the given start intensity
+   * and baseline. The result is never less than the baseline.
+   *
+   * @param startIntensity the intensity of the emotion before the decay
+   * @param baseline the baseline of the emotion
+   * @param steps the number of decay steps
+   * @return the intensity after the given number of decay steps
+   *
+   * @throws UnsupportedOperationException if the function is not initialized
+   */
+  public double intensity(double startIntensity, double baseline, int steps);
+
+  /** Returns the number of decay steps after which the intensity of an
+   * emotion with the given start intensity is not more than the given
+   * threshold above its baseline. The result is computed from the closed
+   * form of the function instead of decaying an emotion step by step.
+   *
+   * @param startIntensity the intensity of the emotion before the decay
+   * @param baseline the baseline of the emotion
+   * @param threshold the distance to the baseline that ends the decay
+   * @return the number of decay steps, 0 if the intensity is already not
+   * more than threshold above the baseline
+   *
+   * @throws UnsupportedOperationException if the function is not initialized
+   */
+  public int remainingSteps(double startIntensity, double baseline, double threshold);
+}
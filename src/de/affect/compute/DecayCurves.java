@@ -0,0 +1,144 @@
+/*
+ * DecayCurves.java
+ *
+ * Copyright (c) 2008, Patrick Gebhard, DFKI GmbH
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in 
+ *     the documentation and/or other materials provided with the 
+ *     distribution.
+ *
+ *   - Neither the name of the DFKI GmbH nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE 
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE 
+ * POSSIBILITY OF SUCH DAMAGE. 
+ */
+
+package de.affect.compute;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The <code>DecayCurves</code> class caches the precomputed decay curves of
+ * a decay function. A curve is normalized to an operating range (the
+ * distance between the start intensity and the baseline) of 1.0 and only
+ * depends on the number of decay steps of the emotion, i.e. the number of
+ * decay steps of the function times the operating range, rounded down.
+ * Emotions with different operating ranges that decay in the same number of
+ * steps share a curve, so there are at most as many curves as decay steps.
+ * A curve is computed once and afterwards each decay step is a table lookup
+ * and a multiplication with the operating range. The least recently used
+ * curves are discarded if the cache is full.
+ *
+ * @author Patrick Gebhard
+ *
+ * @version 1.0
+ */
+final class DecayCurves {
+
+  /** the default maximum number of cached curves */
+  static final int DEFAULT_CAPACITY = 128;
+  private final LinkedHashMap<Integer, double[]> fCurves;
+
+  DecayCurves() {
+    this(DEFAULT_CAPACITY);
+  }
+
+  DecayCurves(final int capacity) {
+    if (capacity <= 0)
+      throw new IllegalArgumentException("Invalid capacity " + capacity);
+    fCurves = new LinkedHashMap<Integer, double[]>(16, 0.75f, true) {
+      protected boolean removeEldestEntry(Map.Entry<Integer, double[]> eldest) {
+        return size() > capacity;
+      }
+    };
+  }
+
+  /**
+   * Returns the cached curve for the given number of decay steps.
+   *
+   * @param steps the number of decay steps of an emotion
+   * @return the normalized curve or null if it is not cached
+   */
+  synchronized double[] get(int steps) {
+    return fCurves.get(steps);
+  }
+
+  /**
+   * Caches the curve for the given number of decay steps.
+   *
+   * @param steps the number of decay steps of an emotion
+   * @param curve the normalized decay curve
+   */
+  synchronized void put(int steps, double[] curve) {
+    fCurves.put(steps, curve);
+  }
+
+  /**
+   * Discards all curves, e.g. if the number of decay steps has changed.
+   */
+  synchronized void clear() {
+    fCurves.clear();
+  }
+
+  /**
+   * Returns the number of cached curves.
+   *
+   * @return the number of cached curves
+   */
+  synchronized int size() {
+    return fCurves.size();
+  }
+
+  /**
+   * Returns the smallest number of decay steps after which the intensity of
+   * an emotion is not more than the given threshold above its baseline. The
+   * decay curve never rises and reaches the baseline after at most
+   * <code>maxSteps</code> steps, so the number of steps is found by a binary
+   * search over the closed form of the decay function.
+   *
+   * @param function the decay function
+   * @param startIntensity the intensity of the emotion before the decay
+   * @param baseline the baseline of the emotion
+   * @param threshold the distance to the baseline that ends the decay
+   * @param maxSteps the number of steps after which the decay function
+   * returns the baseline
+   * @return the number of decay steps
+   */
+  static int remainingSteps(ClosedFormDecayFunction function, double startIntensity,
+                            double baseline, double threshold, int maxSteps) {
+    if (startIntensity - threshold <= baseline)
+      return 0;
+    int low = 1;
+    int high = maxSteps;
+    while (low < high) {
+      int middle = (low + high) >>> 1;
+      if (function.intensity(startIntensity, baseline, middle) - threshold > baseline)
+        low = middle + 1;
+      else
+        high = middle;
+    }
+    return low;
+  }
+}
@@ -47,6 +47,7 @@ import de.affect.mood.Mood;
 import de.affect.personality.Personality;
 import java.util.logging.Logger;
 import de.affect.personality.PersonalityEmotionsRelations;
+import de.affect.personality.EmotionInfluences;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedList;
@@ -54,7 +55,6 @@ import java.util.List;
 import java.util.ListIterator;
 import java.util.Set;
 
-import static de.affect.personality.PersonalityMoodRelations.getMoodyPersonalityTraits;
 import de.affect.util.Convert;
 import static java.lang.Math.max;
 import java.util.ArrayList;
@@ -79,6 +79,10 @@ public class EmotionEngine {
    */
   private Personality fPersonality = null;
   private PersonalityEmotionsRelations fPerEmoRel = null;
+  /**
+   * the cached emotion baselines and influences of the personality and mood
+   */
+  private EmotionInfluences fInfluences = null;
   /**
    * the emotion engine's decay function
    */
@@ -90,6 +94,14 @@ public class EmotionEngine {
   private EEC actionEEC = null;
   private EEC objectEEC = null;
   private static final Logger log = AffectManager.sLog;
+  /**
+   * the prospect-based emotion types that are confirmed or disconfirmed
+   */
+  private static final EmotionType[] sPROSPECT_TYPES = {EmotionType.Hope, EmotionType.Fear};
+  /**
+   * the distance to the baseline at which a simulated decay ends
+   */
+  private static final double sDECAY_THRESHOLD = 0.001d;
 
   /**
    * Constructs a new
@@ -111,6 +123,7 @@ public class EmotionEngine {
     }
     fDecayFunction = decayFunction;
     fPersonality = personality;
+    fInfluences = new EmotionInfluences(fPersonality, fPerEmoRel);
   }
 
   /**
@@ -170,6 +183,25 @@ public class EmotionEngine {
     listOfEEC.add(eec);
   }
 
+  /**
+   * Returns if an EEC can be added without violating the restriction of one
+   * EEC for event-based emotions, action-based emotions, and object-based
+   * emotions (see <code>addEEC</code>).
+   *
+   * @param eec the Emotion Eliciting Condition
+   *
+   * @return true if the EEC can be added, false otherwise
+   */
+  public boolean canAddEEC(EEC eec) {
+    if (eec.appealingness != null) {
+      return (objectEEC == null);
+    } else if (eec.praiseworthiness != null) {
+      return (actionEEC == null);
+    } else {
+      return (eventEEC == null);
+    }
+  }
+
   /**
    * Removes all elements from the list of Emotion Eliciting Conditions.
    */
@@ -190,14 +222,13 @@ public class EmotionEngine {
    * @return the adjusted emotion intensity.
    */
   private double adjustIntensity(double intensity, EmotionType type, Mood mood) {
-    double result = intensity * (1 + fPerEmoRel.getPersonalityInfluence(fPersonality, type));
-    Personality temporalPersonality = getMoodyPersonalityTraits(mood);
+    double result = intensity * (1 + fInfluences.getInfluence(type));
     //log.info("Temporal mood personality is " + temporalPersonality);
-    double moodyResult = fPerEmoRel.getPersonalityInfluence(temporalPersonality, type);
+    double moodyResult = fInfluences.getMoodyInfluence(mood, type);
     //log.info(type.toString() + " personality influcenced intensity= " + result + " mood influence= " + moodyResult);
     result = result + moodyResult;
-    double baseline = fPerEmoRel.getEmotionBaseline(fPersonality, type);
-    double moodyBaseline = fPerEmoRel.getEmotionBaseline(getMoodyPersonalityTraits(mood), type);
+    double baseline = fInfluences.getBaseline(type);
+    double moodyBaseline = fInfluences.getMoodyBaseline(mood, type);
     baseline = baseline + moodyBaseline;
     result = (result > 1.0d) ? 1.0d : result;
     result = (result < baseline) ? baseline : result;
@@ -224,15 +255,17 @@ public class EmotionEngine {
       throw new NullPointerException("No history specified.");
     }
     for (int i = 0; i < history.size(); i++) {
-      for (Iterator it = history.get(i).getEmotions().iterator(); it.hasNext();) {
-        Emotion emotion = (Emotion) it.next();
+      EmotionVector historyEmotions = history.get(i);
+      for (int j = 0; j < historyEmotions.size(); j++) {
+        Emotion emotion = historyEmotions.getEmotion(j);
         if (emotion.getIntensity() > emotion.getBaseline()) {
           //debug log.info("At emotion history " + i + " decaying " + emotion.getType() + "(" + prettyPrint(emotion.getIntensity()) + ")");
-          history.get(i).add(fDecayFunction.decay(emotion));
+          historyEmotions.add(fDecayFunction.decay(emotion));
         }
       }
     }
-    history.removeFirstIfInactive();
+    // intensities have changed in place, removeInactive() rebuilds the maxima
+    history.removeInactive();
     emotions = history.getEmotionalState(defaultEmotions);
     return emotions;
   }
@@ -245,12 +278,23 @@ public class EmotionEngine {
    * @return List of intesity values that denotes the decay of the emotion
    * @throws NullPointerException if no history is specified.
    */
-  public synchronized List simulateDecay(Emotion emotion) {
+  public synchronized List<Float> simulateDecay(Emotion emotion) {
     ArrayList<Float> results = new ArrayList<Float>();
     results.add(new Float(emotion.getIntensity()));
 
+    if (fDecayFunction instanceof ClosedFormDecayFunction) {
+      // read the decay curve instead of decaying a copy step by step
+      ClosedFormDecayFunction decayFunction = (ClosedFormDecayFunction) fDecayFunction;
+      int steps = decayFunction.remainingSteps(emotion.getIntensity(), emotion.getBaseline(), sDECAY_THRESHOLD);
+      results.ensureCapacity(steps + 1);
+      for (int step = 1; step <= steps; step++) {
+        results.add(new Float(decayFunction.intensity(emotion.getIntensity(), emotion.getBaseline(), step)));
+      }
+      return results;
+    }
+
     Emotion decayedEmotion = new Emotion(emotion.getType(), emotion.getIntensity(), emotion.getBaseline(), emotion.getElicitor());
-    while (decayedEmotion.getIntensity() - 0.001d > decayedEmotion.getBaseline()) {
+    while (decayedEmotion.getIntensity() - sDECAY_THRESHOLD > decayedEmotion.getBaseline()) {
       //log.info("At emotion history " + i + " decaying " + decayedEmotion.getType() + "(" + prettyPrint(decayedEmotion.getIntensity()) + ")");
       decayedEmotion = fDecayFunction.decay(decayedEmotion);
       results.add(new Float(decayedEmotion.getIntensity()));
@@ -259,6 +303,22 @@ public class EmotionEngine {
     return results;
   }
 
+  /**
+   * Returns the number of intensity values that <code>simulateDecay</code>
+   * returns for an emotion, i.e. the number of remaining decay steps plus
+   * one. For a closed-form decay function the decay is not simulated.
+   *
+   * @param emotion the emotion that will be decayed
+   * @return the number of intensity values of the simulated decay
+   */
+  public synchronized int simulateDecaySize(Emotion emotion) {
+    if (fDecayFunction instanceof ClosedFormDecayFunction) {
+      return ((ClosedFormDecayFunction) fDecayFunction).remainingSteps(emotion.getIntensity(),
+        emotion.getBaseline(), sDECAY_THRESHOLD) + 1;
+    }
+    return simulateDecay(emotion).size();
+  }
+
   /**
    * Infers all emotions based on the list of Emotion Eliciting Conditions and
    * adds them to the specified collection. If the type of an infered emotion is
@@ -315,7 +375,7 @@ public class EmotionEngine {
           eav.setAgency(true);
 
           tempEmotions.add(new Emotion(type, intensity,
-            fPerEmoRel.getEmotionBaseline(fPersonality, type), eav, eec.elicitor));
+            fInfluences.getBaseline(type), eav, eec.elicitor));
         } else {
           type = eec.desirabilityForSelf.isDesirable()
             ? EmotionType.Hope : EmotionType.Fear;
@@ -330,7 +390,7 @@ public class EmotionEngine {
           eav.setAgency(true);
 
           tempEmotions.add(new Emotion(type, intensity,
-            fPerEmoRel.getEmotionBaseline(fPersonality, type), eav, eec.elicitor));
+            fInfluences.getBaseline(type), eav, eec.elicitor));
         }
       }
       // Fortunes-Of-Others Group:
@@ -354,7 +414,7 @@ public class EmotionEngine {
 
 
         tempEmotions.add(new Emotion(type, intensity,
-          fPerEmoRel.getEmotionBaseline(fPersonality, type), eec.elicitor));
+          fInfluences.getBaseline(type), eec.elicitor));
       }
       // Confirmation Group:
       if (eec.realization != null) {
@@ -382,42 +442,37 @@ public class EmotionEngine {
 // 	    }
 // 	  }
 // 	}
-        // traverse history in reverse order, latest element first
-        for (int i = history.size() - 1; i >= 0; i--) {
-          List oldEmotions = history.get(i).getEmotions();
-          for (Iterator it = oldEmotions.iterator(); it.hasNext();) {
-            Emotion old = (Emotion) it.next();
-            if (old.getElicitor() != null) {
-              EmotionType oldType = old.getType();
-              if ((oldType == EmotionType.Hope || oldType == EmotionType.Fear)
-                && old.getElicitor().equals(eec.elicitor)) {
-                if (eec.realization.isConfirmed()) {
-                  type = (oldType == EmotionType.Hope)
-                    ? EmotionType.Satisfaction : EmotionType.FearsConfirmed;
-                } else {
-                  type = (oldType == EmotionType.Hope)
-                    ? EmotionType.Disappointment : EmotionType.Relief;
-                }
-                intensity = max(old.getIntensity(), eec.realization.absDegree());
-                intensity = adjustIntensity(intensity, type, mood);
-
-                // collect all relevant appraisal variables for this emotion
-                EmotionAppraisalVars eav = new EmotionAppraisalVars();
-
-                eav.setDesirability(old.getAppraisalVariables().desirability);
-                eav.setLikelihood(old.getAppraisalVariables().likelihood);
-                eav.setRealization(eec.realization.isConfirmed());
-                eav.setAgency(true);
-
-                tempEmotions.add(new Emotion(type, intensity,
-                  fPerEmoRel.getEmotionBaseline(fPersonality, type),
-                  eec.elicitor));
-                // set intensity of hope or fear in history to baseline
-                // if anticipated event (elicitor) has occurred (is
-                // confirmed) or has failed to occur (is disconfirmed)
-                history.get(i).add(new Emotion(oldType, old.getBaseline(), old.getBaseline(), eav,
-                  old.getElicitor()));
+        // look up hope and fear with the same elicitor in the history,
+        // latest emotion first
+        for (EmotionType oldType : sPROSPECT_TYPES) {
+          for (Emotion old : history.getEmotionsByElicitor(oldType, eec.elicitor)) {
+            if (old.getElicitor().equals(eec.elicitor)) {
+              if (eec.realization.isConfirmed()) {
+                type = (oldType == EmotionType.Hope)
+                  ? EmotionType.Satisfaction : EmotionType.FearsConfirmed;
+              } else {
+                type = (oldType == EmotionType.Hope)
+                  ? EmotionType.Disappointment : EmotionType.Relief;
               }
+              intensity = max(old.getIntensity(), eec.realization.absDegree());
+              intensity = adjustIntensity(intensity, type, mood);
+
+              // collect all relevant appraisal variables for this emotion
+              EmotionAppraisalVars eav = new EmotionAppraisalVars();
+
+              eav.setDesirability(old.getAppraisalVariables().desirability);
+              eav.setLikelihood(old.getAppraisalVariables().likelihood);
+              eav.setRealization(eec.realization.isConfirmed());
+              eav.setAgency(true);
+
+              tempEmotions.add(new Emotion(type, intensity,
+                fInfluences.getBaseline(type),
+                eec.elicitor));
+              // set intensity of hope or fear in history to baseline
+              // if anticipated event (elicitor) has occurred (is
+              // confirmed) or has failed to occur (is disconfirmed)
+              history.replaceEmotion(old, new Emotion(oldType, old.getBaseline(), old.getBaseline(), eav,
+                old.getElicitor()));
             }
           }
         }
@@ -439,7 +494,7 @@ public class EmotionEngine {
         eav.setAgency((eec.character == Agency.SELF) ? true : false);
 
         tempEmotions.add(new Emotion(type, intensity,
-          fPerEmoRel.getEmotionBaseline(fPersonality, type), eav, eec.elicitor));
+          fInfluences.getBaseline(type), eav, eec.elicitor));
       }
       // Attraction Group:
       if (eec.appealingness != null) {
@@ -453,7 +508,7 @@ public class EmotionEngine {
         eav.setAppealingness(eec.appealingness.absDegree());
 
         tempEmotions.add(new Emotion(type, intensity,
-          fPerEmoRel.getEmotionBaseline(fPersonality, type), eec.elicitor));
+          fInfluences.getBaseline(type), eec.elicitor));
       }
     } // end-for
     // ---------------------------------------------------
@@ -513,7 +568,7 @@ public class EmotionEngine {
 
 
         tempEmotions.add(new Emotion(type, intensity,
-          fPerEmoRel.getEmotionBaseline(fPersonality, type), eav, elicitor));
+          fInfluences.getBaseline(type), eav, elicitor));
         usedEmotions.add(joy);
         history.removeEmotionByElicitor(histPride, elicitor);
       }
@@ -531,7 +586,7 @@ public class EmotionEngine {
 
 
         tempEmotions.add(new Emotion(type, intensity,
-          fPerEmoRel.getEmotionBaseline(fPersonality, type), eav, elicitor));
+          fInfluences.getBaseline(type), eav, elicitor));
         usedEmotions.add(pride);
         history.removeEmotionByElicitor(histJoy, elicitor);
       }
@@ -555,7 +610,7 @@ public class EmotionEngine {
 
 
       tempEmotions.add(new Emotion(type, intensity,
-        fPerEmoRel.getEmotionBaseline(fPersonality, type), eav, elicitor));
+        fInfluences.getBaseline(type), eav, elicitor));
       usedEmotions.add(joy);
       usedEmotions.add(pride);
     }
@@ -583,7 +638,7 @@ public class EmotionEngine {
 
 
         tempEmotions.add(new Emotion(type, intensity,
-          fPerEmoRel.getEmotionBaseline(fPersonality, type), eav, elicitor));
+          fInfluences.getBaseline(type), eav, elicitor));
         usedEmotions.add(joy);
         history.removeEmotionByElicitor(histAdmiration, elicitor);
       }
@@ -600,7 +655,7 @@ public class EmotionEngine {
         eav.setAgency(false);
 
         tempEmotions.add(new Emotion(type, intensity,
-          fPerEmoRel.getEmotionBaseline(fPersonality, type), eav, elicitor));
+          fInfluences.getBaseline(type), eav, elicitor));
         usedEmotions.add(admiration);
         history.removeEmotionByElicitor(histJoy, elicitor);
       }
@@ -613,7 +668,7 @@ public class EmotionEngine {
       double intensity = max(joy.getIntensity(), admiration.getIntensity());
       intensity = adjustIntensity(intensity, type, mood);
       tempEmotions.add(new Emotion(type, intensity,
-        fPerEmoRel.getEmotionBaseline(fPersonality, type), elicitor));
+        fInfluences.getBaseline(type), elicitor));
       usedEmotions.add(joy);
       usedEmotions.add(admiration);
     }
@@ -640,7 +695,7 @@ public class EmotionEngine {
         eav.setAgency(true);
 
         tempEmotions.add(new Emotion(type, intensity,
-          fPerEmoRel.getEmotionBaseline(fPersonality, type), eav, elicitor));
+          fInfluences.getBaseline(type), eav, elicitor));
         usedEmotions.add(distress);
         history.removeEmotionByElicitor(histShame, elicitor);
       }
@@ -657,7 +712,7 @@ public class EmotionEngine {
         eav.setAgency(true);
 
         tempEmotions.add(new Emotion(type, intensity,
-          fPerEmoRel.getEmotionBaseline(fPersonality, type), eav, elicitor));
+          fInfluences.getBaseline(type), eav, elicitor));
         usedEmotions.add(shame);
         history.removeEmotionByElicitor(histDistress, elicitor);
       }
@@ -678,7 +733,7 @@ public class EmotionEngine {
       eav.setAgency(true);
 
       tempEmotions.add(new Emotion(type, intensity,
-        fPerEmoRel.getEmotionBaseline(fPersonality, type), eav, elicitor));
+        fInfluences.getBaseline(type), eav, elicitor));
       usedEmotions.add(distress);
       usedEmotions.add(shame);
     }
@@ -705,7 +760,7 @@ public class EmotionEngine {
         eav.setAgency(false);
 
         tempEmotions.add(new Emotion(type, intensity,
-          fPerEmoRel.getEmotionBaseline(fPersonality, type), eav, elicitor));
+          fInfluences.getBaseline(type), eav, elicitor));
         usedEmotions.add(distress);
         history.removeEmotionByElicitor(histReproach, elicitor);
       }
@@ -722,7 +777,7 @@ public class EmotionEngine {
         eav.setAgency(false);
 
         tempEmotions.add(new Emotion(type, intensity,
-          fPerEmoRel.getEmotionBaseline(fPersonality, type), elicitor));
+          fInfluences.getBaseline(type), elicitor));
         usedEmotions.add(reproach);
         history.removeEmotionByElicitor(histDistress, elicitor);
       }
@@ -744,7 +799,7 @@ public class EmotionEngine {
       eav.setAgency(true);
 
       tempEmotions.add(new Emotion(type, intensity,
-        fPerEmoRel.getEmotionBaseline(fPersonality, type), elicitor));
+        fInfluences.getBaseline(type), elicitor));
       usedEmotions.add(distress);
       usedEmotions.add(reproach);
     }
@@ -774,7 +829,7 @@ public class EmotionEngine {
         eav.setAgency(false);
 
         tempEmotions.add(new Emotion(type, intensity,
-          fPerEmoRel.getEmotionBaseline(fPersonality, type), eav, elicitor));
+          fInfluences.getBaseline(type), eav, elicitor));
         usedEmotions.add(liking);
         history.removeEmotionByElicitor(histAdmiration, elicitor);
       }
@@ -791,7 +846,7 @@ public class EmotionEngine {
         eav.setAgency(false);
 
         tempEmotions.add(new Emotion(type, intensity,
-          fPerEmoRel.getEmotionBaseline(fPersonality, type), elicitor));
+          fInfluences.getBaseline(type), elicitor));
         usedEmotions.add(admiration);
         history.removeEmotionByElicitor(histLiking, elicitor);
       }
@@ -812,7 +867,7 @@ public class EmotionEngine {
       eav.setAgency(false);
 
       tempEmotions.add(new Emotion(type, intensity,
-        fPerEmoRel.getEmotionBaseline(fPersonality, type), elicitor));
+        fInfluences.getBaseline(type), elicitor));
       usedEmotions.add(liking);
       usedEmotions.add(admiration);
     }
@@ -839,7 +894,7 @@ public class EmotionEngine {
         eav.setAgency(false);
 
         tempEmotions.add(new Emotion(type, intensity,
-          fPerEmoRel.getEmotionBaseline(fPersonality, type), eav, elicitor));
+          fInfluences.getBaseline(type), eav, elicitor));
         usedEmotions.add(disliking);
         history.removeEmotionByElicitor(histReproach, elicitor);
       }
@@ -856,7 +911,7 @@ public class EmotionEngine {
         eav.setAgency(false);
 
         tempEmotions.add(new Emotion(type, intensity,
-          fPerEmoRel.getEmotionBaseline(fPersonality, type), eav, elicitor));
+          fInfluences.getBaseline(type), eav, elicitor));
         usedEmotions.add(reproach);
         history.removeEmotionByElicitor(histDisliking, elicitor);
       }
@@ -878,7 +933,7 @@ public class EmotionEngine {
 
 
       tempEmotions.add(new Emotion(type, intensity,
-        fPerEmoRel.getEmotionBaseline(fPersonality, type), eav, elicitor));
+        fInfluences.getBaseline(type), eav, elicitor));
       usedEmotions.add(disliking);
       usedEmotions.add(reproach);
     }
@@ -36,7 +36,6 @@
 
 package de.affect.compute;
 
-import java.util.Hashtable;
 import static java.lang.Math.exp;
 import static java.lang.Math.log;
 
@@ -50,10 +49,10 @@ import de.affect.emotion.Emotion;
  * 
  * @version 2.0
  */
-public class ExponentialDecayFunction implements DecayFunction {
+public class ExponentialDecayFunction implements ClosedFormDecayFunction {
 
   private final static double ZEROCONST = log(0.004d);
-  private Hashtable<Emotion, Values> fDecayingEmotions = new Hashtable<Emotion, Values>();
+  private final DecayCurves fCurves = new DecayCurves();
   private int decaySteps;
   private boolean isInitialised = false;
 
@@ -63,64 +62,81 @@ public class ExponentialDecayFunction implements DecayFunction {
     init(decaySteps);
   }
 
-  private class Values {
-
-    int xValue;
-    int xEndValue;    
-    double operatingRange;
-
-    Values(int xValue, int xEndValue, double operatingRange) {
-      this.xValue = xValue;
-      this.xEndValue = xEndValue;
-      this.operatingRange = operatingRange;
-    }
-    
-  }
-  
   public void init(int decaySteps) {
     if (decaySteps <= 0)
       throw new IllegalArgumentException("Number of decay steps not positive.");
     this.decaySteps = decaySteps;
+    fCurves.clear();
     isInitialised = true;
   }
 	
   public Emotion decay(Emotion emotion) {
     if (!isInitialised)
       throw new UnsupportedOperationException("Decay function not initialized!");
-    Values values = null; 
     double intensity = emotion.getIntensity();
     double baseline = emotion.getBaseline();
     double newIntensity = intensity;
-    int xValue;
-    int xEndValue;
-    double startValue;
-    double operatingRange;
     if (intensity  > baseline) {
-      if (fDecayingEmotions.containsKey(emotion)) {
-	values = fDecayingEmotions.get(emotion);
-	xValue = values.xValue;
-	xEndValue = values.xEndValue;
-	operatingRange = values.operatingRange;
-      } else { // first time setup of variables
-	operatingRange = (intensity - baseline);
-	xValue = 0;
-	xEndValue = (int)(decaySteps * operatingRange); // maximum x
-	values = new Values(xValue, xEndValue, operatingRange);
-	fDecayingEmotions.put(emotion, values);
-      }
-      xValue++;
-      newIntensity = exp(xValue * ZEROCONST / xEndValue) * (operatingRange) + baseline;
-      values.xValue = xValue;
-      fDecayingEmotions.put(emotion, values);
-      if ((xValue > xEndValue) || (newIntensity < baseline)) {
-	newIntensity = baseline;
-	fDecayingEmotions.remove(emotion);
-      }
+      // the decay progress is kept in the emotion itself
+      double operatingRange = emotion.isDecaying() ? emotion.getDecayRange() : (intensity - baseline);
+      int xValue = emotion.getDecayStep() + 1;
+      newIntensity = decay(intensity, baseline, operatingRange, xValue);
+      if (newIntensity > baseline)
+	emotion.setDecayProgress(xValue, operatingRange);
+      else
+	emotion.setDecayProgress(0, 0.0d);
     }
     emotion.setIntensity(newIntensity);
     return emotion;
   }
 
+  public double decay(double intensity, double baseline, double operatingRange, int step) {
+    if (!isInitialised)
+      throw new UnsupportedOperationException("Decay function not initialized!");
+    int xEndValue = (int)(decaySteps * operatingRange); // maximum x
+    if (step > xEndValue)
+      return baseline;
+    double newIntensity = curve(xEndValue)[step] * operatingRange + baseline;
+    return (newIntensity < baseline) ? baseline : newIntensity;
+  }
+
+  public double intensity(double startIntensity, double baseline, int steps) {
+    if (!isInitialised)
+      throw new UnsupportedOperationException("Decay function not initialized!");
+    if ((steps <= 0) || (startIntensity <= baseline))
+      return startIntensity;
+    double operatingRange = startIntensity - baseline;
+    int xEndValue = (int)(decaySteps * operatingRange);
+    if (steps > xEndValue)
+      return baseline;
+    double newIntensity = curve(xEndValue)[steps] * operatingRange + baseline;
+    return (newIntensity < baseline) ? baseline : newIntensity;
+  }
+
+  public int remainingSteps(double startIntensity, double baseline, double threshold) {
+    if (!isInitialised)
+      throw new UnsupportedOperationException("Decay function not initialized!");
+    int xEndValue = (int)(decaySteps * (startIntensity - baseline));
+    return DecayCurves.remainingSteps(this, startIntensity, baseline, threshold, xEndValue + 1);
+  }
+
+  /**
+   * Returns the precomputed decay curve for a number of decay steps. Element
+   * x is the distance to the baseline after x decay steps for an operating
+   * range of 1.0.
+   */
+  private double[] curve(int xEndValue) {
+    double[] curve = fCurves.get(xEndValue);
+    if (curve == null) {
+      curve = new double[xEndValue + 1];
+      curve[0] = 1.0d;
+      for (int x = 1; x <= xEndValue; x++)
+	curve[x] = exp(x * ZEROCONST / xEndValue);
+      fCurves.put(xEndValue, curve);
+    }
+    return curve;
+  }
+
   public int decaySteps () {
     return decaySteps;
   }
@@ -0,0 +1,209 @@
+/*
+ * LazyDecayEngine.java
+ *
+ * Copyright (c) 2008, Patrick Gebhard, DFKI GmbH
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in 
+ *     the documentation and/or other materials provided with the 
+ *     distribution.
+ *
+ *   - Neither the name of the DFKI GmbH nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE 
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE 
+ * POSSIBILITY OF SUCH DAMAGE. 
+ */
+
+package de.affect.compute;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+
+import de.affect.emotion.Emotion;
+
+/**
+ * The <code>LazyDecayEngine</code> class decays emotions on demand. Instead
+ * of decaying each active emotion every decay period, the engine only
+ * remembers when the decay of an emotion has started and with which
+ * intensity. The current intensity is computed with the closed form of the
+ * decay function when it is requested by <code>update</code>. Between two
+ * requests the engine does not use any CPU time.
+ *
+ * @author Patrick Gebhard
+ *
+ * @version 1.0
+ */
+public class LazyDecayEngine {
+
+  private final ClosedFormDecayFunction fDecayFunction;
+  private final long fDecayPeriod;
+  private ArrayList<DecayStart> fDecayingEmotions = new ArrayList<DecayStart>();
+  private long fSuspendedAt = -1;
+
+  /**
+   * Creates a lazy decay engine.
+   *
+   * @param decayFunction the decay function that defines the decay curve
+   * @param decayPeriod the time in milliseconds of one decay step
+   *
+   * @throws NullPointerException if the decay function is not specified
+   * @throws IllegalArgumentException if the decay period is not positive
+   */
+  public LazyDecayEngine(ClosedFormDecayFunction decayFunction, long decayPeriod) {
+    if (decayFunction == null) {
+      throw new NullPointerException("Decay function not specified.");
+    }
+    if (decayPeriod <= 0) {
+      throw new IllegalArgumentException("Decay period not positive.");
+    }
+    fDecayFunction = decayFunction;
+    fDecayPeriod = decayPeriod;
+  }
+
+  /**
+   * The <code>DecayStart</code> class holds the start of an emotion's decay.
+   */
+  private static class DecayStart {
+
+    final Emotion emotion;
+    final double startIntensity;
+    long startTime;
+
+    DecayStart(Emotion emotion, double startIntensity, long startTime) {
+      this.emotion = emotion;
+      this.startIntensity = startIntensity;
+      this.startTime = startTime;
+    }
+  }
+
+  /**
+   * Starts the decay of an emotion at the given time. Emotions whose intensity
+   * is not greater than their baseline are ignored.
+   *
+   * @param emotion the emotion that should be decayed
+   * @param time the start time of the decay in milliseconds
+   *
+   * @return true if the emotion is decayed by the engine, false otherwise
+   */
+  public synchronized boolean add(Emotion emotion, long time) {
+    if (emotion.getIntensity() <= emotion.getBaseline()) {
+      return false;
+    }
+    fDecayingEmotions.add(new DecayStart(emotion, emotion.getIntensity(), time));
+    return true;
+  }
+
+  /**
+   * Sets the intensity of all decaying emotions to their intensity at the
+   * given time. Emotions that have reached their baseline are removed from
+   * the engine. If the engine is suspended, the intensity at the time of the
+   * suspension is computed.
+   *
+   * @param time the current time in milliseconds
+   *
+   * @return true if at least one intensity has changed, false otherwise
+   */
+  public synchronized boolean update(long time) {
+    long now = (fSuspendedAt >= 0) ? fSuspendedAt : time;
+    boolean changed = false;
+    for (Iterator<DecayStart> it = fDecayingEmotions.iterator(); it.hasNext();) {
+      DecayStart ds = it.next();
+      long elapsed = now - ds.startTime;
+      int steps = (elapsed <= 0) ? 0 : (int) Math.min(Integer.MAX_VALUE, elapsed / fDecayPeriod);
+      Emotion emotion = ds.emotion;
+      double intensity = fDecayFunction.intensity(ds.startIntensity, emotion.getBaseline(), steps);
+      if (intensity != emotion.getIntensity()) {
+        emotion.setIntensity(intensity);
+        changed = true;
+      }
+      if (intensity <= emotion.getBaseline()) {
+        it.remove();
+      }
+    }
+    return changed;
+  }
+
+  /**
+   * Suspends the decay. The time between suspension and resumption does not
+   * count as decay time.
+   *
+   * @param time the current time in milliseconds
+   */
+  public synchronized void suspend(long time) {
+    if (fSuspendedAt < 0) {
+      fSuspendedAt = time;
+    }
+  }
+
+  /**
+   * Resumes a suspended decay.
+   *
+   * @param time the current time in milliseconds
+   */
+  public synchronized void resume(long time) {
+    if (fSuspendedAt >= 0) {
+      shift(time - fSuspendedAt);
+      fSuspendedAt = -1;
+    }
+  }
+
+  /**
+   * Queries if the decay is suspended.
+   *
+   * @return true if the decay is suspended, false otherwise
+   */
+  public synchronized boolean isSuspended() {
+    return (fSuspendedAt >= 0);
+  }
+
+  /**
+   * Lets all decaying emotions proceed by one decay step, even if the decay
+   * is suspended. The new intensities are computed by the next
+   * <code>update</code>.
+   */
+  public synchronized void step() {
+    shift(-fDecayPeriod);
+  }
+
+  private void shift(long delta) {
+    for (DecayStart ds : fDecayingEmotions) {
+      ds.startTime += delta;
+    }
+  }
+
+  /**
+   * Removes all emotions from the engine.
+   */
+  public synchronized void clear() {
+    fDecayingEmotions.clear();
+  }
+
+  /**
+   * Returns the number of emotions currently decayed by the engine.
+   *
+   * @return the number of decaying emotions
+   */
+  public synchronized int size() {
+    return fDecayingEmotions.size();
+  }
+}
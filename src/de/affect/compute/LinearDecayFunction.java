@@ -36,12 +36,8 @@
  */
 package de.affect.compute;
 
-import java.util.Hashtable;
-
 import de.affect.emotion.Emotion;
 
-import static de.affect.manage.AffectManager.sLog;
-
 /**  
  * This class uses a linear function for the emotion decay.
  *
@@ -49,9 +45,8 @@ import static de.affect.manage.AffectManager.sLog;
  *
  * @version 2.0
  */
-public class LinearDecayFunction implements DecayFunction {
+public class LinearDecayFunction implements ClosedFormDecayFunction {
 
-  private Hashtable<Emotion, Values> fDecayingEmotions = new Hashtable<Emotion, Values>();
   private int decaySteps;
   private boolean isInitialised = false;
 
@@ -62,19 +57,6 @@ public class LinearDecayFunction implements DecayFunction {
     init(decaySteps);
   }
 
-  private class Values {
-
-    int xValue;
-    int xEndValue;
-    double operatingRange;
-
-    Values(int xValue, int xEndValue, double operatingRange) {
-      this.xValue = xValue;
-      this.xEndValue = xEndValue;
-      this.operatingRange = operatingRange;
-    }
-  }
-
   public void init(int decaySteps) {
     if (decaySteps <= 0) {
       throw new IllegalArgumentException("Number of decay steps not positive.");
@@ -87,39 +69,52 @@ public class LinearDecayFunction implements DecayFunction {
     if (!isInitialised) {
       throw new UnsupportedOperationException("Decay function not initialized!");
     }
-    Values values = null;
     double intensity = emotion.getIntensity();
     double baseline = emotion.getBaseline();
     double newIntensity = intensity;
-    int xValue;
-    int xEndValue;
-    double operatingRange;
     if (intensity > baseline) {
-      if (fDecayingEmotions.containsKey(emotion)) {
-        values = fDecayingEmotions.get(emotion);
-        xValue = values.xValue;
-        xEndValue = values.xEndValue;
-        operatingRange = values.operatingRange;
+      double operatingRange = emotion.isDecaying() ? emotion.getDecayRange() : (intensity - baseline);
+      int xValue = emotion.getDecayStep() + 1;
+      newIntensity = decay(intensity, baseline, operatingRange, xValue);
+      if (newIntensity > baseline) {
+        emotion.setDecayProgress(xValue, operatingRange);
       } else {
-        operatingRange = (intensity - baseline);
-        xValue = 0;
-        xEndValue = (int) (decaySteps * operatingRange);
-        values = new Values(xValue, xEndValue, operatingRange);
-        fDecayingEmotions.put(emotion, values);
-      }
-      newIntensity = intensity - (1.0d / decaySteps);
-      xValue++;
-      values.xValue = xValue;
-      fDecayingEmotions.put(emotion, values);
-      if ((xValue > xEndValue) || (newIntensity < baseline)) {
-        newIntensity = baseline;
-        fDecayingEmotions.remove(emotion);
+        emotion.setDecayProgress(0, 0.0d);
       }
     }
     emotion.setIntensity(newIntensity);
     return emotion;
   }
 
+  public double decay(double intensity, double baseline, double operatingRange, int step) {
+    if (!isInitialised) {
+      throw new UnsupportedOperationException("Decay function not initialized!");
+    }
+    int xEndValue = (int) (decaySteps * operatingRange);
+    double newIntensity = intensity - (1.0d / decaySteps);
+    return ((step > xEndValue) || (newIntensity < baseline)) ? baseline : newIntensity;
+  }
+
+  public double intensity(double startIntensity, double baseline, int steps) {
+    if (!isInitialised) {
+      throw new UnsupportedOperationException("Decay function not initialized!");
+    }
+    if ((steps <= 0) || (startIntensity <= baseline)) {
+      return startIntensity;
+    }
+    int xEndValue = (int) (decaySteps * (startIntensity - baseline));
+    double newIntensity = startIntensity - steps * (1.0d / decaySteps);
+    return ((steps > xEndValue) || (newIntensity < baseline)) ? baseline : newIntensity;
+  }
+
+  public int remainingSteps(double startIntensity, double baseline, double threshold) {
+    if (!isInitialised) {
+      throw new UnsupportedOperationException("Decay function not initialized!");
+    }
+    int xEndValue = (int) (decaySteps * (startIntensity - baseline));
+    return DecayCurves.remainingSteps(this, startIntensity, baseline, threshold, xEndValue + 1);
+  }
+
   public int decaySteps() {
     return decaySteps;
   }
@@ -1 +1 @@
-/* * MoodEngine.java * * Copyright (c) 2004, 2005, 2006, 2007, 2008, Patrick Gebhard, DFKI GmbH * * All rights reserved. * * Redistribution and use in source and binary forms, with or without * modification, are permitted provided that the following conditions * are met: * *   - Redistributions of source code must retain the above copyright *     notice, this list of conditions and the following disclaimer. * *   - Redistributions in binary form must reproduce the above copyright *     notice, this list of conditions and the following disclaimer in  *     the documentation and/or other materials provided with the  *     distribution. * *   - Neither the name of the DFKI GmbH nor the names of its contributors *     may be used to endorse or promote products derived from this software *     without specific prior written permission. * * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE  * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE  * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE  * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR  * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF  * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS  * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN  * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)  * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE  * POSSIBILITY OF SUCH DAMAGE.  */package de.affect.compute;import java.util.Iterator;import java.util.logging.Logger;import static java.lang.Math.abs;import static java.lang.Math.random;import static java.lang.Math.signum;import de.affect.emotion.Emotion;import de.affect.emotion.EmotionVector;import de.affect.mood.Mood;import de.affect.personality.Personality;import de.affect.emotion.EmotionType;import de.affect.emotion.EmotionPADCentroid;import de.affect.manage.AffectManager;import jama.Matrix;import static de.affect.util.Convert.prettyPrint;import static de.affect.emotion.EmotionsPADRelation.getEmotionPADMapping;/** * The <code>MoodEngine</code> class is used to compute the current mood of a * character based on it's personality and current active emotions. * * @author Patrick Gebhard * * @version 1.0 */public class MoodEngine {  private Personality fPersonality = null;  private Mood fDefaultMood = null;  private Mood fCurrentMoodTendency = null;  private EmotionPADCentroid fEmotionsCenter = null;  private boolean fNeurotismMoodChanges = false;  private int fNeurotismMoodChangeTime = 1;  private int fRelativeMoodOctant = 0;  private int fLastRelativeMoodOctant = 0;  private static double fLowestValue = 0.0001d;  private static long fOverallMoodReturnPeriods = 1800000; // 30 minutes  private double fMoodReturnFactor = 1.0d;  private long fOverallMoodReturnCnt = 0;  private final static int sMOODSTEPS = 100; //better 300  private final static double sDEFAULTMOODIMPACT = 0.25d;  private final static int sNeurotismMoodChangeMaxTime = 8;private Logger log = AffectManager.sLog;  public MoodEngine(Personality personality, boolean neuroticMoodChanges, Mood defaultMood, double compPeriod) {    fPersonality = personality;    fDefaultMood = defaultMood;    fEmotionsCenter = new EmotionPADCentroid();    fNeurotismMoodChanges = neuroticMoodChanges;    // fNeurotismMoodChangeTime is reciproc to the neurotism value.    // The higher neurotsim is, the lower is fNeurotismMoodChangeTime.    fNeurotismMoodChangeTime = 1 + sNeurotismMoodChangeMaxTime -            (new Double((fPersonality.getNeurotism() + 1.0d)).intValue() * sNeurotismMoodChangeMaxTime / 2);        fMoodReturnFactor = (new Double(fOverallMoodReturnPeriods)) / compPeriod;  }  private Mood moveMoodLinear(Mood currentMood, double strength,          double pValue, double aValue, double dValue) {    Mood resultMood = null;    double currentPleasure = currentMood.getPleasure();    double currentArousal = currentMood.getArousal();    double currentDominance = currentMood.getDominance();    // get the subcube boundaries if fEmotionCenter is in the current mood octant cube    double newPValue = currentPleasure + (pValue / sMOODSTEPS * strength);    newPValue = checkValue(newPValue);    double newAValue = currentArousal + (aValue / sMOODSTEPS * strength);    newAValue = checkValue(newAValue);    double newDValue = currentDominance + (dValue / sMOODSTEPS * strength);    newDValue = checkValue(newDValue);    fCurrentMoodTendency = new Mood(checkValue(currentPleasure + pValue),            checkValue(currentArousal + aValue),            checkValue(currentDominance + dValue));    if (isEmotionCenterInCurrentMoodOctantCube(currentMood)) {      //debug log.info("EmotionCenter is in mood cube - mood will not leave cube!");      double pleasureEnd = signum(currentPleasure);      newPValue = (pleasureEnd < 0.0d) ? (newPValue > 0.0d) ? 0.0d : newPValue : (newPValue < 0.0d) ? 0.0d : newPValue;      double arousalEnd = signum(currentArousal);      newAValue = (arousalEnd < 0.0d) ? (newAValue > 0.0d) ? 0.0d : newAValue : (newAValue < 0.0d) ? 0.0d : newAValue;      double dominanceEnd = signum(currentDominance);      newDValue = (dominanceEnd < 0.0d) ? (newDValue > 0.0d) ? 0.0d : newDValue : (newDValue < 0.0d) ? 0.0d : newDValue;    }    resultMood = new Mood(newPValue, newAValue, newDValue);    return resultMood;  }  private Mood randomMoodChange(Mood currentMood, double strength,          double pValue, double aValue, double dValue) {    // to which octant the current mood should move	    fRelativeMoodOctant = (new Double(random() * 8.0d)).intValue();    double newPValue = currentMood.getPleasure();    double newAValue = currentMood.getArousal();    double newDValue = currentMood.getDominance();//     log.info("relative mood octant " + fRelativeMoodOctant + //  	     " P:" + ((fRelativeMoodOctant >> 2) % 2) +//  	     " A:" + ((fRelativeMoodOctant >> 1) % 2) +//  	     " D:" + ((fRelativeMoodOctant >> 0) % 2));    // allow only random values that are not opposite to the current mood     // move direction    newPValue = ((((fRelativeMoodOctant >> 2) % 2) > 0) && (signum(pValue) >= 0)) ? newPValue + strength : newPValue - strength;    newPValue = checkValue(newPValue);    newAValue = ((((fRelativeMoodOctant >> 1) % 2) > 0) && (signum(aValue) >= 0)) ? newAValue + strength : newAValue - strength;    newAValue = checkValue(newAValue);    newDValue = ((((fRelativeMoodOctant >> 0) % 2) > 0) && (signum(dValue) >= 0)) ? newDValue + strength : newDValue - strength;    newDValue = checkValue(newDValue);    return new Mood(newPValue, newAValue, newDValue);  }  private double checkValue(double value) {    double result = value;    result = (result > 1.0d) ? 1.0d : result;    result = (result < -1.0d) ? -1.0d : result;    return result;  }  private Mood getPADPlanePoint(EmotionPADCentroid eCenter, Mood currentMood) {    Mood result = new Mood(0., 0., 0.);    double curMoodPValue = currentMood.getPleasure();    double curMoodAValue = currentMood.getArousal();    double curMoodDValue = currentMood.getDominance();    double pMoodToECenter = (eCenter.getPValue() - curMoodPValue);    double aMoodToECenter = (eCenter.getAValue() - curMoodAValue);    double dMoodToECenter = (eCenter.getDValue() - curMoodDValue);    //log.info("pMoodToECenter " + pMoodToECenter);    //log.info("aMoodToECenter " + aMoodToECenter);    //log.info("dMoodToECenter " + dMoodToECenter);    if ((abs(pMoodToECenter) <= fLowestValue) &&            (abs(aMoodToECenter) <= fLowestValue) &&            (abs(dMoodToECenter) <= fLowestValue)) {      return null;    }    double[][][] inputVals = {{{pMoodToECenter, -1., 0.}, {aMoodToECenter, 0., 0.}, {dMoodToECenter, 0., -1.}},      {{pMoodToECenter, -1., 0.}, {aMoodToECenter, 0., 0.}, {dMoodToECenter, 0., -1.}},      {{pMoodToECenter, 0., 0.}, {aMoodToECenter, -1., 0.}, {dMoodToECenter, 0., -1.}},      {{pMoodToECenter, 0., 0.}, {aMoodToECenter, -1., 0.}, {dMoodToECenter, 0., -1.}},      {{pMoodToECenter, -1., 0.}, {aMoodToECenter, 0., -1.}, {dMoodToECenter, 0., 0.}},      {{pMoodToECenter, -1., 0.}, {aMoodToECenter, 0., -1.}, {dMoodToECenter, 0., 0.}}    };    double[][][] bVals = {{{0.}, {-1. - curMoodAValue}, {0.}},      {{0.}, {1. - curMoodAValue}, {0.}},      {{-1. - curMoodPValue}, {0.}, {0.}},      {{1. - curMoodPValue}, {0.}, {0.}},      {{0.}, {0.}, {-1. - curMoodDValue}},      {{0.}, {0.}, {1. - curMoodDValue}}    };    for (int i = 0; i < 6; i++) {      // check if end point is in neagtive pleasure plane      Matrix A = new Matrix(inputVals[i]);      Matrix b = new Matrix(bVals[i]);      double fac = 0.0d;      if (A.det() != 0.0d) {        Matrix x = A.solve(b);        fac = x.get(0, 0);      } else {        // special case, if only one part differs from zero. Than the current        // mood should move according to that part.        return new Mood(signum(pMoodToECenter), signum(aMoodToECenter), signum(dMoodToECenter));      }      double PPoint = curMoodPValue + fac * pMoodToECenter;      double APoint = curMoodAValue + fac * aMoodToECenter;      double DPoint = curMoodDValue + fac * dMoodToECenter;      if ((PPoint <= 1.0d) && (PPoint >= -1.0d) &&              (APoint <= 1.0d) && (APoint >= -1.0d) &&              (DPoint <= 1.0d) && (DPoint >= -1.0d)) {        result = (fac > 0.0d) ? new Mood(PPoint, APoint, DPoint) : new Mood(-PPoint, -APoint, -DPoint);      }    }    return result;  }  public synchronized EmotionPADCentroid getEmotionsCenter() {    return fEmotionsCenter;  }  private boolean isEmotionCenterInCurrentMoodOctantCube(Mood currentMood) {    boolean isInCurrentMoodOctantCube = false;    double pleasureEnd = signum(currentMood.getPleasure());    double arousalEnd = signum(currentMood.getArousal());    double dominanceEnd = signum(currentMood.getDominance());    boolean isInPleasurePart = false;    if ((pleasureEnd > 0.0d) && (fEmotionsCenter.getPValue() > 0.0d)) {      isInPleasurePart = true;    }    if ((pleasureEnd < 0.0d) && (fEmotionsCenter.getPValue() < 0.0d)) {      isInPleasurePart = true;    }    boolean isInArousalPart = false;    if ((arousalEnd > 0.0d) && (fEmotionsCenter.getAValue() > 0.0d)) {      isInArousalPart = true;    }    if ((arousalEnd < 0.0d) && (fEmotionsCenter.getAValue() < 0.0d)) {      isInArousalPart = true;    }    boolean isInDominancePart = false;    if ((dominanceEnd > 0.0d) && (fEmotionsCenter.getDValue() > 0.0d)) {      isInDominancePart = true;    }    if ((dominanceEnd < 0.0d) && (fEmotionsCenter.getDValue() < 0.0d)) {      isInDominancePart = true;    }    if (isInPleasurePart && isInArousalPart && isInDominancePart) {      isInCurrentMoodOctantCube = true;    }    return isInCurrentMoodOctantCube;  }  /**   * <code>isMoodAtEmotionsCenter</code> checks is the current mood is at the   * emotion(s) center postion.   *   * @param currentMood the current mood that will be checked if it is at the    *                    emotion(s) center position.   *   * @return boolean true if the current mood is near (&lt; 0.004d) the    *                 emotion(s) center postion, false otherwise   */  private boolean isMoodAtEmotionsCenter(Mood currentMood) {    boolean isAtEmotionCenter = false;    double pRange = (fEmotionsCenter.getPValue() - currentMood.getPleasure());    double aRange = (fEmotionsCenter.getAValue() - currentMood.getArousal());    double dRange = (fEmotionsCenter.getDValue() - currentMood.getDominance());    if ((abs(pRange) < 0.001d) && (abs(aRange) < 0.001d) && (abs(dRange) < 0.001d)) {      isAtEmotionCenter = true;    }    return isAtEmotionCenter;  }  private boolean isMoodInEmotionsCenterSubCube(Mood currentMood) {    boolean isInEmotionsCenterSubCube = false;    if ((((fEmotionsCenter.getPValue() >= 0.0d) &&            (currentMood.getPleasure() >= fEmotionsCenter.getPValue())) ||            ((fEmotionsCenter.getPValue() < 0.0d) &&            (currentMood.getPleasure() <= fEmotionsCenter.getPValue()))) &&            (((fEmotionsCenter.getAValue() >= 0.0d) &&            (currentMood.getArousal() >= fEmotionsCenter.getAValue())) ||            ((fEmotionsCenter.getAValue() < 0.0d) &&            (currentMood.getArousal() <= fEmotionsCenter.getAValue()))) &&            (((fEmotionsCenter.getDValue() >= 0.0d) &&            (currentMood.getDominance() >= fEmotionsCenter.getDValue())) ||            ((fEmotionsCenter.getDValue() < 0.0d) &&            (currentMood.getDominance() <= fEmotionsCenter.getDValue())))) {      isInEmotionsCenterSubCube = true;    }    return isInEmotionsCenterSubCube;  }  public synchronized Mood getCurrentMoodTendency() {    return (fCurrentMoodTendency != null) ? fCurrentMoodTendency : fDefaultMood;  }  /**   * <code>compute</code> computes the new current mood based on the actual   * current mood and the active emotion(s) of a character.   *   * @param currentMood the current mood that will be checked if it is at the    *                    emotion(s) center position.   * @param emotions the active emotion(s) of a character   *   * @return Mood the new current mood   */  public synchronized Mood compute(Mood currentMood, EmotionVector emotions) {    // increment mood return counter to 0    fOverallMoodReturnCnt++;    fEmotionsCenter.clear();    for (Iterator<Emotion> it = emotions.getEmotions().iterator(); it.hasNext();) {      Emotion emotion = it.next();      EmotionType eType = emotion.getType();      double eIntensity = emotion.getIntensity();      if (eIntensity > emotion.getBaseline()) {        // log.info("Active emotion " + eType + " influences current mood");        Mood ePAD = (eType.equals(EmotionType.Physical)) ? emotion.getPADValues() : getEmotionPADMapping(eType);        //log.info(eType + " PAD representation is (" + ePAD.getPleasure() + ", " +  ePAD.getArousal() + " , " + ePAD.getDominance() + ")");        fEmotionsCenter.add(ePAD.getPleasure(), ePAD.getArousal(), ePAD.getDominance(), eIntensity);      //log.info(fEmotionsCenter.toString());      }    }    if (fEmotionsCenter.isActive()) {      // reset mood return counter to 0      fOverallMoodReturnCnt = 0;      double emotionImpact = fEmotionsCenter.getWeight();      //log.info(fPersonality + " Emotion(s) impact is " + prettyPrint(emotionImpact));      if (isMoodAtEmotionsCenter(currentMood)) {       //log.info(fPersonality + " Current mood " + currentMood + " is at emotion(s) center");        currentMood = new Mood(fEmotionsCenter.getPValue(), fEmotionsCenter.getAValue(),                fEmotionsCenter.getDValue());      }      if ((isEmotionCenterInCurrentMoodOctantCube(currentMood)) && (fEmotionsCenter.getIntensity() <= currentMood.getIntensity())) {        //log.info(fPersonality + " current emotion(s) pushing mood deeper in mood octant");                Mood planePoint = getPADPlanePoint(fEmotionsCenter, new Mood(0.0d, 0.0d, 0.0d));        currentMood = (planePoint != null) ? moveMoodLinear(currentMood, emotionImpact,                planePoint.getPleasure(),                planePoint.getArousal(),                planePoint.getDominance()) : currentMood;      } else if (isMoodInEmotionsCenterSubCube(currentMood)) { // PG 11.3.11: this case is obsolete        //log.info(fPersonality + " Moving mood deeper in emotion(s) center sub cube");        Mood planePoint = getPADPlanePoint(fEmotionsCenter, new Mood(0.0d, 0.0d, 0.0d));        currentMood = (planePoint != null) ? moveMoodLinear(currentMood, emotionImpact,                planePoint.getPleasure(),                planePoint.getArousal(),                planePoint.getDominance()) : currentMood;      } else {        Mood planePoint = getPADPlanePoint(fEmotionsCenter, currentMood);        //log.info(fPersonality + " Using intersection point (" + prettyPrint(planePoint.getPleasure()) + ", " +  prettyPrint(planePoint.getArousal()) + ", " +  prettyPrint(planePoint.getDominance()) + ")");        currentMood = (planePoint != null) ? moveMoodLinear(currentMood, emotionImpact,                planePoint.getPleasure(),                planePoint.getArousal(),                planePoint.getDominance()) : currentMood;      }    //Mood planePoint = getPADPlanePoint(fEmotionsCenter, currentMood);    } else { // back to default mood      if (currentMood != fDefaultMood) {        double pMoodToDefMood = (fDefaultMood.getPleasure() - currentMood.getPleasure());        double aMoodToDefMood = (fDefaultMood.getArousal() - currentMood.getArousal());        double dMoodToDefMood = (fDefaultMood.getDominance() - currentMood.getDominance());        // if current mood is very close to default mood, stop the move back process        if ((abs(pMoodToDefMood) < 0.006d) && (abs(aMoodToDefMood) < 0.006d) &&                (abs(dMoodToDefMood) < 0.006d)) {          currentMood = fDefaultMood;        } else {          //debug log.info ("Current mood drifting back to default mood");          //debug log.info (currentMood + " -> " + fDefaultMood);          currentMood = moveMoodLinear(currentMood, sDEFAULTMOODIMPACT * fMoodReturnFactor,                  pMoodToDefMood, aMoodToDefMood, dMoodToDefMood);          if (fNeurotismMoodChanges) {            currentMood = randomMoodChange(currentMood, 0.005d * fMoodReturnFactor,                    pMoodToDefMood, aMoodToDefMood, dMoodToDefMood);          }        }      } else {        // move mood away from default mood, ...        if (fNeurotismMoodChanges) {          //debug log.info("Crazy mood change");          currentMood = randomMoodChange(currentMood, 0.05d, //initial "jump" from default mood                  random() * 2.0d - 1.0d, random() * 2.0d - 1.0d, random() * 2.0d - 1.0d);        }      }    }    return currentMood;  }}
\ No newline at end of file
+/* * MoodEngine.java * * Copyright (c) 2004, 2005, 2006, 2007, 2008, Patrick Gebhard, DFKI GmbH * * All rights reserved. * * Redistribution and use in source and binary forms, with or without * modification, are permitted provided that the following conditions * are met: * *   - Redistributions of source code must retain the above copyright *     notice, this list of conditions and the following disclaimer. * *   - Redistributions in binary form must reproduce the above copyright *     notice, this list of conditions and the following disclaimer in  *     the documentation and/or other materials provided with the  *     distribution. * *   - Neither the name of the DFKI GmbH nor the names of its contributors *     may be used to endorse or promote products derived from this software *     without specific prior written permission. * * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE  * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE  * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE  * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR  * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF  * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS  * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN  * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)  * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE  * POSSIBILITY OF SUCH DAMAGE.  */package de.affect.compute;import java.util.logging.Logger;import static java.lang.Math.abs;import static java.lang.Math.random;import static java.lang.Math.signum;import static java.lang.Math.sqrt;import de.affect.emotion.Emotion;import de.affect.emotion.EmotionVector;import de.affect.mood.Mood;import de.affect.personality.Personality;import de.affect.emotion.EmotionType;import de.affect.emotion.EmotionPADCentroid;import de.affect.manage.AffectManager;import static de.affect.util.Convert.prettyPrint;import static de.affect.emotion.EmotionsPADRelation.getEmotionPADMapping;/** * The <code>MoodEngine</code> class is used to compute the current mood of a * character based on it's personality and current active emotions. * * The computation works on primitive PAD values. The point where the line * from the current mood through the emotion(s) center leaves the PAD cube * is computed in closed form. Except for the resulting mood, a computation * does not allocate any objects. * * @author Patrick Gebhard * * @version 1.0 */public class MoodEngine {  private Personality fPersonality = null;  private Mood fDefaultMood = null;  private Mood fCurrentMoodTendency = null;  private boolean fHasMoodTendency = false;  private double fTendencyPValue = 0.0d;  private double fTendencyAValue = 0.0d;  private double fTendencyDValue = 0.0d;  // the mood that is computed by compute and its helper methods  private double fMoodPValue = 0.0d;  private double fMoodAValue = 0.0d;  private double fMoodDValue = 0.0d;  // the PAD cube point that is computed by getPADPlanePoint  private double fPlanePValue = 0.0d;  private double fPlaneAValue = 0.0d;  private double fPlaneDValue = 0.0d;  private EmotionPADCentroid fEmotionsCenter = null;  private boolean fNeurotismMoodChanges = false;  private int fNeurotismMoodChangeTime = 1;  private int fRelativeMoodOctant = 0;  private int fLastRelativeMoodOctant = 0;  private static double fLowestValue = 0.0001d;  private static long fOverallMoodReturnPeriods = 1800000; // 30 minutes  private double fMoodReturnFactor = 1.0d;  private long fOverallMoodReturnCnt = 0;  private final static int sMOODSTEPS = 100; //better 300  private final static double sDEFAULTMOODIMPACT = 0.25d;  private final static int sNeurotismMoodChangeMaxTime = 8;private Logger log = AffectManager.sLog;  public MoodEngine(Personality personality, boolean neuroticMoodChanges, Mood defaultMood, double compPeriod) {    fPersonality = personality;    fDefaultMood = defaultMood;    fEmotionsCenter = new EmotionPADCentroid();    fNeurotismMoodChanges = neuroticMoodChanges;    // fNeurotismMoodChangeTime is reciproc to the neurotism value.    // The higher neurotsim is, the lower is fNeurotismMoodChangeTime.    fNeurotismMoodChangeTime = 1 + sNeurotismMoodChangeMaxTime -            (new Double((fPersonality.getNeurotism() + 1.0d)).intValue() * sNeurotismMoodChangeMaxTime / 2);        fMoodReturnFactor = (new Double(fOverallMoodReturnPeriods)) / compPeriod;  }  /**   * Moves the mood (fMoodPValue, fMoodAValue, fMoodDValue) towards the given   * direction.   */  private void moveMoodLinear(double strength,          double pValue, double aValue, double dValue) {    double currentPleasure = fMoodPValue;    double currentArousal = fMoodAValue;    double currentDominance = fMoodDValue;    // get the subcube boundaries if fEmotionCenter is in the current mood octant cube    double newPValue = currentPleasure + (pValue / sMOODSTEPS * strength);    newPValue = checkValue(newPValue);    double newAValue = currentArousal + (aValue / sMOODSTEPS * strength);    newAValue = checkValue(newAValue);    double newDValue = currentDominance + (dValue / sMOODSTEPS * strength);    newDValue = checkValue(newDValue);    double tendencyPValue = checkValue(currentPleasure + pValue);    double tendencyAValue = checkValue(currentArousal + aValue);    double tendencyDValue = checkValue(currentDominance + dValue);    if (!fHasMoodTendency || (tendencyPValue != fTendencyPValue) ||            (tendencyAValue != fTendencyAValue) || (tendencyDValue != fTendencyDValue)) {      // the tendency mood is created on demand      fTendencyPValue = tendencyPValue;      fTendencyAValue = tendencyAValue;      fTendencyDValue = tendencyDValue;      fHasMoodTendency = true;      fCurrentMoodTendency = null;    }    if (isEmotionCenterInCurrentMoodOctantCube(currentPleasure, currentArousal, currentDominance)) {      //debug log.info("EmotionCenter is in mood cube - mood will not leave cube!");      double pleasureEnd = signum(currentPleasure);      newPValue = (pleasureEnd < 0.0d) ? (newPValue > 0.0d) ? 0.0d : newPValue : (newPValue < 0.0d) ? 0.0d : newPValue;      double arousalEnd = signum(currentArousal);      newAValue = (arousalEnd < 0.0d) ? (newAValue > 0.0d) ? 0.0d : newAValue : (newAValue < 0.0d) ? 0.0d : newAValue;      double dominanceEnd = signum(currentDominance);      newDValue = (dominanceEnd < 0.0d) ? (newDValue > 0.0d) ? 0.0d : newDValue : (newDValue < 0.0d) ? 0.0d : newDValue;    }    fMoodPValue = newPValue;    fMoodAValue = newAValue;    fMoodDValue = newDValue;  }  /**   * Moves the mood (fMoodPValue, fMoodAValue, fMoodDValue) randomly.   */  private void randomMoodChange(double strength,          double pValue, double aValue, double dValue) {    // to which octant the current mood should move	    fRelativeMoodOctant = (new Double(random() * 8.0d)).intValue();    double newPValue = fMoodPValue;    double newAValue = fMoodAValue;    double newDValue = fMoodDValue;//     log.info("relative mood octant " + fRelativeMoodOctant + //  	     " P:" + ((fRelativeMoodOctant >> 2) % 2) +//  	     " A:" + ((fRelativeMoodOctant >> 1) % 2) +//  	     " D:" + ((fRelativeMoodOctant >> 0) % 2));    // allow only random values that are not opposite to the current mood     // move direction    newPValue = ((((fRelativeMoodOctant >> 2) % 2) > 0) && (signum(pValue) >= 0)) ? newPValue + strength : newPValue - strength;    fMoodPValue = checkValue(newPValue);    newAValue = ((((fRelativeMoodOctant >> 1) % 2) > 0) && (signum(aValue) >= 0)) ? newAValue + strength : newAValue - strength;    fMoodAValue = checkValue(newAValue);    newDValue = ((((fRelativeMoodOctant >> 0) % 2) > 0) && (signum(dValue) >= 0)) ? newDValue + strength : newDValue - strength;    fMoodDValue = checkValue(newDValue);  }  private double checkValue(double value) {    double result = value;    result = (result > 1.0d) ? 1.0d : result;    result = (result < -1.0d) ? -1.0d : result;    return result;  }  /**   * Computes the point where the line from the given mood through the   * emotion(s) center intersects a face of the PAD cube [-1,1]^3 and stores   * it in (fPlanePValue, fPlaneAValue, fPlaneDValue). The faces are checked   * in the order arousal, pleasure, dominance (negative face first), the   * last face whose intersection point lies on the cube wins. An   * intersection point behind the mood (seen from the emotion(s) center) is   * mirrored at the origin.   *   * @return false if the mood is at the emotion(s) center, true otherwise   */  private boolean getPADPlanePoint(EmotionPADCentroid eCenter, double curMoodPValue,          double curMoodAValue, double curMoodDValue) {    double pMoodToECenter = (eCenter.getPValue() - curMoodPValue);    double aMoodToECenter = (eCenter.getAValue() - curMoodAValue);    double dMoodToECenter = (eCenter.getDValue() - curMoodDValue);    //log.info("pMoodToECenter " + pMoodToECenter);    //log.info("aMoodToECenter " + aMoodToECenter);    //log.info("dMoodToECenter " + dMoodToECenter);    if ((abs(pMoodToECenter) <= fLowestValue) &&            (abs(aMoodToECenter) <= fLowestValue) &&            (abs(dMoodToECenter) <= fLowestValue)) {      return false;    }    if ((pMoodToECenter == 0.0d) || (aMoodToECenter == 0.0d) || (dMoodToECenter == 0.0d)) {      // special case, if the line is parallel to a face. Than the current      // mood should move according to the non-zero parts.      fPlanePValue = signum(pMoodToECenter);      fPlaneAValue = signum(aMoodToECenter);      fPlaneDValue = signum(dMoodToECenter);      return true;    }    fPlanePValue = 0.0d;    fPlaneAValue = 0.0d;    fPlaneDValue = 0.0d;    for (int i = 0; i < 6; i++) {      // face i is the plane x_axis = bound      double bound = ((i % 2) == 0) ? -1.0d : 1.0d;      double fac;      if (i < 2) {        fac = (bound - curMoodAValue) / aMoodToECenter;      } else if (i < 4) {        fac = (bound - curMoodPValue) / pMoodToECenter;      } else {        fac = (bound - curMoodDValue) / dMoodToECenter;      }      double PPoint = curMoodPValue + fac * pMoodToECenter;      double APoint = curMoodAValue + fac * aMoodToECenter;      double DPoint = curMoodDValue + fac * dMoodToECenter;      if ((PPoint <= 1.0d) && (PPoint >= -1.0d) &&              (APoint <= 1.0d) && (APoint >= -1.0d) &&              (DPoint <= 1.0d) && (DPoint >= -1.0d)) {        fPlanePValue = (fac > 0.0d) ? PPoint : -PPoint;        fPlaneAValue = (fac > 0.0d) ? APoint : -APoint;        fPlaneDValue = (fac > 0.0d) ? DPoint : -DPoint;      }    }    return true;  }  public synchronized EmotionPADCentroid getEmotionsCenter() {    return fEmotionsCenter;  }  private boolean isEmotionCenterInCurrentMoodOctantCube(double pleasure, double arousal, double dominance) {    boolean isInCurrentMoodOctantCube = false;    double pleasureEnd = signum(pleasure);    double arousalEnd = signum(arousal);    double dominanceEnd = signum(dominance);    boolean isInPleasurePart = false;    if ((pleasureEnd > 0.0d) && (fEmotionsCenter.getPValue() > 0.0d)) {      isInPleasurePart = true;    }    if ((pleasureEnd < 0.0d) && (fEmotionsCenter.getPValue() < 0.0d)) {      isInPleasurePart = true;    }    boolean isInArousalPart = false;    if ((arousalEnd > 0.0d) && (fEmotionsCenter.getAValue() > 0.0d)) {      isInArousalPart = true;    }    if ((arousalEnd < 0.0d) && (fEmotionsCenter.getAValue() < 0.0d)) {      isInArousalPart = true;    }    boolean isInDominancePart = false;    if ((dominanceEnd > 0.0d) && (fEmotionsCenter.getDValue() > 0.0d)) {      isInDominancePart = true;    }    if ((dominanceEnd < 0.0d) && (fEmotionsCenter.getDValue() < 0.0d)) {      isInDominancePart = true;    }    if (isInPleasurePart && isInArousalPart && isInDominancePart) {      isInCurrentMoodOctantCube = true;    }    return isInCurrentMoodOctantCube;  }  /**   * <code>isMoodAtEmotionsCenter</code> checks is the current mood is at the   * emotion(s) center postion.   *   * @param pleasure the pleasure of the current mood that will be checked   *                 if it is at the emotion(s) center position.   * @param arousal the arousal of the current mood   * @param dominance the dominance of the current mood   *   * @return boolean true if the current mood is near (&lt; 0.004d) the    *                 emotion(s) center postion, false otherwise   */  private boolean isMoodAtEmotionsCenter(double pleasure, double arousal, double dominance) {    boolean isAtEmotionCenter = false;    double pRange = (fEmotionsCenter.getPValue() - pleasure);    double aRange = (fEmotionsCenter.getAValue() - arousal);    double dRange = (fEmotionsCenter.getDValue() - dominance);    if ((abs(pRange) < 0.001d) && (abs(aRange) < 0.001d) && (abs(dRange) < 0.001d)) {      isAtEmotionCenter = true;    }    return isAtEmotionCenter;  }  private boolean isMoodInEmotionsCenterSubCube(double pleasure, double arousal, double dominance) {    boolean isInEmotionsCenterSubCube = false;    if ((((fEmotionsCenter.getPValue() >= 0.0d) &&            (pleasure >= fEmotionsCenter.getPValue())) ||            ((fEmotionsCenter.getPValue() < 0.0d) &&            (pleasure <= fEmotionsCenter.getPValue()))) &&            (((fEmotionsCenter.getAValue() >= 0.0d) &&            (arousal >= fEmotionsCenter.getAValue())) ||            ((fEmotionsCenter.getAValue() < 0.0d) &&            (arousal <= fEmotionsCenter.getAValue()))) &&            (((fEmotionsCenter.getDValue() >= 0.0d) &&            (dominance >= fEmotionsCenter.getDValue())) ||            ((fEmotionsCenter.getDValue() < 0.0d) &&            (dominance <= fEmotionsCenter.getDValue())))) {      isInEmotionsCenterSubCube = true;    }    return isInEmotionsCenterSubCube;  }  public synchronized Mood getCurrentMoodTendency() {    if (!fHasMoodTendency) {      return fDefaultMood;    }    if (fCurrentMoodTendency == null) {      fCurrentMoodTendency = new Mood(fTendencyPValue, fTendencyAValue, fTendencyDValue);    }    return fCurrentMoodTendency;  }  /**   * <code>isAtRest</code> checks if the mood computation has reached a steady   * state. This is the case if no emotion influenced the last computation and   * the current mood has returned to the default mood. Since neurotic mood   * changes move the mood randomly away from the default mood, the mood of   * a character with neurotic mood changes is never at rest.   *   * @param currentMood the current mood computed by this engine   *   * @return boolean true if further computations will not change the current   *                 mood, false otherwise   */  public synchronized boolean isAtRest(Mood currentMood) {    return !fNeurotismMoodChanges && !fEmotionsCenter.isActive() &&            (currentMood == fDefaultMood);  }  /**   * <code>compute</code> computes the new current mood based on the actual   * current mood and the active emotion(s) of a character.   *   * @param currentMood the current mood that will be checked if it is at the    *                    emotion(s) center position.   * @param emotions the active emotion(s) of a character   *   * @return Mood the new current mood   */  public synchronized Mood compute(Mood currentMood, EmotionVector emotions) {    // increment mood return counter to 0    fOverallMoodReturnCnt++;    fEmotionsCenter.clear();    for (int i = 0; i < emotions.size(); i++) {      Emotion emotion = emotions.getEmotion(i);      EmotionType eType = emotion.getType();      double eIntensity = emotion.getIntensity();      if (eIntensity > emotion.getBaseline()) {        // log.info("Active emotion " + eType + " influences current mood");        Mood ePAD = (eType.equals(EmotionType.Physical)) ? emotion.getPADValues() : getEmotionPADMapping(eType);        //log.info(eType + " PAD representation is (" + ePAD.getPleasure() + ", " +  ePAD.getArousal() + " , " + ePAD.getDominance() + ")");        fEmotionsCenter.add(ePAD.getPleasure(), ePAD.getArousal(), ePAD.getDominance(), eIntensity);      //log.info(fEmotionsCenter.toString());      }    }    fMoodPValue = currentMood.getPleasure();    fMoodAValue = currentMood.getArousal();    fMoodDValue = currentMood.getDominance();    if (fEmotionsCenter.isActive()) {      // reset mood return counter to 0      fOverallMoodReturnCnt = 0;      double emotionImpact = fEmotionsCenter.getWeight();      //log.info(fPersonality + " Emotion(s) impact is " + prettyPrint(emotionImpact));      if (isMoodAtEmotionsCenter(fMoodPValue, fMoodAValue, fMoodDValue)) {       //log.info(fPersonality + " Current mood " + currentMood + " is at emotion(s) center");        fMoodPValue = fEmotionsCenter.getPValue();        fMoodAValue = fEmotionsCenter.getAValue();        fMoodDValue = fEmotionsCenter.getDValue();      }      boolean hasPlanePoint;      if ((isEmotionCenterInCurrentMoodOctantCube(fMoodPValue, fMoodAValue, fMoodDValue)) &&              (fEmotionsCenter.getIntensity() <= sqrt((fMoodPValue * fMoodPValue) + (fMoodAValue * fMoodAValue) + (fMoodDValue * fMoodDValue)))) {        //log.info(fPersonality + " current emotion(s) pushing mood deeper in mood octant");        hasPlanePoint = getPADPlanePoint(fEmotionsCenter, 0.0d, 0.0d, 0.0d);      } else if (isMoodInEmotionsCenterSubCube(fMoodPValue, fMoodAValue, fMoodDValue)) { // PG 11.3.11: this case is obsolete        //log.info(fPersonality + " Moving mood deeper in emotion(s) center sub cube");        hasPlanePoint = getPADPlanePoint(fEmotionsCenter, 0.0d, 0.0d, 0.0d);      } else {        hasPlanePoint = getPADPlanePoint(fEmotionsCenter, fMoodPValue, fMoodAValue, fMoodDValue);        //log.info(fPersonality + " Using intersection point (" + prettyPrint(fPlanePValue) + ", " +  prettyPrint(fPlaneAValue) + ", " +  prettyPrint(fPlaneDValue) + ")");      }      if (hasPlanePoint) {        moveMoodLinear(emotionImpact, fPlanePValue, fPlaneAValue, fPlaneDValue);      }    } else { // back to default mood      if (currentMood != fDefaultMood) {        double pMoodToDefMood = (fDefaultMood.getPleasure() - fMoodPValue);        double aMoodToDefMood = (fDefaultMood.getArousal() - fMoodAValue);        double dMoodToDefMood = (fDefaultMood.getDominance() - fMoodDValue);        // if current mood is very close to default mood, stop the move back process        if ((abs(pMoodToDefMood) < 0.006d) && (abs(aMoodToDefMood) < 0.006d) &&                (abs(dMoodToDefMood) < 0.006d)) {          return fDefaultMood;        } else {          //debug log.info ("Current mood drifting back to default mood");          //debug log.info (currentMood + " -> " + fDefaultMood);          moveMoodLinear(sDEFAULTMOODIMPACT * fMoodReturnFactor,                  pMoodToDefMood, aMoodToDefMood, dMoodToDefMood);          if (fNeurotismMoodChanges) {            randomMoodChange(0.005d * fMoodReturnFactor,                    pMoodToDefMood, aMoodToDefMood, dMoodToDefMood);          }        }      } else {        // move mood away from default mood, ...        if (fNeurotismMoodChanges) {          //debug log.info("Crazy mood change");          randomMoodChange(0.05d, //initial "jump" from default mood                  random() * 2.0d - 1.0d, random() * 2.0d - 1.0d, random() * 2.0d - 1.0d);        }      }    }    if ((fMoodPValue == currentMood.getPleasure()) && (fMoodAValue == currentMood.getArousal()) &&            (fMoodDValue == currentMood.getDominance())) {      return currentMood;    }    return new Mood(fMoodPValue, fMoodAValue, fMoodDValue);  }}
\ No newline at end of file
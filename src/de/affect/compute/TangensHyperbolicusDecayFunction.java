@@ -38,7 +38,6 @@ package de.affect.compute;
 
 import static java.lang.Math.tanh;
 
-import java.util.Hashtable;
 import de.affect.emotion.Emotion;
 
 /**
@@ -48,10 +47,9 @@ import de.affect.emotion.Emotion;
  * 
  * @version 2.0
  */
-public class TangensHyperbolicusDecayFunction implements DecayFunction {
+public class TangensHyperbolicusDecayFunction implements ClosedFormDecayFunction {
 
   private double TANH_CHARACTER = 0.2d;
-  private Hashtable<Emotion, Values> fDecayingEmotions = new Hashtable<Emotion, Values>();
   private double scalingFactor = 0.0d;
   private int decaySteps;
   private boolean isInitialised = false;
@@ -62,22 +60,6 @@ public class TangensHyperbolicusDecayFunction implements DecayFunction {
     init(decaySteps);
   }
 
-  private class Values {
-
-    int xValue;
-    int xEndValue;    
-    double startValue;
-    double operatingRange;
-
-    Values(int xValue, int xEndValue, double startValue, double operatingRange) {
-      this.xValue = xValue;
-      this.xEndValue = xEndValue;
-      this.startValue = startValue;
-      this.operatingRange = operatingRange;
-    }
-    
-  }
-
   public void init(int decaySteps) {
     if (decaySteps <= 0) 
       throw new IllegalArgumentException("Number of decay steps not positive.");
@@ -89,45 +71,65 @@ public class TangensHyperbolicusDecayFunction implements DecayFunction {
   public Emotion decay(Emotion emotion) {
     if (!isInitialised) 
       throw new UnsupportedOperationException("Decay function not initialized!");
-    Values values = null; 
     double intensity = emotion.getIntensity();
     double baseline = emotion.getBaseline();
     double newIntensity = intensity;
-    int xValue;
-    int xEndValue;
-    double startValue;
-    double operatingRange;
     if (intensity > baseline) {
-      if (fDecayingEmotions.containsKey(emotion)) {
-	values = fDecayingEmotions.get(emotion);
-	xValue = values.xValue;
-	xEndValue = values.xEndValue;
-	startValue = values.startValue;
-	operatingRange = values.operatingRange;
-      } else { // first time setup of variables
-	operatingRange = (intensity - baseline);
-	xValue = 0;
-	xEndValue = (int)(decaySteps * operatingRange); //maximum x
-	startValue = xEndValue * 0.5 / (operatingRange) * scalingFactor;
-	values = new Values(xValue, xEndValue, startValue, operatingRange);
-	fDecayingEmotions.put(emotion, values);
-      }
-      // debug log.info("Step " + xValue + "/" + xEndValue);
-      double input = -startValue + (xValue / operatingRange * scalingFactor); 
-      newIntensity = operatingRange + baseline - ((tanh(input) * 0.5d + 0.5d)) * operatingRange;
-      // debug log.info("Input=" + prettyPrint(input) + " new intensity=" + prettyPrint(newIntensity));
-      xValue++;
-      values.xValue = xValue;
-      fDecayingEmotions.put(emotion, values);
-      if (xValue > xEndValue) {
-	newIntensity = baseline;
-	fDecayingEmotions.remove(emotion);
-      }
+      // the decay progress is kept in the emotion itself
+      double operatingRange = emotion.isDecaying() ? emotion.getDecayRange() : (intensity - baseline);
+      int xValue = emotion.getDecayStep() + 1;
+      newIntensity = decay(intensity, baseline, operatingRange, xValue);
+      if (newIntensity > baseline)
+	emotion.setDecayProgress(xValue, operatingRange);
+      else
+	emotion.setDecayProgress(0, 0.0d);
     } 
     emotion.setIntensity(newIntensity);
     return emotion;
   }
 
+  public double decay(double intensity, double baseline, double operatingRange, int step) {
+    if (!isInitialised) 
+      throw new UnsupportedOperationException("Decay function not initialized!");
+    int xEndValue = (int)(decaySteps * operatingRange); //maximum x
+    if (step > xEndValue)
+      return baseline;
+    // the n-th decay step evaluates the curve at x = n - 1
+    double newIntensity = operatingRange + baseline - decayed(operatingRange, xEndValue, step - 1);
+    return (newIntensity < baseline) ? baseline : newIntensity;
+  }
+
+  public double intensity(double startIntensity, double baseline, int steps) {
+    if (!isInitialised) 
+      throw new UnsupportedOperationException("Decay function not initialized!");
+    if ((steps <= 0) || (startIntensity <= baseline))
+      return startIntensity;
+    double operatingRange = startIntensity - baseline;
+    int xEndValue = (int)(decaySteps * operatingRange);
+    if (steps > xEndValue)
+      return baseline;
+    // the n-th decay step evaluates the curve at x = n - 1
+    return operatingRange + baseline - decayed(operatingRange, xEndValue, steps - 1);
+  }
+
+  public int remainingSteps(double startIntensity, double baseline, double threshold) {
+    if (!isInitialised) 
+      throw new UnsupportedOperationException("Decay function not initialized!");
+    int xEndValue = (int)(decaySteps * (startIntensity - baseline));
+    return DecayCurves.remainingSteps(this, startIntensity, baseline, threshold, xEndValue + 1);
+  }
+
+  /**
+   * Returns the part of the operating range that has decayed at x. The
+   * steepness of the curve depends on the exact operating range, so the
+   * curve is not shared by emotions and is evaluated in closed form.
+   */
+  private double decayed(double operatingRange, int xEndValue, int x) {
+    double startValue = xEndValue * 0.5 / (operatingRange) * scalingFactor;
+    double input = -startValue + (x / operatingRange * scalingFactor); 
+    return ((tanh(input) * 0.5d + 0.5d)) * operatingRange;
+  }
+
   public int decaySteps () {
     return decaySteps;
   }
@@ -28,6 +28,20 @@ import java.util.List;
  */
 public class Emotion {
 
+  /**
+   * The time source that gives emotions their time of elicitation.
+   */
+  public interface Clock {
+
+    /**
+     * Returns the current time in milliseconds.
+     *
+     * @return the current time in milliseconds
+     */
+    public long currentTimeMillis();
+  }
+  // read without locking whenever an emotion is constructed
+  private static volatile Clock sClock = null;
   private final EmotionType type;
   private double intensity;
   protected Mood mPADValues;
@@ -38,6 +52,8 @@ public class Emotion {
   private Long mCalculatedEndTime;
   private Long mCalculatedDuration;
   private volatile int hashCode = 0;
+  private int decayStep = 0;
+  private double decayRange = 0.0d;
 
   /**
    * Constructs a new
@@ -64,7 +80,7 @@ public class Emotion {
       throw new IllegalArgumentException("Error: intensity " + intensity
         + " < baseline " + baseline);
     }
-    mTimeOfElicitation = System.currentTimeMillis();
+    mTimeOfElicitation = currentTimeMillis();
     
     this.type = type;
     this.intensity = intensity;
@@ -83,7 +99,7 @@ public class Emotion {
       throw new IllegalArgumentException("Error: intensity " + intensity
         + " < baseline " + baseline);
     }
-    mTimeOfElicitation = System.currentTimeMillis();
+    mTimeOfElicitation = currentTimeMillis();
     this.type = type;
     this.intensity = intensity;
     this.baseline = baseline;
@@ -92,6 +108,21 @@ public class Emotion {
   }
   
     
+  /**
+   * Sets the time source of the elicitation times. Without a time source the
+   * system time is used.
+   *
+   * @param clock the time source, null for the system time
+   */
+  public static void setClock(Clock clock) {
+    sClock = clock;
+  }
+
+  private static long currentTimeMillis() {
+    Clock clock = sClock;
+    return (clock == null) ? System.currentTimeMillis() : clock.currentTimeMillis();
+  }
+
     /**
    * Returns the creation time of this emotion.
    *
@@ -128,6 +159,49 @@ public class Emotion {
     this.intensity = intensity;
   }
 
+  /**
+   * Returns the number of decay steps that have been applied to this emotion
+   * since its decay started.
+   *
+   * @return the number of decay steps, 0 if the emotion is not decaying.
+   */
+  public int getDecayStep() {
+    return decayStep;
+  }
+
+  /**
+   * Returns the operating range (the distance between intensity and baseline)
+   * of this emotion when its decay started.
+   *
+   * @return the operating range, 0.0 if the emotion is not decaying.
+   */
+  public double getDecayRange() {
+    return decayRange;
+  }
+
+  /**
+   * Sets the decay progress of this emotion. Decay functions keep their
+   * per-emotion state in the emotion itself, so that the state is released
+   * together with the emotion.
+   *
+   * @param step the number of applied decay steps
+   * @param range the operating range when the decay started, 0.0 if the
+   * emotion is not decaying
+   */
+  public void setDecayProgress(int step, double range) {
+    decayStep = step;
+    decayRange = range;
+  }
+
+  /**
+   * Returns if a decay function has started to decay this emotion.
+   *
+   * @return <code>true</code> if the decay of the emotion is in progress.
+   */
+  public boolean isDecaying() {
+    return decayRange > 0.0d;
+  }
+
   /**
    * Returns the baseline of this emotion.
    *
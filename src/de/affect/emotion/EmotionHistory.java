@@ -8,10 +8,17 @@
 
 package de.affect.emotion;
 
-import java.util.Vector;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 import java.util.logging.Logger;
 import de.affect.manage.AffectManager;
+import de.affect.personality.Personality;
 
 
 /**
@@ -19,38 +26,128 @@ import de.affect.manage.AffectManager;
  * of <code>EmotionVector</code>s, each representing
  * the emotions of an agent at some point in time.
  *
+ * The elements are kept in a bounded ring buffer. In addition, the history
+ * keeps the emotion with the highest intensity of each emotion type, so
+ * that the emotional state is computed in O(number of emotion types)
+ * independent of the length of the history. Emotion intensities are changed
+ * in place by the emotion decay. The maxima are rebuilt by
+ * <code>removeInactive()</code>, which is called after each decay step, or
+ * on demand after <code>emotionsChanged()</code>.
+ *
+ * Elicited emotions are indexed by their type and elicitor, so that emotions
+ * with a given elicitor (e.g. prospects or candidates for compound emotions)
+ * are found without scanning the history. The baseline emotions of a new
+ * emotion vector, whose elicitor is the personality, are not indexed.
+ *
  * @author Patrick Gebhard (based on the work of Martin Klesen)
  *
  * @version 1.0
  */
 public class EmotionHistory {
 
-  private Vector<EmotionVector> history;
+  /** default maximum number of elements */
+  public static final int DEFAULT_LENGTH = 256;
+  private static final int sINITIALCAPACITY = 8;
+  private static final int sTYPES = EmotionType.values().length;
+  private EmotionVector[] ring = new EmotionVector[sINITIALCAPACITY];
+  private int head = 0;
+  private int count = 0;
+  private final int length;
+  /** the emotion with the highest intensity for each emotion type ordinal */
+  private final Emotion[] maxima = new Emotion[sTYPES];
+  private boolean maximaValid = true;
+  /** maps emotion type ordinals and elicitors to the elements, oldest first */
+  private final List<Map<String, ArrayList<EmotionVector>>> elicitorIndex;
+  /** the indexed emotions of each element */
+  private final IdentityHashMap<EmotionVector, ArrayList<Emotion>> indexedEmotions =
+    new IdentityHashMap<EmotionVector, ArrayList<Emotion>>();
   private Logger log = Logger.getLogger(Logger.GLOBAL_LOGGER_NAME);
 
   /** 
-   * Constructs an empty history. 
+   * Constructs an empty history with the default length. 
    */
   public EmotionHistory() {
-    history = new Vector<EmotionVector>();
+    this(DEFAULT_LENGTH);
+  }
+
+  /** 
+   * Constructs an empty history with the specified length.
+   *
+   * @param length the maximum number of elements
+   * @throws IllegalArgumentException if length is not positive
+   */
+  public EmotionHistory(int length) {
+    if (length <= 0)
+      throw new IllegalArgumentException("Invalid history length " + length);
+    this.length = length;
+    elicitorIndex = newElicitorIndex();
+  }
+
+  private static List<Map<String, ArrayList<EmotionVector>>> newElicitorIndex() {
+    List<Map<String, ArrayList<EmotionVector>>> index =
+      new ArrayList<Map<String, ArrayList<EmotionVector>>>(sTYPES);
+    for (int i = 0; i < sTYPES; i++) {
+      index.add(new HashMap<String, ArrayList<EmotionVector>>());
+    }
+    return index;
   }
 
   /** 
    * Removes all elements from the emotion history.
    */
-  public synchronized void clear() { history.clear(); }
+  public synchronized void clear() {
+    for (int i = 0; i < count; i++) {
+      ring[(head + i) % ring.length] = null;
+    }
+    head = 0;
+    count = 0;
+    Arrays.fill(maxima, null);
+    maximaValid = true;
+    for (int i = 0; i < sTYPES; i++) {
+      elicitorIndex.get(i).clear();
+    }
+    indexedEmotions.clear();
+  }
 
   /** 
    * Appends the specified element to the end of the history.
-   * If the history is full (size() == length()) then the first element
-   * (index = 0) is removed thereby shifting any subsequent elements to
-   * the left (subtracting one from their indices) before adding the new
+   * If the history is full (size() == length()) then all elements without
+   * an active emotion are removed. If the history is still full, the first
+   * element (index = 0) is removed thereby shifting any subsequent elements
+   * to the left (subtracting one from their indices) before adding the new
    * element to the end of the history.
    *
    * @param emotions the emotions to be appended to this history
    */
   public synchronized void add(EmotionVector emotions) {
-    history.add(emotions);
+    if (count == length) {
+      removeInactive();
+      if (count == length) {
+        log.fine("Emotion history full, dropping oldest element");
+        unindex(ring[head]);
+        ring[head] = null;
+        head = (head + 1) % ring.length;
+        count--;
+        maximaValid = false;
+      }
+    }
+    if (count == ring.length) {
+      EmotionVector[] newRing = new EmotionVector[Math.min(length, ring.length * 2)];
+      for (int i = 0; i < count; i++) {
+        newRing[i] = ring[(head + i) % ring.length];
+      }
+      ring = newRing;
+      head = 0;
+    }
+    ring[(head + count) % ring.length] = emotions;
+    count++;
+    index(emotions);
+    if (maximaValid) {
+      // the new element is the latest one, it wins ties
+      for (int i = 0; i < emotions.size(); i++) {
+        updateMaximum(emotions.getEmotion(i));
+      }
+    }
   }
 
   /**
@@ -59,10 +156,40 @@ public class EmotionHistory {
    * the emotion history.
    *
    */
-  public synchronized int size() { return history.size(); }
+  public synchronized int size() { return count; }
+
+  /**
+   * Returns the maximum number of elements in this history.
+   *
+   * @return the length of this history
+   */
+  public int length() { return length; }
+
+  /**
+   * Returns the number of emotions in this history whose decay is in
+   * progress. Decay functions keep their per-emotion state in the emotions
+   * themselves, so this is the size of the decay state held for this history.
+   * It is bounded by the length of the history times the number of emotion
+   * types.
+   *
+   * @return the number of decaying emotions
+   */
+  public synchronized int decayStateSize() {
+    int decaying = 0;
+    for (int i = 0; i < count; i++) {
+      EmotionVector emotions = get(i);
+      for (int j = 0; j < emotions.size(); j++) {
+        if (emotions.getEmotion(j).isDecaying())
+          decaying++;
+      }
+    }
+    return decaying;
+  }
 
   /**
    * Returns the element at the specified position in this history.
+   * If emotions of the returned element are changed, 
+   * <code>emotionsChanged()</code> has to be called.
    *
    * @param index index of element to return
    * @return the element at the specified position in this history
@@ -70,9 +197,9 @@ public class EmotionHistory {
    *                                   (index < 0 || index >= size())
    */
   public synchronized EmotionVector get(int index) {
-    if (index < 0 || index >= size())
+    if (index < 0 || index >= count)
       throw new IndexOutOfBoundsException("Index out of range: " + index);
-    return (EmotionVector)history.get(index);
+    return ring[(head + index) % ring.length];
   }
 
   /** 
@@ -85,9 +212,15 @@ public class EmotionHistory {
    *                                   (index < 0 || index >= size())
    */
   public synchronized void remove (int index) {
-    if (index < 0 || index >= size())
+    if (index < 0 || index >= count)
       throw new IndexOutOfBoundsException("Index out of range: " + index);
-    history.remove(index);
+    unindex(get(index));
+    for (int i = index; i < count - 1; i++) {
+      ring[(head + i) % ring.length] = ring[(head + i + 1) % ring.length];
+    }
+    ring[(head + count - 1) % ring.length] = null;
+    count--;
+    maximaValid = false;
   }
 
   /** 
@@ -95,26 +228,188 @@ public class EmotionHistory {
    * contains no active emotion.
    */
   public synchronized boolean removeFirstIfInactive () {
-    if (size() > 0) {
-      EmotionVector firstEmotionVector = (EmotionVector)history.get(0);
-      boolean remove = true;
-      for (Iterator it = firstEmotionVector.getEmotions().iterator(); it.hasNext();) {
-	Emotion emotion = (Emotion)it.next();
-	if (emotion.getIntensity() > emotion.getBaseline()) {
-	  remove = false;
-	}
-      }
-      if (remove) {
-	history.remove(0);
-	return true;
-      } else {
-	return false;
-      }
+    if ((count > 0) && !isActive(ring[head])) {
+      unindex(ring[head]);
+      ring[head] = null;
+      head = (head + 1) % ring.length;
+      count--;
+      maximaValid = false;
+      return true;
     } else {
       return false;
     }
   }
 
+  /** 
+   * Removes all EmotionVector elements of the history that contain no
+   * active emotion and rebuilds the emotion maxima in the same pass.
+   *
+   * @return the number of removed elements
+   */
+  public synchronized int removeInactive() {
+    Arrays.fill(maxima, null);
+    int kept = 0;
+    for (int i = 0; i < count; i++) {
+      EmotionVector emotions = ring[(head + i) % ring.length];
+      if (isActive(emotions)) {
+        ring[(head + kept) % ring.length] = emotions;
+        kept++;
+        for (int j = 0; j < emotions.size(); j++) {
+          updateMaximum(emotions.getEmotion(j));
+        }
+      } else {
+        unindex(emotions);
+      }
+    }
+    for (int i = kept; i < count; i++) {
+      ring[(head + i) % ring.length] = null;
+    }
+    int removed = count - kept;
+    count = kept;
+    maximaValid = true;
+    return removed;
+  }
+
+  /**
+   * Informs the history that emotions of its elements have been changed in
+   * place (e.g. replaced or decayed outside of <code>removeInactive()</code>).
+   * The emotion maxima are rebuilt when the emotional state is requested.
+   */
+  public synchronized void emotionsChanged() {
+    maximaValid = false;
+  }
+
+  private boolean isActive(EmotionVector emotions) {
+    for (int i = 0; i < emotions.size(); i++) {
+      Emotion emotion = emotions.getEmotion(i);
+      if (emotion.getIntensity() > emotion.getBaseline()) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Updates the maximum of the emotion's type. Elements have to be visited
+   * from the oldest to the latest, the latest emotion wins ties.
+   */
+  private void updateMaximum(Emotion emotion) {
+    double intensity = emotion.getIntensity();
+    if (intensity > 0.0d) {
+      int ordinal = emotion.getType().ordinal();
+      Emotion max = maxima[ordinal];
+      if ((max == null) || (intensity >= max.getIntensity())) {
+        maxima[ordinal] = emotion;
+      }
+    }
+  }
+
+  /**
+   * Adds the elicited emotions of a new element to the elicitor index.
+   */
+  private void index(EmotionVector emotions) {
+    ArrayList<Emotion> indexed = null;
+    for (int i = 0; i < emotions.size(); i++) {
+      Emotion emotion = emotions.getEmotion(i);
+      if ((emotion.getElicitor() != null) && !(emotion.getElicitor() instanceof Personality)) {
+        indexed = (indexed == null) ? new ArrayList<Emotion>(2) : indexed;
+        indexed.add(emotion);
+        index(emotions, emotion);
+      }
+    }
+    if (indexed != null) {
+      indexedEmotions.put(emotions, indexed);
+    }
+  }
+
+  private void index(EmotionVector emotions, Emotion emotion) {
+    Map<String, ArrayList<EmotionVector>> byElicitor = elicitorIndex.get(emotion.getType().ordinal());
+    String elicitor = emotion.getElicitor().toString();
+    ArrayList<EmotionVector> elements = byElicitor.get(elicitor);
+    if (elements == null) {
+      elements = new ArrayList<EmotionVector>(2);
+      byElicitor.put(elicitor, elements);
+    }
+    elements.add(emotions);
+  }
+
+  /**
+   * Removes an element that leaves the history from the elicitor index.
+   */
+  private void unindex(EmotionVector emotions) {
+    ArrayList<Emotion> indexed = indexedEmotions.remove(emotions);
+    if (indexed == null) {
+      return;
+    }
+    for (Emotion emotion : indexed) {
+      removeIndexEntry(emotions, emotion.getType(), emotion.getElicitor().toString());
+    }
+  }
+
+  /**
+   * Removes an element from the elicitor index of an emotion type and an
+   * elicitor.
+   */
+  private void removeIndexEntry(EmotionVector emotions, EmotionType type, String elicitor) {
+    Map<String, ArrayList<EmotionVector>> byElicitor = elicitorIndex.get(type.ordinal());
+    ArrayList<EmotionVector> elements = byElicitor.get(elicitor);
+    if (elements != null) {
+      elements.remove(emotions);
+      if (elements.isEmpty()) {
+        byElicitor.remove(elicitor);
+      }
+    }
+  }
+
+  /**
+   * Removes an emotion that has been removed from an element from the
+   * elicitor index.
+   */
+  private void unindex(EmotionVector emotions, EmotionType type, Object elicitor) {
+    String key = elicitor.toString();
+    ArrayList<Emotion> indexed = indexedEmotions.get(emotions);
+    if (indexed != null) {
+      for (Iterator<Emotion> it = indexed.iterator(); it.hasNext();) {
+        Emotion emotion = it.next();
+        if ((emotion.getType() == type) && key.equals(emotion.getElicitor().toString())) {
+          it.remove();
+        }
+      }
+      if (indexed.isEmpty()) {
+        indexedEmotions.remove(emotions);
+      }
+    }
+    removeIndexEntry(emotions, type, key);
+  }
+
+  /**
+   * Returns the elements that contain (or contained) an emotion of the given
+   * type with the given elicitor, oldest first.
+   */
+  private List<EmotionVector> getIndexedElements(EmotionType type, Object elicitor) {
+    if (elicitor == null) {
+      return Collections.emptyList();
+    }
+    List<EmotionVector> elements = elicitorIndex.get(type.ordinal()).get(elicitor.toString());
+    return (elements == null) ? Collections.<EmotionVector>emptyList() : elements;
+  }
+
+  private static boolean hasElicitor(Emotion emotion, String elicitor) {
+    return (emotion != null) && (emotion.getElicitor() != null)
+      && elicitor.equals(emotion.getElicitor().toString());
+  }
+
+  private void rebuildMaxima() {
+    Arrays.fill(maxima, null);
+    for (int i = 0; i < count; i++) {
+      EmotionVector emotions = ring[(head + i) % ring.length];
+      for (int j = 0; j < emotions.size(); j++) {
+        updateMaximum(emotions.getEmotion(j));
+      }
+    }
+    maximaValid = true;
+  }
+
   /** 
    * Returns the emotion that has the queried elicitor or null. The first
    * occurence of an emotion whoses elicitor matches the queried elicitor
@@ -127,19 +422,35 @@ public class EmotionHistory {
    */
   public synchronized Emotion getEmotionByElicitor(EmotionType queryEmotionType, 
 						   Object queryElicitor) {
-    Emotion emotion = null;
-    if (size() == 0) return emotion;
-    for (int i = size() - 1; i >= 0; i--) {
-      EmotionVector emotions = get(i);
-      for (Iterator<Emotion> it = emotions.getEmotions().iterator(); it.hasNext();) {
-	Emotion histEmotion = it.next();
-	//debug log.info("History emotion " + histEmotion.getType() + " has " + histEmotion.getElicitor().toString() + " elicitor context queried has " + queryElicitor.toString());
-	if ((histEmotion.getType().equals(queryEmotionType)) && 
-	    (queryElicitor.toString().equals(histEmotion.getElicitor().toString())))
-	  emotion = (emotion == null) ? histEmotion : emotion;
-      }
+    List<EmotionVector> elements = getIndexedElements(queryEmotionType, queryElicitor);
+    for (int i = elements.size() - 1; i >= 0; i--) {
+      Emotion histEmotion = elements.get(i).get(queryEmotionType);
+      //debug log.info("History emotion " + histEmotion.getType() + " has " + histEmotion.getElicitor().toString() + " elicitor context queried has " + queryElicitor.toString());
+      if (hasElicitor(histEmotion, queryElicitor.toString()))
+	return histEmotion;
+    }
+    return null;
+  }
+
+  /** 
+   * Returns all emotions of the queried type that have the queried
+   * elicitor. The latest emotion comes first.
+   *
+   * @param queryEmotionType type of emotion
+   * @param queryElicitor the elicitor of an emotion
+   *
+   * @return list of emotions, which is empty if there is no such emotion
+   */
+  public synchronized List<Emotion> getEmotionsByElicitor(EmotionType queryEmotionType, 
+							   Object queryElicitor) {
+    List<Emotion> result = new ArrayList<Emotion>(1);
+    List<EmotionVector> elements = getIndexedElements(queryEmotionType, queryElicitor);
+    for (int i = elements.size() - 1; i >= 0; i--) {
+      Emotion histEmotion = elements.get(i).get(queryEmotionType);
+      if (hasElicitor(histEmotion, queryElicitor.toString()))
+	result.add(histEmotion);
     }
-    return emotion;
+    return result;
   }
 
 
@@ -151,18 +462,52 @@ public class EmotionHistory {
    */
   public synchronized void removeEmotionByElicitor(Emotion queryEmotion, 
 						   Object queryElicitor) {
-    if (size() == 0) return;
-    for (int i = size() - 1; i >= 0; i--) {
-      EmotionVector emotions = get(i);
-      for (Iterator<Emotion> it = emotions.getEmotions().iterator(); it.hasNext();) {
-	Emotion histEmotion = it.next();
-	if ((histEmotion.equals(queryEmotion)) && 
-	    (queryElicitor.toString().equals(histEmotion.getElicitor().toString()))) {
-	  log.fine("History emotion " + histEmotion + " has " + histEmotion.getElicitor().toString() + " will be removed");
-	  emotions.remove(queryEmotion.getType());
+    EmotionType type = queryEmotion.getType();
+    // copied, removed emotions leave the index
+    List<EmotionVector> elements = new ArrayList<EmotionVector>(getIndexedElements(type, queryElicitor));
+    for (int i = elements.size() - 1; i >= 0; i--) {
+      EmotionVector emotions = elements.get(i);
+      Emotion histEmotion = emotions.get(type);
+      if ((histEmotion != null) && (histEmotion.equals(queryEmotion)) && 
+	  hasElicitor(histEmotion, queryElicitor.toString())) {
+	log.fine("History emotion " + histEmotion + " has " + histEmotion.getElicitor().toString() + " will be removed");
+	emotions.remove(type);
+	unindex(emotions, type, queryElicitor);
+	maximaValid = false;
+      }
+    }
+  }
+
+  /** 
+   * Replaces an emotion of the history by another emotion of the same type,
+   * e.g. a prospect emotion that has been confirmed or disconfirmed.
+   *
+   * @param emotion the emotion in the history
+   * @param replacement the new emotion
+   *
+   * @return true if the emotion has been replaced, false if the emotion is
+   *         not part of the history
+   * @throws IllegalArgumentException if the emotion types differ
+   */
+  public synchronized boolean replaceEmotion(Emotion emotion, Emotion replacement) {
+    EmotionType type = emotion.getType();
+    if (type != replacement.getType())
+      throw new IllegalArgumentException("Cannot replace " + type + " by " + replacement.getType());
+    List<EmotionVector> elements = getIndexedElements(type, emotion.getElicitor());
+    for (int i = elements.size() - 1; i >= 0; i--) {
+      EmotionVector emotions = elements.get(i);
+      if (emotions.get(type) == emotion) {
+	emotions.add(replacement);
+	if ((replacement.getElicitor() != null) && 
+	    !replacement.getElicitor().toString().equals(emotion.getElicitor().toString())) {
+	  index(emotions, replacement);
+	  indexedEmotions.get(emotions).add(replacement);
 	}
+	maximaValid = false;
+	return true;
       }
     }
+    return false;
   }
 
 
@@ -172,8 +517,7 @@ public class EmotionHistory {
    * @return the last element or null
    */
   public synchronized EmotionVector lastElement() {
-    int lastIndex = size() - 1;
-    return (lastIndex < 0) ? null : (EmotionVector)history.get(lastIndex);
+    return (count == 0) ? null : ring[(head + count - 1) % ring.length];
   }
 
   /** 
@@ -187,16 +531,13 @@ public class EmotionHistory {
    */
   public synchronized EmotionVector getEmotionalState(EmotionVector emotions) {
     if (size() == 0) return emotions;
-    for (Iterator it = emotions.getEmotionTypes().iterator(); it.hasNext();) {
-      EmotionType type = (EmotionType)it.next();
-      double max = 0.0d;
-      // traverse history in reverse order, latest element first
-      for (int i = size() - 1; i >= 0; i--) {
-	Emotion e = get(i).get(type);
-	if (e != null && e.getIntensity() > max) {
-	  max = e.getIntensity();
-	  emotions.add(e);
-	}
+    if (!maximaValid) {
+      rebuildMaxima();
+    }
+    for (int t = 0; t < emotions.size(); t++) {
+      Emotion max = maxima[emotions.getEmotion(t).getType().ordinal()];
+      if (max != null) {
+	emotions.add(max);
       }
     }
     return emotions;
@@ -6,43 +6,24 @@
 package de.affect.emotion;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 
 public enum EmotionType { 
   Undefined, Joy, Distress, HappyFor, Gloating, Resentment, Pity, Hope, Fear, 
   Satisfaction, Relief, FearsConfirmed, Disappointment, Pride, Admiration, 
   Shame, Reproach, Liking, Disliking, Gratitude, Anger, Gratification,
-  Remorse, Love, Hate, Physical;
+  Remorse, Love, Hate, Physical; // physical p a d values are derived/mesured by bio sensors
+
+  private static final HashMap<String, EmotionType> sTypesByName = new HashMap<String, EmotionType>();
+
+  static {
+    for (EmotionType type : EmotionType.values())
+      sTypesByName.put(type.toString().toLowerCase(), type);
+  }
 
   public static EmotionType getTypeByName(String n) {
-    EmotionType eType = EmotionType.Undefined;
-    eType = (n.toLowerCase().equals("undefined")) ? EmotionType.Undefined : eType;
-    eType = (n.toLowerCase().equals("joy")) ? EmotionType.Joy : eType;
-    eType = (n.toLowerCase().equals("distress")) ? EmotionType.Distress : eType;
-    eType = (n.toLowerCase().equals("happyfor")) ? EmotionType.HappyFor : eType;
-    eType = (n.toLowerCase().equals("gloating")) ? EmotionType.Gloating : eType;
-    eType = (n.toLowerCase().equals("resentment")) ? EmotionType.Resentment : eType;
-    eType = (n.toLowerCase().equals("pity")) ? EmotionType.Pity : eType;
-    eType = (n.toLowerCase().equals("hope")) ? EmotionType.Hope : eType;
-    eType = (n.toLowerCase().equals("fear")) ? EmotionType.Fear : eType;
-    eType = (n.toLowerCase().equals("satisfaction")) ? EmotionType.Satisfaction : eType;
-    eType = (n.toLowerCase().equals("relief")) ? EmotionType.Relief : eType;
-    eType = (n.toLowerCase().equals("fearsconfirmed")) ? EmotionType.FearsConfirmed : eType;
-    eType = (n.toLowerCase().equals("disappointment")) ? EmotionType.Disappointment : eType;
-    eType = (n.toLowerCase().equals("pride")) ? EmotionType.Pride : eType;
-    eType = (n.toLowerCase().equals("admiration")) ? EmotionType.Admiration : eType;
-    eType = (n.toLowerCase().equals("shame")) ? EmotionType.Shame : eType;
-    eType = (n.toLowerCase().equals("reproach")) ? EmotionType.Reproach : eType;
-    eType = (n.toLowerCase().equals("liking")) ? EmotionType.Liking : eType;
-    eType = (n.toLowerCase().equals("disliking")) ? EmotionType.Disliking : eType;
-    eType = (n.toLowerCase().equals("gratitude")) ? EmotionType.Gratitude : eType;
-    eType = (n.toLowerCase().equals("anger")) ? EmotionType.Anger : eType;
-    eType = (n.toLowerCase().equals("gratification")) ? EmotionType.Gratification : eType;
-    eType = (n.toLowerCase().equals("remorse")) ? EmotionType.Remorse : eType;
-    eType = (n.toLowerCase().equals("love")) ? EmotionType.Love : eType;
-    eType = (n.toLowerCase().equals("hate")) ? EmotionType.Hate : eType;
-    // physical is a special type of emotion - its p a d values are derived/mesured by bio sensors
-    eType = (n.toLowerCase().equals("physical")) ? EmotionType.Physical : eType;
-    return eType;
+    EmotionType eType = sTypesByName.get(n.toLowerCase());
+    return (eType != null) ? eType : EmotionType.Undefined;
   }
   
   public static String[] getNames() {
@@ -10,31 +10,38 @@ package de.affect.emotion;
 
 import de.affect.manage.AffectManager;
 import de.affect.mood.Mood;
+import de.affect.personality.EmotionInfluences;
 import de.affect.personality.Personality;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
-import java.util.HashMap;
 import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.logging.Logger;
 
-import static de.affect.personality.PersonalityMoodRelations.getMoodyPersonalityTraits;
 
 /** 
  * This class holds a collection of emotions for a predefined
  * set of emotion types. It contains exactly <b>one</b>
  * <code>Emotion</code> instance for each emotion type.
  *
+ * The emotions are stored in an array indexed by the ordinal of their type.
+ * <code>size()</code> and <code>getEmotion(int)</code> give access to all
+ * emotions in the order of their types without creating a sorted copy.
+ *
  * @author Patrick Gebhard (based on the work of Micheal Kipp and Martin Klesen)
  *
  * @version 1.0
  */
 public class EmotionVector implements Comparator<Emotion> {
 
-  /** maps emotion types to emotions */
-  protected HashMap<EmotionType, Emotion> emotions = new HashMap<EmotionType, Emotion>();
+  private static final EmotionType[] sTypes = EmotionType.values();
+  /** maps emotion type ordinals to emotions, null if the type is not part of this vector */
+  private final Emotion[] emotions = new Emotion[sTypes.length];
+  /** the ordinals of the emotion types of this vector in ascending order */
+  private final int[] types = new int[sTypes.length];
+  private int size = 0;
+  private List<EmotionType> typeList = null;
   public static Logger log = Logger.getLogger(Logger.GLOBAL_LOGGER_NAME);
   
   /**
@@ -56,6 +63,33 @@ public class EmotionVector implements Comparator<Emotion> {
       throw new NullPointerException("Invalid null mood!");
     if (personality == null)
       throw new NullPointerException("Invalid null personality!");
+    init(new EmotionInfluences(personality), mood, emotionTypes);
+  }
+
+  /**
+   * Creates a new <code>EmotionVector</code> for the specified
+   * emotion types <br>
+   * The initial intensity of the emotions in this collection is
+   * the same as the baseline. The baselines are taken from the given
+   * (cached) emotion influences of the character's personality.
+   *
+   * @param influences the emotion influences of a personality
+   * @param emotionTypes the predefined set of emotion types
+   * @throws NullPointerException if one of the arguments is null or
+   *                              if the list of emotion types is empty
+   */
+  public EmotionVector(EmotionInfluences influences, Mood mood, List emotionTypes) {
+    if ((emotionTypes == null) || (emotionTypes.isEmpty()))
+      throw new NullPointerException("Invalid null (or empty) list of emotion types");
+    if (mood == null)
+      throw new NullPointerException("Invalid null mood!");
+    if (influences == null)
+      throw new NullPointerException("Invalid null personality!");
+    init(influences, mood, emotionTypes);
+  }
+
+  private void init(EmotionInfluences influences, Mood mood, List emotionTypes) {
+    Personality personality = influences.getPersonality();
     // TODO INTRODUCE NEW EMOTION TYPES
     for (Iterator it = emotionTypes.iterator(); it.hasNext();) {
       EmotionType type = (EmotionType)it.next();
@@ -63,19 +97,37 @@ public class EmotionVector implements Comparator<Emotion> {
         // do a separate initialisation of physical emotions
         Mood padValues = new Mood(0.0, 0.0, 0.0);
         PADEmotion pademotion = new PADEmotion(padValues, 0.0d, personality.toString());
-        emotions.put(type, pademotion);
+        put(pademotion);
       } else {
-        double baseline = personality.getEmotionBaseline(type);
-        double moodyBaseline = personality.getEmotionBaseline(getMoodyPersonalityTraits(mood), type);
+        double baseline = influences.getBaseline(type);
+        double moodyBaseline = influences.getMoodyBaseline(mood, type);
         baseline = (baseline + moodyBaseline) / 2.0d;
         //log.info(type.toString() + " baseline= " + baseline + " mood influence= " + moodyBaseline);
         // intensity = baseline, elicitor = personality
         Emotion emotion = new Emotion(type, baseline, baseline, personality);
-        emotions.put(type, emotion);
+        put(emotion);
       }
     }
   }
 
+  /**
+   * Stores an emotion and adds its type to the types of this vector.
+   */
+  private void put(Emotion emotion) {
+    int ordinal = emotion.getType().ordinal();
+    if (emotions[ordinal] == null) {
+      int pos = size;
+      while ((pos > 0) && (types[pos - 1] > ordinal)) {
+        types[pos] = types[pos - 1];
+        pos--;
+      }
+      types[pos] = ordinal;
+      size++;
+      typeList = null;
+    }
+    emotions[ordinal] = emotion;
+  }
+
   /**
    * Compares the intensity of two emotions. Returns a negative integer,
    * zero, or a positive integer as the intensity of the first emotion is
@@ -115,23 +167,60 @@ public class EmotionVector implements Comparator<Emotion> {
    * @see #compare(Object, Object)
    */
   public synchronized List<Emotion> getEmotions() {
-    List<Emotion> result = new ArrayList<Emotion>(emotions.values());
+    List<Emotion> result = new ArrayList<Emotion>(size);
+    for (int i = 0; i < size; i++) {
+      result.add(emotions[types[i]]);
+    }
     Collections.sort(result, this);
     return result;
   }
 
+  /**
+   * Returns the number of emotions (resp. emotion types) in this vector.
+   *
+   * @return the number of emotions
+   */
+  public synchronized int size() {
+    return size;
+  }
+
+  /**
+   * Returns the emotion at the specified position. The emotions are ordered
+   * by their type, not by their intensity. Together with <code>size()</code>
+   * this allows to visit all emotions without creating a sorted list.
+   *
+   * @param index index of the emotion
+   * @return the emotion at the specified position
+   * @throws IndexOutOfBoundsException if index is out of range
+   *                                   (index < 0 || index >= size())
+   */
+  public synchronized Emotion getEmotion(int index) {
+    if (index < 0 || index >= size)
+      throw new IndexOutOfBoundsException("Index out of range: " + index);
+    return emotions[types[index]];
+  }
+
   /**
    * Returns the emotion with the highest intensity.
-   * This is a convenience method. It returns the last element
-   * in the list of emotions sorted by their intensity.
+   * This is a convenience method. It returns the element that would be
+   * the last one in the list of emotions sorted by their intensity. The
+   * emotions are not sorted, since they are changed in place by the
+   * emotion decay, a single pass over all emotions is used instead.
    *
    * @return the emotion with the highest relative intensity.
    * @see #getEmotions()
    */
   public synchronized Emotion getDominantEmotion() {
-    List sortedEmotions = getEmotions();
-    int size = sortedEmotions.size();
-    Emotion result = (Emotion)sortedEmotions.get(size-1);
+    Emotion result = null;
+    for (int i = 0; i < size; i++) {
+      Emotion emotion = emotions[types[i]];
+      if ((result == null) || (compare(emotion, result) >= 0)) {
+        result = emotion;
+      }
+    }
+    if (result == null) {
+      return null;
+    }
 //     System.out.println("Dominant Emotion " + result.getType() + result.getIntensity() + 
 // 		       "/" + result.getBaseline());
     result = (result.getIntensity() != result.getBaseline()) ?
@@ -146,7 +235,14 @@ public class EmotionVector implements Comparator<Emotion> {
    * @return the predefined set of emotion types.
    */
   public synchronized List getEmotionTypes() {
-    return Collections.unmodifiableList(new LinkedList<EmotionType>(emotions.keySet()));
+    if (typeList == null) {
+      List<EmotionType> list = new ArrayList<EmotionType>(size);
+      for (int i = 0; i < size; i++) {
+        list.add(sTypes[types[i]]);
+      }
+      typeList = Collections.unmodifiableList(list);
+    }
+    return typeList;
   }
 
   /** 
@@ -157,7 +253,7 @@ public class EmotionVector implements Comparator<Emotion> {
    * @return an emotion of that type or null
    */
   public synchronized Emotion get(EmotionType type) {
-    return (Emotion)emotions.get(type);
+    return emotions[type.ordinal()];
   }
 
   /**
@@ -173,9 +269,9 @@ public class EmotionVector implements Comparator<Emotion> {
    * @see #getEmotionTypes()
    */
   public synchronized boolean add(Emotion emotion) {
-    EmotionType type = emotion.getType();
-    if (emotions.containsKey(type)) {
-      emotions.put(type, emotion);
+    int ordinal = emotion.getType().ordinal();
+    if (emotions[ordinal] != null) {
+      emotions[ordinal] = emotion;
       return true;    
     } else return false;
   }
@@ -185,8 +281,17 @@ public class EmotionVector implements Comparator<Emotion> {
    * @param type the emotion type to be removed
    */
   public synchronized void remove(EmotionType type) {
-    if (hasType(type))
-      emotions.remove(type);
+    int ordinal = type.ordinal();
+    if (emotions[ordinal] != null) {
+      emotions[ordinal] = null;
+      int pos = 0;
+      while (types[pos] != ordinal) {
+        pos++;
+      }
+      System.arraycopy(types, pos + 1, types, pos, size - pos - 1);
+      size--;
+      typeList = null;
+    }
   }
 
   /**
@@ -198,8 +303,8 @@ public class EmotionVector implements Comparator<Emotion> {
    * @return true if the emotion vector has the defined emotion type
    */
 
-  public boolean hasType(EmotionType type) {
-    return ((Emotion)emotions.get(type) != null) ? true : false;
+  public synchronized boolean hasType(EmotionType type) {
+    return (emotions[type.ordinal()] != null);
   }
 
  /**
@@ -211,11 +316,11 @@ public class EmotionVector implements Comparator<Emotion> {
    * @param newEmotions an emotion vector
    */
   public synchronized void merge(EmotionVector newEmotions) {
-    for (Iterator it = newEmotions.getEmotions().iterator(); it.hasNext();) {
-      Emotion newEmotion = (Emotion)it.next();
-      EmotionType newEmotionType = newEmotion.getType();
-      if (emotions.containsKey(newEmotionType)) {
-	emotions.put(newEmotionType, newEmotion);
+    for (int i = 0; i < newEmotions.size(); i++) {
+      Emotion newEmotion = newEmotions.getEmotion(i);
+      int ordinal = newEmotion.getType().ordinal();
+      if (emotions[ordinal] != null) {
+	emotions[ordinal] = newEmotion;
       }
     }
   }
@@ -7,9 +7,7 @@
  */
 package de.affect.manage;
 
-import java.util.Timer;
-import java.util.TimerTask;
-
+import de.affect.emotion.Emotion;
 import de.affect.emotion.EmotionType;
 import de.affect.mood.MoodIntensity;
 import de.affect.mood.MoodType;
@@ -28,20 +26,19 @@ class AffectAppraisalSimulation {
 
   private static AffectManager.InterfaceHolder affectManager = AffectManager.sInterface;
   private EntityManager fCharacter = null;
-  private Timer fInternalAppraisalTimer = null;
+  private AffectScheduler.Tick fInternalAppraisalTimer = null;
 
   AffectAppraisalSimulation(EntityManager character) {
     AffectManager.sLog.info("\tInternal affect appraisal simulation active!");
     fCharacter = character;
-    fInternalAppraisalTimer = new Timer(true);
-    fInternalAppraisalTimer.schedule(new InternalAppraisalTask(), 500, 500);
+    fInternalAppraisalTimer = AffectScheduler.getScheduler().schedule(new InternalAppraisalTask(), 500);
   }
 
   /**
    * The <code>InternalAppraisalTask</code> class manages the internal appraisal
    * of the dominant emotion and current mood.
    */
-  private class InternalAppraisalTask extends TimerTask {
+  private class InternalAppraisalTask implements Runnable {
 
     private final String sUndefinedEmotion = EmotionType.Undefined.toString();
     private String lastDominantEmotion = sUndefinedEmotion;
@@ -55,8 +52,9 @@ class AffectAppraisalSimulation {
       // build affect input structures
       Character character = Character.Factory.newInstance();
       character.setName(fCharacter.fName);
-      String currentEmotion = fCharacter.fEmotionVector.getDominantEmotion().getType().toString();
-      double emotionIntensity = fCharacter.fEmotionVector.getDominantEmotion().getIntensity();
+      Emotion dominantEmotion = fCharacter.getCurrentEmotions().getDominantEmotion();
+      String currentEmotion = dominantEmotion.getType().toString();
+      double emotionIntensity = dominantEmotion.getIntensity();
       double emotionBaseline = fCharacter.getAffectConsts().emotionMaxBaseline;
       if ((!currentEmotion.equals(sUndefinedEmotion)) && (emotionIntensity > emotionBaseline)) {
         AffectManager.sLog.info(fCharacter.fName + " appraises own emotion " + currentEmotion + " (alma simulation)");
@@ -0,0 +1,57 @@
+/*
+ * AffectClock.java
+ *
+ * Copyright (c) 2004-2008 by Patrick Gebhard
+ * All rights reserved.
+ *
+ */
+package de.affect.manage;
+
+import de.affect.emotion.Emotion;
+
+/**
+ * The interface
+ * <code>AffectClock</code> provides the notion of time that is used by the
+ * affect computation. It delivers the current time and executes the periodic
+ * emotion decay and mood computation tasks as well as delayed one-shot tasks
+ * (e.g. affect script items). It is also the time source of the elicitation
+ * times of emotions.
+ *
+ * @see RealTimeClock
+ * @see VirtualClock
+ *
+ * @author Patrick Gebhard
+ *
+ * @version 1.0
+ */
+public interface AffectClock extends Emotion.Clock {
+
+  /**
+   * Returns the current time of this clock in milliseconds.
+   *
+   * @return the current time in milliseconds
+   */
+  public long currentTimeMillis();
+
+  /**
+   * Schedules a task for execution after the given delay. If the period is
+   * greater than 0, the task is executed repeatedly with a fixed delay of
+   * period milliseconds between the end of an execution and the start of the
+   * next one.
+   *
+   * @param task the task to be scheduled
+   * @param delay delay in milliseconds before the first execution
+   * @param period time in milliseconds between successive executions, 0 for a
+   * one-shot task
+   *
+   * @return a tick handle that can be used to cancel the task
+   */
+  public AffectScheduler.Tick schedule(Runnable task, long delay, long period);
+
+  /**
+   * Returns the number of currently scheduled tasks.
+   *
+   * @return the number of scheduled tasks
+   */
+  public int getScheduledTaskCount();
+}
@@ -43,6 +43,7 @@ import de.affect.appraisal.eec.Likelihood;
 import de.affect.appraisal.eec.Liking;
 import de.affect.appraisal.eec.Praiseworthiness;
 import de.affect.appraisal.eec.Realization;
+import de.affect.compute.BatchDecayEngine;
 import de.affect.compute.DecayFunction;
 import de.affect.compute.ExponentialDecayFunction;
 import de.affect.compute.LinearDecayFunction;
@@ -88,6 +89,7 @@ import de.affect.xml.AffectInputDocument.AffectInput;
 import de.affect.xml.AffectOutputDocument;
 import de.affect.xml.AffectScriptDocument;
 import de.affect.xml.PersonalityType;
+import de.affect.xml.util.AffectSignal;
 import emotionml.Emotion;
 import emotionml.EmotionDocument;
 import emotionml.Emotionml;
@@ -99,15 +101,22 @@ import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Writer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Enumeration;
+import java.util.EventObject;
+import java.util.HashMap;
 import java.util.Hashtable;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.StringTokenizer;
-import java.util.Timer;
-import java.util.TimerTask;
-import java.util.Vector;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.logging.ConsoleHandler;
 import java.util.logging.FileHandler;
 import java.util.logging.Formatter;
@@ -136,8 +145,15 @@ public class AffectManager extends AppraisalManager {
   public static DesktopHelper sDesktopHelper = null;
   public static InterfaceHolder sInterface = null;
   // Listener administration
-  private Vector<AffectUpdateListener> fUpdateListener = null;
-  private Vector<AffectInputListener> fInputListener = null;
+  private CopyOnWriteArrayList<AffectUpdateRegistration> fUpdateListener = null;
+  private CopyOnWriteArrayList<AffectInputListener> fInputListener = null;
+  private IdentityHashMap<Object, ListenerQueue> fListenerQueues = new IdentityHashMap<Object, ListenerQueue>();
+  // inputs are collected while the entities are locked and queued for the
+  // input listeners by one thread at a time after the locks are released
+  private final ConcurrentLinkedQueue<AffectSignal> fPendingInput = new ConcurrentLinkedQueue<AffectSignal>();
+  private final ReentrantLock fInputDispatch = new ReentrantLock();
+  private static final int sUPDATEQUEUECAPACITY = 16;
+  private static final int sINPUTQUEUECAPACITY = 256;
   // DocumentHander
   private DocumentManager fDocumentManager = null;
   private Logger logFile = Logger.getLogger("Alma File");
@@ -146,7 +162,16 @@ public class AffectManager extends AppraisalManager {
   private Hashtable<String, GroupManager> fNameToGroup = null;
   private Hashtable<String, AffectAppraisalSimulation> fNameToAppraisalSimulation = null;
   private List<EmotionType> fAvailableEmotionTypes = new ArrayList<EmotionType>();
-  private Timer fOutputTimer = null;
+  private AffectScheduler.Tick fOutputTimer = null;
+  private Hashtable<Integer, AffectScheduler.Tick> fPeriodToSubscriptionTimer = new Hashtable<Integer, AffectScheduler.Tick>();
+  // affect output documents of the current state version, shared by subscribers
+  private HashMap<List<Object>, AffectOutputDocument> fSubscribedOutput = new HashMap<List<Object>, AffectOutputDocument>();
+  private long fSubscribedOutputVersion = -1;
+  private Hashtable<Integer, BatchDecayEngine> fPeriodToBatchDecayEngine = new Hashtable<Integer, BatchDecayEngine>();
+  private Hashtable<Integer, AffectScheduler.Tick> fPeriodToBatchDecayTimer = new Hashtable<Integer, AffectScheduler.Tick>();
+  private boolean fBatchDecay = false;
+  private boolean fParallelBatchDecay = false;
+  private boolean fLazyDecay = false;
   private AlmaGUI mALMAGUI = null;
   private boolean fDoFileLogging = false;
   private boolean fDoConsoleLogging = false;
@@ -206,8 +231,8 @@ public class AffectManager extends AppraisalManager {
     sLog.addHandler(ch);
     sLog.setUseParentHandlers(false);
     sLog.info("This is ALMA " + buildVersion() + " - " + buildDetails());
-    fUpdateListener = new Vector<AffectUpdateListener>();
-    fInputListener = new Vector<AffectInputListener>();
+    fUpdateListener = new CopyOnWriteArrayList<AffectUpdateRegistration>();
+    fInputListener = new CopyOnWriteArrayList<AffectInputListener>();
     // initialize the affect computation parameteres
     if (ac != null) {
       initComputation(ac);
@@ -388,6 +413,18 @@ public class AffectManager extends AppraisalManager {
       return AffectManager.this.processSignal(ai);
     }
 
+    public AffectOutputDocument processSignals(List<AffectInput> inputs) {
+      return AffectManager.this.processSignals(inputs);
+    }
+
+    public AffectOutputDocument processSignal(AffectSignal signal) {
+      return AffectManager.this.processSignal(signal);
+    }
+
+    public AffectOutputDocument processSignals(AffectSignal[] signals) {
+      return AffectManager.this.processSignals(signals);
+    }
+
     public DocumentManager getDocumentManager() {
       return fDocumentManager;
     }
@@ -400,6 +437,10 @@ public class AffectManager extends AppraisalManager {
       return AffectManager.this.getCurrentAffectEmotionml(name);
     }
 
+    public boolean writeEmotionml(String name, OutputStream out) throws IOException {
+      return AffectManager.this.writeCurrentAffectEmotionml(name, out);
+    }
+
     public void addAffectInputListener(AffectInputListener ail) {
       AffectManager.this.addAffectInputListener(ail);
     }
@@ -468,28 +509,32 @@ public class AffectManager extends AppraisalManager {
    * The
    * <code>OutputTask</code> class manages the output of affect.
    */
-  private class OutputTask extends TimerTask {
+  private class OutputTask implements Runnable {
 
-    private String lastTextOutput = "";
+    private long lastVersion = 0;
 
     private OutputTask() {
     }
 
     public void run() {
-      String currentTextOutput = getAffectOutputInfo(fNameToCharacter, fNameToGroup);
+      // lazily decayed characters update their state when asked for its version
+      for (CharacterManager character : fNameToCharacter.values()) {
+        character.getStateVersion();
+      }
+      long version = EntityManager.currentStateVersion();
       if (fDoFileLogging) {
         logFile.info(getAffectLogEntry(fNameToCharacter, fNameToGroup));
       }
 
       if (fDoConsoleLogging) {
-        if (!currentTextOutput.equals(lastTextOutput)) {
-          sLog.info(currentTextOutput);
+        if (version > lastVersion) {
+          sLog.info(getAffectOutputInfo(fNameToCharacter, fNameToGroup));
         }
       }
 
       // update affective state for every listener
-      if (!currentTextOutput.equals(lastTextOutput)) {
-        notifyAffectUpdateListener(getAffectOutputDocument(fNameToCharacter, fNameToGroup));
+      if (version > lastVersion) {
+        notifyAffectUpdateListener(null, version);
       }
 
       // Debug emotionml output
@@ -497,37 +542,347 @@ public class AffectManager extends AppraisalManager {
 //        getEmotionmlDocument(c);
 //      }
 
-      lastTextOutput = currentTextOutput;
+      lastVersion = version;
+    }
+  }
+
+  /**
+   * The
+   * <code>SubscriptionTask</code> class notifies the subscribers of a
+   * notification period.
+   */
+  private class SubscriptionTask implements Runnable {
+
+    private final int fPeriod;
+
+    private SubscriptionTask(int period) {
+      fPeriod = period;
+    }
+
+    public void run() {
+      // lazily decayed characters update their state when asked for its version
+      for (CharacterManager character : fNameToCharacter.values()) {
+        character.getStateVersion();
+      }
+      // a change after reading the version is reported again next time, but
+      // none is missed
+      long version = EntityManager.currentStateVersion();
+      for (AffectUpdateRegistration aur : fUpdateListener) {
+        if ((aur.fSubscription != null) && (aur.fSubscription.getPeriod() == fPeriod)) {
+          aur.fChanged = hasChanged(aur.fSubscription, aur.fVersion);
+        }
+      }
+      notifyAffectUpdateListener(fPeriod, version);
+    }
+  }
+
+  /**
+   * The
+   * <code>AffectUpdateRegistration</code> class holds an affect update
+   * listener, its subscription and the state version it has been notified
+   * about last.
+   */
+  private static class AffectUpdateRegistration {
+
+    private final AffectUpdateListener fListener;
+    private final AffectSubscription fSubscription;
+    private final boolean fDeltas;
+    // reset by the listener queue if an update has not been delivered
+    private volatile long fVersion = 0;
+    private boolean fChanged = false;
+
+    private AffectUpdateRegistration(AffectUpdateListener listener,
+      AffectSubscription subscription, boolean deltas) {
+      fListener = listener;
+      fSubscription = subscription;
+      fDeltas = deltas;
     }
   }
 
   /**
-   * Adds the specified listener to the list of affect update listeners.
+   * The
+   * <code>RegisteredUpdateEvent</code> class is an affect update event that
+   * knows its registration, so that a delta listener that misses the update
+   * gets the affect of all subscribed characters and groups next time.
+   */
+  private static class RegisteredUpdateEvent extends AffectUpdateEvent {
+
+    private static final long serialVersionUID = 1L;
+
+    private final transient AffectUpdateRegistration fRegistration;
+
+    private RegisteredUpdateEvent(Object source, AffectOutputDocument affectInfo,
+      long version, boolean delta, AffectUpdateRegistration registration) {
+      super(source, affectInfo, version, delta);
+      fRegistration = registration;
+    }
+  }
+
+  /**
+   * Sets how the events of a listener are dispatched. Each affect update and
+   * input listener gets the events in its own queue and they are delivered by
+   * its own daemon thread, so that a slow listener does not stall the affect
+   * computation. By default, a listener that is first registered as update
+   * listener has a queue for 16 updates that coalesces waiting updates, and
+   * a listener that is first registered as input listener has a queue for
+   * 256 inputs that drops new inputs if it is full. A delta listener that
+   * misses an update receives a full update next. Input listeners with the
+   * <code>Block</code> policy slow down the thread that queues the inputs,
+   * which holds no entity locks while it waits. Update events are queued by
+   * the threads of the affect scheduler, which must not wait, so update
+   * listeners cannot use the <code>Block</code> policy.
+   *
+   * @param listener the affect update or input listener
+   * @param policy the handling of events that do not fit into the queue
+   * @param capacity the maximum number of queued events
+   *
+   * @throws IllegalArgumentException if the capacity is not positive or if
+   * an update listener should block
+   */
+  public void setListenerDispatch(Object listener, ListenerQueue.Policy policy, int capacity) {
+    if ((policy == ListenerQueue.Policy.Block) && (listener instanceof AffectUpdateListener)) {
+      throw new IllegalArgumentException("Update listeners cannot block the affect computation");
+    }
+    ListenerQueue queue = createListenerQueue(listener, policy, capacity);
+    ListenerQueue former = null;
+    synchronized (fListenerQueues) {
+      former = fListenerQueues.put(listener, queue);
+    }
+    if (former != null) {
+      former.close();
+    }
+  }
+
+  /**
+   * Returns the event queue of a listener, which records the delivered,
+   * dropped and coalesced events and the lag of the listener.
+   *
+   * @param listener the affect update or input listener
+   *
+   * @return the listener's queue, null if the listener is not registered
+   */
+  public ListenerQueue getListenerQueue(Object listener) {
+    synchronized (fListenerQueues) {
+      return fListenerQueues.get(listener);
+    }
+  }
+
+  private ListenerQueue createListenerQueue(Object listener, ListenerQueue.Policy policy, int capacity) {
+    return new ListenerQueue(listener, policy, capacity) {
+      @Override
+      protected void discarded(EventObject e) {
+        if (e instanceof RegisteredUpdateEvent) {
+          ((RegisteredUpdateEvent) e).fRegistration.fVersion = 0;
+        }
+      }
+    };
+  }
+
+  /**
+   * Returns the queue of a listener, creates it with the default policy if
+   * the listener has none.
+   */
+  private ListenerQueue listenerQueue(Object listener) {
+    synchronized (fListenerQueues) {
+      ListenerQueue queue = fListenerQueues.get(listener);
+      if (queue == null) {
+        queue = (listener instanceof AffectInputListener) && !(listener instanceof AffectUpdateListener)
+          ? createListenerQueue(listener, ListenerQueue.Policy.Drop, sINPUTQUEUECAPACITY)
+          : createListenerQueue(listener, ListenerQueue.Policy.Coalesce, sUPDATEQUEUECAPACITY);
+        fListenerQueues.put(listener, queue);
+      }
+      return queue;
+    }
+  }
+
+  /**
+   * Queues an event for a listener. Listeners that have been removed in the
+   * meantime have no queue anymore.
+   */
+  private void offer(Object listener, EventObject e) {
+    ListenerQueue queue = getListenerQueue(listener);
+    if (queue != null) {
+      queue.offer(e);
+    }
+  }
+
+  /**
+   * Closes the queue of a listener that is no longer registered.
+   */
+  private void releaseListenerQueue(Object listener) {
+    for (AffectUpdateRegistration aur : fUpdateListener) {
+      if (aur.fListener == listener) {
+        return;
+      }
+    }
+    for (AffectInputListener ail : fInputListener) {
+      if (ail == listener) {
+        return;
+      }
+    }
+    ListenerQueue queue = null;
+    synchronized (fListenerQueues) {
+      queue = fListenerQueues.remove(listener);
+    }
+    if (queue != null) {
+      queue.close();
+    }
+  }
+
+  /**
+   * Adds the specified listener to the list of affect update listeners. The
+   * listener receives the affect of all characters and groups whenever the
+   * affective state of one of them has changed.
    *
    * @param aul the listener that should be added
    */
   public void addAffectUpdateListener(AffectUpdateListener aul) {
-    fUpdateListener.add(aul);
+    addAffectUpdateListener(aul, false);
   }
 
   /**
-   * Removes the specified listener from the list of affect update listeners.
+   * Adds the specified listener to the list of affect update listeners. A
+   * listener that receives deltas gets the affect of all characters and
+   * groups with its first update and afterwards only the affect of the
+   * characters and groups that have changed since its last update.
+   *
+   * @param aul the listener that should be added
+   * @param deltas true if the listener receives only changed characters and
+   * groups, false if it receives the affect of all of them
+   */
+  public void addAffectUpdateListener(AffectUpdateListener aul, boolean deltas) {
+    listenerQueue(aul);
+    fUpdateListener.add(new AffectUpdateRegistration(aul, null, deltas));
+  }
+
+  /**
+   * Adds the specified listener to the list of affect update listeners. The
+   * listener receives the subscribed affect information of the subscribed
+   * characters and groups in the subscription's period, independent from the
+   * realtime output of the affect manager. A listener that subscribes to
+   * changes only is not notified if none of its characters and groups has
+   * changed.
+   *
+   * @param aul the listener that should be added
+   * @param subscription the affect output the listener receives
+   */
+  public void addAffectUpdateListener(AffectUpdateListener aul, AffectSubscription subscription) {
+    if (subscription == null) {
+      throw new NullPointerException("No affect subscription");
+    }
+    listenerQueue(aul);
+    synchronized (fUpdateListener) {
+      fUpdateListener.add(new AffectUpdateRegistration(aul, subscription, subscription.isChangesOnly()));
+      Integer period = subscription.getPeriod();
+      if (!fPeriodToSubscriptionTimer.containsKey(period)) {
+        fPeriodToSubscriptionTimer.put(period,
+          AffectScheduler.getScheduler().schedule(new SubscriptionTask(period), period));
+      }
+    }
+  }
+
+  /**
+   * Removes the specified listener and all its subscriptions from the list of
+   * affect update listeners.
    *
    * @param aul the listener that should be removed
    */
   public void removeAffectUpdateListener(AffectUpdateListener aul) {
-    fUpdateListener.remove(aul);
+    synchronized (fUpdateListener) {
+      // the iterators of the copy on write list do not remove
+      for (AffectUpdateRegistration aur : fUpdateListener) {
+        if (aur.fListener == aul) {
+          fUpdateListener.remove(aur);
+        }
+      }
+      // stop the notification of periods without subscribers
+      for (Iterator<Integer> it = fPeriodToSubscriptionTimer.keySet().iterator(); it.hasNext();) {
+        Integer period = it.next();
+        boolean subscribed = false;
+        for (AffectUpdateRegistration aur : fUpdateListener) {
+          subscribed |= (aur.fSubscription != null) && (aur.fSubscription.getPeriod() == period);
+        }
+        if (!subscribed) {
+          fPeriodToSubscriptionTimer.get(period).cancel();
+          it.remove();
+        }
+      }
+    }
+    releaseListenerQueue(aul);
+  }
+
+  /**
+   * Checks if a subscribed character or group has changed since the
+   * specified state version.
+   */
+  private boolean hasChanged(AffectSubscription subscription, long since) {
+    if (subscription.getNames() != null) {
+      for (String name : subscription.getNames()) {
+        EntityManager entity = fNameToCharacter.get(name);
+        entity = (entity == null) ? fNameToGroup.get(name) : entity;
+        if ((entity != null) && (entity.getStateVersion() > since)) {
+          return true;
+        }
+      }
+      return false;
+    }
+    boolean changed = false;
+    // every lazily decayed character has to update its state
+    for (CharacterManager character : fNameToCharacter.values()) {
+      changed |= (character.getStateVersion() > since);
+    }
+    for (GroupManager group : fNameToGroup.values()) {
+      changed |= (group.getStateVersion() > since);
+    }
+    return changed;
   }
 
   /**
-   * Notifies all registered listeners aboput the affect updates
+   * Notifies the registered listeners of the realtime output or of a
+   * subscription period about the affect updates. Listeners that want the
+   * same affect output share the same update document.
    *
-   * @param affectInfo the affect information that have changed
+   * @param period the subscription period, null for the listeners of the
+   * realtime output
+   * @param version the current state version
+   */
+  private void notifyAffectUpdateListener(Integer period, long version) {
+    for (AffectUpdateRegistration aur : fUpdateListener) {
+      if ((period == null) ? (aur.fSubscription != null)
+        : ((aur.fSubscription == null) || (aur.fSubscription.getPeriod() != period))) {
+        continue;
+      }
+      long since = (aur.fDeltas) ? aur.fVersion : 0;
+      if ((aur.fSubscription != null) && (since > 0) && !aur.fChanged) {
+        // none of the subscribed characters and groups has changed
+        aur.fVersion = version;
+        continue;
+      }
+      AffectOutputDocument affectInfo = getSubscribedOutput(aur.fSubscription, since, version);
+      aur.fVersion = version;
+      offer(aur.fListener, new RegisteredUpdateEvent(this, affectInfo, version, since > 0, aur));
+    }
+  }
+
+  /**
+   * Returns the affect output of a subscription. The documents are shared
+   * until the state version changes.
    */
-  private void notifyAffectUpdateListener(AffectOutputDocument affectInfo) {
-    for (Iterator<AffectUpdateListener> it = fUpdateListener.iterator(); it.hasNext();) {
-      AffectUpdateListener aul = it.next();
-      aul.update(new AffectUpdateEvent(this, affectInfo));
+  private AffectOutputDocument getSubscribedOutput(AffectSubscription subscription,
+    long since, long version) {
+    List<Object> key = Arrays.<Object>asList((subscription == null) ? null : subscription.getNames(),
+      (subscription == null) ? null : subscription.getFields(), since);
+    synchronized (fSubscribedOutput) {
+      if (version != fSubscribedOutputVersion) {
+        fSubscribedOutput.clear();
+        fSubscribedOutputVersion = version;
+      }
+      AffectOutputDocument affectInfo = fSubscribedOutput.get(key);
+      if (affectInfo == null) {
+        affectInfo = getAffectOutputDocument(fNameToCharacter, fNameToGroup, since, subscription);
+        fSubscribedOutput.put(key, affectInfo);
+      }
+      return affectInfo;
     }
   }
 
@@ -537,6 +892,7 @@ public class AffectManager extends AppraisalManager {
    * @param ail the listener that should be added
    */
   public void addAffectInputListener(AffectInputListener ail) {
+    listenerQueue(ail);
     fInputListener.add(ail);
   }
 
@@ -547,17 +903,41 @@ public class AffectManager extends AppraisalManager {
    */
   public void removeAffectInputListener(AffectInputListener ail) {
     fInputListener.remove(ail);
+    releaseListenerQueue(ail);
   }
 
   /**
-   * Notifies all registered listeners about new affect input
+   * Notifies all registered listeners about new affect input. The input is
+   * only collected, because the appraisal locks of the involved entities are
+   * held. Inputs that share entities are collected in the order they are
+   * processed.
    *
-   * @param affectInput the new affect input
+   * @param signal the new affect input
    */
-  private void notifyAffectInputListener(AffectInput affectInput) {
-    for (Iterator<AffectInputListener> it = fInputListener.iterator(); it.hasNext();) {
-      AffectInputListener ail = it.next();
-      ail.updateInput(new AffectInputEvent(this, affectInput));
+  private void notifyAffectInputListener(AffectSignal signal) {
+    if (!fInputListener.isEmpty()) {
+      fPendingInput.add(signal);
+    }
+  }
+
+  /**
+   * Queues the collected affect input for the registered listeners. It must
+   * be called without holding appraisal locks. If another thread is queueing
+   * already, it queues the input of this thread, too.
+   */
+  private void dispatchAffectInput() {
+    while (!fPendingInput.isEmpty() && fInputDispatch.tryLock()) {
+      try {
+        AffectSignal signal = null;
+        while ((signal = fPendingInput.poll()) != null) {
+          AffectInput affectInput = signal.toAffectInput();
+          for (AffectInputListener ail : fInputListener) {
+            offer(ail, new AffectInputEvent(this, affectInput));
+          }
+        }
+      } finally {
+        fInputDispatch.unlock();
+      }
     }
   }
 
@@ -585,8 +965,7 @@ public class AffectManager extends AppraisalManager {
         }
         fOutputPeriod = ac.getRealtimeOutput().getPeriod();
         sLog.info("Starting output generation ...");
-        fOutputTimer = new Timer(true);
-        fOutputTimer.schedule(new OutputTask(), fOutputPeriod, fOutputPeriod);
+        fOutputTimer = AffectScheduler.getScheduler().schedule(new OutputTask(), fOutputPeriod);
       }
     } catch (Exception e) {
       e.printStackTrace();
@@ -748,6 +1127,12 @@ public class AffectManager extends AppraisalManager {
     }
     // Register character
     fNameToCharacter.put(name, character);
+    if (fBatchDecay) {
+      attachBatchDecay(character);
+    }
+    if (fLazyDecay) {
+      character.setLazyDecay(true);
+    }
   
   }
 
@@ -1164,6 +1549,105 @@ public class AffectManager extends AppraisalManager {
     return fDocumentManager;
   }
 
+  /**
+   * Lets batch decay engines decay the emotions of all characters. Characters
+   * with the same emotion decay period share one engine, which decays all
+   * their emotions in one pass. Characters with a decay function that is not
+   * supported by batch decay engines keep their own emotion decay task.
+   *
+   * @param parallel if true, large decay passes are split across the
+   * processors
+   */
+  public synchronized void enableBatchDecay(boolean parallel) {
+    if (fBatchDecay) {
+      disableBatchDecay();
+    }
+    fBatchDecay = true;
+    fLazyDecay = false;
+    fParallelBatchDecay = parallel;
+    for (CharacterManager c : getCharacters()) {
+      attachBatchDecay(c);
+    }
+  }
+
+  /**
+   * Lets each character decay its emotions with its own emotion decay task.
+   */
+  public synchronized void disableBatchDecay() {
+    fBatchDecay = false;
+    for (CharacterManager c : getCharacters()) {
+      c.setBatchDecayEngine(null);
+    }
+    for (AffectScheduler.Tick tick : fPeriodToBatchDecayTimer.values()) {
+      tick.cancel();
+    }
+    fPeriodToBatchDecayTimer.clear();
+    fPeriodToBatchDecayEngine.clear();
+  }
+
+  /**
+   * Returns if the emotions of the characters are decayed by batch decay
+   * engines.
+   *
+   * @return true if batch decay is enabled, false otherwise
+   */
+  public synchronized boolean isBatchDecayEnabled() {
+    return fBatchDecay;
+  }
+
+  /**
+   * Switches all characters between lazy and periodic emotion decay. Lazy
+   * emotion decay replaces batch decay.
+   *
+   * @param lazy true enables lazy emotion decay, false enables periodic
+   * emotion decay
+   *
+   * @see CharacterManager#setLazyDecay(boolean)
+   */
+  public synchronized void setLazyDecay(boolean lazy) {
+    if (lazy && fBatchDecay) {
+      disableBatchDecay();
+    }
+    fLazyDecay = lazy;
+    for (CharacterManager c : getCharacters()) {
+      c.setLazyDecay(lazy);
+    }
+  }
+
+  /**
+   * Hands a character over to the batch decay engine that is responsible for
+   * the character's emotion decay period.
+   */
+  private synchronized void attachBatchDecay(CharacterManager character) {
+    Integer period = character.getAffectConsts().emotionDecayPeriod;
+    BatchDecayEngine engine = fPeriodToBatchDecayEngine.get(period);
+    if (engine == null) {
+      engine = new BatchDecayEngine(fParallelBatchDecay);
+      fPeriodToBatchDecayEngine.put(period, engine);
+      fPeriodToBatchDecayTimer.put(period,
+        AffectScheduler.getScheduler().schedule(new BatchDecayTask(engine), period));
+    }
+    character.setBatchDecayEngine(engine);
+  }
+
+  /**
+   * The
+   * <code>BatchDecayTask</code> class decays the emotions of all characters
+   * handled by a batch decay engine.
+   */
+  private class BatchDecayTask implements Runnable {
+
+    private final BatchDecayEngine fEngine;
+
+    private BatchDecayTask(BatchDecayEngine engine) {
+      fEngine = engine;
+    }
+
+    public void run() {
+      fEngine.decay();
+    }
+  }
+
   /**
    * Pauses the real-time affect computation (emotion decay and mood
    * computation) Returns false if at least one character's affect computation
@@ -1268,6 +1752,46 @@ public class AffectManager extends AppraisalManager {
     CharacterManager character = fNameToCharacter.get(name);
     return (character != null) ? getEmotionmlDocument(character) : null;
   }
+
+  /**
+   * Writes the current affect of a character as EmotionML document to a
+   * character stream, without building an xml bean document (see
+   * <code>EmotionmlWriter</code>).
+   *
+   * @param name the name of a character
+   * @param out the character stream
+   * @return false if there is no character with the given name
+   *
+   * @throws IOException if the document cannot be written
+   */
+  public boolean writeCurrentAffectEmotionml(String name, Writer out) throws IOException {
+    CharacterManager character = fNameToCharacter.get(name);
+    if (character == null) {
+      return false;
+    }
+    EmotionmlWriter.write(character, out);
+    return true;
+  }
+
+  /**
+   * Writes the current affect of a character as UTF-8 encoded EmotionML
+   * document to a byte stream, without building an xml bean document (see
+   * <code>EmotionmlWriter</code>).
+   *
+   * @param name the name of a character
+   * @param out the byte stream
+   * @return false if there is no character with the given name
+   *
+   * @throws IOException if the document cannot be written
+   */
+  public boolean writeCurrentAffectEmotionml(String name, OutputStream out) throws IOException {
+    CharacterManager character = fNameToCharacter.get(name);
+    if (character == null) {
+      return false;
+    }
+    EmotionmlWriter.write(character, out);
+    return true;
+  }
   
 
   /**
@@ -1276,179 +1800,281 @@ public class AffectManager extends AppraisalManager {
    * potentially stored in the AffectInput Java object. According to the type of
    * signal, it will be than further processed by an suitable function.
    *
+   * Signals are not serialized globally. Only the entities (performer,
+   * addressees, listeners and the performer's groups) involved in a signal
+   * are locked while it is processed, so signals for disjoint sets of
+   * entities are processed in parallel. Signals that share entities are
+   * applied to all of them in the same order.
+   *
    * @param ai a Java object related to an AffectInput-Element defined by the
    * Affect.xsd
    */
-  public synchronized AffectOutputDocument processSignal(AffectInput ai) {
-    CharacterManager performer = fNameToCharacter.get(ai.getCharacter().getName());
+  public AffectOutputDocument processSignal(AffectInput ai) {
+    return processSignal(AffectSignal.valueOf(ai));
+  }
 
-    sLog.info(ai.toString());
+  /**
+   * The method
+   * <code>processSignal</code> processes a signal that has been read without
+   * xml beans (see <code>parseInput</code>) like an AffectInput Java object.
+   *
+   * @param signal a signal
+   */
+  public AffectOutputDocument processSignal(AffectSignal signal) {
+    sLog.info(signal.toString());
+
+    SignalParticipants p = getParticipants(signal);
+    boolean processed = false;
+    EntityLock lock = EntityLock.acquire(p.fPerformer, p.fAddressees, p.fListeners, p.fGroups);
+    try {
+      processed = processSignal(signal, p.fPerformer, p.fAddressees, p.fListeners, p.fGroups);
+    } finally {
+      lock.release();
+      dispatchAffectInput();
+    }
+    return (processed) ? getAffectOutputDocument(fNameToCharacter, fNameToGroup) : null;
+  }
+
+  /**
+   * The method
+   * <code>processSignals</code> processes a batch of signals in the given
+   * order, with the same results as successive calls of
+   * <code>processSignal</code>, except that emotions are inferred once per
+   * involved character and group for the whole batch instead of once per
+   * signal. The EECs of the signals are collected per entity. If a signal
+   * yields an EEC of a kind that is already waiting for inference (the
+   * emotion engine accepts one EEC for event-based, action-based and
+   * object-based emotions), the waiting EECs are inferred first. The affect
+   * output is created once after the batch.
+   *
+   * All entities involved in the batch are locked while it is processed.
+   *
+   * @param inputs Java objects related to AffectInput-Elements defined by the
+   * Affect.xsd
+   *
+   * @return the affect output after the batch, null if no signal has been
+   * processed
+   */
+  public AffectOutputDocument processSignals(List<AffectInput> inputs) {
+    AffectSignal[] signals = new AffectSignal[inputs.size()];
+    for (int i = 0; i < signals.length; i++) {
+      signals[i] = AffectSignal.valueOf(inputs.get(i));
+    }
+    return processSignals(signals);
+  }
 
-    if (ai.isSetPAD()) {
+  /**
+   * The method
+   * <code>processSignals</code> processes a batch of signals that have been
+   * read without xml beans like a list of AffectInput Java objects.
+   *
+   * @param signals the signals
+   *
+   * @return the affect output after the batch, null if no signal has been
+   * processed
+   */
+  public AffectOutputDocument processSignals(AffectSignal[] signals) {
+    SignalParticipants[] participants = new SignalParticipants[signals.length];
+    LinkedHashSet<EntityManager> entities = new LinkedHashSet<EntityManager>();
+    for (int i = 0; i < participants.length; i++) {
+      participants[i] = getParticipants(signals[i]);
+      participants[i].addTo(entities);
+    }
+
+    boolean processed = false;
+    EntityLock lock = EntityLock.acquire(null, entities.toArray(new EntityManager[entities.size()]));
+    try {
+      for (EntityManager entity : entities) {
+        entity.deferInference();
+      }
+      try {
+        for (int i = 0; i < participants.length; i++) {
+          AffectSignal signal = signals[i];
+          SignalParticipants p = participants[i];
+          sLog.info(signal.toString());
+          processed |= processSignal(signal, p.fPerformer, p.fAddressees, p.fListeners, p.fGroups);
+        }
+      } finally {
+        for (EntityManager entity : entities) {
+          entity.resumeInference();
+        }
+      }
+    } finally {
+      lock.release();
+      dispatchAffectInput();
+    }
+    return (processed) ? getAffectOutputDocument(fNameToCharacter, fNameToGroup) : null;
+  }
+
+  /**
+   * The
+   * <code>SignalParticipants</code> class holds the entities that are
+   * involved in a signal.
+   */
+  private static class SignalParticipants {
+
+    CharacterManager fPerformer = null;
+    CharacterManager[] fAddressees = null;
+    CharacterManager[] fListeners = null;
+    GroupManager[] fGroups = null;
+
+    void addTo(LinkedHashSet<EntityManager> entities) {
+      if (fPerformer != null) {
+        entities.add(fPerformer);
+      }
+      for (EntityManager[] others : new EntityManager[][]{fAddressees, fListeners, fGroups}) {
+        if (others != null) {
+          for (EntityManager entity : others) {
+            if (entity != null) {
+              entities.add(entity);
+            }
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Returns the performer, addressees, listeners and the performer's groups
+   * of a signal.
+   *
+   * @param signal a signal
+   *
+   * @return SignalParticipants the entities involved in the signal
+   */
+  private SignalParticipants getParticipants(AffectSignal signal) {
+    SignalParticipants p = new SignalParticipants();
+    p.fPerformer = fNameToCharacter.get(signal.getCharacter());
+    switch (signal.getKind()) {
+      case Act:
+      case EmotionDisplay:
+      case MoodDisplay:
+        p.fAddressees = getCharacter(signal.getAddressee());
+        p.fListeners = getCharacter(signal.getListener());
+        p.fGroups = getGroups(p.fPerformer);
+        break;
+    }
+    return p;
+  }
+
+  /**
+   * Returns all groups the given character is a member of.
+   *
+   * @param character a character
+   *
+   * @return GroupManager[] array of the character's groups
+   */
+  private GroupManager[] getGroups(CharacterManager character) {
+    ArrayList<GroupManager> groupList = new ArrayList<GroupManager>();
+    if (fNameToGroup != null) {
+      for (Enumeration<String> cEnum = fNameToGroup.keys(); cEnum.hasMoreElements();) {
+        GroupManager group = fNameToGroup.get(cEnum.nextElement());
+        if (group.hasCharacter(character)) {
+          groupList.add(group);
+        }
+      }
+    }
+    return groupList.toArray(new GroupManager[0]);
+  }
+
+  /**
+   * Processes a signal while the appraisal locks of all involved entities are
+   * held.
+   *
+   * @return true if the signal has been processed, false otherwise
+   */
+  private boolean processSignal(AffectSignal signal, CharacterManager performer,
+    CharacterManager[] addressees, CharacterManager[] listeners,
+    GroupManager[] groups) {
+    if (signal.getKind() == AffectSignal.Kind.PAD) {
       // No notification to affectInputListeners ...
-      String description = (ai.getPAD().isSetDescription()) ? ai.getPAD().getDescription() : "" + System.currentTimeMillis();
-      double p = ai.getPAD().getPleasure();
-      double a = ai.getPAD().getArousal();
-      double d = ai.getPAD().getDominance();
-      double intensity = (ai.getPAD().isSetIntensity()) ? ai.getPAD().getIntensity() : 0.0d;
+      String description = (signal.getDescription() != null) ? signal.getDescription() : "" + System.currentTimeMillis();
+      double p = signal.getPleasure();
+      double a = signal.getArousal();
+      double d = signal.getDominance();
+      double intensity = (signal.getIntensity() != null) ? Double.parseDouble(signal.getIntensity()) : 0.0d;
       Mood m = new Mood(p, a, d);
       processPADInput(performer, m, intensity, description);
 
-      return getAffectOutputDocument(fNameToCharacter, fNameToGroup);
-    } else {
-      // notify all listeners for affect input - such like the
-      // interaction simulation, when in record mode
-      notifyAffectInputListener(ai);
+      return true;
+    }
+
+    // notify all listeners for affect input - such like the
+    // interaction simulation, when in record mode
+    notifyAffectInputListener(signal);
+
+    String type = signal.getType();
+    double intensity = doubleValue((signal.getIntensity() != null) ? signal.getIntensity() : "1.0");
+    String elicitor = (signal.getElicitor() != null) ? signal.getElicitor() : "none";
 
+    switch (signal.getKind()) {
       // proceed if input is a dialog act
-      if (ai.isSetAct()) {
-        String daType = ai.getAct().getType();
-        String intensity = (ai.getAct().isSetIntensity())
-          ? ai.getAct().getIntensity().toString() : "1.0";
-        String elicitor = (ai.getAct().isSetElicitor())
-          ? ai.getAct().getElicitor() : "none";
-        elicitor = (elicitor == null) ? "none" : elicitor;
-        processAct(daType, doubleValue(intensity),
-          performer,
-          getCharacter(ai.getAct().getAddressee()),
-          getCharacter(ai.getAct().getListener()),
-          elicitor);
+      case Act:
+        processAct(type, intensity, performer, addressees, listeners, elicitor);
         // Group affect things ...
-        if (fNameToGroup != null) {
-          ArrayList<GroupManager> groupList = new ArrayList<GroupManager>();
-          for (Enumeration<String> cEnum = fNameToGroup.keys(); cEnum.hasMoreElements();) {
-            GroupManager group = fNameToGroup.get(cEnum.nextElement());
-            if (group.hasCharacter(performer)) {
-              groupList.add(group);
-            }
-          }
-          if (groupList.size() > 0) {
-            processAct(daType, doubleValue(intensity), performer, groupList.toArray(new GroupManager[1]), elicitor);
-          }
+        if (groups.length > 0) {
+          processAct(type, intensity, performer, groups, elicitor);
         }
-        return getAffectOutputDocument(fNameToCharacter, fNameToGroup);
-      }
+        return true;
 
       // proceed if input is an emotional display
-      if (ai.isSetEmotionDisplay()) {
-        String emType = ai.getEmotionDisplay().getType().toString();
-        String intensity = (ai.getEmotionDisplay().isSetIntensity())
-          ? ai.getEmotionDisplay().getIntensity().toString() : "1.0";
-        String elicitor = (ai.getEmotionDisplay().isSetElicitor())
-          ? ai.getEmotionDisplay().getElicitor() : "none";
-        elicitor = (elicitor == null) ? "none" : elicitor;
-        processEmotion(emType, doubleValue(intensity),
-          performer,
-          getCharacter(ai.getEmotionDisplay().getAddressee()),
-          getCharacter(ai.getEmotionDisplay().getListener()), elicitor);
+      case EmotionDisplay:
+        processEmotion(type, intensity, performer, addressees, listeners, elicitor);
         // Group affect things ...
-        ArrayList<GroupManager> groupList = new ArrayList<GroupManager>();
-        for (Enumeration<String> cEnum = fNameToGroup.keys(); cEnum.hasMoreElements();) {
-          GroupManager group = fNameToGroup.get(cEnum.nextElement());
-          if (group.hasCharacter(performer)) {
-            groupList.add(group);
-          }
+        if (groups.length > 0) {
+          processEmotion(type, intensity, performer, groups, elicitor);
         }
-        if (groupList.size() > 0) {
-          processEmotion(emType, doubleValue(intensity), performer, groupList.toArray(new GroupManager[1]), elicitor);
-        }
-        return getAffectOutputDocument(fNameToCharacter, fNameToGroup);
-      }
+        return true;
 
       // proceed if input is a mood display
-      if (ai.isSetMoodDisplay()) {
-        String moType = ai.getMoodDisplay().getType().toString();
-        String intensity = (ai.getMoodDisplay().isSetIntensity())
-          ? ai.getMoodDisplay().getIntensity().toString() : "1.0";
-        String elicitor = (ai.getMoodDisplay().isSetElicitor())
-          ? ai.getMoodDisplay().getElicitor() : "none";
-        elicitor = (elicitor == null) ? "none" : elicitor;
-        processMood(moType, doubleValue(intensity),
-          performer,
-          getCharacter(ai.getMoodDisplay().getAddressee()),
-          getCharacter(ai.getMoodDisplay().getListener()), elicitor);
+      case MoodDisplay:
+        processMood(type, intensity, performer, addressees, listeners, elicitor);
         // Group affect things ...
-        ArrayList<GroupManager> groupList = new ArrayList<GroupManager>();
-        for (Enumeration<String> cEnum = fNameToGroup.keys(); cEnum.hasMoreElements();) {
-          GroupManager group = fNameToGroup.get(cEnum.nextElement());
-          if (group.hasCharacter(performer)) {
-            groupList.add(group);
-          }
-        }
-        if (groupList.size() > 0) {
-          processMood(moType, doubleValue(intensity), performer, groupList.toArray(new GroupManager[1]), elicitor);
+        if (groups.length > 0) {
+          processMood(type, intensity, performer, groups, elicitor);
         }
-        return getAffectOutputDocument(fNameToCharacter, fNameToGroup);
-      }
+        return true;
 
       // proceed is input is an action appraisal
-      if (ai.isSetAction()) {
-        String actionType = ai.getAction().getType().toString();
-        String intensity = (ai.getAction().isSetIntensity())
-          ? ai.getAction().getIntensity().toString() : "1.0";
-        String elicitor = (ai.getAction().isSetElicitor())
-          ? ai.getAction().getElicitor() : "none";
-        elicitor = (elicitor == null) ? "none" : elicitor;
-        processAction(actionType, doubleValue(intensity), performer, elicitor);
-        return getAffectOutputDocument(fNameToCharacter, fNameToGroup);
-      }
+      case Action:
+        processAction(type, intensity, performer, elicitor);
+        return true;
 
       // proceed is input is an event appraisal
-      if (ai.isSetEvent()) {
-        String eventType = ai.getEvent().getType().toString();
-        String intensity = (ai.getEvent().isSetIntensity())
-          ? ai.getEvent().getIntensity().toString() : "1.0";
-        String elicitor = (ai.getEvent().isSetElicitor())
-          ? ai.getEvent().getElicitor() : "none";
-        elicitor = (elicitor == null) ? "none" : elicitor;
-        processEvent(eventType, doubleValue(intensity), performer, elicitor);
-        return getAffectOutputDocument(fNameToCharacter, fNameToGroup);
-      }
+      case Event:
+        processEvent(type, intensity, performer, elicitor);
+        return true;
 
       // proceed is input is an object appraisal
-      if (ai.isSetObject()) {
-        String objectType = ai.getObject().getType().toString();
-        String intensity = (ai.getObject().isSetIntensity())
-          ? ai.getObject().getIntensity().toString() : "1.0";
-        String elicitor = (ai.getObject().isSetElicitor())
-          ? ai.getObject().getElicitor() : "none";
-        elicitor = (elicitor == null) ? "none" : elicitor;
-        processObject(objectType, doubleValue(intensity), performer, elicitor);
-        return getAffectOutputDocument(fNameToCharacter, fNameToGroup);
-      }
+      case Object:
+        processObject(type, intensity, performer, elicitor);
+        return true;
 
       // proceed is inputare eec variables
-      if (ai.isSetBasicEEC()) {
-        String type = "EEC";
-        String signal = "EEC";
-
+      case BasicEEC:
         // get the eec values, if numerically zero (0.0) put variable to null for further processing ...
-        Desirability desirability = new Desirability(ai.getBasicEEC().getDesirability());
+        Desirability desirability = new Desirability(signal.getDesirability());
         desirability = (desirability.degree() != 0.0d) ? desirability : null;
-        Praiseworthiness praiseworthiness = new Praiseworthiness(ai.getBasicEEC().getPraiseworthiness());
+        Praiseworthiness praiseworthiness = new Praiseworthiness(signal.getPraiseworthiness());
         praiseworthiness = (praiseworthiness.degree() != 0.0d) ? praiseworthiness : null;
-        Appealingness appealingness = new Appealingness(ai.getBasicEEC().getAppealingness());
+        Appealingness appealingness = new Appealingness(signal.getAppealingness());
         appealingness = (appealingness.degree() != 0.0d) ? appealingness : null;
-        Likelihood likelihood = new Likelihood(ai.getBasicEEC().getLikelihood());
+        Likelihood likelihood = new Likelihood(signal.getLikelihood());
         likelihood = (likelihood.degree() != 0.0d) ? likelihood : null;
-        Realization realization = new Realization(ai.getBasicEEC().getRealization());
+        Realization realization = new Realization(signal.getRealization());
         realization = (realization.degree() != 0.0d) ? realization : null;
-        Liking liking = new Liking(ai.getBasicEEC().getLiking());
+        Liking liking = new Liking(signal.getLiking());
         liking = (liking.degree() != 0.0d) ? liking : null;
-        Agency agency = (ai.getBasicEEC().getAgency().toString().equalsIgnoreCase("self")) ? Agency.SELF : Agency.OTHER;
-
-        String elicitor = (ai.getBasicEEC().isSetElicitor()) ? ai.getBasicEEC().getElicitor() : "none";
-        elicitor = (elicitor == null) ? "none" : elicitor;
+        Agency agency = (signal.getAgency().equalsIgnoreCase("self")) ? Agency.SELF : Agency.OTHER;
 
-        AppraisalVariables appVars = new AppraisalVariables(type, signal, desirability, praiseworthiness, appealingness,
+        AppraisalVariables appVars = new AppraisalVariables("EEC", "EEC", desirability, praiseworthiness, appealingness,
           likelihood, realization, agency, liking, elicitor);
 
         processBasicECC(appVars, performer, elicitor);
-        return getAffectOutputDocument(fNameToCharacter, fNameToGroup);
-      }
+        return true;
     }
 
-    return null;
+    return false;
   }
 
   /**
@@ -1460,6 +2086,9 @@ public class AffectManager extends AppraisalManager {
     if (fOutputTimer != null) {
       fOutputTimer.cancel();
     }
+    for (AffectScheduler.Tick tick : fPeriodToSubscriptionTimer.values()) {
+      tick.cancel();
+    }
     for (Enumeration<String> cEnum = fNameToCharacter.keys(); cEnum.hasMoreElements();) {
       fNameToCharacter.get(cEnum.nextElement()).stopAll();
     }
@@ -10,9 +10,12 @@ package de.affect.manage;
 import java.text.DecimalFormat;
 import java.text.DecimalFormatSymbols;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Enumeration;
 import java.util.Hashtable;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.WeakHashMap;
 
 import static de.affect.util.Convert.doubleValue;
 import static de.affect.util.Convert.prettyPrint;
@@ -24,8 +27,10 @@ import static de.affect.personality.PersonalityMoodRelations.*;
 import static de.affect.emotion.EmotionsPADRelation.*;
 
 import de.affect.emotion.Emotion;
+import de.affect.emotion.EmotionVector;
 import de.affect.emotion.EmotionsPADRelation;
 import de.affect.mood.Mood;
+import de.affect.personality.Personality;
 import de.affect.manage.CharacterManager;
 import de.affect.util.Convert;
 import de.affect.xml.CharacterType;
@@ -66,6 +71,18 @@ import org.w3c.dom.Node;
 public class AffectOutputCreater {
 
   public static Logger sLog = Logger.getLogger("Alma");
+  // the affect output of each character and group, see getAffectOutputDocument
+  private static final WeakHashMap<CharacterManager, CharacterFragment> sCharacterFragments =
+    new WeakHashMap<CharacterManager, CharacterFragment>();
+  private static final WeakHashMap<GroupManager, GroupFragment> sGroupFragments =
+    new WeakHashMap<GroupManager, GroupFragment>();
+  private static final DecimalFormat sEmotionFormat = new DecimalFormat("0.00");
+
+  static {
+    DecimalFormatSymbols formSymbols = new DecimalFormatSymbols();
+    formSymbols.setDecimalSeparator('.');
+    sEmotionFormat.setDecimalFormatSymbols(formSymbols);
+  }
 
   protected AffectOutputCreater() {
   }
@@ -252,9 +269,10 @@ public class AffectOutputCreater {
         ed.setValue(new Float(emotion.getIntensity()));
 
         if (emotion.getAppraisalVariables() != null) {
+          long duration = character.getEmotionEngine().simulateDecaySize(emotion) * character.getAffectConsts().emotionDecayPeriod;
           e.setStart(new BigInteger(emotion.getStart() + ""));
-          e.setEnd(new BigInteger((emotion.getStart() + character.getEmotionEngine().simulateDecay(emotion).size() * character.getAffectConsts().emotionDecayPeriod) + ""));
-          e.setDuration(new BigInteger((character.getEmotionEngine().simulateDecay(emotion).size() * character.getAffectConsts().emotionDecayPeriod) + ""));
+          e.setEnd(new BigInteger((emotion.getStart() + duration) + ""));
+          e.setDuration(new BigInteger(duration + ""));
         }
 
       } else {
@@ -331,149 +349,331 @@ public class AffectOutputCreater {
     return emlDoc;
   }
 
-  public static synchronized AffectOutputDocument getAffectOutputDocument(Hashtable<String, CharacterManager> characters, Hashtable<String, GroupManager> groups) {
+  public static AffectOutputDocument getAffectOutputDocument(Hashtable<String, CharacterManager> characters, Hashtable<String, GroupManager> groups) {
+    return getAffectOutputDocument(characters, groups, 0);
+  }
+
+  /**
+   * Returns an AffectOutput document that contains only the characters and
+   * groups whose affective state has changed since the specified state
+   * version. A version of 0 returns the affect of all characters and groups.
+   *
+   * @param characters the characters
+   * @param groups the groups
+   * @param since the last state version that is known to the receiver
+   *
+   * @return the affect of the changed characters and groups
+   */
+  public static AffectOutputDocument getAffectOutputDocument(Hashtable<String, CharacterManager> characters,
+    Hashtable<String, GroupManager> groups, long since) {
+    return getAffectOutputDocument(characters, groups, since, null);
+  }
+
+  /**
+   * Returns an AffectOutput document that contains the subscribed affect
+   * information of the subscribed characters and groups whose affective
+   * state has changed since the specified state version. The document is
+   * valid against the Affect.xsd: characters always contain all their
+   * affect elements, but only the dominant emotion as emotion if the
+   * emotions are not subscribed, and groups contain their metrics only if
+   * they are subscribed. Since an AffectOutput contains at least one
+   * character, the subscribed characters, or the members of the subscribed
+   * groups, are added although they have not changed if no character has.
+   *
+   * @param characters the characters
+   * @param groups the groups
+   * @param since the last state version that is known to the receiver
+   * @param subscription the subscribed affect output, null for all of it
+   *
+   * @return the subscribed affect of the changed characters and groups
+   */
+  public static AffectOutputDocument getAffectOutputDocument(Hashtable<String, CharacterManager> characters,
+    Hashtable<String, GroupManager> groups, long since, AffectSubscription subscription) {
     AffectOutputDocument aoDoc = AffectOutputDocument.Factory.newInstance();
+    AffectOutput aOutput = aoDoc.addNewAffectOutput();
+    // Characters
+    if (characters != null) {
+      for (Enumeration<String> cEnum = characters.keys(); cEnum.hasMoreElements();) {
+        CharacterManager character = characters.get(cEnum.nextElement());
+        if ((character.getStateVersion() > since) && includes(subscription, character.getName())) {
+          addCharacterAffect(aOutput, character, subscription);
+        }
+      }
+      if (aOutput.sizeOfCharacterAffectArray() == 0) {
+        for (Enumeration<String> cEnum = characters.keys(); cEnum.hasMoreElements();) {
+          CharacterManager character = characters.get(cEnum.nextElement());
+          if (includes(subscription, character.getName())) {
+            addCharacterAffect(aOutput, character, subscription);
+          }
+        }
+      }
+    }
     // Groups
-    AffectOutput aOutput = AffectOutput.Factory.newInstance();
     if ((groups != null) && (groups.size() > 0)) {
-      ArrayList<GroupAffect> groupAffectList = new ArrayList<GroupAffect>();
+      if (aOutput.sizeOfCharacterAffectArray() == 0) {
+        LinkedHashSet<CharacterManager> members = new LinkedHashSet<CharacterManager>();
+        for (Enumeration<String> cEnum = groups.keys(); cEnum.hasMoreElements();) {
+          GroupManager group = groups.get(cEnum.nextElement());
+          if (includes(subscription, group.getName())) {
+            members.addAll(Arrays.asList(group.getCharacters()));
+          }
+        }
+        for (CharacterManager character : members) {
+          addCharacterAffect(aOutput, character, subscription);
+        }
+      }
       for (Enumeration<String> cEnum = groups.keys(); cEnum.hasMoreElements();) {
-        int groupNum = 1;
         GroupManager group = groups.get(cEnum.nextElement());
-        GroupAffect groupAffect = GroupAffect.Factory.newInstance();
-        groupAffect.setName(group.getName());
-        String groupCharacters = "";
-        for (CharacterManager character : group.getCharacters()) {
-          groupCharacters += character.getName() + ",";
+        if ((group.getStateVersion() <= since) || !includes(subscription, group.getName())) {
+          continue;
         }
-        groupCharacters.substring(0, groupCharacters.length() - 1);
-        groupAffect.setCharacters(groupCharacters);
-        OverallMood overallMood = OverallMood.Factory.newInstance();
-        Mood groupMood = group.getCurrentMood();
-        overallMood.setMoodword(MoodWord.Enum.forString(groupMood.getMoodWord()));
-        overallMood.setIntensity(MoodType.Intensity.Enum.forString(groupMood.getMoodWordIntensity()));
-        overallMood.setPleasure(groupMood.getPleasure());
-        overallMood.setArousal(groupMood.getArousal());
-        overallMood.setDominance(groupMood.getDominance());
-        SocialIntegrity socialIntegrity = SocialIntegrity.Factory.newInstance();
-        socialIntegrity.setValue(prettyPrint(group.getSocialIntegrity()));
-
-        MoodSimilarities moodSimilarities = MoodSimilarities.Factory.newInstance();
-        boolean first = true;
-        MoodSimilarities.CharacterPair characterPair = null;
-        for (String character : group.getCharacterArrayInSimilarMood()) {
-          if (first) {
-            characterPair = moodSimilarities.addNewCharacterPair();
-            if (character.equals("none")) {
-              characterPair.setFirst("none");
-              characterPair.setSecond("none");
-            } else {
-              characterPair.setFirst(character);
-            }
-            first = false;
+        GroupAffect groupAffect = aOutput.addNewGroupAffect();
+        GroupFragment groupFragment = getGroupFragment(group);
+        synchronized (groupFragment) {
+          GroupAffect fragment = getGroupAffect(group, groupFragment);
+          if (includes(subscription, AffectSubscription.Field.GroupMetrics)) {
+            groupAffect.set(fragment);
           } else {
-            characterPair.setSecond(character);
-            groupAffect.setMoodSimilarities(moodSimilarities);
-            first = true;
+            // the group metrics are optional in the Affect.xsd
+            groupAffect.setName(fragment.getName());
+            groupAffect.setCharacters(fragment.getCharacters());
           }
         }
-        MoodExtremes moodExtremes = MoodExtremes.Factory.newInstance();
-        List<CharacterManager> inExtremeMood = group.getCharactersInExtremeMood();
-        synchronized (inExtremeMood) {
-          for (CharacterManager cm : inExtremeMood) {
-            MoodExtremes.Character character = moodExtremes.addNewCharacter();
-            character.setName(cm.getName());
-            character.setDifference(cm.getDistancetoDefaultMood());
-          }
+      }
+    }
+    return aoDoc;
+  }
+
+  /**
+   * Adds the subscribed affect output of a character to an AffectOutput.
+   */
+  private static void addCharacterAffect(AffectOutput aOutput, CharacterManager character,
+    AffectSubscription subscription) {
+    CharacterAffect characterAffect = aOutput.addNewCharacterAffect();
+    CharacterFragment characterFragment = getCharacterFragment(character);
+    // each fragment is updated and copied under its own lock, so that
+    // documents are built in parallel
+    synchronized (characterFragment) {
+      CharacterAffect fragment = getCharacterAffect(character, characterFragment);
+      characterAffect.set(fragment);
+      if (!includes(subscription, AffectSubscription.Field.Emotions)) {
+        // the Affect.xsd requires at least one emotion
+        characterAffect.getEmotions().setEmotionArray(new EmotionType[]{fragment.getDominantEmotion()});
+      }
+    }
+  }
+
+  /**
+   * Returns the fragment that holds the affect output of a character.
+   */
+  private static CharacterFragment getCharacterFragment(CharacterManager character) {
+    synchronized (sCharacterFragments) {
+      CharacterFragment fragment = sCharacterFragments.get(character);
+      if (fragment == null) {
+        fragment = new CharacterFragment();
+        fragment.fAffect.setName(character.getName());
+        sCharacterFragments.put(character, fragment);
+      }
+      return fragment;
+    }
+  }
+
+  /**
+   * Returns the cached affect output of a character. The parts of the output
+   * are only created again if the character's state version has changed and
+   * the personality and the moods only if they have been replaced. The caller
+   * must hold the lock of the fragment.
+   */
+  private static CharacterAffect getCharacterAffect(CharacterManager character, CharacterFragment fragment) {
+    long version = character.getStateVersion();
+    if (fragment.fVersion == version) {
+      return fragment.fAffect;
+    }
+    CharacterAffect characterAffect = fragment.fAffect;
+    // add the character's personality parameters
+    Personality personality = character.getPersonality();
+    if (personality != fragment.fPersonality) {
+      CharacterAffect.Personality p = (characterAffect.getPersonality() != null)
+        ? characterAffect.getPersonality() : characterAffect.addNewPersonality();
+      p.setDerived(character.isDerivedPersonality());
+      p.setOpenness(personality.getOpenness());
+      p.setConscientiousness(personality.getConscientiousness());
+      p.setExtraversion(personality.getExtraversion());
+      p.setAgreeableness(personality.getAgreeableness());
+      p.setNeurotism(personality.getNeurotism());
+      fragment.fPersonality = personality;
+    }
+    // add the character's current mood state, moods are immutable
+    Mood mood = character.getCurrentMood();
+    if (mood != fragment.fMood) {
+      setMood((characterAffect.getMood() != null) ? characterAffect.getMood() : characterAffect.addNewMood(), mood);
+      fragment.fMood = mood;
+    }
+    Mood moodTendency = character.getCurrentMoodTendency();
+    if (moodTendency != fragment.fMoodTendency) {
+      setMood((characterAffect.getMoodTendency() != null)
+        ? characterAffect.getMoodTendency() : characterAffect.addNewMoodTendency(), moodTendency);
+      fragment.fMoodTendency = moodTendency;
+    }
+    Mood defaultMood = character.defaultMood();
+    if (defaultMood != fragment.fDefaultMood) {
+      setMood((characterAffect.getDefaultMood() != null)
+        ? characterAffect.getDefaultMood() : characterAffect.addNewDefaultMood(), defaultMood);
+      fragment.fDefaultMood = defaultMood;
+    }
+
+    EmotionVector emotions = character.getCurrentEmotions();
+    EmotionType emotion = (characterAffect.getDominantEmotion() != null)
+      ? characterAffect.getDominantEmotion() : characterAffect.addNewDominantEmotion();
+    Emotion domEmotion = emotions.getDominantEmotion();
+    double intensity = domEmotion.getIntensity();
+    double baseline = domEmotion.getBaseline();
+    if (intensity != baseline) {
+      emotion.setName(EmotionName.Enum.forString(domEmotion.getType().toString()));
+      emotion.setValue(sEmotionFormat.format(intensity));
+    } else {
+      emotion.setName(EmotionName.Enum.forString("Undefined"));
+      emotion.setValue("0.00");
+    }
+
+    // the emotion elements are reused as long as there are as many emotions
+    Emotions emosDoc = (characterAffect.getEmotions() != null)
+      ? characterAffect.getEmotions() : characterAffect.addNewEmotions();
+    List<Emotion> emotionList = emotions.getEmotions();
+    if (emosDoc.sizeOfEmotionArray() != emotionList.size()) {
+      emosDoc.setEmotionArray(new EmotionType[0]);
+      for (int i = 0; i < emotionList.size(); i++) {
+        emosDoc.addNewEmotion();
+      }
+    }
+    for (int i = 0; i < emotionList.size(); i++) {
+      Emotion e = emotionList.get(i);
+      EmotionType eDoc = emosDoc.getEmotionArray(i);
+      eDoc.setName(EmotionName.Enum.forString(e.getType().toString()));
+      eDoc.setValue(sEmotionFormat.format(e.getIntensity()));
+    }
+    fragment.fVersion = version;
+    return characterAffect;
+  }
+
+  /**
+   * Returns the fragment that holds the affect output of a group.
+   */
+  private static GroupFragment getGroupFragment(GroupManager group) {
+    synchronized (sGroupFragments) {
+      GroupFragment fragment = sGroupFragments.get(group);
+      if (fragment == null) {
+        fragment = new GroupFragment();
+        fragment.fAffect.setName(group.getName());
+        StringBuilder groupCharacters = new StringBuilder();
+        for (CharacterManager character : group.getCharacters()) {
+          groupCharacters.append(character.getName()).append(",");
         }
-        groupAffect.setMoodExtremes(moodExtremes);
-        groupAffectList.add(groupAffect);
+        fragment.fAffect.setCharacters(groupCharacters.toString());
+        sGroupFragments.put(group, fragment);
       }
-      aOutput.setGroupAffectArray(groupAffectList.toArray(new GroupAffect[1]));
+      return fragment;
     }
-    // Characters
-    if (characters != null) {
-      ArrayList<CharacterAffect> characterAffectList = new ArrayList<CharacterAffect>();
-      for (Enumeration<String> cEnum = characters.keys(); cEnum.hasMoreElements();) {
-        int charNum = 1;
-        CharacterManager character = characters.get(cEnum.nextElement());
-        CharacterAffect characterAffect = CharacterAffect.Factory.newInstance();
-        characterAffect.setName(character.getName());
-        // add the character's personality parameters
-        AffectOutput.CharacterAffect.Personality personality =
-          AffectOutput.CharacterAffect.Personality.Factory.newInstance();
-        personality.setDerived(character.isDerivedPersonality());
-        personality.setOpenness(character.getPersonality().getOpenness());
-        personality.setConscientiousness(character.getPersonality().getConscientiousness());
-        personality.setExtraversion(character.getPersonality().getExtraversion());
-        personality.setAgreeableness(character.getPersonality().getAgreeableness());
-        personality.setNeurotism(character.getPersonality().getNeurotism());
-        characterAffect.setPersonality(personality);
-        // add the character's current mood state
-        MoodType mood = MoodType.Factory.newInstance();
-        Mood charactersMood = character.getCurrentMood();
-        mood.setMoodword(MoodWord.Enum.forString(charactersMood.getMoodWord()));
-        mood.setIntensity(MoodType.Intensity.Enum.forString(charactersMood.getMoodWordIntensity()));
-        mood.setPleasure(charactersMood.getPleasure());
-        mood.setArousal(charactersMood.getArousal());
-        mood.setDominance(charactersMood.getDominance());
-        characterAffect.setMood(mood);
-        MoodType moodTendency = MoodType.Factory.newInstance();
-        Mood charactersMoodTendency = character.getCurrentMoodTendency();
-        moodTendency.setMoodword(MoodWord.Enum.forString(charactersMoodTendency.getMoodWord()));
-        moodTendency.setIntensity(MoodType.Intensity.Enum.forString(charactersMoodTendency.getMoodWordIntensity()));
-        moodTendency.setPleasure(charactersMoodTendency.getPleasure());
-        moodTendency.setArousal(charactersMoodTendency.getArousal());
-        moodTendency.setDominance(charactersMoodTendency.getDominance());
-        characterAffect.setMoodTendency(moodTendency);
-        MoodType defaultMood = MoodType.Factory.newInstance();
-        Mood charactersDefaultMood = character.defaultMood();
-        defaultMood.setMoodword(MoodWord.Enum.forString(charactersDefaultMood.getMoodWord()));
-        defaultMood.setIntensity(MoodType.Intensity.Enum.forString(charactersDefaultMood.getMoodWordIntensity()));
-        defaultMood.setPleasure(charactersDefaultMood.getPleasure());
-        defaultMood.setArousal(charactersDefaultMood.getArousal());
-        defaultMood.setDominance(charactersDefaultMood.getDominance());
-        characterAffect.setDefaultMood(defaultMood);
-
-        EmotionType emotion = EmotionType.Factory.newInstance();
-        Emotion domEmotion = character.getCurrentEmotions().getDominantEmotion();
-        double intensity = domEmotion.getIntensity();
-        double baseline = domEmotion.getBaseline();
-        if (intensity != baseline) {
-          DecimalFormat form = new DecimalFormat("0.00");
-          DecimalFormatSymbols formSymbols = new DecimalFormatSymbols();
-          formSymbols.setDecimalSeparator('.');
-          form.setDecimalFormatSymbols(formSymbols);
-          emotion.setName(EmotionName.Enum.forString(domEmotion.getType().toString()));
-          emotion.setValue(form.format(intensity));
+  }
+
+  /**
+   * Returns the cached affect output of a group. The output is created
+   * again if the state version of the group or of one of its members has
+   * changed, since the mood extremes contain the members' current distance to
+   * their default mood. The caller must hold the lock of the fragment.
+   */
+  private static GroupAffect getGroupAffect(GroupManager group, GroupFragment fragment) {
+    long version = group.getStateVersion();
+    for (CharacterManager character : group.getCharacters()) {
+      version = Math.max(version, character.getStateVersion());
+    }
+    if (fragment.fVersion == version) {
+      return fragment.fAffect;
+    }
+    GroupAffect groupAffect = fragment.fAffect;
+    setMood((groupAffect.isSetOverallMood()) ? groupAffect.getOverallMood() : groupAffect.addNewOverallMood(),
+      group.getCurrentMood());
+    SocialIntegrity socialIntegrity = (groupAffect.isSetSocialIntegrity())
+      ? groupAffect.getSocialIntegrity() : groupAffect.addNewSocialIntegrity();
+    socialIntegrity.setValue(prettyPrint(group.getSocialIntegrity()));
+    if (groupAffect.isSetMoodSimilarities()) {
+      groupAffect.unsetMoodSimilarities();
+    }
+    MoodSimilarities moodSimilarities = MoodSimilarities.Factory.newInstance();
+    boolean first = true;
+    MoodSimilarities.CharacterPair characterPair = null;
+    for (String character : group.getCharacterArrayInSimilarMood()) {
+      if (first) {
+        characterPair = moodSimilarities.addNewCharacterPair();
+        if (character.equals("none")) {
+          characterPair.setFirst("none");
+          characterPair.setSecond("none");
         } else {
-          emotion.setName(EmotionName.Enum.forString("Undefined"));
-          emotion.setValue("0.00");
-        }
-        characterAffect.setDominantEmotion(emotion);
-
-        Emotions emosDoc = Emotions.Factory.newInstance();
-        ArrayList<EmotionType> emotionsList = new ArrayList<EmotionType>();
-        int cnt = 1;
-        for (Emotion e : character.getCurrentEmotions().getEmotions()) {
-          EmotionType eDoc = EmotionType.Factory.newInstance();
-          double eInt = e.getIntensity();
-          double eBaseline = e.getBaseline();
-          DecimalFormat form = new DecimalFormat("0.00");
-          DecimalFormatSymbols formSymbols = new DecimalFormatSymbols();
-          formSymbols.setDecimalSeparator('.');
-          form.setDecimalFormatSymbols(formSymbols);
-          eDoc.setName(EmotionName.Enum.forString(e.getType().toString()));
-          eDoc.setValue(form.format(eInt));
-          emotionsList.add(eDoc);
+          characterPair.setFirst(character);
         }
-        emosDoc.setEmotionArray(emotionsList.toArray(new EmotionType[1]));
-        characterAffect.setEmotions(emosDoc);
-        characterAffectList.add(characterAffect);
+        first = false;
+      } else {
+        characterPair.setSecond(character);
+        groupAffect.setMoodSimilarities(moodSimilarities);
+        first = true;
       }
-      aOutput.setCharacterAffectArray(characterAffectList.toArray(new CharacterAffect[1]));
     }
-    aoDoc.setAffectOutput(aOutput);
-    return aoDoc;
+    MoodExtremes moodExtremes = MoodExtremes.Factory.newInstance();
+    List<CharacterManager> inExtremeMood = group.getCharactersInExtremeMood();
+    synchronized (inExtremeMood) {
+      for (CharacterManager cm : inExtremeMood) {
+        MoodExtremes.Character character = moodExtremes.addNewCharacter();
+        character.setName(cm.getName());
+        character.setDifference(cm.getDistancetoDefaultMood());
+      }
+    }
+    // the Affect.xsd requires at least one character in the mood extremes
+    if (moodExtremes.sizeOfCharacterArray() > 0) {
+      groupAffect.setMoodExtremes(moodExtremes);
+    } else if (groupAffect.isSetMoodExtremes()) {
+      groupAffect.unsetMoodExtremes();
+    }
+    fragment.fVersion = version;
+    return groupAffect;
+  }
+
+  private static void setMood(MoodType moodType, Mood mood) {
+    moodType.setMoodword(MoodWord.Enum.forString(mood.getMoodWord()));
+    moodType.setIntensity(MoodType.Intensity.Enum.forString(mood.getMoodWordIntensity()));
+    moodType.setPleasure(mood.getPleasure());
+    moodType.setArousal(mood.getArousal());
+    moodType.setDominance(mood.getDominance());
+  }
+
+  /**
+   * The <code>CharacterFragment</code> class holds the affect output of a
+   * character and the state it has been created from.
+   */
+  private static class CharacterFragment {
+
+    private final CharacterAffect fAffect = CharacterAffect.Factory.newInstance();
+    private long fVersion = -1;
+    private Personality fPersonality = null;
+    private Mood fMood = null;
+    private Mood fMoodTendency = null;
+    private Mood fDefaultMood = null;
+  }
+
+  /**
+   * The <code>GroupFragment</code> class holds the affect output of a group
+   * and the state version it has been created from.
+   */
+  private static class GroupFragment {
+
+    private final GroupAffect fAffect = GroupAffect.Factory.newInstance();
+    private long fVersion = -1;
+  }
+
+  private static boolean includes(AffectSubscription subscription, String name) {
+    return (subscription == null) || subscription.includes(name);
+  }
+
+  private static boolean includes(AffectSubscription subscription, AffectSubscription.Field field) {
+    return (subscription == null) || subscription.includes(field);
   }
 }
@@ -0,0 +1,178 @@
+/*
+ * AffectScheduler.java
+ *
+ * Copyright (c) 2004-2008 by Patrick Gebhard
+ * All rights reserved.
+ *
+ */
+package de.affect.manage;
+
+import java.util.logging.Level;
+
+import de.affect.emotion.Emotion;
+
+import static de.affect.manage.AffectManager.sLog;
+
+/**
+ * The class
+ * <code>AffectScheduler</code> drives the periodic affect computation tasks
+ * (emotion decay, mood computation, internal appraisal) of all characters and
+ * groups. Instead of one <code>java.util.Timer</code> thread per task, all
+ * tasks are executed by one engine-wide <code>AffectClock</code>.
+ *
+ * By default the scheduler uses a <code>RealTimeClock</code>, which shares a
+ * small, fixed pool of daemon worker threads between all tasks. A
+ * <code>VirtualClock</code> can be set instead to compute affect faster than
+ * real time. The clock has to be set before any character or group is
+ * created.
+ *
+ * Each task is scheduled with a fixed delay, exactly like
+ * <code>Timer.schedule(task, period, period)</code>, and a single task never
+ * runs concurrently with itself.
+ *
+ * @author Patrick Gebhard
+ *
+ * @version 1.0
+ */
+public class AffectScheduler {
+
+  private static final AffectScheduler sScheduler = new AffectScheduler();
+  private volatile AffectClock fClock = null;
+
+  private AffectScheduler() {
+  }
+
+  /**
+   * Returns the scheduler shared by all characters and groups.
+   *
+   * @return the engine-wide affect scheduler
+   */
+  public static AffectScheduler getScheduler() {
+    return sScheduler;
+  }
+
+  /**
+   * Returns the clock used by the affect computation.
+   *
+   * @return the current affect clock
+   */
+  public synchronized AffectClock getClock() {
+    if (fClock == null) {
+      fClock = new RealTimeClock();
+      Emotion.setClock(fClock);
+    }
+    return fClock;
+  }
+
+  /**
+   * Sets the clock used by the affect computation.
+   *
+   * @param clock the new affect clock
+   * @throws NullPointerException if clock is null
+   * @throws IllegalStateException if tasks are scheduled on the current clock
+   */
+  public synchronized void setClock(AffectClock clock) {
+    if (clock == null) {
+      throw new NullPointerException("Invalid null clock!");
+    }
+    if ((fClock != null) && (fClock != clock) && (fClock.getScheduledTaskCount() > 0)) {
+      throw new IllegalStateException("Clock cannot be changed while affect computation is running");
+    }
+    fClock = clock;
+    Emotion.setClock(clock);
+  }
+
+  /**
+   * Returns the current time of the affect clock in milliseconds.
+   *
+   * @return the current time in milliseconds
+   */
+  public long currentTimeMillis() {
+    AffectClock clock = fClock;
+    return (clock == null) ? System.currentTimeMillis() : clock.currentTimeMillis();
+  }
+
+  /**
+   * Schedules a task for repeated fixed-delay execution. The first execution
+   * takes place after the given period.
+   *
+   * @param task the task to be scheduled
+   * @param period time in milliseconds between successive task executions
+   *
+   * @return a tick handle that can be used to cancel the task
+   * @throws IllegalArgumentException if period is not positive
+   */
+  public Tick schedule(Runnable task, long period) {
+    if (period <= 0) {
+      throw new IllegalArgumentException("Invalid period " + period);
+    }
+    return getClock().schedule(new GuardedTask(task), period, period);
+  }
+
+  /**
+   * Schedules a task for a single execution after the given delay.
+   *
+   * @param task the task to be scheduled
+   * @param delay delay in milliseconds before the execution
+   *
+   * @return a tick handle that can be used to cancel the task
+   * @throws IllegalArgumentException if delay is negative
+   */
+  public Tick scheduleOnce(Runnable task, long delay) {
+    if (delay < 0) {
+      throw new IllegalArgumentException("Invalid delay " + delay);
+    }
+    return getClock().schedule(new GuardedTask(task), delay, 0);
+  }
+
+  /**
+   * Returns the number of currently scheduled tasks.
+   *
+   * @return the number of scheduled tasks
+   */
+  public int getScheduledTaskCount() {
+    return getClock().getScheduledTaskCount();
+  }
+
+  /**
+   * The interface
+   * <code>Tick</code> is the handle of a scheduled task.
+   */
+  public interface Tick {
+
+    /**
+     * Cancels the task. A currently running execution is not interrupted.
+     */
+    public void cancel();
+
+    /**
+     * Returns if the task has been cancelled.
+     *
+     * @return true if the task is cancelled, false otherwise
+     */
+    public boolean isCancelled();
+  }
+
+  /**
+   * The
+   * <code>GuardedTask</code> class keeps a periodic task alive if one of its
+   * executions fails. An executor silently stops scheduling a task that
+   * throws an exception.
+   */
+  private static class GuardedTask implements Runnable {
+
+    private final Runnable fTask;
+
+    private GuardedTask(Runnable task) {
+      fTask = task;
+    }
+
+    public void run() {
+      try {
+        fTask.run();
+      } catch (RuntimeException re) {
+        sLog.log(Level.WARNING, "Affect computation task failed", re);
+      }
+    }
+  }
+}
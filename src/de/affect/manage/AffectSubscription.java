@@ -0,0 +1,172 @@
+/*
+ * AffectSubscription.java
+ *
+ * Copyright (c) 2008 by Patrick Gebhard
+ * All rights reserved.
+ *
+ */
+package de.affect.manage;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * The <code>AffectSubscription</code> class describes which part of the
+ * affect output an affect update listener receives: the characters and
+ * groups, the kinds of affect information, the period in which it is
+ * notified and if it only receives the characters and groups that have
+ * changed since its last update.
+ *
+ * The affect output documents stay valid against the Affect.xsd, so the
+ * dominant emotion, the moods and the personality of a character are always
+ * sent. Only the affect information that the schema leaves optional can be
+ * left out.
+ *
+ * Subscribers that want the same characters, groups and affect information
+ * with the same period share the affect output documents.
+ *
+ * @author Patrick Gebhard
+ *
+ * @version 1.0
+ */
+public class AffectSubscription {
+
+  /**
+   * The kinds of optional affect information of a character or group.
+   */
+  public enum Field {
+
+    /** All emotions of a character, otherwise only the dominant emotion */
+    Emotions,
+    /** The social integrity, mood similarities and extremes of a group */
+    GroupMetrics
+  }
+  private final Set<String> fNames;
+  private final Set<Field> fFields;
+  private final int fPeriod;
+  private final boolean fChangesOnly;
+
+  /**
+   * Creates a subscription.
+   *
+   * @param names the names of the characters and groups, null for all
+   * characters and groups
+   * @param fields the optional affect information, null for all of it
+   * @param period the notification period in milliseconds
+   * @param changesOnly true if only characters and groups that have changed
+   * since the last notification are sent
+   *
+   * @throws IllegalArgumentException if the period is not positive
+   */
+  public AffectSubscription(Collection<String> names, Set<Field> fields, int period,
+    boolean changesOnly) {
+    if (period <= 0) {
+      throw new IllegalArgumentException("Subscription period must be positive: " + period);
+    }
+    fNames = (names == null) ? null : Collections.unmodifiableSet(new HashSet<String>(names));
+    Set<Field> subscribed = EnumSet.noneOf(Field.class);
+    subscribed.addAll((fields == null) ? EnumSet.allOf(Field.class) : fields);
+    fFields = Collections.unmodifiableSet(subscribed);
+    fPeriod = period;
+    fChangesOnly = changesOnly;
+  }
+
+  /**
+   * Returns the names of the subscribed characters and groups.
+   *
+   * @return the names, null if all characters and groups are subscribed
+   */
+  public Set<String> getNames() {
+    return fNames;
+  }
+
+  /**
+   * Returns the subscribed optional affect information.
+   *
+   * @return the affect information
+   */
+  public Set<Field> getFields() {
+    return fFields;
+  }
+
+  /**
+   * Returns the notification period.
+   *
+   * @return the period in milliseconds
+   */
+  public int getPeriod() {
+    return fPeriod;
+  }
+
+  /**
+   * Returns if only changed characters and groups are sent.
+   *
+   * @return true if only changed characters and groups are sent
+   */
+  public boolean isChangesOnly() {
+    return fChangesOnly;
+  }
+
+  /**
+   * Checks if a character or group is subscribed.
+   *
+   * @param name the name of the character or group
+   *
+   * @return true if the character or group is subscribed
+   */
+  public boolean includes(String name) {
+    return (fNames == null) || fNames.contains(name);
+  }
+
+  /**
+   * Checks if a kind of optional affect information is subscribed.
+   *
+   * @param field the affect information
+   *
+   * @return true if the affect information is subscribed
+   */
+  public boolean includes(Field field) {
+    return fFields.contains(field);
+  }
+
+  /**
+   * Checks if two subscriptions select the same characters, groups and
+   * affect information.
+   *
+   * @param s the other subscription
+   *
+   * @return true if both subscriptions select the same affect output
+   */
+  public boolean selectsSameOutput(AffectSubscription s) {
+    return fFields.equals(s.fFields)
+      && ((fNames == null) ? (s.fNames == null) : fNames.equals(s.fNames));
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (!(o instanceof AffectSubscription)) {
+      return false;
+    }
+    AffectSubscription s = (AffectSubscription) o;
+    return selectsSameOutput(s) && (fPeriod == s.fPeriod) && (fChangesOnly == s.fChangesOnly);
+  }
+
+  @Override
+  public int hashCode() {
+    int result = 17;
+    result = 37 * result + ((fNames == null) ? 0 : fNames.hashCode());
+    result = 37 * result + fFields.hashCode();
+    result = 37 * result + fPeriod;
+    result = 37 * result + (fChangesOnly ? 1 : 0);
+    return result;
+  }
+
+  @Override
+  public String toString() {
+    return "AffectSubscription: " + ((fNames == null) ? "all" : fNames.toString())
+      + " " + fFields + " every " + fPeriod + "ms" + (fChangesOnly ? " changes only" : "");
+  }
+}
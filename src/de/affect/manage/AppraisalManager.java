@@ -7,8 +7,13 @@
  */
 package de.affect.manage;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
+import java.util.IdentityHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import de.affect.appraisal.EEC;
 import de.affect.appraisal.AppraisalVariables;
@@ -23,6 +28,8 @@ import de.affect.emotion.PADEmotion;
 import de.affect.mood.Mood;
 import de.affect.xml.AffectInputDocument;
 import de.affect.xml.AffectInputDocument.AffectInput;
+import de.affect.xml.util.AffectInputReader;
+import de.affect.xml.util.AffectSignal;
 
 import org.apache.xmlbeans.XmlException;
 
@@ -35,22 +42,115 @@ import static de.affect.manage.AffectManager.sLog;
  * This code relys on the xml bean classes created with xmlbeans v1.3 from
  * the Affect.xsd schema, which is part of this distribution.
  *
+ * The process methods do not synchronize on the manager. They hold the
+ * appraisal locks of the involved characters and groups (see
+ * <code>EntityLock</code>), so that input for different characters is
+ * appraised in parallel.
+ *
  * @author Patrick Gebhard
  *
  * @version 1.0
  */
 public class AppraisalManager {
   
+  /** the minimal number of addressees or listeners appraised in parallel */
+  private volatile int fParallelAudience = 0;
+
   public AppraisalManager() {}
+
+  /**
+   * Lets the addressees and listeners of acts, emotions and moods appraise
+   * in parallel on the common fork/join pool, if there are at least the
+   * given number of them. Each addressee or listener only changes its own
+   * affective state, so the resulting emotions are the same as with serial
+   * appraisal. Audiences that contain a character or group more than once
+   * are appraised serially. Like in serial appraisal, the exception of the
+   * first failing addressee or listener is thrown and the members after it
+   * are skipped. Unlike in serial appraisal, later members whose appraisal
+   * has already started when the failure occurs are still appraised.
+   *
+   * @param minAudience the minimal number of addressees or listeners that are
+   * appraised in parallel
+   * @throws IllegalArgumentException if minAudience is less than 2
+   */
+  public void enableParallelAudience(int minAudience) {
+    if (minAudience < 2) {
+      throw new IllegalArgumentException("Invalid minimal audience " + minAudience);
+    }
+    fParallelAudience = minAudience;
+  }
+
+  /**
+   * Lets the addressees and listeners appraise one after another in the
+   * calling thread.
+   */
+  public void disableParallelAudience() {
+    fParallelAudience = 0;
+  }
+
+  /**
+   * Returns if addressees and listeners are appraised in parallel.
+   *
+   * @return true if parallel appraisal is enabled, false otherwise
+   */
+  public boolean isParallelAudienceEnabled() {
+    return (fParallelAudience > 0);
+  }
   
   /**
-   * The method <code>parseInput</code> gets the related java object to the
-   * AffectInput XML element defined by the Affect.xsd.
+   * The method <code>parseInputString</code> gets the related java object to
+   * the AffectInput XML element defined by the Affect.xsd.
+   *
+   * The input is read like by <code>parseInput</code>, the object is created
+   * from the signal. Callers that do not need the object should use
+   * <code>parseInput</code>.
    *
    * @param xmlDoc a string which contains the AffectInput XML element
    */
   public AffectInput parseInputString(String xmlDoc) throws XmlException {
-    AffectInputDocument aiDoc = AffectInputDocument.Factory.parse(xmlDoc);
+    return parseInput(xmlDoc).toAffectInput();
+  }
+
+  /**
+   * The method <code>parseInput</code> gets the signal of an AffectInput XML
+   * element defined by the Affect.xsd. Usual input is read without xml beans,
+   * other input is parsed and validated by xml beans.
+   *
+   * @param xmlDoc a character sequence which contains the AffectInput XML
+   * element
+   */
+  public AffectSignal parseInput(CharSequence xmlDoc) throws XmlException {
+    AffectSignal signal = AffectInputReader.read(xmlDoc);
+    return (signal != null) ? signal : AffectSignal.valueOf(parseAndValidate(xmlDoc.toString()));
+  }
+
+  /**
+   * The method <code>parseInput</code> gets the signal of an encoded
+   * AffectInput XML element defined by the Affect.xsd. Usual input is read
+   * without xml beans, other input is parsed and validated by xml beans.
+   *
+   * @param data a buffer which contains the AffectInput XML element
+   * @param offset the start of the element in the buffer
+   * @param length the length of the element
+   */
+  public AffectSignal parseInput(byte[] data, int offset, int length) throws XmlException {
+    AffectSignal signal = AffectInputReader.read(data, offset, length);
+    if (signal != null) {
+      return signal;
+    }
+    try {
+      AffectInputDocument aiDoc = AffectInputDocument.Factory.parse(new ByteArrayInputStream(data, offset, length));
+      return AffectSignal.valueOf(validate(aiDoc));
+    } catch (IOException io) {
+      throw new XmlException(io);
+    }
+  }
+
+  private AffectInput parseAndValidate(String xmlDoc) throws XmlException {
+    return validate(AffectInputDocument.Factory.parse(xmlDoc));
+  }
+
+  private AffectInput validate(AffectInputDocument aiDoc) throws XmlException {
     AffectInput ai = aiDoc.getAffectInput();
     if (aiDoc.validate()) {
       return ai;
@@ -73,11 +173,11 @@ public class AppraisalManager {
   /**
    * appraise for Characters
    */
-  private synchronized void appraise(CharacterManager character, AppraisalVariables appVars,
+  private void appraise(CharacterManager character, AppraisalVariables appVars,
       double intensityCorrection, String currentElicitor) {
     if (appVars != null) {
       String elicitor = (currentElicitor != null) ? currentElicitor : "none";
-      String type = appVars.getType();
+      AppraisalVariables.Kind kind = appVars.getKind();
       Desirability desirability = appVars.getDesirability();
       Praiseworthiness praiseworthiness = appVars.getPraiseworthiness();
       Appealingness appealingness = appVars.getAppealingness();
@@ -86,7 +186,7 @@ public class AppraisalManager {
       Liking liking = appVars.getLiking();
       Agency agency = appVars.getAgency();
       
-      if (type.equals("EEC")) {
+      if (kind == AppraisalVariables.Kind.EEC) {
         // if EEC contains a realization value, than no other variable is considered ...
         if ((realization != null) ) {
           Realization corrRealization =
@@ -157,7 +257,7 @@ public class AppraisalManager {
         }
       }
       
-      if (type.equals("Action")) {
+      if (kind == AppraisalVariables.Kind.Action) {
         //sLog.info("\tas action");
         if ((praiseworthiness != null) && (agency != null)) {
           Praiseworthiness corrPraiseworthiness =
@@ -166,7 +266,7 @@ public class AppraisalManager {
         }
         return;
       }
-      if (type.equals("Event")) {
+      if (kind == AppraisalVariables.Kind.Event) {
         //sLog.info("\tas event");
         if ((realization != null) ) {
           Realization corrRealization =
@@ -197,7 +297,7 @@ public class AppraisalManager {
           return;
         }
       }
-      if (type.equals("Object")) {
+      if (kind == AppraisalVariables.Kind.Object) {
         //sLog.info("\tas object");
         if ((appealingness != null)) {
           Appealingness corrAppealingness =
@@ -214,12 +314,12 @@ public class AppraisalManager {
   /**
    * appraise for Groups
    */
-  private synchronized void appraise(GroupManager group, AppraisalVariables appVars,
+  private void appraise(GroupManager group, AppraisalVariables appVars,
       double intensityCorrection, String currentElicitor) {
     if (appVars != null) {
       String elicitor = (currentElicitor != null) ?
         currentElicitor : "none";
-      String type = appVars.getType();
+      AppraisalVariables.Kind kind = appVars.getKind();
       Desirability desirability = appVars.getDesirability();
       Praiseworthiness praiseworthiness = appVars.getPraiseworthiness();
       Appealingness appealingness = appVars.getAppealingness();
@@ -227,7 +327,7 @@ public class AppraisalManager {
       Realization realization = appVars.getRealization();
       Liking liking = appVars.getLiking();
       Agency agency = appVars.getAgency();
-      if (type.equals("Action")) {
+      if (kind == AppraisalVariables.Kind.Action) {
         //sLog.info("\tas action");
         if ((praiseworthiness != null) && (agency != null)) {
           Praiseworthiness corrPraiseworthiness =
@@ -236,7 +336,7 @@ public class AppraisalManager {
         }
         return;
       }
-      if (type.equals("Event")) {
+      if (kind == AppraisalVariables.Kind.Event) {
         //sLog.info("\tas event");
         if ((realization != null) ) {
           Realization corrRealization =
@@ -267,7 +367,7 @@ public class AppraisalManager {
           return;
         }
       }
-      if (type.equals("Object")) {
+      if (kind == AppraisalVariables.Kind.Object) {
         //sLog.info("\tas object");
         if ((appealingness != null)) {
           Appealingness corrAppealingness =
@@ -283,362 +383,401 @@ public class AppraisalManager {
   
   
   /**
-   * processBasicEEC for Characters
+   * Appraisal of a signal of the performer by one addressee or listener.
+   * Characters and groups that have no rule for the signal are not
+   * affected.
    */
-  public synchronized void processBasicECC(AppraisalVariables appVar, CharacterManager performer, String elicitor) {
-    // EECs for performer
-    if (performer == null) {
-      //sLog.warning("Performing character not identified! Dropping basic eec");
+  private void appraiseMember(CharacterManager performer, EntityManager member,
+      String key, AppraisalRuleType ruleType, double intensity, String elicitor) {
+    AppraisalVariables[] appVars = member.getAppraisalVariables(performer, key, ruleType);
+    if (appVars.length == 0) {
+      //sLog.warning(member.getName() + " cannot appraise " + key + " from " + performer.getName() + "! No rule available!");
       return;
     }
-    //sLog.info("Appraising eec for " + performer.getName());
-    // intensity has to be 1.0d because eec value will be multiplied by this.
-    appraise(performer, appVar, 1.0d, elicitor);
-    performer.inferEmotions();
+    if (member instanceof GroupManager) {
+      GroupManager group = (GroupManager) member;
+      // give the group the personality of the performer
+      group.setPersonality(performer.getPersonality());
+      for (AppraisalVariables appVar : appVars) {
+        appraise(group, appVar, intensity, elicitor);
+      }
+      group.inferEmotions();
+      //Questionable: group.setPersonality(0.0d, 0.0d, 0.0d, 0.0d, 0.0d);
+    } else {
+      CharacterManager character = (CharacterManager) member;
+      for (AppraisalVariables appVar : appVars) {
+        appraise(character, appVar, intensity, elicitor);
+      }
+      character.inferEmotions();
+    }
+  }
+
+  /**
+   * Appraisal of a signal of the performer by all addressees or listeners.
+   * Null entries are skipped. The first failure in the order of the audience
+   * is thrown, the members after it are not appraised.
+   */
+  private void appraiseAudience(CharacterManager performer, EntityManager[] audience,
+      String key, AppraisalRuleType ruleType, double intensity, String elicitor) {
+    int minAudience = fParallelAudience;
+    if ((minAudience > 0) && (audience.length >= minAudience) && isDistinct(audience)) {
+      AudienceAppraisal task = new AudienceAppraisal(performer, audience, key, ruleType,
+        intensity, elicitor, 0, audience.length);
+      ForkJoinPool.commonPool().invoke(task);
+      int failed = task.fFirstFailure.get();
+      if (failed < audience.length) {
+        throw task.fFailures[failed];
+      }
+    } else {
+      for (EntityManager member : audience) {
+        if (member != null) {
+          appraiseMember(performer, member, key, ruleType, intensity, elicitor);
+        }
+      }
+    }
+  }
+
+  private static boolean isDistinct(EntityManager[] audience) {
+    IdentityHashMap<EntityManager, Boolean> members = new IdentityHashMap<EntityManager, Boolean>();
+    for (EntityManager member : audience) {
+      if ((member != null) && (members.put(member, Boolean.TRUE) != null)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * The
+   * <code>AudienceAppraisal</code> class appraises a range of addressees or
+   * listeners, splitting it until each member is appraised by its own
+   * subtask. Failures are stored by position together with the position of
+   * the first failing member, so that the caller can report the first failure
+   * in the order of the audience. Members after a failing one are skipped
+   * if their appraisal has not started yet.
+   */
+  private class AudienceAppraisal extends RecursiveAction {
+
+    private static final long serialVersionUID = 1L;
+
+    private final CharacterManager fPerformer;
+    private final EntityManager[] fAudience;
+    private final String fKey;
+    private final AppraisalRuleType fRuleType;
+    private final double fIntensity;
+    private final String fElicitor;
+    private final int fFrom;
+    private final int fTo;
+    private final RuntimeException[] fFailures;
+    private final AtomicInteger fFirstFailure;
+
+    private AudienceAppraisal(CharacterManager performer, EntityManager[] audience, String key,
+        AppraisalRuleType ruleType, double intensity, String elicitor, int from, int to) {
+      this(performer, audience, key, ruleType, intensity, elicitor, from, to,
+        new RuntimeException[audience.length], new AtomicInteger(audience.length));
+    }
+
+    private AudienceAppraisal(CharacterManager performer, EntityManager[] audience, String key,
+        AppraisalRuleType ruleType, double intensity, String elicitor, int from, int to,
+        RuntimeException[] failures, AtomicInteger firstFailure) {
+      fPerformer = performer;
+      fAudience = audience;
+      fKey = key;
+      fRuleType = ruleType;
+      fIntensity = intensity;
+      fElicitor = elicitor;
+      fFrom = from;
+      fTo = to;
+      fFailures = failures;
+      fFirstFailure = firstFailure;
+    }
+
+    @Override
+    protected void compute() {
+      if (fFrom > fFirstFailure.get()) {
+        // a member before this range has failed
+        return;
+      }
+      if (fTo - fFrom == 1) {
+        if (fAudience[fFrom] != null) {
+          try {
+            appraiseMember(fPerformer, fAudience[fFrom], fKey, fRuleType, fIntensity, fElicitor);
+          } catch (RuntimeException e) {
+            fFailures[fFrom] = e;
+            int failed = fFirstFailure.get();
+            while ((fFrom < failed) && !fFirstFailure.compareAndSet(failed, fFrom)) {
+              failed = fFirstFailure.get();
+            }
+          }
+        }
+      } else {
+        int middle = (fFrom + fTo) >>> 1;
+        invokeAll(
+          new AudienceAppraisal(fPerformer, fAudience, fKey, fRuleType, fIntensity, fElicitor,
+            fFrom, middle, fFailures, fFirstFailure),
+          new AudienceAppraisal(fPerformer, fAudience, fKey, fRuleType, fIntensity, fElicitor,
+            middle, fTo, fFailures, fFirstFailure));
+      }
+    }
+  }
+
+  /**
+   * processBasicEEC for Characters
+   */
+  public void processBasicECC(AppraisalVariables appVar, CharacterManager performer, String elicitor) {
+    EntityLock lock = EntityLock.acquire(performer);
+    try {
+      // EECs for performer
+      if (performer == null) {
+        //sLog.warning("Performing character not identified! Dropping basic eec");
+        return;
+      }
+      //sLog.info("Appraising eec for " + performer.getName());
+      // intensity has to be 1.0d because eec value will be multiplied by this.
+      appraise(performer, appVar, 1.0d, elicitor);
+      performer.inferEmotions();
+    } finally {
+      lock.release();
+    }
   }
   
   
   /*
    * processPAD for Characters
    */
-  public synchronized void processPADInput(CharacterManager performer, Mood m, double intensity, String description) {
-    performer.infuseBioSignalEmotions(new PADEmotion(m, intensity, description));
+  public void processPADInput(CharacterManager performer, Mood m, double intensity, String description) {
+    EntityLock lock = EntityLock.acquire(performer);
+    try {
+      performer.infuseBioSignalEmotions(new PADEmotion(m, intensity, description));
+    } finally {
+      lock.release();
+    }
   }
   
   /**
    * processAct for Characters
    */
-  public synchronized void processAct(String act, double intensity,
+  public void processAct(String act, double intensity,
       CharacterManager performer, CharacterManager[] addressees,
       CharacterManager[] listeners, String elicitor) {
-    AppraisalVariables[] appVars = null;
-    // EECs for performer
-    if (performer == null) {
-      //sLog.warning("Performing character not identified! Dropping act " + act);
-      return;
-    }
-    //log.info("Appraising act " + act + " from " + performer.getName());
-    appVars = performer.getAppraisalVariables(act);
-    if (appVars.length == 0) {
-      //log.warning(performer.getName() + " does not know how to appraise act " + act + ". Dropping act for performer!");
-    } else {
-      for (AppraisalVariables appVar : appVars) {
-        //log.info("Subjective self act appraisal");
-        appraise(performer, appVar, intensity, elicitor);
+    EntityLock lock = EntityLock.acquire(performer, addressees, listeners);
+    try {
+      AppraisalVariables[] appVars = null;
+      // EECs for performer
+      if (performer == null) {
+        //sLog.warning("Performing character not identified! Dropping act " + act);
+        return;
       }
-      performer.inferEmotions();
-    }
-    // EECs for addressee
-    if ((addressees.length == 0 || addressees == null)) {
-      //sLog.warning("No Addressee(s)! Dropping act " + act + " for addressee(s)!");
-    } else {
-      for (CharacterManager addressee : addressees) {
-        if (addressee == null) {
-          //sLog.warning("Invalid or no addressee. Act is lost for addressee!");
-        } else {
-          //log.info("Subjective appraisal from addressee " + addressee.getName());
-          appVars = addressee.getAppraisalVariables(performer, act, "DirectAct");
-          if (appVars.length == 0 ) {
-            //log.warning(addressee.getName() + " cannot appraise act " + act + " from " + performer.getName() + "! No rule available!");
-          } else {
-            //sLog.info("Subjective other act appraisal");
-            for (AppraisalVariables appVar : appVars) {
-              appraise(addressee, appVar, intensity, elicitor);
-            }
-            addressee.inferEmotions();
-          }
+      //log.info("Appraising act " + act + " from " + performer.getName());
+      appVars = performer.getAppraisalVariables(act);
+      if (appVars.length == 0) {
+        //log.warning(performer.getName() + " does not know how to appraise act " + act + ". Dropping act for performer!");
+      } else {
+        for (AppraisalVariables appVar : appVars) {
+          //log.info("Subjective self act appraisal");
+          appraise(performer, appVar, intensity, elicitor);
         }
+        performer.inferEmotions();
       }
-    }
-    // EECs for other listeners
-    if ((listeners.length == 0 || listeners == null)) {
-      //sLog.warning("No Listener(s)! Dropping act " + act + " for listener(s)!");
-    } else {
-      for (CharacterManager listener : listeners) {
-        if (listener == null) {
-          //sLog.warning("Invalid or no listener. Act is lost for listener!");
-        } else {
-          //sLog.info("Subjective appraisal from listener " + listener.getName());
-          appVars = listener.getAppraisalVariables(performer, act, "IndirectAct");
-          if (appVars.length == 0 ) {
-            //sLog.warning(listener.getName() + " cannot appraise act " + act + " from " + performer.getName() + "! No rule available!");
-          } else {
-            //sLog.info("Subjective other act appraisal");
-            for (AppraisalVariables appVar : appVars) {
-              appraise(listener, appVar, intensity, elicitor);
-            }
-            listener.inferEmotions();
-          }
-        }
+      // EECs for addressee
+      if ((addressees.length == 0 || addressees == null)) {
+        //sLog.warning("No Addressee(s)! Dropping act " + act + " for addressee(s)!");
+      } else {
+        appraiseAudience(performer, addressees, act, AppraisalRuleType.DirectAct, intensity, elicitor);
+      }
+      // EECs for other listeners
+      if ((listeners.length == 0 || listeners == null)) {
+        //sLog.warning("No Listener(s)! Dropping act " + act + " for listener(s)!");
+      } else {
+        appraiseAudience(performer, listeners, act, AppraisalRuleType.IndirectAct, intensity, elicitor);
       }
+    } finally {
+      lock.release();
     }
   }
   
   /**
    * processAct for Groups
    */
-  public synchronized void processAct(String act, double intensity,
+  public void processAct(String act, double intensity,
       CharacterManager performer, GroupManager[] listeners, String elicitor) {
-    AppraisalVariables[] appVars = null;
-    // EECs for other listeners
-    if ((listeners.length == 0 || listeners == null)) {
-      //sLog.warning("No Listener(s)! Dropping act " + act + " for listener(s)!");
-    } else {
-      for (GroupManager listener : listeners) {
-        if (listener == null) {
-          //sLog.warning("Invalid or no listener. Act is lost for listener!");
-        } else {
-          //sLog.info("Subjective appraisal from listener " + listener.getName());
-          appVars = listener.getAppraisalVariables(performer, act, "IndirectAct");
-          if (appVars.length == 0 ) {
-            //sLog.warning(listener.getName() + " cannot appraise act " + act + " from " + performer.getName() + "! No rule available!");
-          } else {
-            //sLog.info("Subjective other act appraisal");
-            // give the group the personality of the performer
-            listener.setPersonality(performer.getPersonality());
-            // give the eecs
-            for (AppraisalVariables appVar : appVars) {
-              appraise(listener, appVar, intensity, elicitor);
-            }
-            listener.inferEmotions();
-            //Questionable: listener.setPersonality(0.0d, 0.0d, 0.0d, 0.0d, 0.0d);
-          }
-        }
+    EntityLock lock = EntityLock.acquire(performer, listeners);
+    try {
+      // EECs for other listeners
+      if ((listeners.length == 0 || listeners == null)) {
+        //sLog.warning("No Listener(s)! Dropping act " + act + " for listener(s)!");
+      } else {
+        appraiseAudience(performer, listeners, act, AppraisalRuleType.IndirectAct, intensity, elicitor);
       }
+    } finally {
+      lock.release();
     }
   }
   
-  public synchronized void processEmotion(String emotion, double intensity,
+  public void processEmotion(String emotion, double intensity,
       CharacterManager performer, CharacterManager[] addressees,
       CharacterManager[] listeners, String elicitor) {
-    AppraisalVariables[] appVars = null;
-    // EECs for performer
-    if (performer == null) {
-      //sLog.warning("Performing character not identified! Dropping emotion " + emotion);
-      return;
-    }
-    //sLog.info("Appraising emotion " + emotion + " from " + performer.getName());
-    appVars = performer.getAppraisalVariables(emotion, "SelfEmotion");
-    //sLog.info("Got the dammed appraisal variables");
-    if (appVars.length == 0) {
-      //log.warning(performer.getName() + " does not know how to appraise emotion " + emotion + ". Dropping emotion!");
-      return;
-    }
-    for (AppraisalVariables appVar : appVars) {
-      //sLog.info("Subjective self emotion appraisal");
-      appraise(performer, appVar, intensity, elicitor);
-    }
-    performer.inferEmotions();
-    // EECs for addressee
-    if (addressees.length == 0) {
-      //sLog.warning("No Addressee(s)! Dropping emotion " + emotion + " for s/he/them!");
-    } else {
-      for (CharacterManager addressee : addressees) {
-        if (addressee == null) {
-          //sLog.warning("Invalid or no addressee. Emotion is lost for addressee!");
-        } else {
-          //sLog.info("Subjective appraisal from addressee " + addressee.getName());
-          appVars = addressee.getAppraisalVariables(performer, emotion, "ExternalEmotion");
-          if (appVars.length == 0 ) {
-            //sLog.warning(addressee.getName() + " cannot appraise emotion " + emotion + " from " + performer.getName() + "! No rule available!");
-          } else {
-            //sLog.info("Subjective other emotion appraisal");
-            for (AppraisalVariables appVar : appVars) {
-              appraise(addressee, appVar, intensity, elicitor);
-            }
-            addressee.inferEmotions();
-          }
-        }
+    EntityLock lock = EntityLock.acquire(performer, addressees, listeners);
+    try {
+      AppraisalVariables[] appVars = null;
+      // EECs for performer
+      if (performer == null) {
+        //sLog.warning("Performing character not identified! Dropping emotion " + emotion);
+        return;
       }
-    }
-    // EECs for other listeners
-    if (listeners.length == 0) {
-      //sLog.warning("No Listener(s)! Dropping emotion " + emotion + " for s/he/them!");
-    } else {
-      for (CharacterManager listener : listeners) {
-        if (listener == null) {
-          //sLog.warning("Invalid or no listener. Emotion is lost for listener!");
-        } else {
-          //log.info("Subjective appraisal from listener " + listener.getName());
-          appVars = listener.getAppraisalVariables(performer, emotion, "ExternalEmotion");
-          if (appVars.length == 0 ) {
-            //sLog.warning(listener.getName() + " cannot appraise emotion " + emotion + " from " + performer.getName() + "! No rule available!");
-          } else {
-            //sLog.info("Subjective other emotion appraisal");
-            for (AppraisalVariables appVar : appVars) {
-              appraise(listener, appVar, intensity, elicitor);
-            }
-            listener.inferEmotions();
-          }
-        }
+      //sLog.info("Appraising emotion " + emotion + " from " + performer.getName());
+      appVars = performer.getAppraisalVariables(emotion, AppraisalRuleType.SelfEmotion);
+      //sLog.info("Got the dammed appraisal variables");
+      if (appVars.length == 0) {
+        //log.warning(performer.getName() + " does not know how to appraise emotion " + emotion + ". Dropping emotion!");
+        return;
+      }
+      for (AppraisalVariables appVar : appVars) {
+        //sLog.info("Subjective self emotion appraisal");
+        appraise(performer, appVar, intensity, elicitor);
+      }
+      performer.inferEmotions();
+      // EECs for addressee
+      if (addressees.length == 0) {
+        //sLog.warning("No Addressee(s)! Dropping emotion " + emotion + " for s/he/them!");
+      } else {
+        appraiseAudience(performer, addressees, emotion, AppraisalRuleType.ExternalEmotion, intensity, elicitor);
+      }
+      // EECs for other listeners
+      if (listeners.length == 0) {
+        //sLog.warning("No Listener(s)! Dropping emotion " + emotion + " for s/he/them!");
+      } else {
+        appraiseAudience(performer, listeners, emotion, AppraisalRuleType.ExternalEmotion, intensity, elicitor);
       }
+    } finally {
+      lock.release();
     }
   }
   
   /**
    * processEmotion for Groups
    */
-  public synchronized void processEmotion(String emotion, double intensity,
+  public void processEmotion(String emotion, double intensity,
       CharacterManager performer, GroupManager[] listeners, String elicitor) {
-    AppraisalVariables[] appVars = null;
-    // EECs for other listeners
-    if ((listeners.length == 0 || listeners == null)) {
-      //sLog.warning("No Listener(s)! Dropping emotion " + emotion + " for listener(s)!");
-    } else {
-      for (GroupManager listener : listeners) {
-        if (listener == null) {
-          //sLog.warning("Invalid or no listener. Emotion is lost for listener!");
-        } else {
-          //sLog.info("Subjective appraisal from listener " + listener.getName());
-          appVars = listener.getAppraisalVariables(performer, emotion, "ExternalEmotion");
-          if (appVars.length == 0 ) {
-            //sLog.warning(listener.getName() + " cannot appraise emotion " + emotion + " from " + performer.getName() + "! No rule available!");
-          } else {
-            //sLog.info("Subjective other emotion appraisal");
-            listener.setPersonality(performer.getPersonality());
-            for (AppraisalVariables appVar : appVars) {
-              appraise(listener, appVar, intensity, elicitor);
-            }
-            listener.inferEmotions();
-            //Questionable: listener.setPersonality(0.0d, 0.0d, 0.0d, 0.0d, 0.0d);
-          }
-        }
+    EntityLock lock = EntityLock.acquire(performer, listeners);
+    try {
+      // EECs for other listeners
+      if ((listeners.length == 0 || listeners == null)) {
+        //sLog.warning("No Listener(s)! Dropping emotion " + emotion + " for listener(s)!");
+      } else {
+        appraiseAudience(performer, listeners, emotion, AppraisalRuleType.ExternalEmotion, intensity, elicitor);
       }
+    } finally {
+      lock.release();
     }
   }
   
-  public synchronized void processMood(String mood, double intensity,
+  public void processMood(String mood, double intensity,
       CharacterManager performer, CharacterManager[] addressees,
       CharacterManager[] listeners, String elicitor) {
-    AppraisalVariables[] appVars = null;
-    // EECs for performer
-    if (performer == null) {
-      //sLog.warning("Performing character not identified! Dropping mood " + mood);
-      return;
-    }
-    //sLog.info(performer.getName() + " is appraising own mood " + mood);
-    appVars = performer.getAppraisalVariables(mood, "SelfMood");
-    if (appVars.length == 0) {
-      //sLog.warning(performer.getName() + " does not know how to appraise own mood " + mood);
-      return;
-    }
-    for (AppraisalVariables appVar : appVars) {
-      //sLog.info("Subjective self act appraisal");
-      appraise(performer, appVar, intensity, elicitor);
-    }
-    performer.inferEmotions();
-    // EECs for addressee
-    if (addressees.length == 0) {
-      //sLog.warning("No Addressee(s)! Dropping mood " + mood + " for s/he/them!");
-    } else {
-      for (CharacterManager addressee : addressees) {
-        if (addressee == null) {
-          //sLog.warning("Invalid or no addressee. Mood is lost for addressee!");
-        } else {
-          //sLog.info("Subjective appraisal from addressee " + addressee.getName());
-          appVars = addressee.getAppraisalVariables(performer, mood, "ExternalMood");
-          if (appVars.length == 0 ) {
-            //sLog.warning(addressee.getName() + " cannot appraise mood " + mood + " from " + performer.getName() + "! No rule available!");
-          } else {
-            //sLog.info("Subjective other mood appraisal");
-            for (AppraisalVariables appVar : appVars) {
-              appraise(addressee, appVar, intensity, elicitor);
-            }
-            addressee.inferEmotions();
-          }
-        }
+    EntityLock lock = EntityLock.acquire(performer, addressees, listeners);
+    try {
+      AppraisalVariables[] appVars = null;
+      // EECs for performer
+      if (performer == null) {
+        //sLog.warning("Performing character not identified! Dropping mood " + mood);
+        return;
       }
-    }
-    // EECs for other listeners
-    if (listeners.length == 0) {
-      //sLog.warning("No Listener(s)! Dropping mood " + mood + " for s/he/them!");
-    } else {
-      for (CharacterManager listener : listeners) {
-        if (listener == null) {
-          //sLog.warning("Invalid or no listener. Mood is lost for listener!");
-        } else {
-          //losLogg.info("Subjective appraisal from listener " + listener.getName());
-          appVars = listener.getAppraisalVariables(performer, mood, "ExternalMood");
-          if (appVars.length == 0 ) {
-            //sLog.warning(listener.getName() + " cannot appraise mood " + mood + " from " + performer.getName() + "! No rule available!");
-          } else {
-            //sLog.info("Subjective other mood appraisal");
-            for (AppraisalVariables appVar : appVars) {
-              appraise(listener, appVar, intensity, elicitor);
-            }
-            listener.inferEmotions();
-          }
-        }
+      //sLog.info(performer.getName() + " is appraising own mood " + mood);
+      appVars = performer.getAppraisalVariables(mood, AppraisalRuleType.SelfMood);
+      if (appVars.length == 0) {
+        //sLog.warning(performer.getName() + " does not know how to appraise own mood " + mood);
+        return;
       }
+      for (AppraisalVariables appVar : appVars) {
+        //sLog.info("Subjective self act appraisal");
+        appraise(performer, appVar, intensity, elicitor);
+      }
+      performer.inferEmotions();
+      // EECs for addressee
+      if (addressees.length == 0) {
+        //sLog.warning("No Addressee(s)! Dropping mood " + mood + " for s/he/them!");
+      } else {
+        appraiseAudience(performer, addressees, mood, AppraisalRuleType.ExternalMood, intensity, elicitor);
+      }
+      // EECs for other listeners
+      if (listeners.length == 0) {
+        //sLog.warning("No Listener(s)! Dropping mood " + mood + " for s/he/them!");
+      } else {
+        appraiseAudience(performer, listeners, mood, AppraisalRuleType.ExternalMood, intensity, elicitor);
+      }
+    } finally {
+      lock.release();
     }
   }
   
   /**
    * processMood for Groups
    */
-  public synchronized void processMood(String mood, double intensity,
+  public void processMood(String mood, double intensity,
       CharacterManager performer, GroupManager[] listeners, String elicitor) {
-    AppraisalVariables[] appVars = null;
-    // EECs for other listeners
-    if ((listeners.length == 0 || listeners == null)) {
-      //sLog.warning("No Listener(s)! Dropping mood " + mood + " for listener(s)!");
-    } else {
-      for (GroupManager listener : listeners) {
-        if (listener == null) {
-          //log.warning("Invalid or no listener. Mood is lost for listener!");
-        } else {
-          //sLog.info("Subjective appraisal from listener " + listener.getName());
-          appVars = listener.getAppraisalVariables(performer, mood, "ExternalMood");
-          if (appVars.length == 0 ) {
-            //sLog.warning(listener.getName() + " cannot appraise mood " + mood + " from " + performer.getName() + "! No rule available!");
-          } else {
-            //sLog.info("Subjective other act appraisal");
-            listener.setPersonality(performer.getPersonality());
-            for (AppraisalVariables appVar : appVars) {
-              appraise(listener, appVar, intensity, elicitor);
-            }
-            listener.inferEmotions();
-            //Questionable: listener.setPersonality(0.0d, 0.0d, 0.0d, 0.0d, 0.0d);
-          }
-        }
+    EntityLock lock = EntityLock.acquire(performer, listeners);
+    try {
+      // EECs for other listeners
+      if ((listeners.length == 0 || listeners == null)) {
+        //sLog.warning("No Listener(s)! Dropping mood " + mood + " for listener(s)!");
+      } else {
+        appraiseAudience(performer, listeners, mood, AppraisalRuleType.ExternalMood, intensity, elicitor);
       }
+    } finally {
+      lock.release();
     }
   }
   
-  public synchronized void processAction(String action, double intensity,
+  public void processAction(String action, double intensity,
       CharacterManager character, String elicitor) {
-    //log.info(character.getName() + " appraises action " + action);
-    AppraisalVariables[] appVars = character.getAppraisalVariables(action);
-    if (appVars.length == 0) {
-      //sLog.warning(character.getName() + " does not know how to appraise action " + action);
-      return;
+    EntityLock lock = EntityLock.acquire(character);
+    try {
+      //log.info(character.getName() + " appraises action " + action);
+      AppraisalVariables[] appVars = character.getAppraisalVariables(action);
+      if (appVars.length == 0) {
+        //sLog.warning(character.getName() + " does not know how to appraise action " + action);
+        return;
+      }
+      appraise(character, appVars[0], intensity, elicitor);
+      character.inferEmotions();
+    } finally {
+      lock.release();
     }
-    appraise(character, appVars[0], intensity, elicitor);
-    character.inferEmotions();
   }
   
-  public synchronized void processEvent(String event, double intensity,
+  public void processEvent(String event, double intensity,
       CharacterManager character, String elicitor) {
-    //log.info(character.getName() + " appraises event " + event);
-    AppraisalVariables[] appVars = character.getAppraisalVariables(event);
-    if (appVars.length == 0) {
-      //sLog.warning(character.getName() + " does not know how to appraise event " + event);
-      return;
+    EntityLock lock = EntityLock.acquire(character);
+    try {
+      //log.info(character.getName() + " appraises event " + event);
+      AppraisalVariables[] appVars = character.getAppraisalVariables(event);
+      if (appVars.length == 0) {
+        //sLog.warning(character.getName() + " does not know how to appraise event " + event);
+        return;
+      }
+      appraise(character, appVars[0], intensity, elicitor);
+      character.inferEmotions();
+    } finally {
+      lock.release();
     }
-    appraise(character, appVars[0], intensity, elicitor);
-    character.inferEmotions();
   }
   
-  public synchronized void processObject(String object, double intensity,
+  public void processObject(String object, double intensity,
       CharacterManager character, String elicitor) {
-    //sLog.info(character.getName() + " appraises object " + object);
-    AppraisalVariables[] appVars = character.getAppraisalVariables(object);
-    if (appVars.length == 0) {
-      //sLog.warning(character.getName() + " does not know how to appraise object ");
-      return;
+    EntityLock lock = EntityLock.acquire(character);
+    try {
+      //sLog.info(character.getName() + " appraises object " + object);
+      AppraisalVariables[] appVars = character.getAppraisalVariables(object);
+      if (appVars.length == 0) {
+        //sLog.warning(character.getName() + " does not know how to appraise object ");
+        return;
+      }
+      appraise(character, appVars[0], intensity, elicitor);
+      character.inferEmotions();
+    } finally {
+      lock.release();
     }
-    appraise(character, appVars[0], intensity, elicitor);
-    character.inferEmotions();
   }
   
 }
@@ -7,8 +7,12 @@
  */
 package de.affect.manage;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.logging.Logger;
 
 import de.affect.appraisal.eec.Appealingness;
@@ -60,13 +64,110 @@ public class AppraisalRuleReader {
   public static final String sMOODAPPRAISALRULEPREFIX = "Mood";
   public static final String sINDIRECTACTAPPRAISALRULEPREFIX = "Indirect";
 
+  // all basic signals in the order of their xml bean enumerations
+  private static final String[] sSIGNALS;
+  private static final String[] sSIGNALTYPES;
+  private static final String[] sVARIABLES = {"Desirability", "Praiseworthiness", "Appealingness",
+    "Likelihood", "Realization", "Liking", "Agency"};
+  private static final int sDESIRABILITY = 0;
+  private static final int sPRAISEWORTHINESS = 1;
+  private static final int sAPPEALINGNESS = 2;
+  private static final int sLIKELIHOOD = 3;
+  private static final int sREALIZATION = 4;
+  private static final int sLIKING = 5;
+  private static final int sAGENCY = 6;
+  private static final HashMap<Class<?>, MethodHandle[]> sSignalAccessors = new HashMap<Class<?>, MethodHandle[]>();
+  private static final HashMap<Class<?>, MethodHandle[]> sVariableAccessors = new HashMap<Class<?>, MethodHandle[]>();
+  private static final MethodType sGETTERTYPE = MethodType.methodType(java.lang.Object.class, java.lang.Object.class);
+
+  static {
+    int eventNum = EventTypes.Enum.table.lastInt();
+    int actionNum = ActionTypes.Enum.table.lastInt();
+    int objectNum = ObjectTypes.Enum.table.lastInt();
+    sSIGNALS = new String[eventNum + actionNum + objectNum];
+    sSIGNALTYPES = new String[sSIGNALS.length];
+    int n = 0;
+    for (int cnt = 1; cnt <= eventNum; cnt++) { // xmlbeans do count from 1!
+      sSIGNALTYPES[n] = "Event";
+      sSIGNALS[n++] = EventTypes.Enum.forInt(cnt).toString();
+    }
+    for (int cnt = 1; cnt <= actionNum; cnt++) {
+      sSIGNALTYPES[n] = "Action";
+      sSIGNALS[n++] = ActionTypes.Enum.forInt(cnt).toString();
+    }
+    for (int cnt = 1; cnt <= objectNum; cnt++) {
+      sSIGNALTYPES[n] = "Object";
+      sSIGNALS[n++] = ObjectTypes.Enum.forInt(cnt).toString();
+    }
+  }
+
   protected AppraisalRuleReader() {
   }
 
+  /**
+   * Returns the getters <code>get&lt;property&gt;()</code> of a xml bean
+   * class. The getters are resolved once per class, a property without getter
+   * has a null entry.
+   */
+  private static synchronized MethodHandle[] getAccessors(HashMap<Class<?>, MethodHandle[]> cache,
+    Class<?> beanClass, String[] properties) {
+    MethodHandle[] accessors = cache.get(beanClass);
+    if (accessors == null) {
+      HashMap<String, Method> getters = new HashMap<String, Method>();
+      for (Method method : beanClass.getMethods()) {
+        if (method.getParameterTypes().length == 0) {
+          getters.put(method.getName(), method);
+        }
+      }
+      accessors = new MethodHandle[properties.length];
+      for (int i = 0; i < properties.length; i++) {
+        Method getter = getters.get("get" + properties[i]);
+        if (getter != null) {
+          try {
+            accessors[i] = MethodHandles.publicLookup().unreflect(getter).asType(sGETTERTYPE);
+          } catch (IllegalAccessException e) {
+            sLog.warning("Cannot access " + getter);
+          }
+        }
+      }
+      cache.put(beanClass, accessors);
+    }
+    return accessors;
+  }
+
+  private static java.lang.Object get(MethodHandle accessor, java.lang.Object bean) {
+    if ((accessor == null) || (bean == null)) {
+      return null;
+    }
+    try {
+      return (java.lang.Object) accessor.invokeExact(bean);
+    } catch (RuntimeException e) {
+      throw e;
+    } catch (Error e) {
+      throw e;
+    } catch (Throwable t) {
+      throw new IllegalStateException(t);
+    }
+  }
+
+  private static double variableValue(java.lang.Object value, String signal) {
+    if (value == null) {
+      return Double.NaN;
+    }
+    try {
+      return doubleValue(value.toString());
+    } catch (NumberFormatException e) {
+      sLog.warning("Invalid value " + value + " of signal " + signal);
+      return Double.NaN;
+    }
+  }
+
   private static AppraisalVariables getAppraisalVariables(String type, String signal, String elicitor,
-    java.lang.Object basicObject) {
-    Class[] cArgs = new Class[0];
-    java.lang.Object[] oArgs = new java.lang.Object[0];
+    java.lang.Object signalObject) {
+    if (signalObject == null) {
+      return null;
+    }
+    MethodHandle[] accessors = getAccessors(sVariableAccessors, signalObject.getClass(), sVARIABLES);
     Desirability desirability = null;
     Praiseworthiness praiseworthiness = null;
     Appealingness appealingness = null;
@@ -75,61 +176,40 @@ public class AppraisalRuleReader {
     Liking liking = null;
     Agency agency = null;
     boolean hasContent = false;
-    try {
-      String mStr = "get" + signal;
-      Method method = basicObject.getClass().getMethod(mStr, cArgs);
-      java.lang.Object obj = method.invoke(basicObject, oArgs);
-      try {
-        Method desirablityMethod = obj.getClass().getMethod("getDesirability", cArgs);
-        java.lang.Object value = desirablityMethod.invoke(obj, oArgs);
-        desirability = new Desirability(doubleValue(value.toString()));
-        hasContent = true;
-      } catch (Exception e) {
-      }
-      try {
-        Method praiseworthinessMethod = obj.getClass().getMethod("getPraiseworthiness", cArgs);
-        java.lang.Object value = praiseworthinessMethod.invoke(obj, oArgs);
-        praiseworthiness = new Praiseworthiness(doubleValue(value.toString()));
-        hasContent = true;
-      } catch (Exception e) {
-      }
-      try {
-        Method appealingnessMethod = obj.getClass().getMethod("getAppealingness", cArgs);
-        java.lang.Object value = appealingnessMethod.invoke(obj, oArgs);
-        appealingness = new Appealingness(doubleValue(value.toString()));
-        hasContent = true;
-      } catch (Exception e) {
-      }
-      try {
-        Method likelihoodMethod = obj.getClass().getMethod("getLikelihood", cArgs);
-        java.lang.Object value = likelihoodMethod.invoke(obj, oArgs);
-        likelihood = new Likelihood(doubleValue(value.toString()));
-        hasContent = true;
-      } catch (Exception e) {
-      }
-      try {
-        Method realizationMethod = obj.getClass().getMethod("getRealization", cArgs);
-        java.lang.Object value = realizationMethod.invoke(obj, oArgs);
-        realization = new Realization(doubleValue(value.toString()));
-        hasContent = true;
-      } catch (Exception e) {
-      }
-      try {
-        Method likingMethod = obj.getClass().getMethod("getLiking", cArgs);
-        java.lang.Object value = likingMethod.invoke(obj, oArgs);
-        liking = new Liking(doubleValue(value.toString()));
-        hasContent = true;
-      } catch (Exception e) {
-      }
-      try {
-        Method agencyMethod = obj.getClass().getMethod("getAgency", cArgs);
-        java.lang.Object value = agencyMethod.invoke(obj, oArgs);
-        agency = (value.toString().trim().equals("self")) ? Agency.SELF : Agency.OTHER;
-        hasContent = true;
-      } catch (Exception e) {
-      }
-    } catch (Exception e) {
-      //log.warning("Undefined signal " + signal);
+    double value = variableValue(get(accessors[sDESIRABILITY], signalObject), signal);
+    if (!Double.isNaN(value)) {
+      desirability = new Desirability(value);
+      hasContent = true;
+    }
+    value = variableValue(get(accessors[sPRAISEWORTHINESS], signalObject), signal);
+    if (!Double.isNaN(value)) {
+      praiseworthiness = new Praiseworthiness(value);
+      hasContent = true;
+    }
+    value = variableValue(get(accessors[sAPPEALINGNESS], signalObject), signal);
+    if (!Double.isNaN(value)) {
+      appealingness = new Appealingness(value);
+      hasContent = true;
+    }
+    value = variableValue(get(accessors[sLIKELIHOOD], signalObject), signal);
+    if (!Double.isNaN(value)) {
+      likelihood = new Likelihood(value);
+      hasContent = true;
+    }
+    value = variableValue(get(accessors[sREALIZATION], signalObject), signal);
+    if (!Double.isNaN(value)) {
+      realization = new Realization(value);
+      hasContent = true;
+    }
+    value = variableValue(get(accessors[sLIKING], signalObject), signal);
+    if (!Double.isNaN(value)) {
+      liking = new Liking(value);
+      hasContent = true;
+    }
+    java.lang.Object agencyValue = get(accessors[sAGENCY], signalObject);
+    if (agencyValue != null) {
+      agency = (agencyValue.toString().trim().equals("self")) ? Agency.SELF : Agency.OTHER;
+      hasContent = true;
     }
     if (hasContent) {
       return new AppraisalVariables(type, signal, desirability, praiseworthiness, appealingness,
@@ -158,51 +238,20 @@ public class AppraisalRuleReader {
    * @return a set of appraisal rules
    */
   private static AppraisalRules classifyRules(String entity, String complexRuleKey,
-    String type, String elicitor,
+    AppraisalRuleType type, String elicitor,
     boolean complex, AppraisalRules appraisalRules,
     java.lang.Object appraisalElement) {
-    int cnt = 1; // xmlbeans do count from 1!
-    int eventNum = EventTypes.Enum.table.lastInt();
+    MethodHandle[] signalAccessors = getAccessors(sSignalAccessors, appraisalElement.getClass(), sSIGNALS);
     ArrayList<AppraisalVariables> appraisalVarList = new ArrayList<AppraisalVariables>();
-    for (cnt = 1; cnt <= eventNum; cnt++) {
-      String event = EventTypes.Enum.forInt(cnt).toString();
-      AppraisalVariables av = getAppraisalVariables("Event", event,
-        elicitor, appraisalElement);
-      if (av != null) {
-        appraisalVarList.add(av);
-        if (!complex) {
-          sLog.info("\t\t" + event);
-          appraisalRules.add(entity, event, type,
-            appraisalVarList.toArray(new AppraisalVariables[1]));
-          appraisalVarList = new ArrayList<AppraisalVariables>();
-        }
-      }
-    }
-    int actionNum = ActionTypes.Enum.table.lastInt();
-    for (cnt = 1; cnt <= actionNum; cnt++) {
-      String action = ActionTypes.Enum.forInt(cnt).toString();
-      AppraisalVariables av = getAppraisalVariables("Action", action,
-        elicitor, appraisalElement);
-      if (av != null) {
-        appraisalVarList.add(av);
-        if (!complex) {
-          sLog.info("\t\t" + action);
-          appraisalRules.add(entity, action, type,
-            appraisalVarList.toArray(new AppraisalVariables[1]));
-          appraisalVarList = new ArrayList<AppraisalVariables>();
-        }
-      }
-    }
-    int objectNum = ObjectTypes.Enum.table.lastInt();
-    for (cnt = 1; cnt <= objectNum; cnt++) {
-      String object = ObjectTypes.Enum.forInt(cnt).toString();
-      AppraisalVariables av = getAppraisalVariables("Object", object,
-        elicitor, appraisalElement);
+    for (int i = 0; i < sSIGNALS.length; i++) {
+      String signal = sSIGNALS[i];
+      AppraisalVariables av = getAppraisalVariables(sSIGNALTYPES[i], signal,
+        elicitor, get(signalAccessors[i], appraisalElement));
       if (av != null) {
         appraisalVarList.add(av);
         if (!complex) {
-          sLog.info("\t\t" + object);
-          appraisalRules.add(entity, object, type,
+          sLog.info("\t\t" + signal);
+          appraisalRules.add(entity, signal, type,
             appraisalVarList.toArray(new AppraisalVariables[1]));
           appraisalVarList = new ArrayList<AppraisalVariables>();
         }
@@ -230,14 +279,14 @@ public class AppraisalRuleReader {
     AppraisalRules appraisalRules = new AppraisalRules();
     // BASIC APPRAISAL RULES
     CharacterAffect.Appraisal.Basic basicAppraisal = appraisal.getBasic();
-    appraisalRules = classifyRules(entity.getName(), "", "Basic", "Basic Elicitor", false,
+    appraisalRules = classifyRules(entity.getName(), "", AppraisalRuleType.Basic, "Basic Elicitor", false,
       appraisalRules, basicAppraisal);
     // DIALOG ACT (SELF, EXTERNAL) APPRAISAL RULES
     SelfActType[] selfActsAppraisal = appraisal.getSelfActList().toArray(new SelfActType[0]);
     for (SelfActType selfActAppraisal : selfActsAppraisal) {
       String ruleKey = selfActAppraisal.getType();
       sLog.info("\t\tSelf Act " + ruleKey);
-      appraisalRules = classifyRules(entity.getName(), ruleKey, "SelfAct", "Self Act Elicitor",
+      appraisalRules = classifyRules(entity.getName(), ruleKey, AppraisalRuleType.SelfAct, "Self Act Elicitor",
         true, appraisalRules, selfActAppraisal);
     }
     DirectActType[] aimedAtSelfActsAppraisal = appraisal.getDirectActList().toArray(new DirectActType[0]);
@@ -245,7 +294,7 @@ public class AppraisalRuleReader {
       String ruleKey = aimedAtSelfActAppraisal.getType();
       EntityManager otherEntity = new EntityManager(aimedAtSelfActAppraisal.getPerformer());
       sLog.info("\t\tDirected Act " + ruleKey + " from " + otherEntity.getName());
-      appraisalRules = classifyRules(otherEntity.getName(), ruleKey, "DirectAct", "Direct Act Elicitor",
+      appraisalRules = classifyRules(otherEntity.getName(), ruleKey, AppraisalRuleType.DirectAct, "Direct Act Elicitor",
         true, appraisalRules, aimedAtSelfActAppraisal);
     }
     IndirectActType[] externalActsAppraisal = appraisal.getIndirectActList().toArray(new IndirectActType[0]);
@@ -254,7 +303,7 @@ public class AppraisalRuleReader {
       String ruleKey = externalActAppraisal.getType();
       EntityManager otherEntity = new EntityManager(externalActAppraisal.getPerformer());
       sLog.info("\t\tIndirect Act " + ruleKey + " from " + otherEntity.getName());
-      appraisalRules = classifyRules(otherEntity.getName(), ruleKey, "IndirectAct", "Indirect Act Elicitor",
+      appraisalRules = classifyRules(otherEntity.getName(), ruleKey, AppraisalRuleType.IndirectAct, "Indirect Act Elicitor",
         true, appraisalRules, externalActAppraisal);
     }
     // EMOTION (SELF, EXTERNAL) APPRAISAL RULES
@@ -263,7 +312,7 @@ public class AppraisalRuleReader {
       //String ruleKey = sEMOTIONAPPRAISALRULEPREFIX + selfEmotionAppraisal.getEmotion().toString();
       String ruleKey = selfEmotionAppraisal.getEmotion().toString();
       sLog.info("\t\tSelf Emotion " + ruleKey);
-      appraisalRules = classifyRules(entity.getName(), ruleKey, "SelfEmotion", "Emotion Elicitor",
+      appraisalRules = classifyRules(entity.getName(), ruleKey, AppraisalRuleType.SelfEmotion, "Emotion Elicitor",
         true, appraisalRules, selfEmotionAppraisal);
     }
     IndirectEmotionType[] externEmotionsAppraisal = appraisal.getIndirectEmotionList().toArray(new IndirectEmotionType[0]);
@@ -272,7 +321,7 @@ public class AppraisalRuleReader {
       String ruleKey = externEmotionAppraisal.getEmotion().toString();
       EntityManager otherEntity = new EntityManager(externEmotionAppraisal.getPerformer());
       sLog.info("\t\tIndirect Emotion " + ruleKey + " from " + otherEntity.getName());
-      appraisalRules = classifyRules(otherEntity.getName(), ruleKey, "ExternalEmotion", "External Emotion Elicitor",
+      appraisalRules = classifyRules(otherEntity.getName(), ruleKey, AppraisalRuleType.ExternalEmotion, "External Emotion Elicitor",
         true, appraisalRules, externEmotionAppraisal);
     }
     // MOOD (SELF, EXTERNAL) APPRAISAL RULES
@@ -281,7 +330,7 @@ public class AppraisalRuleReader {
       //String ruleKey = sMOODAPPRAISALRULEPREFIX + selfMoodAppraisal.getMood().toString();
       String ruleKey = selfMoodAppraisal.getMood().toString();
       sLog.info("\t\tSelf Mood " + ruleKey + " appraised by " + entity.getName());
-      appraisalRules = classifyRules(entity.getName(), ruleKey, "SelfMood", "Mood Elicitor",
+      appraisalRules = classifyRules(entity.getName(), ruleKey, AppraisalRuleType.SelfMood, "Mood Elicitor",
         true, appraisalRules, selfMoodAppraisal);
     }
     IndirectMoodType[] externMoodsAppraisal = appraisal.getIndirectMoodList().toArray(new IndirectMoodType[0]);
@@ -290,9 +339,11 @@ public class AppraisalRuleReader {
       String ruleKey = externMoodAppraisal.getMood().toString();
       EntityManager otherEntity = new EntityManager(externMoodAppraisal.getPerformer());
       sLog.info("\t\tIndirect Mood " + ruleKey + " from " + otherEntity.getName());
-      appraisalRules = classifyRules(otherEntity.getName(), ruleKey, "ExternalMood", "External Mood Elicitor",
+      appraisalRules = classifyRules(otherEntity.getName(), ruleKey, AppraisalRuleType.ExternalMood, "External Mood Elicitor",
         true, appraisalRules, externMoodAppraisal);
     }
+    // compile the lookup index before the rules are handed to the entity
+    appraisalRules.compile();
     return appraisalRules;
   }
 
@@ -310,7 +361,7 @@ public class AppraisalRuleReader {
     AppraisalRules appraisalRules = new AppraisalRules();
     // BASIC APPRAISAL RULES
     GroupAffect.Appraisal.Basic basicAppraisal = appraisal.getBasic();
-    appraisalRules = classifyRules(entity.getName(), "", "Basic", "Basic Elicitor", false,
+    appraisalRules = classifyRules(entity.getName(), "", AppraisalRuleType.Basic, "Basic Elicitor", false,
       appraisalRules, basicAppraisal);
     // INDIRECT ACT APPRAISAL RULES
     IndirectActType[] externalActsAppraisal = appraisal.getIndirectActList().toArray(new IndirectActType[0]);
@@ -319,7 +370,7 @@ public class AppraisalRuleReader {
       String ruleKey = externalActAppraisal.getType();
       EntityManager otherEntity = new EntityManager(externalActAppraisal.getPerformer());
       sLog.info("\t\tIndirect Act " + ruleKey + " from " + otherEntity.getName());
-      appraisalRules = classifyRules(otherEntity.getName(), ruleKey, "IndirectAct", "Indirect Act Elicitor",
+      appraisalRules = classifyRules(otherEntity.getName(), ruleKey, AppraisalRuleType.IndirectAct, "Indirect Act Elicitor",
         true, appraisalRules, externalActAppraisal);
     }
     // INDIRECT EMOTION APPRAISAL RULES
@@ -329,7 +380,7 @@ public class AppraisalRuleReader {
       String ruleKey = externEmotionAppraisal.getEmotion().toString();
       EntityManager otherEntity = new EntityManager(externEmotionAppraisal.getPerformer());
       sLog.info("\t\tIndirect Emotion " + ruleKey + " from " + otherEntity.getName());
-      appraisalRules = classifyRules(otherEntity.getName(), ruleKey, "ExternalEmotion", "External Emotion Elicitor",
+      appraisalRules = classifyRules(otherEntity.getName(), ruleKey, AppraisalRuleType.ExternalEmotion, "External Emotion Elicitor",
         true, appraisalRules, externEmotionAppraisal);
     }
     // INDIRECT MOOD APPRAISAL RULES
@@ -339,9 +390,11 @@ public class AppraisalRuleReader {
       String ruleKey = externMoodAppraisal.getMood().toString();
       EntityManager otherEntity = new EntityManager(externMoodAppraisal.getPerformer());
       sLog.info("\t\tIndirect Mood " + ruleKey + " from " + otherEntity.getName());
-      appraisalRules = classifyRules(otherEntity.getName(), ruleKey, "ExternalMood", "External Mood Elicitor",
+      appraisalRules = classifyRules(otherEntity.getName(), ruleKey, AppraisalRuleType.ExternalMood, "External Mood Elicitor",
         true, appraisalRules, externMoodAppraisal);
     }
+    // compile the lookup index before the rules are handed to the entity
+    appraisalRules.compile();
     return appraisalRules;
   }
 }
@@ -0,0 +1,46 @@
+/*
+ * AppraisalRuleType.java
+ *
+ * Copyright (c) 2004-2008 by Patrick Gebhard
+ * All rights reserved.
+ *
+ */
+package de.affect.manage;
+
+import java.util.HashMap;
+
+/**
+ * The enum
+ * <code>AppraisalRuleType</code> lists the kinds of appraisal rules of an
+ * entity. Basic rules appraise events, actions and objects. The other rules
+ * appraise the own or another entity's acts, emotions and moods. The names
+ * of the constants are the rule type names used by
+ * <code>AppraisalRules</code>.
+ *
+ * @author Patrick Gebhard
+ *
+ * @version 1.0
+ */
+public enum AppraisalRuleType {
+
+  Basic, SelfAct, DirectAct, IndirectAct, SelfEmotion, ExternalEmotion, SelfMood, ExternalMood;
+
+  private static final HashMap<String, AppraisalRuleType> sNameToType = new HashMap<String, AppraisalRuleType>();
+
+  static {
+    for (AppraisalRuleType type : values()) {
+      sNameToType.put(type.name(), type);
+    }
+  }
+
+  /**
+   * Returns the rule type with the given name.
+   *
+   * @param name the name of a rule type
+   *
+   * @return the rule type, null if there is no rule type with that name
+   */
+  public static AppraisalRuleType forName(String name) {
+    return sNameToType.get(name);
+  }
+}
@@ -8,15 +8,26 @@
 
 package de.affect.manage;
 
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
 import java.util.Hashtable;
 import java.util.Enumeration;
 import java.util.ArrayList;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import de.affect.appraisal.AppraisalVariables;
 
 /**
  * The class<code> AppraisalRules</code> holds all appraisal rules of one
  * entity. 
  *
+ * For the appraisal of signals the rules are compiled into an immutable
+ * index (entity, rule type, key) when they have been read (see
+ * <code>compile</code>). If the rules of an entity are changed, only the
+ * index of that entity is discarded and compiled again on its next lookup.
+ * Lookups by type therefore neither copy nor filter the rule sets.
+ *
  * @author Patrick Gebhard
  *
  * @version 1.0
@@ -24,6 +35,7 @@ import de.affect.appraisal.AppraisalVariables;
 public class AppraisalRules {
   
   private Hashtable<String, RuleSet> entityRelatedRules = null; 
+  private final ConcurrentHashMap<String, CompiledRules> compiledRules = new ConcurrentHashMap<String, CompiledRules>();
 
   public AppraisalRules() {
     entityRelatedRules = new Hashtable<String, RuleSet>();
@@ -39,7 +51,7 @@ public class AppraisalRules {
     }
   }
 
-  public void add(String entity, String key, String type, AppraisalVariables[] appraisalVariables) {
+  public synchronized void add(String entity, String key, String type, AppraisalVariables[] appraisalVariables) {
     RuleSet ruleSet = entityRelatedRules.get(entity);
     if (ruleSet == null) { // add a new rule set for a new entity
       entityRelatedRules.put(entity, new RuleSet());
@@ -47,18 +59,25 @@ public class AppraisalRules {
     } 
     ruleSet.types.put(key, type);
     ruleSet.rules.put(key, appraisalVariables);
+    invalidate(entity);
+  }
+
+  public void add(String entity, String key, AppraisalRuleType type, AppraisalVariables[] appraisalVariables) {
+    add(entity, key, type.name(), appraisalVariables);
   }
 
-  public void removeEntityRelatedRules(String entity) {
+  public synchronized void removeEntityRelatedRules(String entity) {
     entityRelatedRules.remove(entity);
+    invalidate(entity);
   }
 
-  public void removeKey(String entity, String key) {
+  public synchronized void removeKey(String entity, String key) {
     RuleSet ruleSet = entityRelatedRules.get(entity);
     if (ruleSet != null) {
       ruleSet.types.remove(key);
       ruleSet.rules.remove(key);
     }
+    invalidate(entity);
   }
 
   public AppraisalVariables[] getAppraisalVariables(String entity, String key) {
@@ -66,6 +85,135 @@ public class AppraisalRules {
     return (ruleSet == null) ? null : ruleSet.rules.get(key);
   }
 
+  /**
+   * <code>getAppraisalVariables</code> returns the appraisal variables of a
+   * key if the rule of the key has the type with the given name.
+   *
+   * @param entity the entity that is related to the key
+   * @param key the rule key
+   * @param type the name of an <code>AppraisalRuleType</code>
+   *
+   * @return AppraisalVariables[] the appraisal variables, null if there is
+   *                              no rule of that type
+   */
+  public AppraisalVariables[] getAppraisalVariables(String entity, String key, String type) {
+    return getAppraisalVariables(entity, key, AppraisalRuleType.forName(type));
+  }
+
+  /**
+   * <code>getAppraisalVariables</code> returns the appraisal variables of a
+   * key if the rule of the key has the given type.
+   *
+   * @param entity the entity that is related to the key
+   * @param key the rule key
+   * @param type the type of the rule
+   *
+   * @return AppraisalVariables[] the appraisal variables, null if there is
+   *                              no rule of that type
+   */
+  public AppraisalVariables[] getAppraisalVariables(String entity, String key, AppraisalRuleType type) {
+    Map<String, AppraisalVariables[]> rules = getCompiledRules(entity, type);
+    return (rules == null) ? null : rules.get(key);
+  }
+
+  /**
+   * <code>getKeys</code> returns the keys of all rules of the type with the
+   * given name.
+   *
+   * @param entity the entity that is related to the keys
+   * @param type the name of an <code>AppraisalRuleType</code>
+   *
+   * @return String[] the rule keys
+   */
+  public String[] getKeys(String entity, String type) {
+    return getKeys(entity, AppraisalRuleType.forName(type));
+  }
+
+  /**
+   * <code>getKeys</code> returns the keys of all rules of the given type.
+   *
+   * @param entity the entity that is related to the keys
+   * @param type the type of the rules
+   *
+   * @return String[] the rule keys
+   */
+  public String[] getKeys(String entity, AppraisalRuleType type) {
+    Map<String, AppraisalVariables[]> rules = getCompiledRules(entity, type);
+    return (rules == null) ? new String[0] : rules.keySet().toArray(new String[rules.size()]);
+  }
+
+  private Map<String, AppraisalVariables[]> getCompiledRules(String entity, AppraisalRuleType type) {
+    if (type == null) {
+      return null;
+    }
+    CompiledRules rules = compiledRules.get(entity);
+    if (rules == null) {
+      rules = compile(entity);
+    }
+    return rules.get(type);
+  }
+
+  /**
+   * The rules of one entity by <code>AppraisalRuleType</code>.
+   */
+  private static class CompiledRules extends EnumMap<AppraisalRuleType, Map<String, AppraisalVariables[]>> {
+
+    private static final long serialVersionUID = 1L;
+
+    CompiledRules() {
+      super(AppraisalRuleType.class);
+    }
+  }
+
+  /**
+   * Discards the compiled rules of an entity after a change. They are
+   * compiled again on the next lookup, so a series of changes is compiled
+   * only once.
+   */
+  private void invalidate(String entity) {
+    compiledRules.remove(entity);
+  }
+
+  /**
+   * <code>compile</code> compiles the rules of all entities into the lookup
+   * index. Rules are compiled when they have been read; rules that have not
+   * been compiled are compiled on the first lookup.
+   */
+  synchronized void compile() {
+    for (String entity : entityRelatedRules.keySet()) {
+      compile(entity);
+    }
+  }
+
+  /**
+   * Compiles the rules of an entity and publishes them in one assignment,
+   * so lookups see either the old or the new rules. Rules whose type name
+   * is not an <code>AppraisalRuleType</code> are not compiled.
+   */
+  private synchronized CompiledRules compile(String entity) {
+    CompiledRules compiled = new CompiledRules();
+    RuleSet ruleSet = entityRelatedRules.get(entity);
+    if (ruleSet != null) {
+      for (Map.Entry<String, AppraisalVariables[]> rule : ruleSet.rules.entrySet()) {
+        AppraisalRuleType type = AppraisalRuleType.forName(ruleSet.types.get(rule.getKey()));
+        if (type == null) {
+          continue;
+        }
+        Map<String, AppraisalVariables[]> rules = compiled.get(type);
+        if (rules == null) {
+          rules = new HashMap<String, AppraisalVariables[]>();
+          compiled.put(type, rules);
+        }
+        rules.put(rule.getKey(), rule.getValue());
+      }
+      for (Map.Entry<AppraisalRuleType, Map<String, AppraisalVariables[]>> rules : compiled.entrySet()) {
+        rules.setValue(Collections.unmodifiableMap(rules.getValue()));
+      }
+    }
+    compiledRules.put(entity, compiled);
+    return compiled;
+  }
+
   public AppraisalRules getAppraisalRulesByType(String entity, String type) {
     AppraisalRules ruleSubSet = new AppraisalRules();
     RuleSet ruleSet = entityRelatedRules.get(entity);
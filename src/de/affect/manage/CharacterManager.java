@@ -9,14 +9,14 @@ package de.affect.manage;
 
 import java.util.Iterator;
 import java.util.List;
-import java.util.Timer;
-import java.util.TimerTask;
 import java.util.logging.Logger;
 
+import de.affect.compute.BatchDecayEngine;
+import de.affect.compute.ClosedFormDecayFunction;
 import de.affect.compute.EmotionEngine;
+import de.affect.compute.LazyDecayEngine;
 import de.affect.compute.DecayFunction;
 import de.affect.compute.MoodEngine;
-import de.affect.appraisal.EEC;
 import de.affect.emotion.EmotionHistory;
 import de.affect.emotion.EmotionVector;
 import de.affect.emotion.Emotion;
@@ -47,9 +47,11 @@ import static java.lang.Thread.sleep;
  *
  * @version 1.0
  */
-public class CharacterManager extends EntityManager implements EmotionMaintenanceListener {
+public class CharacterManager extends EntityManager implements EmotionMaintenanceListener,
+  BatchDecayEngine.Owner {
 
   public static Logger sLog = Logger.getLogger("Alma");
+  private static AffectScheduler sScheduler = AffectScheduler.getScheduler();
   private static AffectManager.InterfaceHolder affectManager = AffectManager.sInterface;
   private CharacterManager fCharacterManagerInstance = null;
   private PersonalityEmotionsRelations fPersEmoRels = null;
@@ -60,9 +62,12 @@ public class CharacterManager extends EntityManager implements EmotionMaintenanc
   private AffectStatusDisplay fAffectStatusDisplay = null;
   private boolean fDerivedPersonality = false;
   private DecayFunction fDecayFunction = null;
-  private Timer fDecayTimer = null;
-  private Timer fMoodComputationTimer = null;
-  private Timer fInternalAppraisalTimer = null;
+  private BatchDecayEngine fBatchDecayEngine = null;
+  private LazyDecayEngine fLazyDecayEngine = null;
+  private AffectScheduler.Tick fDecayTimer = null;
+  private AffectScheduler.Tick fMoodComputationTimer = null;
+  private boolean fDecayParked = false;
+  private boolean fMoodComputationParked = false;
   private boolean fShowAffectMonitor = false;
   boolean fAffectComputationPaused = false;
 
@@ -85,13 +90,11 @@ public class CharacterManager extends EntityManager implements EmotionMaintenanc
     fEmotionHistory = new EmotionHistory();
     fDecayFunction.init(fAc.emotionDecaySteps);
     fEmotionEngine = new EmotionEngine(fPersonality, fDecayFunction);
-    fDecayTimer = new Timer(true);
-    fDecayTimer.schedule(new EmotionDecayTask(), fAc.emotionDecayPeriod, fAc.emotionDecayPeriod);
+    fDecayTimer = sScheduler.schedule(new EmotionDecayTask(), fAc.emotionDecayPeriod);
     // Setup mood processing	
     fMoodEngine = new MoodEngine(fPersonality, fAc.moodStabilityControlledByNeurotism,
       fDefaultMood, fAc.moodReturnOverallTime);
-    fMoodComputationTimer = new Timer(true);
-    fMoodComputationTimer.schedule(new MoodComputationTask(), fAc.moodReturnPeriod, fAc.moodReturnPeriod);
+    fMoodComputationTimer = sScheduler.schedule(new MoodComputationTask(), fAc.moodReturnPeriod);
     // Setup affect monitoring
     if (!sIntegratedDesktopMode) {
       Thread startAffectMonitor = new Thread() {
@@ -109,14 +112,24 @@ public class CharacterManager extends EntityManager implements EmotionMaintenanc
    * The
    * <code>EmotionDecayTask</code> class manages the emotion decay process.
    */
-  private class EmotionDecayTask extends TimerTask {
+  private class EmotionDecayTask implements Runnable {
 
     private EmotionDecayTask() {
     }
 
     public synchronized void run() {
+      if (fBatchDecayEngine != null) {
+        // the batch engine calls back emotionsDecayed()
+        fBatchDecayEngine.decay(fCharacterManagerInstance);
+        return;
+      }
+      if (fLazyDecayEngine != null) {
+        stepLazyDecay();
+        return;
+      }
       fEmotionVector =
         fEmotionEngine.decay(fEmotionHistory, fEmotionVector, createEmotionVector());
+      stateChanged();
       if ((fAffectMonitor != null) && fShowAffectMonitor) {
         fAffectMonitor.updateEmotionDisplay(fName, fEmotionVector);
       }
@@ -124,6 +137,7 @@ public class CharacterManager extends EntityManager implements EmotionMaintenanc
         fAffectStatusDisplay.updateStatusDisplay(fName, fEmotionVector,
           fDefaultMood, fCurrentMood, fCurrentMoodTendency);
       }
+      parkEmotionDecay();
     }
   }
 
@@ -133,7 +147,7 @@ public class CharacterManager extends EntityManager implements EmotionMaintenanc
    * is usually done by the EmotionDecayTask, but in case it is diabled some
    * other method has to monitor the emotions.
    */
-  private class EmotionMonitorTask extends TimerTask {
+  private class EmotionMonitorTask implements Runnable {
 
     private EmotionMonitorTask() {
     }
@@ -155,8 +169,8 @@ public class CharacterManager extends EntityManager implements EmotionMaintenanc
   public void enableEmotionDecay() {
     if (!fAffectComputationPaused) {
       fDecayTimer.cancel();
-      fDecayTimer = new Timer(true);
-      fDecayTimer.schedule(new EmotionDecayTask(), fAc.emotionDecayPeriod, fAc.emotionDecayPeriod);
+      fDecayParked = false;
+      scheduleEmotionDecay();
     }
   }
 
@@ -164,8 +178,7 @@ public class CharacterManager extends EntityManager implements EmotionMaintenanc
    * Starts emotion monitoring, if not running.
    */
   public void enableEmotionMonitoring() {
-    fDecayTimer = new Timer(true);
-    fDecayTimer.schedule(new EmotionMonitorTask(), fAc.emotionDecayPeriod, fAc.emotionDecayPeriod);
+    fDecayTimer = sScheduler.schedule(new EmotionMonitorTask(), fAc.emotionDecayPeriod);
   }
 
   /**
@@ -173,6 +186,94 @@ public class CharacterManager extends EntityManager implements EmotionMaintenanc
    */
   public void disableEmotionDecay() {
     fDecayTimer.cancel();
+    fDecayParked = false;
+    suspendDecayEngines(true);
+  }
+
+  /**
+   * Schedules the emotion decay task or, if the character's emotions are
+   * decayed by a batch decay engine, resumes the batch decay.
+   */
+  private void scheduleEmotionDecay() {
+    if ((fBatchDecayEngine != null) || (fLazyDecayEngine != null)) {
+      suspendDecayEngines(false);
+    } else {
+      fDecayTimer = sScheduler.schedule(new EmotionDecayTask(), fAc.emotionDecayPeriod);
+    }
+  }
+
+  private synchronized void suspendDecayEngines(boolean suspend) {
+    if (fBatchDecayEngine != null) {
+      fBatchDecayEngine.suspend(this, suspend);
+    }
+    if (fLazyDecayEngine != null) {
+      long now = sScheduler.currentTimeMillis();
+      if (suspend) {
+        fLazyDecayEngine.suspend(now);
+      } else {
+        fLazyDecayEngine.resume(now);
+      }
+    }
+  }
+
+  /**
+   * Stops the emotion decay task if the character's emotion history is empty.
+   * The decay task does nothing but recompute the baseline emotions until new
+   * emotions are elicited. Parked tasks are scheduled again by
+   * <code>unpark()</code>.
+   */
+  private synchronized void parkEmotionDecay() {
+    if (!fAffectComputationPaused && !fDecayParked && (fEmotionHistory.size() == 0)) {
+      fDecayTimer.cancel();
+      fDecayParked = true;
+    }
+  }
+
+  /**
+   * Stops the mood computation task if the character's mood is at rest (see
+   * <code>MoodEngine.isAtRest()</code>). A character with neurotic mood changes
+   * keeps computing its mood.
+   */
+  private synchronized void parkMoodComputation() {
+    if (!fAffectComputationPaused && !fMoodComputationParked
+      && fMoodEngine.isAtRest(fCurrentMood)) {
+      fMoodComputationTimer.cancel();
+      fMoodComputationParked = true;
+    }
+  }
+
+  /**
+   * Schedules parked emotion decay and mood computation tasks again. This is
+   * done whenever new emotions are elicited.
+   */
+  private synchronized void unpark() {
+    if (fDecayParked && !fAffectComputationPaused) {
+      fDecayParked = false;
+      scheduleEmotionDecay();
+    }
+    unparkMoodComputation();
+  }
+
+  /**
+   * Schedules a parked mood computation task again. This is done whenever
+   * the character's mood is changed from outside.
+   */
+  private synchronized void unparkMoodComputation() {
+    if (fMoodComputationParked && !fAffectComputationPaused) {
+      fMoodComputationParked = false;
+      fMoodComputationTimer = sScheduler.schedule(new MoodComputationTask(), fAc.moodReturnPeriod);
+    }
+  }
+
+  /**
+   * Returns if the character reached a steady state in which neither its
+   * emotions nor its mood are computed periodically.
+   *
+   * @return true if emotion decay and mood computation are parked, false
+   * otherwise
+   */
+  public synchronized boolean isParked() {
+    return fDecayParked && fMoodComputationParked;
   }
 
   /**
@@ -203,14 +304,14 @@ public class CharacterManager extends EntityManager implements EmotionMaintenanc
     if (fAffectComputationPaused) {
       sLog.info(fName + " emotion computation resumed ...");
 
-      fDecayTimer = new Timer(true);
-      fDecayTimer.schedule(new EmotionDecayTask(), fAc.emotionDecayPeriod, fAc.emotionDecayPeriod);
+      fDecayParked = false;
+      scheduleEmotionDecay();
 
       sLog.info(fName + " mood computation resumed ...");
       fMoodEngine = new MoodEngine(fPersonality, fAc.moodStabilityControlledByNeurotism, fDefaultMood, fAc.moodReturnOverallTime);
       fMoodComputationTimer.cancel();
-      fMoodComputationTimer = new Timer(true);
-      fMoodComputationTimer.schedule(new MoodComputationTask(), fAc.moodReturnPeriod, fAc.moodReturnPeriod);
+      fMoodComputationParked = false;
+      fMoodComputationTimer = sScheduler.schedule(new MoodComputationTask(), fAc.moodReturnPeriod);
 
       fAffectComputationPaused = false;
       return true;
@@ -341,18 +442,25 @@ public class CharacterManager extends EntityManager implements EmotionMaintenanc
    * <code>MoodComputationTask</code> class manages the compuatation of the
    * actual mood.
    */
-  private class MoodComputationTask extends TimerTask {
+  private class MoodComputationTask implements Runnable {
 
     private MoodComputationTask() {
     }
 
     public synchronized void run() {
-      fCurrentMood = fMoodEngine.compute(fCurrentMood, fEmotionVector);
-      fCurrentMoodTendency = fMoodEngine.getCurrentMoodTendency();
+      Mood mood = fMoodEngine.compute(fCurrentMood, getCurrentEmotions());
+      Mood moodTendency = fMoodEngine.getCurrentMoodTendency();
+      if (!mood.equals(fCurrentMood) || (fCurrentMoodTendency == null)
+        || !moodTendency.equals(fCurrentMoodTendency)) {
+        stateChanged();
+      }
+      fCurrentMood = mood;
+      fCurrentMoodTendency = moodTendency;
       if ((fAffectMonitor != null) && fShowAffectMonitor) {
         fAffectMonitor.updateMoodDisplay(fName, fEmotionVector, fMoodEngine.getEmotionsCenter(),
           fDefaultMood, fCurrentMood, fCurrentMoodTendency);
       }
+      parkMoodComputation();
     }
   }
 
@@ -363,8 +471,8 @@ public class CharacterManager extends EntityManager implements EmotionMaintenanc
     if (!fAffectComputationPaused) {
       fMoodEngine = new MoodEngine(fPersonality, fAc.moodStabilityControlledByNeurotism, fDefaultMood, fAc.moodReturnOverallTime);
       fMoodComputationTimer.cancel();
-      fMoodComputationTimer = new Timer(true);
-      fMoodComputationTimer.schedule(new MoodComputationTask(), fAc.moodReturnPeriod, fAc.moodReturnPeriod);
+      fMoodComputationParked = false;
+      fMoodComputationTimer = sScheduler.schedule(new MoodComputationTask(), fAc.moodReturnPeriod);
     }
   }
 
@@ -373,10 +481,7 @@ public class CharacterManager extends EntityManager implements EmotionMaintenanc
    */
   public void disableMoodComputation() {
     fMoodComputationTimer.cancel();
-  }
-
-  public void addEEC(EEC eec) {
-    fEmotionEngine.addEEC(eec);
+    fMoodComputationParked = false;
   }
 
   /**
@@ -390,9 +495,197 @@ public class CharacterManager extends EntityManager implements EmotionMaintenanc
     fDecayFunction = decayFunction;
     fDecayFunction.init(fAc.emotionDecaySteps);
     fEmotionEngine = new EmotionEngine(fPersonality, fDecayFunction);
+    // the batch or lazy engine has to continue with the new decay curve
+    if (fBatchDecayEngine != null) {
+      setBatchDecayEngine(fBatchDecayEngine);
+    }
+    if (fLazyDecayEngine != null) {
+      setLazyDecay(true);
+    }
     enableEmotionDecay();
   }
 
+  /**
+   * Lets a batch decay engine decay the character's emotions instead of the
+   * character's own emotion decay task. If the character's decay function is
+   * not supported by batch decay engines, the character keeps its own emotion
+   * decay task.
+   *
+   * @param engine the batch decay engine, null switches back to the
+   * character's own emotion decay task
+   *
+   * @return true if the character's emotions are decayed by the batch decay
+   * engine, false otherwise
+   */
+  public synchronized boolean setBatchDecayEngine(BatchDecayEngine engine) {
+    boolean paused = fAffectComputationPaused;
+    if (engine != null) {
+      setLazyDecay(false);
+    }
+    disableEmotionDecay();
+    if (fBatchDecayEngine != null) {
+      fBatchDecayEngine.remove(this);
+    }
+    fBatchDecayEngine = ((engine != null) && BatchDecayEngine.supports(fDecayFunction)) ? engine : null;
+    if (fBatchDecayEngine != null) {
+      for (int i = 0; i < fEmotionHistory.size(); i++) {
+        addDecayingEmotions(fEmotionHistory.get(i));
+      }
+      fBatchDecayEngine.suspend(this, paused);
+    }
+    enableEmotionDecay();
+    return (fBatchDecayEngine != null);
+  }
+
+  /**
+   * Returns the batch decay engine that decays the character's emotions.
+   *
+   * @return the batch decay engine or null if the character's emotions are
+   * decayed by the character's own emotion decay task
+   */
+  public synchronized BatchDecayEngine getBatchDecayEngine() {
+    return fBatchDecayEngine;
+  }
+
+  /**
+   * Implements BatchDecayEngine.Owner
+   */
+  public synchronized void emotionsDecayed() {
+    // all inactive history elements are removed at once, since the batch
+    // engine only calls back if emotions are still decaying
+    fEmotionHistory.removeInactive();
+    fEmotionVector = fEmotionHistory.getEmotionalState(createEmotionVector());
+    stateChanged();
+    if ((fAffectMonitor != null) && fShowAffectMonitor) {
+      fAffectMonitor.updateEmotionDisplay(fName, fEmotionVector);
+    }
+    if ((fAffectStatusDisplay != null)) {
+      fAffectStatusDisplay.updateStatusDisplay(fName, fEmotionVector,
+        fDefaultMood, fCurrentMood, fCurrentMoodTendency);
+    }
+  }
+
+  /**
+   * Switches between lazy and periodic emotion decay. In lazy mode, the
+   * character's emotions are not decayed every decay period. Instead, the
+   * current intensities are computed from the start of the decay when the
+   * emotions are requested (e.g. by <code>getCurrentEmotions()</code>, the
+   * mood computation or the output creators). An idle character does not use
+   * any CPU time for emotion decay. Lazy decay requires a decay function with
+   * a closed form and replaces a batch decay engine. Affect monitors are only
+   * updated when the emotions are requested.
+   *
+   * @param lazy true enables lazy emotion decay, false enables periodic
+   * emotion decay
+   *
+   * @return true if lazy emotion decay is enabled, false otherwise
+   */
+  public synchronized boolean setLazyDecay(boolean lazy) {
+    if (!lazy && (fLazyDecayEngine == null)) {
+      return false;
+    }
+    boolean paused = fAffectComputationPaused;
+    if (lazy && (fBatchDecayEngine != null)) {
+      setBatchDecayEngine(null);
+    }
+    updateLazyDecay();
+    disableEmotionDecay();
+    fLazyDecayEngine = null;
+    if (lazy && (fDecayFunction instanceof ClosedFormDecayFunction)) {
+      long now = sScheduler.currentTimeMillis();
+      fLazyDecayEngine = new LazyDecayEngine((ClosedFormDecayFunction) fDecayFunction,
+        fAc.emotionDecayPeriod);
+      for (int i = 0; i < fEmotionHistory.size(); i++) {
+        addDecayingEmotions(fEmotionHistory.get(i));
+      }
+      if (paused) {
+        fLazyDecayEngine.suspend(now);
+      }
+    }
+    enableEmotionDecay();
+    return (fLazyDecayEngine != null);
+  }
+
+  /**
+   * Returns if the character's emotions are decayed lazily.
+   *
+   * @return true if lazy emotion decay is enabled, false otherwise
+   */
+  public synchronized boolean isLazyDecay() {
+    return (fLazyDecayEngine != null);
+  }
+
+  /**
+   * Computes the current intensities of lazily decayed emotions and updates
+   * the character's emotional state.
+   */
+  private synchronized void updateLazyDecay() {
+    if ((fLazyDecayEngine != null)
+      && fLazyDecayEngine.update(sScheduler.currentTimeMillis())) {
+      // there is no periodic decay task that removes inactive elements
+      fEmotionHistory.removeInactive();
+      fEmotionVector = fEmotionHistory.getEmotionalState(createEmotionVector());
+      stateChanged();
+    }
+  }
+
+  /**
+   * Performs a single lazy decay step for a paused affect computation.
+   */
+  private synchronized void stepLazyDecay() {
+    fLazyDecayEngine.step();
+    updateLazyDecay();
+    if ((fAffectMonitor != null) && fShowAffectMonitor) {
+      fAffectMonitor.updateEmotionDisplay(fName, fEmotionVector);
+    }
+    if ((fAffectStatusDisplay != null)) {
+      fAffectStatusDisplay.updateStatusDisplay(fName, fEmotionVector,
+        fDefaultMood, fCurrentMood, fCurrentMoodTendency);
+    }
+  }
+
+  /**
+   * Hands the active emotions of a new history element over to the batch or
+   * lazy decay engine.
+   */
+  private void addDecayingEmotions(EmotionVector emotions) {
+    if (fBatchDecayEngine != null) {
+      for (int i = 0; i < emotions.size(); i++) {
+        fBatchDecayEngine.add(this, emotions.getEmotion(i), fDecayFunction);
+      }
+    }
+    if (fLazyDecayEngine != null) {
+      long now = sScheduler.currentTimeMillis();
+      for (int i = 0; i < emotions.size(); i++) {
+        fLazyDecayEngine.add(emotions.getEmotion(i), now);
+      }
+    }
+  }
+
+  /**
+   * Returns the character's current emotions. Lazily decayed emotions are
+   * brought up to date first.
+   *
+   * @return the character's current emotions
+   */
+  @Override
+  public synchronized EmotionVector getCurrentEmotions() {
+    updateLazyDecay();
+    return fEmotionVector;
+  }
+
+  /**
+   * Returns the version of the character's affective state. Lazily decayed
+   * emotions are brought up to date first.
+   *
+   * @return the version of the character's affective state
+   */
+  @Override
+  public synchronized long getStateVersion() {
+    updateLazyDecay();
+    return super.getStateVersion();
+  }
+
   /**
    * Returns the character's actual decay function
    *
@@ -416,6 +709,7 @@ public class CharacterManager extends EntityManager implements EmotionMaintenanc
    *
    * @return an EmotionEngine object
    */
+  @Override
   public synchronized EmotionEngine getEmotionEngine() {
     return fEmotionEngine;
   }
@@ -433,9 +727,16 @@ public class CharacterManager extends EntityManager implements EmotionMaintenanc
     fPersonality = personality;
     fEmotionVector = createEmotionVector();
     fEmotionHistory = new EmotionHistory();
+    if (fBatchDecayEngine != null) {
+      fBatchDecayEngine.remove(this);
+    }
+    if (fLazyDecayEngine != null) {
+      fLazyDecayEngine.clear();
+    }
     fEmotionEngine = new EmotionEngine(fPersonality, fDecayFunction);
     fDefaultMood = getDefaultMood(personality);
     fCurrentMood = getDefaultMood(personality);
+    stateChanged();
 
     if ((fAffectMonitor != null) && fShowAffectMonitor) {
       fAffectMonitor.updateEmotionDisplay(fName, fEmotionVector);
@@ -459,6 +760,28 @@ public class CharacterManager extends EntityManager implements EmotionMaintenanc
     fEmotionEngine = new EmotionEngine(fPersonality, fDecayFunction);
     enableMoodComputation();
     enableEmotionDecay();
+    // the lazy engine has to continue with the new decay period
+    if (fLazyDecayEngine != null) {
+      setLazyDecay(true);
+    }
+  }
+
+  @Override
+  public synchronized void setCurrentMood(Mood m) {
+    super.setCurrentMood(m);
+    unparkMoodComputation();
+  }
+
+  @Override
+  public synchronized void setDefaultMood(Mood m) {
+    super.setDefaultMood(m);
+    unparkMoodComputation();
+  }
+
+  @Override
+  public synchronized void resetDefaultMood() {
+    super.resetDefaultMood();
+    unparkMoodComputation();
   }
 
   @Override
@@ -473,12 +796,17 @@ public class CharacterManager extends EntityManager implements EmotionMaintenanc
    *
    * @return generated emotions
    */
-  public synchronized EmotionVector inferEmotions() {
+  @Override
+  EmotionVector infer() {
+    updateLazyDecay();
     EmotionVector result = createEmotionVector();
     result = fEmotionEngine.inferEmotions(result, fEmotionHistory, fCurrentMood);
     fEmotionEngine.clearEEC();
     fEmotionHistory.add(result);
+    addDecayingEmotions(result);
     fEmotionVector = fEmotionHistory.getEmotionalState(fEmotionVector);
+    stateChanged();
+    unpark();
 
     if ((fAffectMonitor != null) && fShowAffectMonitor) {
       fAffectMonitor.updateEmotionDisplay(fName, fEmotionVector);
@@ -493,11 +821,17 @@ public class CharacterManager extends EntityManager implements EmotionMaintenanc
       // if the affect computation is paused, return the last active affect output document
       return fEmotionHistory.getEmotionalState(fEmotionVector);
     }
+    // keep the order of appraised and infused emotions
+    inferPending();
 
+    updateLazyDecay();
     EmotionVector result = createEmotionVector();
     result.add(e);
     fEmotionHistory.add(result);
+    addDecayingEmotions(result);
     fEmotionVector = fEmotionHistory.getEmotionalState(fEmotionVector);
+    stateChanged();
+    unpark();
 
     if ((fAffectMonitor != null) && fShowAffectMonitor) {
       fAffectMonitor.updateEmotionDisplay(fName, fEmotionVector);
@@ -537,6 +871,9 @@ public class CharacterManager extends EntityManager implements EmotionMaintenanc
   public void stopAll() {
     fDecayTimer.cancel();
     fMoodComputationTimer.cancel();
+    fDecayParked = false;
+    fMoodComputationParked = false;
+    suspendDecayEngines(true);
   }
 
   /**
@@ -570,8 +907,12 @@ public class CharacterManager extends EntityManager implements EmotionMaintenanc
           }
         }
       }
+      updateLazyDecay();
       fEmotionHistory.add(emotions);
+      addDecayingEmotions(emotions);
       fEmotionVector = fEmotionHistory.getEmotionalState(fEmotionVector);
+      stateChanged();
+      unpark();
 
       // show elicited emotion(s) in affect monitor even if affect computation is paused
       if ((fAffectMonitor != null) && fShowAffectMonitor) {
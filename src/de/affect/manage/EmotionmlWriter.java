@@ -0,0 +1,306 @@
+/*
+ * EmotionmlWriter.java
+ *
+ * Copyright (c) 2008 by Patrick Gebhard
+ * All rights reserved.
+ *
+ */
+package de.affect.manage;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.List;
+import java.util.WeakHashMap;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+import static de.affect.emotion.EmotionsPADRelation.getEmotionPADMapping;
+
+import de.affect.emotion.Emotion;
+import de.affect.emotion.EmotionAppraisalVars;
+import de.affect.emotion.EmotionType;
+import de.affect.mood.Mood;
+import de.affect.personality.Personality;
+import de.affect.util.Convert;
+
+/**
+ * The <code>EmotionmlWriter</code> class writes the current affect of a
+ * character as EmotionML document directly to a stream with a StAX stream
+ * writer, without building an xml bean tree. The document has the same
+ * content as the one created by
+ * <code>AffectOutputCreater.getEmotionmlDocument</code>.
+ *
+ * The parts of a document that rarely change are prepared only once: the
+ * category names of the ALMA OCC vocabulary are shared by all documents and
+ * the printed personality values of a character's info element are kept
+ * until the personality of the character is replaced. All elements are
+ * written through the stream writer, so that any StAX implementation can be
+ * used.
+ *
+ * @author Patrick Gebhard
+ *
+ * @version 1.0
+ */
+public class EmotionmlWriter {
+
+  private static final String sNAMESPACE = "http://www.w3.org/2009/10/emotionml";
+  private static final String sAFFECT_NAMESPACE = "xml.affect.de";
+  private static final String sPAD_DIMENSIONS = "http://www.w3.org/TR/emotion-voc/xml#pad-dimensions";
+  private static final String sOCC_APPRAISALS = "http://www.w3.org/TR/emotion-voc/xml#occ-appraisals";
+  private static final XMLOutputFactory sFactory = XMLOutputFactory.newInstance();
+  private static final String[] sCategories = createCategories();
+  private static final WeakHashMap<CharacterManager, InfoTemplate> sInfoTemplates =
+    new WeakHashMap<CharacterManager, InfoTemplate>();
+
+  protected EmotionmlWriter() {
+  }
+
+  /**
+   * Writes the current affect of a character as EmotionML document to a
+   * character stream. The stream is flushed, but not closed.
+   *
+   * @param character the character
+   * @param out the character stream
+   *
+   * @throws IOException if the document cannot be written
+   */
+  public static void write(CharacterManager character, Writer out) throws IOException {
+    try {
+      XMLStreamWriter writer = sFactory.createXMLStreamWriter(out);
+      writer.writeStartDocument("1.0");
+      write(character, writer);
+      writer.writeEndDocument();
+      writer.flush();
+      out.flush();
+    } catch (XMLStreamException xse) {
+      throw new IOException("Cannot write EmotionML of " + character.getName(), xse);
+    }
+  }
+
+  /**
+   * Writes the current affect of a character as UTF-8 encoded EmotionML
+   * document to a byte stream. The stream is flushed, but not closed.
+   *
+   * @param character the character
+   * @param out the byte stream
+   *
+   * @throws IOException if the document cannot be written
+   */
+  public static void write(CharacterManager character, OutputStream out) throws IOException {
+    Writer utf8 = new OutputStreamWriter(out, "UTF-8");
+    try {
+      XMLStreamWriter writer = sFactory.createXMLStreamWriter(utf8);
+      writer.writeStartDocument("UTF-8", "1.0");
+      write(character, writer);
+      writer.writeEndDocument();
+      writer.flush();
+      utf8.flush();
+    } catch (XMLStreamException xse) {
+      throw new IOException("Cannot write EmotionML of " + character.getName(), xse);
+    }
+  }
+
+  private static void write(CharacterManager character, XMLStreamWriter writer)
+    throws XMLStreamException {
+    writer.setDefaultNamespace(sNAMESPACE);
+    writer.writeStartElement(sNAMESPACE, "emotionml");
+    writer.writeDefaultNamespace(sNAMESPACE);
+    writer.writeAttribute("version", "1.0");
+    writeInfo(writer, getInfo(character));
+    writeVocabulary(writer);
+
+    // character's mood
+    Mood mood = character.getCurrentMood();
+    writer.writeStartElement(sNAMESPACE, "emotion");
+    writer.writeAttribute("category-set", "alma-pad-categories");
+    writer.writeAttribute("dimension-set", sPAD_DIMENSIONS);
+    writer.writeStartElement(sNAMESPACE, "info");
+    writer.writeCharacters(character.getName() + " current mood is "
+      + mood.getMoodWordIntensity() + " " + mood.getMoodWord());
+    writer.writeEndElement();
+    writeDimensions(writer, mood);
+    writer.writeEndElement();
+
+    // character's emotions
+    boolean paused = character.fAffectComputationPaused;
+    long decayPeriod = character.getAffectConsts().emotionDecayPeriod;
+    for (Emotion emotion : character.getCurrentEmotions().getEmotions()) {
+      EmotionAppraisalVars av = emotion.getAppraisalVariables();
+      writer.writeStartElement(sNAMESPACE, "emotion");
+      writer.writeAttribute("category-set", "alma-occ-categories");
+      writer.writeAttribute("dimension-set", sPAD_DIMENSIONS);
+      if (!paused && (av != null)) {
+        long duration = character.getEmotionEngine().simulateDecaySize(emotion) * decayPeriod;
+        writer.writeAttribute("start", Long.toString(emotion.getStart()));
+        writer.writeAttribute("end", Long.toString(emotion.getStart() + duration));
+        writer.writeAttribute("duration", Long.toString(duration));
+      }
+      if (av != null) {
+        writer.writeAttribute("appraisal-set", sOCC_APPRAISALS);
+      }
+
+      // the emotion name, according to the alma occ category set
+      if (!paused) {
+        writer.writeEmptyElement(sNAMESPACE, "category");
+        writer.writeAttribute("name", emotion.getType().name());
+        writer.writeAttribute("value", printFloat((float) emotion.getIntensity()));
+      } else {
+        writer.writeStartElement(sNAMESPACE, "category");
+        writer.writeAttribute("name", emotion.getType().name());
+        writer.writeEmptyElement(sNAMESPACE, "trace");
+        writer.writeAttribute("freq", Convert.prettyPrint(1000 / decayPeriod) + "Hz");
+        writer.writeAttribute("samples", printFloats(character.getEmotionEngine().simulateDecay(emotion)));
+        writer.writeEndElement();
+      }
+
+      writeDimensions(writer, (emotion.getType().equals(EmotionType.Physical))
+        ? emotion.getPADValues() : getEmotionPADMapping(emotion.getType()));
+
+      if (av != null) {
+        if (av.isSetDesirability() && av.isSetAgency()) {
+          writeDescription(writer, "appraisal", "desirability", av.desirability());
+        }
+        if (av.isSetPraiseworthiness()) {
+          writeDescription(writer, "appraisal", "praiseworthiness", av.praiseworthiness());
+        }
+        if (av.isSetAppealingness()) {
+          writeDescription(writer, "appraisal", "appealingness", av.appealingness());
+        }
+        if (av.isSetDesirability() && !av.isSetAgency()) {
+          writeDescription(writer, "appraisal", "desirability-for-other", av.desirability());
+        }
+        if (av.isSetLikelihood()) {
+          writeDescription(writer, "appraisal", "likelihood", av.likelihood());
+        }
+        if (av.isSetLiking()) {
+          writeDescription(writer, "appraisal", "liking", av.liking());
+        }
+        // the elicitor
+        writer.writeEmptyElement(sNAMESPACE, "reference");
+        writer.writeAttribute("uri", emotion.getElicitor().toString());
+        writer.writeAttribute("role", "triggeredBy");
+      }
+      writer.writeEndElement();
+    }
+    writer.writeEndElement();
+  }
+
+  private static void writeDimensions(XMLStreamWriter writer, Mood pad) throws XMLStreamException {
+    writeDescription(writer, "dimension", "pleasure", pad.getPleasure());
+    writeDescription(writer, "dimension", "arousal", pad.getArousal());
+    writeDescription(writer, "dimension", "domiance", pad.getDominance());
+  }
+
+  private static void writeDescription(XMLStreamWriter writer, String element, String name,
+    double value) throws XMLStreamException {
+    writer.writeEmptyElement(sNAMESPACE, element);
+    writer.writeAttribute("name", name);
+    writer.writeAttribute("value", printFloat((float) value));
+  }
+
+  /**
+   * Returns the info template with the personality of a character. It is
+   * created again if the personality has been replaced.
+   */
+  private static InfoTemplate getInfo(CharacterManager character) {
+    Personality personality = character.getPersonality();
+    boolean derived = character.isDerivedPersonality();
+    synchronized (sInfoTemplates) {
+      InfoTemplate template = sInfoTemplates.get(character);
+      if ((template == null) || (template.fPersonality != personality) || (template.fDerived != derived)) {
+        template = new InfoTemplate(character.getName(), personality, derived);
+        sInfoTemplates.put(character, template);
+      }
+      return template;
+    }
+  }
+
+  private static void writeInfo(XMLStreamWriter writer, InfoTemplate template)
+    throws XMLStreamException {
+    writer.writeStartElement(sNAMESPACE, "info");
+    writer.writeStartElement("", "CharacterAffect", sAFFECT_NAMESPACE);
+    writer.writeDefaultNamespace(sAFFECT_NAMESPACE);
+    writer.writeAttribute("name", template.fName);
+    writer.writeEmptyElement("", "Personality", sAFFECT_NAMESPACE);
+    for (int i = 0; i < InfoTemplate.sATTRIBUTES.length; i++) {
+      writer.writeAttribute(InfoTemplate.sATTRIBUTES[i], template.fValues[i]);
+    }
+    writer.writeEndElement();
+    writer.writeEndElement();
+  }
+
+  private static void writeVocabulary(XMLStreamWriter writer) throws XMLStreamException {
+    writer.writeStartElement(sNAMESPACE, "vocabulary");
+    writer.writeAttribute("type", "category");
+    writer.writeAttribute("id", "alma-occ-categories");
+    for (String category : sCategories) {
+      writer.writeEmptyElement(sNAMESPACE, "item");
+      writer.writeAttribute("name", category);
+    }
+    writer.writeEndElement();
+  }
+
+  private static String[] createCategories() {
+    EmotionType[] types = EmotionType.values();
+    String[] categories = new String[types.length];
+    for (int i = 0; i < types.length; i++) {
+      categories[i] = types[i].name();
+    }
+    return categories;
+  }
+
+  /** Prints an xs:float like xml beans */
+  private static String printFloat(float value) {
+    if (value == Float.POSITIVE_INFINITY) {
+      return "INF";
+    } else if (value == Float.NEGATIVE_INFINITY) {
+      return "-INF";
+    } else if (Float.isNaN(value)) {
+      return "NaN";
+    }
+    return Float.toString(value);
+  }
+
+  private static String printFloats(List<? extends Number> values) {
+    StringBuilder sb = new StringBuilder();
+    for (Number value : values) {
+      if (sb.length() > 0) {
+        sb.append(' ');
+      }
+      sb.append(printFloat(value.floatValue()));
+    }
+    return sb.toString();
+  }
+
+  /**
+   * The
+   * <code>InfoTemplate</code> class holds the printed personality attributes
+   * of a character's info element together with the personality they have
+   * been printed from.
+   */
+  private static class InfoTemplate {
+
+    private static final String[] sATTRIBUTES = {"derived", "openness", "conscientiousness",
+      "extraversion", "agreeableness", "neurotism"};
+    private final String fName;
+    private final Personality fPersonality;
+    private final boolean fDerived;
+    private final String[] fValues;
+
+    private InfoTemplate(String name, Personality personality, boolean derived) {
+      fName = name;
+      fPersonality = personality;
+      fDerived = derived;
+      fValues = new String[]{Boolean.toString(derived),
+        Double.toString(personality.getOpenness()),
+        Double.toString(personality.getConscientiousness()),
+        // the extraversion is noted with an inverted sign like in the xml bean document
+        Double.toString(-personality.getExtraversion()),
+        Double.toString(personality.getAgreeableness()),
+        Double.toString(personality.getNeurotism())};
+    }
+  }
+}
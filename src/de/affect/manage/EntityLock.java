@@ -0,0 +1,95 @@
+/*
+ * EntityLock.java
+ *
+ * Copyright (c) 2004-2008 by Patrick Gebhard
+ * All rights reserved.
+ *
+ */
+package de.affect.manage;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * The class
+ * <code>EntityLock</code> holds the appraisal locks of all entities
+ * (characters and groups) that are involved in the processing of one affect
+ * input. The appraisal of an entity (adding EECs and inferring emotions) must
+ * not be interleaved with the appraisal of another input for the same entity.
+ *
+ * The locks are always acquired in the creation order of the entities. Inputs
+ * that share entities therefore cannot deadlock and are applied in the same
+ * order to all shared entities (e.g. performer, addressees and listeners of a
+ * dialog act). Inputs for disjoint sets of entities are processed in
+ * parallel.
+ *
+ * @author Patrick Gebhard
+ *
+ * @version 1.0
+ */
+final class EntityLock {
+
+  private static final Comparator<EntityManager> sLockOrder = new Comparator<EntityManager>() {
+    public int compare(EntityManager e1, EntityManager e2) {
+      return (e1.fEntityId < e2.fEntityId) ? -1 : ((e1.fEntityId == e2.fEntityId) ? 0 : 1);
+    }
+  };
+  private final EntityManager[] fEntities;
+
+  private EntityLock(EntityManager[] entities) {
+    fEntities = entities;
+  }
+
+  /**
+   * Acquires the appraisal locks of the given entities. Null entries and
+   * duplicates are ignored. The locks are reentrant, a thread that already
+   * holds some of the locks can acquire them again.
+   *
+   * @param performer the performing entity, may be null
+   * @param others further involved entities, may be null or contain null
+   *
+   * @return the acquired lock, which must be released with
+   * <code>release()</code>
+   */
+  static EntityLock acquire(EntityManager performer, EntityManager[]... others) {
+    int size = 1;
+    for (EntityManager[] entities : others) {
+      size += (entities != null) ? entities.length : 0;
+    }
+    EntityManager[] all = new EntityManager[size];
+    int n = 0;
+    if (performer != null) {
+      all[n++] = performer;
+    }
+    for (EntityManager[] entities : others) {
+      if (entities != null) {
+        for (EntityManager entity : entities) {
+          if (entity != null) {
+            all[n++] = entity;
+          }
+        }
+      }
+    }
+    Arrays.sort(all, 0, n, sLockOrder);
+    int m = 0;
+    for (int i = 0; i < n; i++) {
+      if ((m == 0) || (all[m - 1] != all[i])) {
+        all[m++] = all[i];
+      }
+    }
+    EntityManager[] locked = Arrays.copyOf(all, m);
+    for (EntityManager entity : locked) {
+      entity.fAppraisalLock.lock();
+    }
+    return new EntityLock(locked);
+  }
+
+  /**
+   * Releases all locks in reverse acquisition order.
+   */
+  void release() {
+    for (int i = fEntities.length - 1; i >= 0; i--) {
+      fEntities[i].fAppraisalLock.unlock();
+    }
+  }
+}
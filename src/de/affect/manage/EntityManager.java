@@ -1 +1 @@
-/* * EntityManager.java * * Copyright (c) 2005 by Patrick Gebhard * All rights reserved. * */package de.affect.manage;import java.util.List;import java.util.ArrayList;import static java.lang.Math.abs;import static java.lang.Math.pow;import static java.lang.Math.sqrt;import de.affect.appraisal.AppraisalVariables;import de.affect.emotion.EmotionVector;import de.affect.mood.Mood;import de.affect.personality.Personality;import de.affect.data.AffectConsts;import de.affect.emotion.EmotionType;import java.util.logging.Logger;import static de.affect.personality.PersonalityMoodRelations.getDefaultMood;/**  * The class <code>EntityManager</code> initially stores name and * appraisal rules of an abstract entity. * It also provides placeholders for basic affective structure such as  * personality, mood, emotions, these must be inspirit by higher-level entities * (e.g. by the <code>CharacterManager</code> or <code>GroupManager</code>) * * @author Patrick Gebhard * * @version 1.0 */class EntityManager {  String fName = null;  AppraisalRules fAppraisalRules = null;  Personality fPersonality = null;  Mood fDefaultMood = null;  Mood fCurrentMood = null;  Mood fCurrentMoodTendency = null;  EmotionVector fEmotionVector = null;  List<EmotionType> fAvailEmotions = null;  AffectConsts fAc = null;  private Logger log = Logger.getLogger(Logger.GLOBAL_LOGGER_NAME);;  public EntityManager(String name) {    fName = name;    //Initialise the affect placeholders with default values    fPersonality = new Personality(0.0d, 0.0d, 0.0d, 0.0d, 0.0d);    fDefaultMood = getDefaultMood(fPersonality);    fCurrentMood = getDefaultMood(fPersonality);    fCurrentMoodTendency = getDefaultMood(fPersonality);    fAvailEmotions = new ArrayList<EmotionType>();    fAvailEmotions.add(EmotionType.Undefined);    // PG: added a new common type of emotions that are derived by bio sensors    fAvailEmotions.add(EmotionType.Physical);    fEmotionVector = createEmotionVector();    fAc = new AffectConsts();  }  /**   * <code>getName</code> returns the name of this entity    *   * @return String contains the name of this entity   */  public String getName() {    return fName;  }  /**   * <code>setAppraisalRules</code> set the appraisalRules for this entity.   *   * @param rules a new AppraisalRules   */  public synchronized void setAppraisalRules(AppraisalRules rules) {    fAppraisalRules = rules;  }  /**   * <code>getAppraisalRules</code> returns all appraisalRules for this entity.   *   * @return AppraisalRules contains the actual entitie's appraisal rules   */  public synchronized AppraisalRules getAppraisalRules() {     return fAppraisalRules;  }  /**   * <code>getAppraisalRules</code> returns appraisalRules of the given type   * for this entity.   *   * @param type type of appraisal variables   *   * @return AppraisalRules contains the actual entitie's appraisal rules   */  public synchronized AppraisalRules getAppraisalRules(String type) {     return fAppraisalRules.getAppraisalRulesByType(fName, type);  }  /**   * <code>getAppraisalRuleKeys</code> returns appraisal rule keys of the given   * type for this entity.   *   * @param type type of appraisal variables   *   * @return AppraisalRules contains the actual entitie's appraisal rules   */  public synchronized String[] getAppraisalRuleKeys(String type) {     return fAppraisalRules.getAppraisalRulesByType(fName, type).getKeys(fName);  }  /**   * <code>getAppraisalVariables</code> returns AppraisalVariables for a given    * key.   *   * @param key the rule key that is related to a signal of the world    *   * @return AppraisalVariables[] contains the appraisal variables related to   *                               a key and this entity   */  public synchronized AppraisalVariables[] getAppraisalVariables(String key) {    AppraisalVariables[] appVars = fAppraisalRules.getAppraisalVariables(fName, key);    appVars = (appVars == null) ? new AppraisalVariables[0] : appVars;    return appVars;  }  /**   * <code>getAppraisalVariables</code> returns AppraisalVariables for a given    * key.   *   * @param key the rule key that is related to a signal of the world    * @param type type of appraisal variables   *   * @return AppraisalVariables[] contains the appraisal variables related to   *                               a key and this entity   */  public synchronized AppraisalVariables[] getAppraisalVariables(String key, String type) {    AppraisalVariables[] appVars =       fAppraisalRules.getAppraisalRulesByType(fName, type).getAppraisalVariables(fName, key);    appVars = (appVars == null) ? new AppraisalVariables[0] : appVars;    return appVars;  }  /**   * <code>getAppraisalVariables</code> returns AppraisalVariables for a given    * key.   *   * @param entity another entity that is related to that key   * @param key the rule key that is related to a signal of the world    *   * @return AppraisalVariables[] contains the appraisal variables related to   *                               a key and entity   */  public synchronized AppraisalVariables[] getAppraisalVariables(EntityManager entity, String key) {    AppraisalVariables[] appVars = fAppraisalRules.getAppraisalVariables(entity.getName(), key);    appVars = (appVars == null) ? new AppraisalVariables[0] : appVars;    return appVars;  }  /**   * <code>getAppraisalVariables</code> returns AppraisalVariables for a given    * key.   *   * @param entity another entity that is related to that key   * @param key the rule key that is related to a signal of the world    * @param type type of appraisal variables   *   * @return AppraisalVariables[] contains the appraisal variables related to   *                               a key and entity   */  public synchronized AppraisalVariables[] getAppraisalVariables(EntityManager entity, String key, String type) {    AppraisalVariables[] appVars =       fAppraisalRules.getAppraisalRulesByType(entity.getName(), type).getAppraisalVariables(entity.getName(), key);    appVars = (appVars == null) ? new AppraisalVariables[0] : appVars;    return appVars;  }  /**   * <code>getAppraisalVariables</code> returns all keys related to signals   *   * @param entity the entity that is related to that key   *   * @return String[] contains all keys related to the entity   */  public synchronized String[] getAppraisalRuleKeys(EntityManager entity) {    return fAppraisalRules.getKeys(entity.getName());  }  /**   * Gets the personality of this entity    *   * @return the entity current personality   */  public synchronized Personality getPersonality() {    return fPersonality;  }    public synchronized Mood getCurrentMood() {    return fCurrentMood;  }  public synchronized Mood defaultMood() {    return fDefaultMood;  }  public synchronized Mood getCurrentMoodTendency() {    return fCurrentMood;  }        /**   * Sets the mood of this entity    *   * @return the entity current personality   */  public synchronized void setCurrentMood(Mood m) {    fCurrentMood = m;  }  public synchronized void setDefaultMood(Mood m) {    fDefaultMood = m;  }  public synchronized void resetDefaultMood() {    fDefaultMood = getDefaultMood(fPersonality);	fCurrentMood = fDefaultMood;  }  public synchronized double getDistancetoDefaultMood() {    double cPleasure = fCurrentMood.getPleasure();    double cArousal = fCurrentMood.getArousal();    double cDominance = fCurrentMood.getDominance();    double dPleasure = fDefaultMood.getPleasure();    double dArousal = fDefaultMood.getArousal();    double dDominance = fDefaultMood.getDominance();    return      sqrt(pow(abs(cPleasure - dPleasure), 2.0d) + 	   pow(abs(cArousal - dArousal), 2.0d) + 	   pow(abs(cDominance - dDominance), 2.0d));   }  public synchronized EmotionVector getCurrentEmotions() {    //log.info("Get current Emotions " + fEmotionVector.toString());    return fEmotionVector;  }  public synchronized AffectConsts getAffectConsts() {    return fAc;  }  public synchronized EmotionVector createEmotionVector() {    return new EmotionVector(fPersonality, fCurrentMood, fAvailEmotions);  }}
\ No newline at end of file
+/* * EntityManager.java * * Copyright (c) 2005 by Patrick Gebhard * All rights reserved. * */package de.affect.manage;import java.util.List;import java.util.ArrayList;import java.util.concurrent.atomic.AtomicLong;import java.util.concurrent.locks.Lock;import java.util.concurrent.locks.ReentrantLock;import java.util.concurrent.locks.ReentrantReadWriteLock;import static java.lang.Math.abs;import static java.lang.Math.pow;import static java.lang.Math.sqrt;import de.affect.appraisal.AppraisalVariables;import de.affect.appraisal.EEC;import de.affect.compute.EmotionEngine;import de.affect.emotion.EmotionVector;import de.affect.mood.Mood;import de.affect.personality.EmotionInfluences;import de.affect.personality.Personality;import de.affect.data.AffectConsts;import de.affect.emotion.EmotionType;import java.util.logging.Logger;import static de.affect.personality.PersonalityMoodRelations.getDefaultMood;/**  * The class <code>EntityManager</code> initially stores name and * appraisal rules of an abstract entity. * It also provides placeholders for basic affective structure such as  * personality, mood, emotions, these must be inspirit by higher-level entities * (e.g. by the <code>CharacterManager</code> or <code>GroupManager</code>) * * @author Patrick Gebhard * * @version 1.0 */class EntityManager {  private static final AtomicLong sEntityCount = new AtomicLong(0);  // all entities share one version sequence, so that versions of different  // entities can be compared with a single last seen version  private static final AtomicLong sStateVersion = new AtomicLong(0);  // state changes share the read lock while they take and store a version,  // the current version is read under the write lock, so that no entity  // stores a version that has already been read as current  private static final ReentrantReadWriteLock sStateVersionLock = new ReentrantReadWriteLock();  // the creation order defines the lock order of entities (see EntityLock)  final long fEntityId = sEntityCount.getAndIncrement();  final ReentrantLock fAppraisalLock = new ReentrantLock();  String fName = null;  AppraisalRules fAppraisalRules = null;  Personality fPersonality = null;  Mood fDefaultMood = null;  Mood fCurrentMood = null;  Mood fCurrentMoodTendency = null;  EmotionInfluences fEmotionInfluences = null;  EmotionVector fEmotionVector = null;  List<EmotionType> fAvailEmotions = null;  AffectConsts fAc = null;  // the EECs of the current appraisal while the inference is deferred  private ArrayList<EEC> fDeferredEECs = null;  // EECs in the emotion engine that wait for the end of the deferral  private boolean fInferencePending = false;  private volatile long fStateVersion = sStateVersion.incrementAndGet();  private Logger log = Logger.getLogger(Logger.GLOBAL_LOGGER_NAME);;  public EntityManager(String name) {    fName = name;    //Initialise the affect placeholders with default values    fPersonality = new Personality(0.0d, 0.0d, 0.0d, 0.0d, 0.0d);    fDefaultMood = getDefaultMood(fPersonality);    fCurrentMood = getDefaultMood(fPersonality);    fCurrentMoodTendency = getDefaultMood(fPersonality);    fAvailEmotions = new ArrayList<EmotionType>();    fAvailEmotions.add(EmotionType.Undefined);    // PG: added a new common type of emotions that are derived by bio sensors    fAvailEmotions.add(EmotionType.Physical);    fEmotionVector = createEmotionVector();    fAc = new AffectConsts();  }  /**   * <code>getName</code> returns the name of this entity    *   * @return String contains the name of this entity   */  public String getName() {    return fName;  }  /**   * <code>setAppraisalRules</code> set the appraisalRules for this entity.   *   * @param rules a new AppraisalRules   */  public synchronized void setAppraisalRules(AppraisalRules rules) {    fAppraisalRules = rules;  }  /**   * <code>getAppraisalRules</code> returns all appraisalRules for this entity.   *   * @return AppraisalRules contains the actual entitie's appraisal rules   */  public synchronized AppraisalRules getAppraisalRules() {     return fAppraisalRules;  }  /**   * <code>getAppraisalRules</code> returns appraisalRules of the given type   * for this entity.   *   * @param type type of appraisal variables   *   * @return AppraisalRules contains the actual entitie's appraisal rules   */  public synchronized AppraisalRules getAppraisalRules(String type) {     return fAppraisalRules.getAppraisalRulesByType(fName, type);  }  /**   * <code>getAppraisalRuleKeys</code> returns appraisal rule keys of the given   * type for this entity.   *   * @param type type of appraisal variables   *   * @return AppraisalRules contains the actual entitie's appraisal rules   */  public synchronized String[] getAppraisalRuleKeys(String type) {     return getAppraisalRuleKeys(AppraisalRuleType.forName(type));  }  /**   * <code>getAppraisalRuleKeys</code> returns appraisal rule keys of the given   * type for this entity.   *   * @param type type of appraisal variables   *   * @return AppraisalRules contains the actual entitie's appraisal rules   */  public synchronized String[] getAppraisalRuleKeys(AppraisalRuleType type) {     return fAppraisalRules.getKeys(fName, type);  }  /**   * <code>getAppraisalVariables</code> returns AppraisalVariables for a given    * key.   *   * @param key the rule key that is related to a signal of the world    *   * @return AppraisalVariables[] contains the appraisal variables related to   *                               a key and this entity   */  public synchronized AppraisalVariables[] getAppraisalVariables(String key) {    AppraisalVariables[] appVars = fAppraisalRules.getAppraisalVariables(fName, key);    appVars = (appVars == null) ? new AppraisalVariables[0] : appVars;    return appVars;  }  /**   * <code>getAppraisalVariables</code> returns AppraisalVariables for a given    * key.   *   * @param key the rule key that is related to a signal of the world    * @param type type of appraisal variables   *   * @return AppraisalVariables[] contains the appraisal variables related to   *                               a key and this entity   */  public synchronized AppraisalVariables[] getAppraisalVariables(String key, String type) {    return getAppraisalVariables(key, AppraisalRuleType.forName(type));  }  /**   * <code>getAppraisalVariables</code> returns AppraisalVariables for a given    * key.   *   * @param key the rule key that is related to a signal of the world    * @param type type of appraisal variables   *   * @return AppraisalVariables[] contains the appraisal variables related to   *                               a key and this entity   */  public synchronized AppraisalVariables[] getAppraisalVariables(String key, AppraisalRuleType type) {    AppraisalVariables[] appVars = fAppraisalRules.getAppraisalVariables(fName, key, type);    appVars = (appVars == null) ? new AppraisalVariables[0] : appVars;    return appVars;  }  /**   * <code>getAppraisalVariables</code> returns AppraisalVariables for a given    * key.   *   * @param entity another entity that is related to that key   * @param key the rule key that is related to a signal of the world    *   * @return AppraisalVariables[] contains the appraisal variables related to   *                               a key and entity   */  public synchronized AppraisalVariables[] getAppraisalVariables(EntityManager entity, String key) {    AppraisalVariables[] appVars = fAppraisalRules.getAppraisalVariables(entity.getName(), key);    appVars = (appVars == null) ? new AppraisalVariables[0] : appVars;    return appVars;  }  /**   * <code>getAppraisalVariables</code> returns AppraisalVariables for a given    * key.   *   * @param entity another entity that is related to that key   * @param key the rule key that is related to a signal of the world    * @param type type of appraisal variables   *   * @return AppraisalVariables[] contains the appraisal variables related to   *                               a key and entity   */  public synchronized AppraisalVariables[] getAppraisalVariables(EntityManager entity, String key, String type) {    return getAppraisalVariables(entity, key, AppraisalRuleType.forName(type));  }  /**   * <code>getAppraisalVariables</code> returns AppraisalVariables for a given    * key.   *   * @param entity another entity that is related to that key   * @param key the rule key that is related to a signal of the world    * @param type type of appraisal variables   *   * @return AppraisalVariables[] contains the appraisal variables related to   *                               a key and entity   */  public synchronized AppraisalVariables[] getAppraisalVariables(EntityManager entity, String key, AppraisalRuleType type) {    AppraisalVariables[] appVars = fAppraisalRules.getAppraisalVariables(entity.getName(), key, type);    appVars = (appVars == null) ? new AppraisalVariables[0] : appVars;    return appVars;  }  /**   * <code>getAppraisalVariables</code> returns all keys related to signals   *   * @param entity the entity that is related to that key   *   * @return String[] contains all keys related to the entity   */  public synchronized String[] getAppraisalRuleKeys(EntityManager entity) {    return fAppraisalRules.getKeys(entity.getName());  }  /**   * Gets the personality of this entity    *   * @return the entity current personality   */  public synchronized Personality getPersonality() {    return fPersonality;  }    public synchronized Mood getCurrentMood() {    return fCurrentMood;  }  public synchronized Mood defaultMood() {    return fDefaultMood;  }  public synchronized Mood getCurrentMoodTendency() {    return fCurrentMood;  }        /**   * Sets the mood of this entity    *   * @return the entity current personality   */  public synchronized void setCurrentMood(Mood m) {    fCurrentMood = m;    stateChanged();  }  public synchronized void setDefaultMood(Mood m) {    fDefaultMood = m;    stateChanged();  }  public synchronized void resetDefaultMood() {    fDefaultMood = getDefaultMood(fPersonality);	fCurrentMood = fDefaultMood;    stateChanged();  }  /**   * <code>getStateVersion</code> returns the version of the affective state   * of this entity. The version is increased whenever the emotions, the mood   * or the mood tendency of the entity change. Versions are taken from a   * sequence that is shared by all entities, an entity has changed since a   * moment if its version is greater than <code>currentStateVersion()</code>   * at that moment.   *   * @return long the version of the entity's affective state   */  public long getStateVersion() {    return fStateVersion;  }  /**   * <code>currentStateVersion</code> returns the latest version given to the   * affective state of any entity. All entities that have been given a   * version up to the returned one already return it by   * <code>getStateVersion</code>.   *   * @return long the latest state version   */  static long currentStateVersion() {    Lock lock = sStateVersionLock.writeLock();    lock.lock();    try {      return sStateVersion.get();    } finally {      lock.unlock();    }  }  /**   * <code>stateChanged</code> gives the affective state of this entity a   * new version.   */  void stateChanged() {    Lock lock = sStateVersionLock.readLock();    lock.lock();    try {      fStateVersion = sStateVersion.incrementAndGet();    } finally {      lock.unlock();    }  }  public synchronized double getDistancetoDefaultMood() {    double cPleasure = fCurrentMood.getPleasure();    double cArousal = fCurrentMood.getArousal();    double cDominance = fCurrentMood.getDominance();    double dPleasure = fDefaultMood.getPleasure();    double dArousal = fDefaultMood.getArousal();    double dDominance = fDefaultMood.getDominance();    return      sqrt(pow(abs(cPleasure - dPleasure), 2.0d) + 	   pow(abs(cArousal - dArousal), 2.0d) + 	   pow(abs(cDominance - dDominance), 2.0d));   }  public synchronized EmotionVector getCurrentEmotions() {    //log.info("Get current Emotions " + fEmotionVector.toString());    return fEmotionVector;  }  public synchronized AffectConsts getAffectConsts() {    return fAc;  }  /**   * <code>getEmotionInfluences</code> returns the cached emotion baselines   * of this entity's personality. The cache is renewed if the personality or   * its relations to emotions have been replaced.   *   * @return EmotionInfluences the emotion influences, null if there is no   *                           personality   */  synchronized EmotionInfluences getEmotionInfluences() {    if (fPersonality == null) {      return null;    }    if ((fEmotionInfluences == null) || (fEmotionInfluences.getPersonality() != fPersonality) ||        (fEmotionInfluences.getPersonalityEmotionsRelations() != fPersonality.getPersonalityEmotionsRelations())) {      fEmotionInfluences = new EmotionInfluences(fPersonality);    }    return fEmotionInfluences;  }  /**   * <code>getEmotionEngine</code> returns the emotion engine that infers the   * emotions of this entity. Entities without emotion inference return null.   *   * @return EmotionEngine the emotion engine of this entity   */  EmotionEngine getEmotionEngine() {    return null;  }  /**   * <code>infer</code> infers the emotions of the EECs in the emotion engine   * and adds them to the emotional state of this entity. Entities with   * emotion inference implement it.   *   * @return EmotionVector the inferred emotions   */  EmotionVector infer() {    return null;  }  /**   * <code>addEEC</code> adds the EEC of an appraisal to the emotion engine,   * or keeps it until <code>inferEmotions</code> is called if the inference   * is deferred. Entities without emotion inference ignore it.   *   * @param eec the Emotion Eliciting Condition   */  public synchronized void addEEC(EEC eec) {    if (fDeferredEECs != null) {      fDeferredEECs.add(eec);    } else if (getEmotionEngine() != null) {      getEmotionEngine().addEEC(eec);    }  }  /**   * <code>inferEmotions</code> infers the emotions of the added EECs. If the   * inference is deferred, the EECs are added to the emotion engine and   * wait for <code>resumeInference</code>. If an EEC of a kind that is   * already waiting for inference is added, the waiting EECs are inferred   * first.   *   * @return EmotionVector the generated emotions, null if the inference is   *                       deferred   */  public synchronized EmotionVector inferEmotions() {    if (fDeferredEECs != null) {      for (EEC eec : fDeferredEECs) {        if (fInferencePending && !getEmotionEngine().canAddEEC(eec)) {          inferPending();          break;        }      }      for (EEC eec : fDeferredEECs) {        getEmotionEngine().addEEC(eec);      }      fDeferredEECs.clear();      fInferencePending = true;      return null;    }    return infer();  }  /**   * <code>deferInference</code> defers the emotion inference of this entity   * until <code>resumeInference</code> is called.   */  synchronized void deferInference() {    if (fDeferredEECs == null) {      fDeferredEECs = new ArrayList<EEC>();    }  }  /**   * <code>resumeInference</code> ends the deferred emotion inference of this   * entity and infers the emotions of all waiting EECs.   *   * @return EmotionVector the emotions inferred from the deferred appraisals,   *                       null if there were none   */  synchronized EmotionVector resumeInference() {    fDeferredEECs = null;    return inferPending();  }  /**   * <code>inferPending</code> infers the emotions of the EECs that wait for   * the end of a deferred inference, e.g. before emotions are added in   * another way or the emotion engine is replaced.   *   * @return EmotionVector the inferred emotions, null if no EECs have been   *                       waiting   */  synchronized EmotionVector inferPending() {    if (fInferencePending) {      fInferencePending = false;      return infer();    }    return null;  }  public synchronized EmotionVector createEmotionVector() {    return new EmotionVector(getEmotionInfluences(), fCurrentMood, fAvailEmotions);  }}
\ No newline at end of file
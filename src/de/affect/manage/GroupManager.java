@@ -12,8 +12,6 @@ import java.util.Hashtable;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.Timer;
-import java.util.TimerTask;
 import java.util.logging.Logger;
 
 import static java.lang.Math.abs;
@@ -24,7 +22,6 @@ import de.affect.compute.EmotionEngine;
 import de.affect.compute.DecayFunction;
 import de.affect.compute.MoodEngine;
 import de.affect.appraisal.AppraisalVariables;
-import de.affect.appraisal.EEC;
 import de.affect.emotion.EmotionHistory;
 import de.affect.emotion.EmotionVector;
 import de.affect.emotion.Emotion;
@@ -55,6 +52,7 @@ import static de.affect.util.Convert.doubleValue;
 public class GroupManager extends EntityManager implements EmotionMaintenanceListener {
 
   public static Logger sLog = Logger.getLogger("Alma");
+  private static AffectScheduler sScheduler = AffectScheduler.getScheduler();
   private GroupManager fGroupManagerInstance = null;
   private CharacterManager[] fCharacters = null;
   private PersonalityEmotionsRelations fPersEmoRels = null;
@@ -63,10 +61,11 @@ public class GroupManager extends EntityManager implements EmotionMaintenanceLis
   private EmotionHistory fEmotionHistory = null;
   private GroupAffectMonitor fGroupAffectMonitor = null;
   private DecayFunction fDecayFunction = null;
-  private Timer fDecayTimer = null;
-  private Timer fMoodComputationTimer = null;
+  private AffectScheduler.Tick fDecayTimer = null;
+  private AffectScheduler.Tick fMoodComputationTimer = null;
   private double fSocialIntegrity = 0.0d;
   private String fInSimilarMood = "none";
+  private long fMemberStateVersion = 0;
   private List<CharacterManager> fInExtremeMood = null;
   private boolean fEnableDecay = true;
   private boolean fShowAffectMonitor = false;
@@ -95,14 +94,12 @@ public class GroupManager extends EntityManager implements EmotionMaintenanceLis
     fDecayFunction.init(fAc.emotionDecaySteps);
     fEmotionEngine = new EmotionEngine(fPersonality, fDecayFunction);
     if (fEnableDecay) {
-      fDecayTimer = new Timer(true);
-      fDecayTimer.schedule(new EmotionDecayTask(), fAc.emotionDecayPeriod, fAc.emotionDecayPeriod);
+      fDecayTimer = sScheduler.schedule(new EmotionDecayTask(), fAc.emotionDecayPeriod);
     }
     // Setup mood processing	
     fMoodEngine = new MoodEngine(fPersonality, fAc.moodStabilityControlledByNeurotism,
       fDefaultMood, fAc.moodReturnOverallTime);
-    fMoodComputationTimer = new Timer(true);
-    fMoodComputationTimer.schedule(new MoodComputationTask(), fAc.moodReturnPeriod, fAc.moodReturnPeriod);
+    fMoodComputationTimer = sScheduler.schedule(new MoodComputationTask(), fAc.moodReturnPeriod);
     // Setup affect monitoring
     if (!sIntegratedDesktopMode) {
       Thread startAffectMonitor = new Thread() {
@@ -124,14 +121,19 @@ public class GroupManager extends EntityManager implements EmotionMaintenanceLis
    * The
    * <code>EmotionDecayTask</code> class manages the emotion decay process.
    */
-  private class EmotionDecayTask extends TimerTask {
+  private class EmotionDecayTask implements Runnable {
 
     private EmotionDecayTask() {
     }
 
     public synchronized void run() {
+      // the decay task of a group is never parked
+      boolean decaying = (fEmotionHistory.size() > 0);
       fEmotionVector =
         fEmotionEngine.decay(fEmotionHistory, fEmotionVector, createEmotionVector());
+      if (decaying) {
+        stateChanged();
+      }
       if ((fGroupAffectMonitor != null) && fShowAffectMonitor) {
         fGroupAffectMonitor.updateEmotionDisplay(fName, fEmotionVector);
       }
@@ -144,7 +146,7 @@ public class GroupManager extends EntityManager implements EmotionMaintenanceLis
    * is usually done by the EmotionDecayTask, but in case it is diabled some other
    * method has to monitor the emotions.
    */
-  private class EmotionMonitorTask extends TimerTask {
+  private class EmotionMonitorTask implements Runnable {
 
     private EmotionMonitorTask() {
     }
@@ -169,8 +171,7 @@ public class GroupManager extends EntityManager implements EmotionMaintenanceLis
   public void enableEmotionDecay() {
     if (!fEnableDecay) {
       fDecayTimer.cancel();
-      fDecayTimer = new Timer(true);
-      fDecayTimer.schedule(new EmotionDecayTask(), fAc.emotionDecayPeriod, fAc.emotionDecayPeriod);
+      fDecayTimer = sScheduler.schedule(new EmotionDecayTask(), fAc.emotionDecayPeriod);
       fEnableDecay = true;
     }
   }
@@ -180,8 +181,7 @@ public class GroupManager extends EntityManager implements EmotionMaintenanceLis
    */
   public void enableEmotionMonitoring() {
     if (!fEnableDecay) {
-      fDecayTimer = new Timer(true);
-      fDecayTimer.schedule(new EmotionMonitorTask(), fAc.emotionDecayPeriod, fAc.emotionDecayPeriod);
+      fDecayTimer = sScheduler.schedule(new EmotionMonitorTask(), fAc.emotionDecayPeriod);
     }
   }
 
@@ -223,14 +223,12 @@ public class GroupManager extends EntityManager implements EmotionMaintenanceLis
     if (fAffectComputationPaused) {
       sLog.info(fName + " emotion computation resumed ...");
 
-      fDecayTimer = new Timer(true);
-      fDecayTimer.schedule(new EmotionDecayTask(), fAc.emotionDecayPeriod, fAc.emotionDecayPeriod);
+      fDecayTimer = sScheduler.schedule(new EmotionDecayTask(), fAc.emotionDecayPeriod);
 
       sLog.info(fName + " mood computation resumed ...");
       fMoodEngine = new MoodEngine(fPersonality, fAc.moodStabilityControlledByNeurotism, fDefaultMood, fAc.moodReturnOverallTime);
       fMoodComputationTimer.cancel();
-      fMoodComputationTimer = new Timer(true);
-      fMoodComputationTimer.schedule(new MoodComputationTask(), fAc.moodReturnPeriod, fAc.moodReturnPeriod);
+      fMoodComputationTimer = sScheduler.schedule(new MoodComputationTask(), fAc.moodReturnPeriod);
       return true;
     } else {
       return false;
@@ -336,7 +334,7 @@ public class GroupManager extends EntityManager implements EmotionMaintenanceLis
    * <code>MoodComputationTask</code> class manages the compuatation of the
    * actual mood.
    */
-  private class MoodComputationTask extends TimerTask {
+  private class MoodComputationTask implements Runnable {
 
     Hashtable<CharacterManager, CharacterManager> characterInSimilarMood =
       new Hashtable<CharacterManager, CharacterManager>();
@@ -345,7 +343,18 @@ public class GroupManager extends EntityManager implements EmotionMaintenanceLis
     }
 
     public synchronized void run() {
+      Mood lastMood = fCurrentMood;
       fCurrentMood = fMoodEngine.compute(fCurrentMood, fEmotionVector);
+      // the social integrity and the mood similarities and extremes only
+      // change if a member's affective state changes
+      long memberStateVersion = 0;
+      for (CharacterManager character : fCharacters) {
+        memberStateVersion = Math.max(memberStateVersion, character.getStateVersion());
+      }
+      if (!fCurrentMood.equals(lastMood) || (memberStateVersion > fMemberStateVersion)) {
+        stateChanged();
+      }
+      fMemberStateVersion = memberStateVersion;
       // compute social integrity
       double pleasure = 0.0d;
       double arousal = 0.0d;
@@ -454,8 +463,7 @@ public class GroupManager extends EntityManager implements EmotionMaintenanceLis
   public void enableMoodComputation() {
     fMoodEngine = new MoodEngine(fPersonality, fAc.moodStabilityControlledByNeurotism, fDefaultMood, fAc.moodReturnOverallTime);
     fMoodComputationTimer.cancel();
-    fMoodComputationTimer = new Timer(true);
-    fMoodComputationTimer.schedule(new MoodComputationTask(), fAc.moodReturnPeriod, fAc.moodReturnPeriod);
+    fMoodComputationTimer = sScheduler.schedule(new MoodComputationTask(), fAc.moodReturnPeriod);
   }
 
   /**
@@ -465,10 +473,6 @@ public class GroupManager extends EntityManager implements EmotionMaintenanceLis
     fMoodComputationTimer.cancel();
   }
 
-  public void addEEC(EEC eec) {
-    fEmotionEngine.addEEC(eec);
-  }
-
   /**
    * Sets a new emotion decay function and decaySteps and reinitialize the
    * character's emotion computation engine.
@@ -490,6 +494,8 @@ public class GroupManager extends EntityManager implements EmotionMaintenanceLis
    * @param personality the new personality
    */
   public synchronized void setPersonality(Personality personality) {
+    // the waiting EECs are appraised with the former personality
+    inferPending();
     disableEmotionDecay();
     disableMoodComputation();
     fPersonality = personality;
@@ -533,12 +539,14 @@ public class GroupManager extends EntityManager implements EmotionMaintenanceLis
    *
    * @return generated emotions
    */
-  public synchronized EmotionVector inferEmotions() {
+  @Override
+  EmotionVector infer() {
     EmotionVector result = createEmotionVector();
     result = fEmotionEngine.inferEmotions(result, fEmotionHistory, fCurrentMood);
     fEmotionEngine.clearEEC();
     fEmotionHistory.add(result);
     fEmotionVector = fEmotionHistory.getEmotionalState(fEmotionVector);
+    stateChanged();
     if ((fGroupAffectMonitor != null) && fShowAffectMonitor) {
       fGroupAffectMonitor.updateEmotionDisplay(fName, fEmotionVector);
     }
@@ -630,6 +638,7 @@ public class GroupManager extends EntityManager implements EmotionMaintenanceLis
       }
       fEmotionHistory.add(emotions);
       fEmotionVector = fEmotionHistory.getEmotionalState(fEmotionVector);
+      stateChanged();
     }
   }
 }
@@ -0,0 +1,368 @@
+/*
+ * ListenerQueue.java
+ *
+ * Copyright (c) 2008 by Patrick Gebhard
+ * All rights reserved.
+ *
+ */
+package de.affect.manage;
+
+import java.util.ArrayDeque;
+import java.util.EventObject;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import de.affect.manage.event.AffectInputEvent;
+import de.affect.manage.event.AffectInputListener;
+import de.affect.manage.event.AffectUpdateEvent;
+import de.affect.manage.event.AffectUpdateListener;
+
+/**
+ * The class
+ * <code>ListenerQueue</code> delivers affect events to one listener
+ * asynchronously. The events are kept in a bounded queue and delivered one
+ * by one in the order they were queued by the listener's executor, so that a
+ * slow listener does not stall the affect computation or other listeners.
+ * The policy decides what happens to an event if the queue is full.
+ *
+ * The queue records how many events have been delivered, dropped and
+ * coalesced and how long events have waited for their delivery.
+ *
+ * @author Patrick Gebhard
+ *
+ * @version 1.0
+ */
+public class ListenerQueue {
+
+  public static Logger sLog = Logger.getLogger("Alma");
+
+  /**
+   * The handling of an event that does not fit into a full queue.
+   */
+  public enum Policy {
+
+    /** The new event is dropped */
+    Drop,
+    /** The queued events are dropped in favour of the new event */
+    Coalesce,
+    /** The caller waits until the event fits into the queue, input listeners only */
+    Block
+  }
+  private static final ThreadFactory sThreadFactory = new DispatchThreadFactory();
+  private final Object fListener;
+  private final Policy fPolicy;
+  private final int fCapacity;
+  private final Executor fExecutor;
+  private final boolean fOwnExecutor;
+  private final ArrayDeque<EventObject> fEvents = new ArrayDeque<EventObject>();
+  private final ArrayDeque<Long> fQueueTimes = new ArrayDeque<Long>();
+  private final Runnable fDelivery = new Delivery();
+  private boolean fDelivering = false;
+  private boolean fClosed = false;
+  private long fQueued = 0;
+  private long fDelivered = 0;
+  private long fDropped = 0;
+  private long fCoalesced = 0;
+  private int fMaxSize = 0;
+  private long fLastLag = 0;
+  private long fMaxLag = 0;
+
+  /**
+   * Creates a queue that delivers the events of a listener with its own
+   * daemon thread. The thread terminates if the listener is idle.
+   *
+   * @param listener an <code>AffectUpdateListener</code> or
+   * <code>AffectInputListener</code>
+   * @param policy the handling of events that do not fit into the queue
+   * @param capacity the maximum number of queued events
+   *
+   * @throws IllegalArgumentException if the capacity is not positive
+   */
+  public ListenerQueue(Object listener, Policy policy, int capacity) {
+    this(listener, policy, capacity, null);
+  }
+
+  /**
+   * Creates a queue that delivers the events of a listener with the given
+   * executor. The executor is not shut down if the queue is closed.
+   *
+   * @param listener an <code>AffectUpdateListener</code> or
+   * <code>AffectInputListener</code>
+   * @param policy the handling of events that do not fit into the queue
+   * @param capacity the maximum number of queued events
+   * @param executor the executor, null for an own daemon thread
+   *
+   * @throws IllegalArgumentException if the capacity is not positive
+   */
+  public ListenerQueue(Object listener, Policy policy, int capacity, Executor executor) {
+    if (listener == null) {
+      throw new NullPointerException("No listener");
+    }
+    if (policy == null) {
+      throw new NullPointerException("No dispatch policy");
+    }
+    if (capacity <= 0) {
+      throw new IllegalArgumentException("Invalid queue capacity " + capacity);
+    }
+    fListener = listener;
+    fPolicy = policy;
+    fCapacity = capacity;
+    fOwnExecutor = (executor == null);
+    fExecutor = (executor == null)
+      ? new ThreadPoolExecutor(0, 1, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), sThreadFactory)
+      : executor;
+  }
+
+  /**
+   * Queues an event for delivery. Depending on the policy, an event that
+   * does not fit into the full queue is dropped, replaces the queued events
+   * or makes the caller wait. Events of a closed queue are dropped.
+   *
+   * @param e an <code>AffectUpdateEvent</code> or
+   * <code>AffectInputEvent</code>
+   *
+   * @return true if the event has been queued, false if it has been dropped
+   */
+  public boolean offer(EventObject e) {
+    synchronized (this) {
+      while (!fClosed && (fEvents.size() >= fCapacity) && (fPolicy == Policy.Block)) {
+        try {
+          wait();
+        } catch (InterruptedException ie) {
+          Thread.currentThread().interrupt();
+          break;
+        }
+      }
+      if (fClosed || ((fEvents.size() >= fCapacity) && (fPolicy != Policy.Coalesce))) {
+        fDropped++;
+        discarded(e);
+        return false;
+      }
+      if (fEvents.size() >= fCapacity) {
+        while (!fEvents.isEmpty()) {
+          fQueueTimes.poll();
+          fCoalesced++;
+          discarded(fEvents.poll());
+        }
+      }
+      fEvents.add(e);
+      fQueueTimes.add(System.nanoTime());
+      fQueued++;
+      fMaxSize = Math.max(fMaxSize, fEvents.size());
+      if (fDelivering) {
+        return true;
+      }
+      fDelivering = true;
+    }
+    try {
+      fExecutor.execute(fDelivery);
+    } catch (RejectedExecutionException ree) {
+      // the queue has been closed in the meantime
+      synchronized (this) {
+        fDelivering = false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Is called for every event that is dropped or coalesced. Subclasses can
+   * use it to remember that the listener has missed an event.
+   *
+   * @param e the event that will not be delivered
+   */
+  protected void discarded(EventObject e) {
+  }
+
+  /**
+   * Delivers an event to the listener.
+   *
+   * @param e the event
+   */
+  protected void deliver(EventObject e) {
+    if (e instanceof AffectUpdateEvent) {
+      ((AffectUpdateListener) fListener).update((AffectUpdateEvent) e);
+    } else if (e instanceof AffectInputEvent) {
+      ((AffectInputListener) fListener).updateInput((AffectInputEvent) e);
+    }
+  }
+
+  /**
+   * Closes the queue. Events that have been queued are still delivered, new
+   * events are dropped. Waiting callers are released.
+   */
+  public synchronized void close() {
+    fClosed = true;
+    notifyAll();
+    if (fOwnExecutor) {
+      ((ExecutorService) fExecutor).shutdown();
+    }
+  }
+
+  /**
+   * Returns the listener of this queue.
+   *
+   * @return the listener
+   */
+  public Object getListener() {
+    return fListener;
+  }
+
+  /**
+   * Returns the handling of events that do not fit into the queue.
+   *
+   * @return the policy
+   */
+  public Policy getPolicy() {
+    return fPolicy;
+  }
+
+  /**
+   * Returns the maximum number of queued events.
+   *
+   * @return the capacity
+   */
+  public int getCapacity() {
+    return fCapacity;
+  }
+
+  /**
+   * Returns the number of events waiting for delivery.
+   *
+   * @return the number of queued events
+   */
+  public synchronized int size() {
+    return fEvents.size();
+  }
+
+  /**
+   * Returns the largest number of events that have been waiting for
+   * delivery at the same time.
+   *
+   * @return the largest queue size
+   */
+  public synchronized int getMaxSize() {
+    return fMaxSize;
+  }
+
+  /**
+   * Returns the number of events that have been queued.
+   *
+   * @return the number of queued events
+   */
+  public synchronized long getQueuedCount() {
+    return fQueued;
+  }
+
+  /**
+   * Returns the number of events that have been delivered.
+   *
+   * @return the number of delivered events
+   */
+  public synchronized long getDeliveredCount() {
+    return fDelivered;
+  }
+
+  /**
+   * Returns the number of events that have been dropped because the queue
+   * was full or closed.
+   *
+   * @return the number of dropped events
+   */
+  public synchronized long getDroppedCount() {
+    return fDropped;
+  }
+
+  /**
+   * Returns the number of queued events that have been replaced by a newer
+   * event.
+   *
+   * @return the number of coalesced events
+   */
+  public synchronized long getCoalescedCount() {
+    return fCoalesced;
+  }
+
+  /**
+   * Returns how long the oldest waiting event has been queued, or if no
+   * event is waiting, how long the last delivered event has been queued.
+   *
+   * @return the lag in milliseconds
+   */
+  public synchronized long getLag() {
+    Long queueTime = fQueueTimes.peek();
+    return (queueTime != null) ? (System.nanoTime() - queueTime) / 1000000L : fLastLag;
+  }
+
+  /**
+   * Returns the longest time an event has been queued before its delivery.
+   *
+   * @return the maximum lag in milliseconds
+   */
+  public synchronized long getMaxLag() {
+    return fMaxLag;
+  }
+
+  @Override
+  public synchronized String toString() {
+    return "ListenerQueue: " + fListener.getClass().getName() + " " + fPolicy + " "
+      + fEvents.size() + "/" + fCapacity + ", delivered " + fDelivered + ", dropped " + fDropped
+      + ", coalesced " + fCoalesced + ", lag " + getLag() + "ms (max " + fMaxLag + "ms)";
+  }
+
+  /**
+   * The
+   * <code>Delivery</code> class delivers the queued events until the queue
+   * is empty.
+   */
+  private class Delivery implements Runnable {
+
+    public void run() {
+      while (true) {
+        EventObject e = null;
+        synchronized (ListenerQueue.this) {
+          e = fEvents.poll();
+          if (e == null) {
+            fDelivering = false;
+            return;
+          }
+          fLastLag = (System.nanoTime() - fQueueTimes.poll()) / 1000000L;
+          fMaxLag = Math.max(fMaxLag, fLastLag);
+          ListenerQueue.this.notifyAll();
+        }
+        try {
+          deliver(e);
+        } catch (RuntimeException re) {
+          sLog.log(Level.WARNING, "Listener " + fListener.getClass().getName() + " failed", re);
+        }
+        synchronized (ListenerQueue.this) {
+          fDelivered++;
+        }
+      }
+    }
+  }
+
+  /**
+   * The
+   * <code>DispatchThreadFactory</code> class creates the daemon delivery
+   * threads.
+   */
+  private static class DispatchThreadFactory implements ThreadFactory {
+
+    private final AtomicInteger fCount = new AtomicInteger(0);
+
+    public Thread newThread(Runnable r) {
+      Thread t = new Thread(r, "Alma-Dispatch-" + fCount.incrementAndGet());
+      t.setDaemon(true);
+      return t;
+    }
+  }
+}
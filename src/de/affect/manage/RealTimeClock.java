@@ -0,0 +1,115 @@
+/*
+ * RealTimeClock.java
+ *
+ * Copyright (c) 2004-2008 by Patrick Gebhard
+ * All rights reserved.
+ *
+ */
+package de.affect.manage;
+
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The class
+ * <code>RealTimeClock</code> runs the affect computation in wall-clock time.
+ * All tasks share a small, fixed pool of daemon worker threads. The number of
+ * threads does not depend on the number of characters. This is the default
+ * clock of the <code>AffectScheduler</code>.
+ *
+ * @author Patrick Gebhard
+ *
+ * @version 1.0
+ */
+public class RealTimeClock implements AffectClock {
+
+  private static final int sMAXWORKERS = 4;
+  private ScheduledThreadPoolExecutor fExecutor = null;
+
+  /**
+   * Creates a real-time clock with one worker thread per processor, but not
+   * more than four worker threads.
+   */
+  public RealTimeClock() {
+    this(Math.max(1, Math.min(sMAXWORKERS, Runtime.getRuntime().availableProcessors())));
+  }
+
+  /**
+   * Creates a real-time clock with the given number of worker threads.
+   *
+   * @param workers the number of worker threads
+   * @throws IllegalArgumentException if workers is not positive
+   */
+  public RealTimeClock(int workers) {
+    if (workers <= 0) {
+      throw new IllegalArgumentException("Invalid number of workers " + workers);
+    }
+    fExecutor = new ScheduledThreadPoolExecutor(workers, new TickThreadFactory());
+    fExecutor.setRemoveOnCancelPolicy(true);
+    fExecutor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+  }
+
+  public long currentTimeMillis() {
+    return System.currentTimeMillis();
+  }
+
+  public AffectScheduler.Tick schedule(Runnable task, long delay, long period) {
+    ScheduledFuture<?> future = (period > 0)
+      ? fExecutor.scheduleWithFixedDelay(task, delay, period, TimeUnit.MILLISECONDS)
+      : fExecutor.schedule(task, delay, TimeUnit.MILLISECONDS);
+    return new FutureTick(future);
+  }
+
+  public int getScheduledTaskCount() {
+    return fExecutor.getQueue().size();
+  }
+
+  /**
+   * Returns the number of worker threads used by this clock.
+   *
+   * @return the number of worker threads
+   */
+  public int getWorkerCount() {
+    return fExecutor.getCorePoolSize();
+  }
+
+  /**
+   * The
+   * <code>FutureTick</code> class is the handle of a task executed by the
+   * worker pool.
+   */
+  private static class FutureTick implements AffectScheduler.Tick {
+
+    private final ScheduledFuture<?> fFuture;
+
+    private FutureTick(ScheduledFuture<?> future) {
+      fFuture = future;
+    }
+
+    public void cancel() {
+      fFuture.cancel(false);
+    }
+
+    public boolean isCancelled() {
+      return fFuture.isCancelled();
+    }
+  }
+
+  /**
+   * The
+   * <code>TickThreadFactory</code> class creates the daemon worker threads.
+   */
+  private static class TickThreadFactory implements ThreadFactory {
+
+    private final AtomicInteger fCount = new AtomicInteger(0);
+
+    public Thread newThread(Runnable r) {
+      Thread t = new Thread(r, "Alma-Tick-" + fCount.incrementAndGet());
+      t.setDaemon(true);
+      return t;
+    }
+  }
+}
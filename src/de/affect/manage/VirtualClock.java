@@ -0,0 +1,186 @@
+/*
+ * VirtualClock.java
+ *
+ * Copyright (c) 2004-2008 by Patrick Gebhard
+ * All rights reserved.
+ *
+ */
+package de.affect.manage;
+
+import java.util.PriorityQueue;
+
+/**
+ * The class
+ * <code>VirtualClock</code> runs the affect computation in virtual time. Time
+ * does not pass by itself, it is advanced explicitly with
+ * <code>advance</code> or <code>advanceTo</code>. All tasks that are due
+ * within the advanced time span are executed in the calling thread in the
+ * order of their due time (tasks with equal due times in the order they have
+ * been scheduled). Emotion decay and mood computation therefore follow the
+ * same trajectories as in real time, but as fast as the CPU allows. This is
+ * useful for regression scenarios and offline batch evaluation.
+ *
+ * @author Patrick Gebhard
+ *
+ * @version 1.0
+ */
+public class VirtualClock implements AffectClock {
+
+  private final PriorityQueue<VirtualTick> fQueue = new PriorityQueue<VirtualTick>();
+  private final Object fAdvanceLock = new Object();
+  private volatile long fNow;
+  private long fSequence = 0;
+
+  /**
+   * Creates a virtual clock that starts at the current wall-clock time.
+   */
+  public VirtualClock() {
+    this(System.currentTimeMillis());
+  }
+
+  /**
+   * Creates a virtual clock that starts at the given time.
+   *
+   * @param startTime the start time in milliseconds
+   */
+  public VirtualClock(long startTime) {
+    fNow = startTime;
+  }
+
+  public long currentTimeMillis() {
+    return fNow;
+  }
+
+  public AffectScheduler.Tick schedule(Runnable task, long delay, long period) {
+    if (delay < 0) {
+      throw new IllegalArgumentException("Invalid delay " + delay);
+    }
+    synchronized (fQueue) {
+      VirtualTick tick = new VirtualTick(task, fNow + delay, period, fSequence++);
+      fQueue.add(tick);
+      return tick;
+    }
+  }
+
+  public int getScheduledTaskCount() {
+    synchronized (fQueue) {
+      return fQueue.size();
+    }
+  }
+
+  /**
+   * Advances the clock by the given amount of milliseconds and executes all
+   * tasks that are due in this time span.
+   *
+   * @param millis the time span in milliseconds
+   *
+   * @return the number of executed tasks
+   * @throws IllegalArgumentException if millis is negative
+   */
+  public int advance(long millis) {
+    if (millis < 0) {
+      throw new IllegalArgumentException("Invalid time span " + millis);
+    }
+    return advanceTo(fNow + millis);
+  }
+
+  /**
+   * Advances the clock to the given time and executes all tasks that are due
+   * until then. The clock is never set back.
+   *
+   * @param time the target time in milliseconds
+   *
+   * @return the number of executed tasks
+   */
+  public int advanceTo(long time) {
+    int executed = 0;
+    synchronized (fAdvanceLock) {
+      while (step(time)) {
+        executed++;
+      }
+      if (time > fNow) {
+        fNow = time;
+      }
+    }
+    return executed;
+  }
+
+  /**
+   * Advances the clock to the due time of the next scheduled task and
+   * executes it.
+   *
+   * @return true if a task has been executed, false if no task is scheduled
+   */
+  public boolean step() {
+    synchronized (fAdvanceLock) {
+      return step(Long.MAX_VALUE);
+    }
+  }
+
+  /**
+   * Executes the next task if it is due not later than the given time.
+   */
+  private boolean step(long limit) {
+    VirtualTick tick = null;
+    synchronized (fQueue) {
+      tick = fQueue.peek();
+      if ((tick == null) || (tick.fDueTime > limit)) {
+        return false;
+      }
+      fQueue.poll();
+      if (tick.fDueTime > fNow) {
+        fNow = tick.fDueTime;
+      }
+    }
+    // run the task outside of the queue lock, so that it can schedule tasks
+    tick.fTask.run();
+    synchronized (fQueue) {
+      if ((tick.fPeriod > 0) && !tick.fCancelled) {
+        tick.fDueTime = fNow + tick.fPeriod;
+        tick.fSequence = fSequence++;
+        fQueue.add(tick);
+      }
+    }
+    return true;
+  }
+
+  /**
+   * The
+   * <code>VirtualTick</code> class is a task scheduled in virtual time.
+   */
+  private class VirtualTick implements AffectScheduler.Tick, Comparable<VirtualTick> {
+
+    private final Runnable fTask;
+    private final long fPeriod;
+    private long fDueTime;
+    private long fSequence;
+    private boolean fCancelled = false;
+
+    private VirtualTick(Runnable task, long dueTime, long period, long sequence) {
+      fTask = task;
+      fDueTime = dueTime;
+      fPeriod = period;
+      fSequence = sequence;
+    }
+
+    public void cancel() {
+      synchronized (fQueue) {
+        fCancelled = true;
+        fQueue.remove(this);
+      }
+    }
+
+    public boolean isCancelled() {
+      synchronized (fQueue) {
+        return fCancelled;
+      }
+    }
+
+    public int compareTo(VirtualTick other) {
+      if (fDueTime != other.fDueTime) {
+        return (fDueTime < other.fDueTime) ? -1 : 1;
+      }
+      return (fSequence < other.fSequence) ? -1 : ((fSequence == other.fSequence) ? 0 : 1);
+    }
+  }
+}
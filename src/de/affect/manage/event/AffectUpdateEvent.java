@@ -21,6 +21,8 @@ import de.affect.xml.AffectOutputDocument;
 
 public class AffectUpdateEvent extends EventObject {
   protected AffectOutputDocument affectInfo;
+  protected long version = 0;
+  protected boolean delta = false;
 
   /**
    * Constructs an event fired by a change in the specified emotions.
@@ -33,6 +35,23 @@ public class AffectUpdateEvent extends EventObject {
     super(source);
     this.affectInfo = affectInfo;
   }
+
+  /**
+   * Constructs an event fired by a change in the specified emotions.
+   *
+   * @param source the object that generated this event
+   * @param affectInfo the updated affect information
+   * @param version the state version the affect information is based on
+   * @param delta true if the affect information only contains the characters
+   *              and groups that have changed since the last update
+   */
+  public AffectUpdateEvent(Object source, AffectOutputDocument affectInfo,
+    long version, boolean delta) {
+    super(source);
+    this.affectInfo = affectInfo;
+    this.version = version;
+    this.delta = delta;
+  }
   
   /**
    * Returns updated affect information of all characters
@@ -40,4 +59,21 @@ public class AffectUpdateEvent extends EventObject {
   public AffectOutputDocument getUpdate() {
     return affectInfo;
   }
+
+  /**
+   * Returns the state version the affect information is based on. Characters
+   * and groups that change afterwards are contained in the next update.
+   */
+  public long getVersion() {
+    return version;
+  }
+
+  /**
+   * Returns if the update only contains the characters and groups that have
+   * changed since the last update. Such an update may contain no character
+   * at all and is not valid against the Affect.xsd then.
+   */
+  public boolean isDelta() {
+    return delta;
+  }
 }
@@ -0,0 +1,223 @@
+/*
+ * EmotionInfluences.java
+ *
+ * Copyright (c) 2008, Patrick Gebhard, DFKI GmbH
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in 
+ *     the documentation and/or other materials provided with the 
+ *     distribution.
+ *
+ *   - Neither the name of the DFKI GmbH nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE 
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE 
+ * POSSIBILITY OF SUCH DAMAGE. 
+ */
+
+package de.affect.personality;
+
+import de.affect.emotion.EmotionType;
+import de.affect.mood.Mood;
+
+import java.util.Arrays;
+
+/**
+ * The <code>EmotionInfluences</code> class caches the emotion baselines and
+ * the personality influences of one personality for all emotion types, as
+ * well as the moody personality traits of the current mood and the emotion
+ * baselines and influences that result from them.
+ *
+ * The personality part is computed once. The mood part is recomputed only
+ * if a different mood (a mood with different PAD values) is requested. The
+ * moody traits depend linearly on the PAD values of the mood, so the cache
+ * cannot be shared between moods of the same octant. Since the mood of an
+ * entity only changes with the mood computation, all emotions that are
+ * inferred or created between two mood computations use the cached values.
+ * Changes of the <code>PersonalityEmotionsRelations</code> parameters
+ * invalidate the cache.
+ *
+ * @author Patrick Gebhard
+ * @version 1.0
+ */
+public class EmotionInfluences {
+
+  private static final int sTYPES = EmotionType.values().length;
+  private final Personality fPersonality;
+  private final PersonalityEmotionsRelations fRelations;
+  private int fVersion = -1;
+  private final double[] fBaselines = new double[sTYPES];
+  private final double[] fInfluences = new double[sTYPES];
+  private Mood fMood = null;
+  private Personality fMoodyTraits = null;
+  private final double[] fMoodyBaselines = new double[sTYPES];
+  private final double[] fMoodyInfluences = new double[sTYPES];
+
+  /**
+   * Constructs the influences of a personality. The
+   * <code>PersonalityEmotionsRelations</code> of the personality are used.
+   *
+   * @param personality the personality
+   * @throws NullPointerException if the personality is null
+   */
+  public EmotionInfluences(Personality personality) {
+    this(personality, personality.getPersonalityEmotionsRelations());
+  }
+
+  /**
+   * Constructs the influences of a personality.
+   *
+   * @param personality the personality
+   * @param relations the relations between personality and emotions, if
+   *                  null all baselines are 0.0
+   * @throws NullPointerException if the personality is null
+   */
+  public EmotionInfluences(Personality personality, PersonalityEmotionsRelations relations) {
+    if (personality == null)
+      throw new NullPointerException("Invalid null personality!");
+    fPersonality = personality;
+    fRelations = relations;
+  }
+
+  /**
+   * Returns the personality of these influences.
+   *
+   * @return the personality
+   */
+  public Personality getPersonality() {
+    return fPersonality;
+  }
+
+  /**
+   * Returns the relations between personality and emotions of these
+   * influences.
+   *
+   * @return the relations, may be null
+   */
+  public PersonalityEmotionsRelations getPersonalityEmotionsRelations() {
+    return fRelations;
+  }
+
+  /**
+   * Returns the emotion baseline of the personality.
+   *
+   * @param type the emotion type
+   * @return the emotion baseline
+   */
+  public synchronized double getBaseline(EmotionType type) {
+    validate();
+    int ordinal = type.ordinal();
+    if (Double.isNaN(fBaselines[ordinal])) {
+      fBaselines[ordinal] = (fRelations != null) ? fRelations.getEmotionBaseline(fPersonality, type) : 0.0d;
+    }
+    return fBaselines[ordinal];
+  }
+
+  /**
+   * Returns the influence of the personality on the emotion intensity.
+   *
+   * @param type the emotion type
+   * @return the influence of the personality
+   * @throws NullPointerException if there are no relations
+   */
+  public synchronized double getInfluence(EmotionType type) {
+    validate();
+    int ordinal = type.ordinal();
+    if (Double.isNaN(fInfluences[ordinal])) {
+      fInfluences[ordinal] = fRelations.getPersonalityInfluence(fPersonality, type);
+    }
+    return fInfluences[ordinal];
+  }
+
+  /**
+   * Returns the personality traits that are caused by a mood.
+   *
+   * @param mood the mood
+   * @return the moody personality traits
+   */
+  public synchronized Personality getMoodyPersonalityTraits(Mood mood) {
+    validate(mood);
+    return fMoodyTraits;
+  }
+
+  /**
+   * Returns the emotion baseline of the personality traits that are caused
+   * by a mood.
+   *
+   * @param mood the mood
+   * @param type the emotion type
+   * @return the moody emotion baseline
+   */
+  public synchronized double getMoodyBaseline(Mood mood, EmotionType type) {
+    validate(mood);
+    int ordinal = type.ordinal();
+    if (Double.isNaN(fMoodyBaselines[ordinal])) {
+      fMoodyBaselines[ordinal] = (fRelations != null) ? fRelations.getEmotionBaseline(fMoodyTraits, type) : 0.0d;
+    }
+    return fMoodyBaselines[ordinal];
+  }
+
+  /**
+   * Returns the influence of the personality traits that are caused by a
+   * mood on the emotion intensity.
+   *
+   * @param mood the mood
+   * @param type the emotion type
+   * @return the moody influence
+   * @throws NullPointerException if there are no relations
+   */
+  public synchronized double getMoodyInfluence(Mood mood, EmotionType type) {
+    validate(mood);
+    int ordinal = type.ordinal();
+    if (Double.isNaN(fMoodyInfluences[ordinal])) {
+      fMoodyInfluences[ordinal] = fRelations.getPersonalityInfluence(fMoodyTraits, type);
+    }
+    return fMoodyInfluences[ordinal];
+  }
+
+  /**
+   * Clears all cached values if the relation parameters have changed.
+   */
+  private void validate() {
+    int version = (fRelations != null) ? fRelations.getVersion() : 0;
+    if (version != fVersion) {
+      fVersion = version;
+      Arrays.fill(fBaselines, Double.NaN);
+      Arrays.fill(fInfluences, Double.NaN);
+      Arrays.fill(fMoodyBaselines, Double.NaN);
+      Arrays.fill(fMoodyInfluences, Double.NaN);
+    }
+  }
+
+  /**
+   * Clears the cached mood values if another mood is requested.
+   */
+  private void validate(Mood mood) {
+    validate();
+    if ((fMood != mood) && ((fMood == null) || !fMood.equals(mood))) {
+      fMoodyTraits = PersonalityMoodRelations.getMoodyPersonalityTraits(mood);
+      Arrays.fill(fMoodyBaselines, Double.NaN);
+      Arrays.fill(fMoodyInfluences, Double.NaN);
+    }
+    fMood = mood;
+  }
+}
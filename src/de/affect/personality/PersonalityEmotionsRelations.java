@@ -53,6 +53,8 @@ public class PersonalityEmotionsRelations {
   private PersonalityEmotionsRelations instance = null;
   private double fPersonalityEmotionInfluence = 0.0;
   private double fEmotionMaxBaseline = 1.0d;
+  // incremented on each change, used to invalidate cached influences
+  private volatile int fVersion = 0;
 
   public PersonalityEmotionsRelations() {
   }
@@ -153,11 +155,22 @@ public class PersonalityEmotionsRelations {
 
   public void setPersonalityEmotionInfluence(double personalityEmotionInfluence) {
     fPersonalityEmotionInfluence = personalityEmotionInfluence;
+    fVersion++;
   }
 
 
   public void setEmotionMaxBaseline(double emotionMaxBaseline) {
     fEmotionMaxBaseline = emotionMaxBaseline;
+    fVersion++;
+  }
+
+  /**
+   * Returns the number of changes of the influence parameters.
+   *
+   * @return the version of the influence parameters
+   */
+  int getVersion() {
+    return fVersion;
   }
 
   /**
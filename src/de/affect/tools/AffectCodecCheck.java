@@ -0,0 +1,253 @@
+/*
+ * AffectCodecCheck.java
+ *
+ * Copyright (c) 2008 by Patrick Gebhard
+ * All rights reserved.
+ *
+ */
+package de.affect.tools;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+
+import de.affect.xml.AffectInputDocument.AffectInput;
+import de.affect.xml.AffectOutputDocument.AffectOutput;
+import de.affect.xml.util.AffectCodec;
+
+import org.apache.xmlbeans.XmlCursor;
+import org.apache.xmlbeans.XmlException;
+import org.apache.xmlbeans.XmlObject;
+import org.w3c.dom.Attr;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+
+/**
+ * The <code>AffectCodecCheck</code> class checks the
+ * <code>AffectCodec</code> with the affect scripts and examples of this
+ * distribution. Every AffectInput and AffectOutput element found in the given
+ * files or directories is encoded, decoded and compared with the original
+ * element, once with the act types of the found inputs as act vocabulary and
+ * once without vocabulary.
+ *
+ * Usage: AffectCodecCheck [file or directory ...], the default is the scripts
+ * directory. The exit code is 1 if an element is not decoded to an equivalent
+ * element.
+ *
+ * @author Patrick Gebhard
+ *
+ * @version 1.0
+ */
+public class AffectCodecCheck {
+
+  private final ArrayList<AffectInput> fInputs = new ArrayList<AffectInput>();
+  private final ArrayList<AffectOutput> fOutputs = new ArrayList<AffectOutput>();
+  private final ArrayList<String> fSources = new ArrayList<String>();
+  private int fFailures = 0;
+
+  public static void main(String[] args) throws IOException, XmlException {
+    AffectCodecCheck check = new AffectCodecCheck();
+    for (String name : (args.length > 0) ? args : new String[]{"scripts"}) {
+      check.collect(new File(name));
+    }
+    if (!check.check()) {
+      System.exit(1);
+    }
+  }
+
+  /**
+   * Collects the AffectInput and AffectOutput elements of an aml file or of
+   * all aml files in a directory and its subdirectories.
+   *
+   * @param file an aml file or a directory
+   * @throws IOException if a file cannot be read
+   * @throws XmlException if a file is not well formed
+   */
+  public void collect(File file) throws IOException, XmlException {
+    if (file.isDirectory()) {
+      File[] files = file.listFiles();
+      if (files != null) {
+        for (File f : files) {
+          if (!f.isHidden() && (f.isDirectory() || f.getName().endsWith(".aml"))) {
+            collect(f);
+          }
+        }
+      }
+      return;
+    }
+    XmlCursor cursor = XmlObject.Factory.parse(file).newCursor();
+    try {
+      while (cursor.toNextToken() != XmlCursor.TokenType.NONE) {
+        if (cursor.isStart()) {
+          XmlObject element = cursor.getObject();
+          if (element instanceof AffectInput) {
+            fInputs.add((AffectInput) element);
+            fSources.add(file.getPath());
+          } else if (element instanceof AffectOutput) {
+            fOutputs.add((AffectOutput) element);
+          }
+        }
+      }
+    } finally {
+      cursor.dispose();
+    }
+  }
+
+  /**
+   * Encodes and decodes all collected elements and reports the elements that
+   * are not decoded to an equivalent element.
+   *
+   * @return true if all elements are decoded to equivalent elements
+   */
+  public boolean check() {
+    LinkedHashSet<String> acts = new LinkedHashSet<String>();
+    for (AffectInput ai : fInputs) {
+      if (ai.isSetAct()) {
+        acts.add(ai.getAct().getType());
+      }
+    }
+    check(new AffectCodec(acts.toArray(new String[acts.size()])));
+    check(new AffectCodec());
+    System.out.println(fInputs.size() + " inputs, " + fOutputs.size() + " outputs, "
+      + fFailures + " failures");
+    return (fFailures == 0);
+  }
+
+  private void check(AffectCodec codec) {
+    for (int i = 0; i < fInputs.size(); i++) {
+      AffectInput ai = fInputs.get(i);
+      try {
+        if (!equivalent(ai, codec.decodeInput(codec.encode(ai)).toAffectInput())) {
+          failure(fSources.get(i), ai, null);
+        }
+      } catch (IOException io) {
+        failure(fSources.get(i), ai, io);
+      } catch (RuntimeException re) {
+        failure(fSources.get(i), ai, re);
+      }
+    }
+    for (AffectOutput ao : fOutputs) {
+      try {
+        if (!equivalent(ao, codec.decodeOutput(codec.encode(ao)).getAffectOutput())) {
+          failure("output", ao, null);
+        }
+      } catch (IOException io) {
+        failure("output", ao, io);
+      }
+    }
+  }
+
+  private void failure(String source, XmlObject element, Exception e) {
+    fFailures++;
+    System.out.println(source + ": " + ((e != null) ? e.toString() : "not equivalent"));
+    System.out.println(element.xmlText());
+  }
+
+  /**
+   * Compares two xml elements. The elements are equivalent if they have the
+   * same names, the same attributes and equivalent child elements. Child
+   * elements of the same name are compared in document order, the order of
+   * differently named children is ignored like in schema all groups.
+   * Attribute values are equal, or they are both numbers that are equal in
+   * float precision. Text, comments, namespace declarations and schema
+   * instance attributes are ignored.
+   *
+   * @param expected an xml element
+   * @param actual another xml element
+   * @return true if the elements are equivalent
+   */
+  public static boolean equivalent(XmlObject expected, XmlObject actual) {
+    return equivalent(element(expected.getDomNode()), element(actual.getDomNode()));
+  }
+
+  private static Node element(Node node) {
+    while ((node != null) && (node.getNodeType() != Node.ELEMENT_NODE)) {
+      node = (node.getNodeType() == Node.DOCUMENT_NODE || node.getNodeType() == Node.DOCUMENT_FRAGMENT_NODE)
+        ? node.getFirstChild() : node.getNextSibling();
+    }
+    return node;
+  }
+
+  private static boolean equivalent(Node expected, Node actual) {
+    if ((expected == null) || (actual == null)) {
+      return expected == actual;
+    }
+    if (!expected.getLocalName().equals(actual.getLocalName())) {
+      return false;
+    }
+    NamedNodeMap expectedAttributes = expected.getAttributes();
+    NamedNodeMap actualAttributes = actual.getAttributes();
+    if (attributeCount(expectedAttributes) != attributeCount(actualAttributes)) {
+      return false;
+    }
+    for (int i = 0; i < expectedAttributes.getLength(); i++) {
+      Attr attribute = (Attr) expectedAttributes.item(i);
+      if (isNamespaceDeclaration(attribute)) {
+        continue;
+      }
+      Attr other = (Attr) actualAttributes.getNamedItemNS(attribute.getNamespaceURI(), attribute.getLocalName());
+      if ((other == null) || !equivalent(attribute.getValue(), other.getValue())) {
+        return false;
+      }
+    }
+    HashMap<String, ArrayList<Node>> expectedChildren = children(expected);
+    HashMap<String, ArrayList<Node>> actualChildren = children(actual);
+    if (!expectedChildren.keySet().equals(actualChildren.keySet())) {
+      return false;
+    }
+    for (String name : expectedChildren.keySet()) {
+      ArrayList<Node> expectedList = expectedChildren.get(name);
+      ArrayList<Node> actualList = actualChildren.get(name);
+      if (expectedList.size() != actualList.size()) {
+        return false;
+      }
+      for (int i = 0; i < expectedList.size(); i++) {
+        if (!equivalent(expectedList.get(i), actualList.get(i))) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  /** Returns the child elements by name, each list in document order */
+  private static HashMap<String, ArrayList<Node>> children(Node node) {
+    HashMap<String, ArrayList<Node>> children = new HashMap<String, ArrayList<Node>>();
+    for (Node child = element(node.getFirstChild()); child != null; child = element(child.getNextSibling())) {
+      ArrayList<Node> list = children.get(child.getLocalName());
+      if (list == null) {
+        list = new ArrayList<Node>();
+        children.put(child.getLocalName(), list);
+      }
+      list.add(child);
+    }
+    return children;
+  }
+
+  /** Namespace declarations and schema instance attributes are ignored */
+  private static boolean isNamespaceDeclaration(Attr attribute) {
+    return "http://www.w3.org/2000/xmlns/".equals(attribute.getNamespaceURI())
+      || "http://www.w3.org/2001/XMLSchema-instance".equals(attribute.getNamespaceURI());
+  }
+
+  private static int attributeCount(NamedNodeMap attributes) {
+    int count = 0;
+    for (int i = 0; i < attributes.getLength(); i++) {
+      count += (isNamespaceDeclaration((Attr) attributes.item(i))) ? 0 : 1;
+    }
+    return count;
+  }
+
+  private static boolean equivalent(String expected, String actual) {
+    if (expected.equals(actual)) {
+      return true;
+    }
+    try {
+      return Float.parseFloat(expected) == Float.parseFloat(actual);
+    } catch (NumberFormatException nfe) {
+      return false;
+    }
+  }
+}
@@ -37,16 +37,19 @@ package de.affect.tools;
 
 import java.io.File;
 import java.io.IOException;
-import java.util.Date;
-import java.util.Iterator;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.LinkedList;
-import java.util.Timer;
-import java.util.TimerTask;
+import java.util.concurrent.CountDownLatch;
 import java.util.logging.Logger;
 import org.apache.xmlbeans.XmlException;
 
+import de.affect.manage.AffectClock;
 import de.affect.manage.AffectManager;
+import de.affect.manage.AffectScheduler;
 import de.affect.manage.CharacterManager;
+import de.affect.manage.VirtualClock;
 
 import de.affect.xml.AffectScriptDocument;
 import de.affect.xml.AffectScriptDocument.AffectScript;
@@ -57,7 +60,10 @@ public class AffectScriptPlayer {
   private File fScriptFile = null;
   private AffectScriptDocument fAffectScriptDoc = null;
   private LinkedList<AffectScript.Item> fAffectScript = null;
-  private Timer fScriptPlayer = null;
+  private AffectScheduler fScriptPlayer = AffectScheduler.getScheduler();
+  private CountDownLatch fPendingItems = new CountDownLatch(0);
+  private ArrayList<AffectScript.Item> fPlayList = new ArrayList<AffectScript.Item>();
+  private long fStartTime = 0;
   private Logger log = Logger.getLogger(Logger.GLOBAL_LOGGER_NAME);
 
   public AffectScriptPlayer(String compSpecs, String charSpecs, String scriptFile) {
@@ -78,7 +84,7 @@ public class AffectScriptPlayer {
   /**
    * The <code>ScriptExecutionTask</code> class realizes the execution of affect scripts.
    */
-  private class ScriptExecutionTask extends TimerTask {
+  private class ScriptExecutionTask implements Runnable {
 
     private int fId;
     private AffectScript.Item fAsi = null;
@@ -91,39 +97,91 @@ public class AffectScriptPlayer {
     public void run() {
       long startTime = System.currentTimeMillis();
 
-      if (fAsi.isSetAffectInput()) {
-        fAffectManager.processSignal(fAsi.getAffectInput());
-      }
-      if (fAsi.isSetAppraisal()) {
-        // TODO
-      }
-      if (fAsi.isSetResetCharacter()) {
-        String characterName = fAsi.getResetCharacter().getName().trim();
-        CharacterManager character = fAffectManager.getCharacterByName(characterName);
-        // setting the personality resets a character affective state	
-        character.setPersonality(character.getPersonality());
+      try {
+        if (fAsi.isSetAffectInput()) {
+          fAffectManager.processSignal(fAsi.getAffectInput());
+        }
+        if (fAsi.isSetAppraisal()) {
+          // TODO
+        }
+        if (fAsi.isSetResetCharacter()) {
+          String characterName = fAsi.getResetCharacter().getName().trim();
+          CharacterManager character = fAffectManager.getCharacterByName(characterName);
+          // setting the personality resets a character affective state	
+          character.setPersonality(character.getPersonality());
+        }
+      } finally {
+        // the next item is scheduled when this one is done, so that items
+        // are never executed at the same time
+        scheduleItem(fId + 1);
+        fPendingItems.countDown();
       }
 
       log.info("SCRIPTITEM proccessing time was " + (System.currentTimeMillis() - startTime));
     }
   }
 
+  /**
+   * Plays the affect script. Each script item is executed at its script time
+   * relative to the start of the script, but not before the previous item is
+   * done. Items are executed one after another in the order of their script
+   * times, items with the same time in script order. If the affect
+   * computation runs on a <code>VirtualClock</code>, the whole script is
+   * played synchronously as fast as possible and the clock is left at the
+   * time of the last item.
+   */
   public void play() {
     if (fAffectScript != null) {
-      fScriptPlayer = new Timer();
-      int id = 0;
-      long startTime = System.currentTimeMillis();
-      Date scriptExecutionTime = new Date(startTime);
-      for (Iterator<AffectScript.Item> it = fAffectScript.iterator(); it.hasNext();) {
-        AffectScript.Item scriptItem = it.next();
-        scriptExecutionTime = new Date(startTime + scriptItem.getTime());
-        fScriptPlayer.schedule(new ScriptExecutionTask(scriptItem, id++), scriptExecutionTime);
+      fPlayList = new ArrayList<AffectScript.Item>(fAffectScript);
+      // the sort is stable, items with the same time keep their order
+      Collections.sort(fPlayList, new Comparator<AffectScript.Item>() {
+        public int compare(AffectScript.Item i1, AffectScript.Item i2) {
+          return Long.compare(i1.getTime(), i2.getTime());
+        }
+      });
+      fPendingItems = new CountDownLatch(fPlayList.size());
+      fStartTime = fScriptPlayer.currentTimeMillis();
+      scheduleItem(0);
+      AffectClock clock = fScriptPlayer.getClock();
+      if ((clock instanceof VirtualClock) && !fPlayList.isEmpty()) {
+        ((VirtualClock) clock).advance(fPlayList.get(fPlayList.size() - 1).getTime());
       }
     }
   }
 
+  /**
+   * Schedules an item of the play list at its script time, immediately if
+   * the time has already passed.
+   */
+  private void scheduleItem(int id) {
+    if (id < fPlayList.size()) {
+      AffectScript.Item scriptItem = fPlayList.get(id);
+      long delay = fStartTime + scriptItem.getTime() - fScriptPlayer.currentTimeMillis();
+      fScriptPlayer.scheduleOnce(new ScriptExecutionTask(scriptItem, id), Math.max(delay, 0));
+    }
+  }
+
+  /**
+   * Waits until all items of the played script have been executed.
+   *
+   * @throws InterruptedException if the waiting thread is interrupted
+   */
+  public void awaitCompletion() throws InterruptedException {
+    fPendingItems.await();
+  }
+
   public static void main(String[] args) {
+    if ((args.length > 3) && args[3].equals("-virtual")) {
+      // play the script in virtual time, must be set before characters are created
+      AffectScheduler.getScheduler().setClock(new VirtualClock());
+    }
     AffectScriptPlayer asp = new AffectScriptPlayer(args[0], args[1], args[2]);
     asp.play();
+    // the affect clock runs daemon threads only
+    try {
+      asp.awaitCompletion();
+    } catch (InterruptedException ie) {
+      ie.printStackTrace();
+    }
   }
 }
\ No newline at end of file
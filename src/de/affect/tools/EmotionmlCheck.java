@@ -0,0 +1,128 @@
+/*
+ * EmotionmlCheck.java
+ *
+ * Copyright (c) 2008 by Patrick Gebhard
+ * All rights reserved.
+ *
+ */
+package de.affect.tools;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.TreeSet;
+
+import de.affect.manage.AffectManager;
+import de.affect.manage.CharacterManager;
+import de.affect.xml.AffectInputDocument;
+
+import emotionml.EmotionmlDocument;
+import org.apache.xmlbeans.XmlException;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+
+/**
+ * The <code>EmotionmlCheck</code> class checks that the
+ * <code>EmotionmlWriter</code> writes the same EmotionML document as
+ * <code>AffectOutputCreater.getEmotionmlDocument</code> creates. A character
+ * appraises an event and its EmotionML documents are compared while its
+ * affect computation is running and while it is paused, since a paused
+ * character notes the decay of its emotions as trace.
+ *
+ * Usage: EmotionmlCheck computation-specification character-definition
+ * character. The exit code is 1 if the documents differ.
+ *
+ * @author Patrick Gebhard
+ *
+ * @version 1.0
+ */
+public class EmotionmlCheck {
+
+  private static final String sXMLNS = "http://www.w3.org/2000/xmlns/";
+
+  public static void main(String[] args) throws IOException, XmlException {
+    if (args.length < 3) {
+      System.out.println("Usage: EmotionmlCheck <computation specification> <character definition> <character>");
+      return;
+    }
+    AffectManager am = new AffectManager(args[0], args[1], false);
+    String name = args[2];
+    CharacterManager character = am.getCharacterByName(name);
+    if (character == null) {
+      System.out.println("Unknown character " + name);
+      System.exit(1);
+    }
+    am.processSignal(AffectInputDocument.Factory.parse("<AffectInput xmlns=\"xml.affect.de\">"
+      + "<Character name=\"" + name + "\"/><Event type=\"GoodEvent\" intensity=\"0.8\" elicitor=\"check\"/>"
+      + "</AffectInput>").getAffectInput());
+    boolean running = check(am, name, "running");
+    character.pauseAffectComputation();
+    boolean paused = false;
+    try {
+      paused = check(am, name, "paused");
+    } finally {
+      character.resumeAffectComputation();
+    }
+    am.stopAll();
+    System.exit((running && paused) ? 0 : 1);
+  }
+
+  /**
+   * Compares the xml bean document of a character with the documents that
+   * are written to a character and to a byte stream.
+   */
+  private static boolean check(AffectManager am, String name, String state)
+    throws IOException, XmlException {
+    String expected = describe(am.getCurrentAffectEmotionml(name).getDomNode());
+    StringWriter out = new StringWriter();
+    am.writeCurrentAffectEmotionml(name, out);
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    am.writeCurrentAffectEmotionml(name, bytes);
+    String written = describe(EmotionmlDocument.Factory.parse(out.toString()).getDomNode());
+    String encoded = describe(EmotionmlDocument.Factory.parse(
+      new ByteArrayInputStream(bytes.toByteArray())).getDomNode());
+    boolean equal = expected.equals(written) && expected.equals(encoded);
+    System.out.println(name + " " + state + ": " + ((equal) ? "equal" : "different"));
+    if (!equal) {
+      System.out.println(expected);
+      System.out.println(written);
+      System.out.println(encoded);
+    }
+    return equal;
+  }
+
+  /**
+   * Describes a node by the namespaces and names of its elements, their
+   * sorted attributes and the text that is not whitespace. Namespace
+   * declarations and prefixes are ignored.
+   */
+  private static String describe(Node node) {
+    StringBuilder sb = new StringBuilder();
+    describe(node, sb);
+    return sb.toString();
+  }
+
+  private static void describe(Node node, StringBuilder sb) {
+    if (node.getNodeType() == Node.ELEMENT_NODE) {
+      sb.append("<{").append(node.getNamespaceURI()).append("}").append(node.getLocalName());
+      TreeSet<String> attributes = new TreeSet<String>();
+      NamedNodeMap map = node.getAttributes();
+      for (int i = 0; i < map.getLength(); i++) {
+        Node attribute = map.item(i);
+        if (!sXMLNS.equals(attribute.getNamespaceURI())) {
+          attributes.add(attribute.getLocalName() + "=" + attribute.getNodeValue());
+        }
+      }
+      sb.append(attributes).append(">");
+    } else if ((node.getNodeType() == Node.TEXT_NODE) && (node.getNodeValue().trim().length() > 0)) {
+      sb.append("'").append(node.getNodeValue()).append("'");
+    }
+    for (Node child = node.getFirstChild(); child != null; child = child.getNextSibling()) {
+      describe(child, sb);
+    }
+    if (node.getNodeType() == Node.ELEMENT_NODE) {
+      sb.append("</>");
+    }
+  }
+}
@@ -8,6 +8,7 @@ package de.affect.util;
 
 import java.text.DecimalFormat;
 import java.text.DecimalFormatSymbols;
+import java.util.HashMap;
 import java.util.StringTokenizer;
 
 public class Convert {
@@ -15,21 +16,28 @@ public class Convert {
   protected Convert() {
   }
   
+  private static final HashMap<String, Double> sValuesByWord = new HashMap<String, Double>();
+
+  static {
+    sValuesByWord.put("null", 0.0d);
+    sValuesByWord.put("neutral", 0.0d);
+    sValuesByWord.put("little", 0.16d);
+    sValuesByWord.put("mild", 0.33d);
+    sValuesByWord.put("medium", 0.5d);
+    sValuesByWord.put("strong", 0.66d);
+    sValuesByWord.put("immense", 0.83d);
+    sValuesByWord.put("full", 1.0d);
+    sValuesByWord.put("slightly", 0.33d); //mood intensity
+    sValuesByWord.put("moderate", 0.66d); //mood intensity
+    sValuesByWord.put("fully", 1.0d); //mood intensity
+    sValuesByWord.put("true", 1.0d);
+    sValuesByWord.put("false", -1.0d);
+  }
+
   public static double doubleValue(String valueString) {
     if (valueString == null) return -100.0d;
-    if (valueString.equals("null")) return 0.0d;
-    if (valueString.equals("neutral")) return 0.0d;
-    if (valueString.equals("little")) return 0.16d;
-    if (valueString.equals("mild")) return 0.33d;
-    if (valueString.equals("medium")) return 0.5d;
-    if (valueString.equals("strong")) return 0.66d;
-    if (valueString.equals("immense")) return 0.83d;
-    if (valueString.equals("full")) return 1.0d;
-    if (valueString.equals("slightly")) return 0.33d; //mood intensity
-    if (valueString.equals("moderate")) return 0.66d; //mood intensity
-    if (valueString.equals("fully")) return 1.0d; //mood intensity
-    if (valueString.equals("true")) return 1.0d;
-    if (valueString.equals("false")) return -1.0d;
+    Double wordValue = sValuesByWord.get(valueString);
+    if (wordValue != null) return wordValue.doubleValue();
 
     Double doubleNum = new Double(valueString);
     return doubleNum.doubleValue();
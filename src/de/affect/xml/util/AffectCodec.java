@@ -0,0 +1,715 @@
+/*
+ * AffectCodec.java
+ *
+ * Copyright (c) 2008 by Patrick Gebhard
+ * All rights reserved.
+ *
+ */
+package de.affect.xml.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import de.affect.xml.ActionTypes;
+import de.affect.xml.AffectInputDocument.AffectInput;
+import de.affect.xml.AffectInputDocument.AffectInput.BasicEEC;
+import de.affect.xml.AffectOutputDocument;
+import de.affect.xml.AffectOutputDocument.AffectOutput;
+import de.affect.xml.AffectOutputDocument.AffectOutput.CharacterAffect;
+import de.affect.xml.AffectOutputDocument.AffectOutput.GroupAffect;
+import de.affect.xml.AffectOutputDocument.AffectOutput.GroupAffect.MoodExtremes;
+import de.affect.xml.AffectOutputDocument.AffectOutput.GroupAffect.MoodSimilarities;
+import de.affect.xml.EmotionName;
+import de.affect.xml.EmotionType;
+import de.affect.xml.EventTypes;
+import de.affect.xml.MoodType;
+import de.affect.xml.MoodWord;
+import de.affect.xml.ObjectTypes;
+
+import org.apache.xmlbeans.SimpleValue;
+import org.apache.xmlbeans.StringEnumAbstractBase;
+import org.apache.xmlbeans.XmlCursor;
+import org.apache.xmlbeans.XmlObject;
+
+/**
+ * The <code>AffectCodec</code> class encodes AffectInput and AffectOutput
+ * elements defined by the Affect.xsd in a compact, versioned binary format
+ * and decodes them again.
+ *
+ * Emotion names, mood words, mood intensities, action, event and object types
+ * are written as their small xml bean enumeration codes. Act types are written
+ * as their index in the act vocabulary the codec has been created with, acts
+ * outside the vocabulary as strings. Intensity words are written as codes,
+ * numerical intensities as floats with their number of fraction digits, so
+ * that intensities keep their lexical form. PAD, personality and BasicEEC
+ * values are written as floats. Each name is written once per message and
+ * referenced by index afterwards.
+ *
+ * Both sides of a connection must use the same act vocabulary. Messages of
+ * other versions than <code>sVERSION</code> are rejected.
+ *
+ * A codec is immutable and may be shared between threads.
+ *
+ * @author Patrick Gebhard
+ *
+ * @version 1.0
+ */
+public class AffectCodec {
+
+  /** the version of the binary format */
+  public static final int sVERSION = 1;
+  private static final String sNAMESPACE = "xml.affect.de";
+  private static final int sMAGIC = 0xA1;
+  private static final int sINPUT = 1;
+  private static final int sOUTPUT = 2;
+  private static final String[] sIntensityWords = {"null", "little", "mild", "medium", "strong", "immense", "full"};
+  private static final int sDECIMAL = 0x10;
+  private static final double[] sPOWERS = {1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7};
+  private static final int sSTRING = 0x7F;
+  private final String[] fActs;
+  private final HashMap<String, Integer> fActCodes = new HashMap<String, Integer>();
+
+  /**
+   * Constructs a codec without act vocabulary. All act types are written as
+   * strings.
+   */
+  public AffectCodec() {
+    this(new String[0]);
+  }
+
+  /**
+   * Constructs a codec with an act vocabulary, usually the available acts of
+   * the affect computation.
+   *
+   * @param acts the names of the acts
+   */
+  public AffectCodec(String[] acts) {
+    fActs = acts.clone();
+    for (int i = 0; i < fActs.length; i++) {
+      fActCodes.put(fActs[i], i + 1);
+    }
+  }
+
+  /**
+   * Encodes an AffectInput element.
+   *
+   * @param ai a Java object related to an AffectInput-Element defined by the
+   * Affect.xsd
+   * @return the encoded signal
+   */
+  public byte[] encode(AffectInput ai) {
+    return encode(AffectSignal.valueOf(ai));
+  }
+
+  /**
+   * Encodes a signal.
+   *
+   * @param signal the signal
+   * @return the encoded signal
+   */
+  public byte[] encode(AffectSignal signal) {
+    ByteArrayOutputStream out = new ByteArrayOutputStream(64);
+    try {
+      encode(signal, out);
+    } catch (IOException io) {
+      throw new IllegalStateException(io);
+    }
+    return out.toByteArray();
+  }
+
+  /**
+   * Writes an encoded signal to a stream.
+   *
+   * @param signal the signal
+   * @param out the stream
+   * @throws IOException if the signal cannot be written
+   */
+  public void encode(AffectSignal signal, OutputStream out) throws IOException {
+    Encoder e = new Encoder(out, sINPUT);
+    AffectSignal.Kind kind = signal.getKind();
+    e.fOut.writeByte(kind.ordinal());
+    e.writeString(signal.getCharacter());
+    switch (kind) {
+      case Act:
+        Integer code = fActCodes.get(signal.getType());
+        e.writeCode((code != null) ? code.intValue() : 0);
+        if (code == null) {
+          e.writeString(signal.getType());
+        }
+        break;
+      case EmotionDisplay:
+        e.writeCode(EmotionName.Enum.forString(signal.getType()));
+        break;
+      case MoodDisplay:
+        e.writeCode(MoodWord.Enum.forString(signal.getType()));
+        break;
+      case Action:
+        e.writeCode(ActionTypes.Enum.forString(signal.getType()));
+        break;
+      case Event:
+        e.writeCode(EventTypes.Enum.forString(signal.getType()));
+        break;
+      case Object:
+        e.writeCode(ObjectTypes.Enum.forString(signal.getType()));
+        break;
+      case BasicEEC:
+        e.fOut.writeFloat((float) signal.getDesirability());
+        e.fOut.writeFloat((float) signal.getPraiseworthiness());
+        e.fOut.writeFloat((float) signal.getAppealingness());
+        e.fOut.writeFloat((float) signal.getLikelihood());
+        e.fOut.writeFloat((float) signal.getRealization());
+        e.fOut.writeFloat((float) signal.getLiking());
+        e.writeCode(BasicEEC.Agency.Enum.forString(signal.getAgency()));
+        break;
+      case PAD:
+        e.fOut.writeFloat((float) signal.getPleasure());
+        e.fOut.writeFloat((float) signal.getArousal());
+        e.fOut.writeFloat((float) signal.getDominance());
+        e.writeString(signal.getDescription());
+        break;
+    }
+    e.writeString(signal.getAddressee());
+    e.writeString(signal.getListener());
+    e.writeIntensity(signal.getIntensity());
+    e.writeString(signal.getElicitor());
+    e.fOut.flush();
+  }
+
+  /**
+   * Decodes a signal.
+   *
+   * @param data the encoded signal
+   * @return the signal
+   * @throws IOException if the data is not an encoded signal of this version
+   */
+  public AffectSignal decodeInput(byte[] data) throws IOException {
+    return decodeInput(new ByteArrayInputStream(data));
+  }
+
+  /**
+   * Reads an encoded signal from a stream.
+   *
+   * @param in the stream
+   * @return the signal
+   * @throws IOException if the data is not an encoded signal of this version
+   */
+  public AffectSignal decodeInput(InputStream in) throws IOException {
+    Decoder d = new Decoder(in, sINPUT);
+    int ordinal = d.fIn.readUnsignedByte();
+    if (ordinal >= AffectSignal.Kind.values().length) {
+      throw new IOException("Invalid signal kind " + ordinal);
+    }
+    AffectSignal.Kind kind = AffectSignal.Kind.values()[ordinal];
+    String character = d.readString();
+    String type = null;
+    double[] values = null;
+    String agency = null;
+    String description = null;
+    switch (kind) {
+      case Act:
+        int code = d.readCode();
+        if ((code < 0) || (code > fActs.length)) {
+          throw new IOException("Invalid act code " + code);
+        }
+        type = (code > 0) ? fActs[code - 1] : d.readString();
+        break;
+      case EmotionDisplay:
+        type = d.readEnum(EmotionName.Enum.table).toString();
+        break;
+      case MoodDisplay:
+        type = d.readEnum(MoodWord.Enum.table).toString();
+        break;
+      case Action:
+        type = d.readEnum(ActionTypes.Enum.table).toString();
+        break;
+      case Event:
+        type = d.readEnum(EventTypes.Enum.table).toString();
+        break;
+      case Object:
+        type = d.readEnum(ObjectTypes.Enum.table).toString();
+        break;
+      case BasicEEC:
+        values = new double[6];
+        for (int i = 0; i < values.length; i++) {
+          values[i] = d.readFloat();
+        }
+        agency = d.readEnum(BasicEEC.Agency.Enum.table).toString();
+        break;
+      case PAD:
+        values = new double[]{d.readFloat(), d.readFloat(), d.readFloat()};
+        description = d.readString();
+        break;
+    }
+    String addressee = d.readString();
+    String listener = d.readString();
+    String intensity = d.readIntensity();
+    String elicitor = d.readString();
+    return new AffectSignal(kind, character, type, addressee, listener, intensity,
+      elicitor, values, agency, description);
+  }
+
+  /**
+   * Encodes an AffectOutput element.
+   *
+   * @param ao a Java object related to an AffectOutput-Element defined by the
+   * Affect.xsd
+   * @return the encoded affect output
+   */
+  public byte[] encode(AffectOutput ao) {
+    ByteArrayOutputStream out = new ByteArrayOutputStream(256);
+    try {
+      encode(ao, out);
+    } catch (IOException io) {
+      throw new IllegalStateException(io);
+    }
+    return out.toByteArray();
+  }
+
+  /**
+   * Writes an encoded AffectOutput element to a stream.
+   *
+   * @param ao a Java object related to an AffectOutput-Element defined by the
+   * Affect.xsd
+   * @param out the stream
+   * @throws IOException if the affect output cannot be written
+   */
+  public void encode(AffectOutput ao, OutputStream out) throws IOException {
+    Encoder e = new Encoder(out, sOUTPUT);
+    e.writeString((ao.isSetDocu()) ? ao.getDocu() : null);
+    List<CharacterAffect> characterAffects = ao.getCharacterAffectList();
+    e.writeCode(characterAffects.size());
+    for (CharacterAffect ca : characterAffects) {
+      e.writeString(ca.getName());
+      CharacterAffect.Personality personality = ca.getPersonality();
+      e.fOut.writeBoolean(personality != null);
+      if (personality != null) {
+        e.writeCode((personality.isSetDerived()) ? ((personality.getDerived()) ? 2 : 1) : 0);
+        e.writeDouble(personality.xgetOpenness());
+        e.writeDouble(personality.xgetConscientiousness());
+        e.writeDouble(personality.xgetExtraversion());
+        e.writeDouble(personality.xgetAgreeableness());
+        e.writeDouble(personality.xgetNeurotism());
+        e.writeIntensity(personality.getEmotioninfluence());
+      }
+      e.writeMood(ca.getMood());
+      e.writeMood(ca.getMoodTendency());
+      e.writeMood(ca.getDefaultMood());
+      e.fOut.writeBoolean(ca.getDominantEmotion() != null);
+      if (ca.getDominantEmotion() != null) {
+        e.writeEmotion(ca.getDominantEmotion());
+      }
+      CharacterAffect.Emotions emotions = ca.getEmotions();
+      List<EmotionType> emotionList = (emotions != null) ? emotions.getEmotionList() : null;
+      e.writeCode((emotionList != null) ? emotionList.size() + 1 : 0);
+      if (emotionList != null) {
+        for (EmotionType emotion : emotionList) {
+          e.writeEmotion(emotion);
+        }
+      }
+    }
+    List<GroupAffect> groupAffects = ao.getGroupAffectList();
+    e.writeCode(groupAffects.size());
+    for (GroupAffect ga : groupAffects) {
+      e.writeString(ga.getName());
+      e.writeString(ga.getCharacters());
+      e.writeMood((ga.isSetOverallMood()) ? ga.getOverallMood() : null);
+      e.fOut.writeBoolean(ga.isSetSocialIntegrity());
+      if (ga.isSetSocialIntegrity()) {
+        e.writeIntensity(ga.getSocialIntegrity().getValue());
+      }
+      List<MoodSimilarities.CharacterPair> pairs = (ga.isSetMoodSimilarities())
+        ? ga.getMoodSimilarities().getCharacterPairList() : null;
+      e.writeCode((pairs != null) ? pairs.size() + 1 : 0);
+      if (pairs != null) {
+        for (MoodSimilarities.CharacterPair pair : pairs) {
+          e.writeString(pair.getFirst());
+          e.writeString(pair.getSecond());
+        }
+      }
+      List<MoodExtremes.Character> extremes = (ga.isSetMoodExtremes())
+        ? ga.getMoodExtremes().getCharacterList() : null;
+      e.writeCode((extremes != null) ? extremes.size() + 1 : 0);
+      if (extremes != null) {
+        for (MoodExtremes.Character character : extremes) {
+          e.writeString(character.getName());
+          e.writeDouble(character.xgetDifference());
+        }
+      }
+    }
+    e.fOut.flush();
+  }
+
+  /**
+   * Decodes an AffectOutput element.
+   *
+   * @param data the encoded affect output
+   * @return the AffectOutput document
+   * @throws IOException if the data is not an encoded affect output of this
+   * version
+   */
+  public AffectOutputDocument decodeOutput(byte[] data) throws IOException {
+    return decodeOutput(new ByteArrayInputStream(data));
+  }
+
+  /**
+   * Reads an encoded AffectOutput element from a stream.
+   *
+   * @param in the stream
+   * @return the AffectOutput document
+   * @throws IOException if the data is not an encoded affect output of this
+   * version
+   */
+  public AffectOutputDocument decodeOutput(InputStream in) throws IOException {
+    Decoder d = new Decoder(in, sOUTPUT);
+    AffectOutputDocument aoDoc = AffectOutputDocument.Factory.newInstance();
+    // the document is built with a cursor, which is faster than the typed setters
+    d.fCursor = aoDoc.newCursor();
+    try {
+      d.fCursor.toNextToken();
+      d.begin("AffectOutput");
+      d.attribute("docu", d.readString());
+      for (int c = d.readCode(); c > 0; c--) {
+        d.begin("CharacterAffect");
+        d.attribute("name", d.readString());
+        if (d.fIn.readBoolean()) {
+          d.begin("Personality");
+          int derived = d.readCode();
+          d.attribute("derived", (derived > 0) ? Boolean.toString(derived == 2) : null);
+          d.attribute("openness", d.readDouble());
+          d.attribute("conscientiousness", d.readDouble());
+          d.attribute("extraversion", d.readDouble());
+          d.attribute("agreeableness", d.readDouble());
+          d.attribute("neurotism", d.readDouble());
+          d.attribute("emotioninfluence", d.readIntensity());
+          d.end();
+        }
+        d.readMood("Mood");
+        d.readMood("MoodTendency");
+        d.readMood("DefaultMood");
+        if (d.fIn.readBoolean()) {
+          d.readEmotion("DominantEmotion");
+        }
+        int emotions = d.readCode();
+        if (emotions > 0) {
+          d.begin("Emotions");
+          for (int i = 1; i < emotions; i++) {
+            d.readEmotion("Emotion");
+          }
+          d.end();
+        }
+        d.end();
+      }
+      for (int g = d.readCode(); g > 0; g--) {
+        d.begin("GroupAffect");
+        d.attribute("name", d.readString());
+        d.attribute("characters", d.readString());
+        d.readMood("OverallMood");
+        if (d.fIn.readBoolean()) {
+          d.begin("SocialIntegrity");
+          d.attribute("value", d.readIntensity());
+          d.end();
+        }
+        int pairs = d.readCode();
+        if (pairs > 0) {
+          d.begin("MoodSimilarities");
+          for (int i = 1; i < pairs; i++) {
+            d.begin("CharacterPair");
+            d.attribute("first", d.readString());
+            d.attribute("second", d.readString());
+            d.end();
+          }
+          d.end();
+        }
+        int extremes = d.readCode();
+        if (extremes > 0) {
+          d.begin("MoodExtremes");
+          for (int i = 1; i < extremes; i++) {
+            d.begin("Character");
+            d.attribute("name", d.readString());
+            d.attribute("difference", d.readDouble());
+            d.end();
+          }
+          d.end();
+        }
+        d.end();
+      }
+      d.end();
+    } finally {
+      d.fCursor.dispose();
+    }
+    return aoDoc;
+  }
+
+  /**
+   * The <code>Encoder</code> class writes the values of one message.
+   */
+  private static class Encoder {
+
+    final DataOutputStream fOut;
+    final HashMap<String, Integer> fStrings = new HashMap<String, Integer>();
+
+    Encoder(OutputStream out, int message) throws IOException {
+      fOut = new DataOutputStream(out);
+      fOut.writeByte(sMAGIC);
+      fOut.writeByte(sVERSION);
+      fOut.writeByte(message);
+    }
+
+    /** Writes an unsigned variable length integer */
+    void writeCode(int code) throws IOException {
+      while ((code & ~0x7F) != 0) {
+        fOut.writeByte((code & 0x7F) | 0x80);
+        code >>>= 7;
+      }
+      fOut.writeByte(code);
+    }
+
+    void writeCode(StringEnumAbstractBase e) throws IOException {
+      writeCode((e != null) ? e.intValue() : 0);
+    }
+
+    /**
+     * Writes a string: 0 for null, 1 followed by a new string, or the index
+     * of a string of this message plus 2.
+     */
+    void writeString(String s) throws IOException {
+      if (s == null) {
+        writeCode(0);
+        return;
+      }
+      Integer index = fStrings.get(s);
+      if (index != null) {
+        writeCode(index.intValue() + 2);
+      } else {
+        writeCode(1);
+        fOut.writeUTF(s);
+        fStrings.put(s, fStrings.size());
+      }
+    }
+
+    void writeDouble(XmlObject value) throws IOException {
+      fOut.writeBoolean(value != null);
+      if (value != null) {
+        fOut.writeFloat((float) ((SimpleValue) value).getDoubleValue());
+      }
+    }
+
+    /**
+     * Writes an intensity: the code of an intensity word, the number of
+     * fraction digits plus 0x10 followed by the value as float, or 0x7F
+     * followed by the string for other forms. 0x7E stands for null.
+     */
+    void writeIntensity(String intensity) throws IOException {
+      if (intensity == null) {
+        fOut.writeByte(sSTRING - 1);
+        return;
+      }
+      for (int i = 0; i < sIntensityWords.length; i++) {
+        if (sIntensityWords[i].equals(intensity)) {
+          fOut.writeByte(i);
+          return;
+        }
+      }
+      // plain decimals with up to 6 digits are restored exactly from a float
+      int length = intensity.length();
+      int start = ((length > 0) && (intensity.charAt(0) == '-')) ? 1 : 0;
+      int point = intensity.indexOf('.');
+      long unscaled = 0;
+      boolean plain = (length > start) && (length - start <= 6 + ((point >= 0) ? 1 : 0))
+        && (point != start) && (point != length - 1);
+      for (int i = start; plain && (i < length); i++) {
+        char c = intensity.charAt(i);
+        if ((c >= '0') && (c <= '9')) {
+          unscaled = unscaled * 10 + (c - '0');
+        } else {
+          plain = (i == point);
+        }
+      }
+      // leading zeros other than a single one before the point are not kept
+      plain = plain && ((intensity.charAt(start) != '0') || (start + 1 == point) || (start + 1 == length));
+      if (plain) {
+        int scale = (point >= 0) ? length - point - 1 : 0;
+        double value = unscaled / sPOWERS[scale];
+        fOut.writeByte(sDECIMAL + scale);
+        fOut.writeFloat((float) ((start == 1) ? -value : value));
+      } else {
+        fOut.writeByte(sSTRING);
+        fOut.writeUTF(intensity);
+      }
+    }
+
+    void writeEmotion(EmotionType emotion) throws IOException {
+      writeCode(emotion.getName());
+      writeIntensity(emotion.getValue());
+    }
+
+    void writeMood(MoodType mood) throws IOException {
+      fOut.writeBoolean(mood != null);
+      if (mood != null) {
+        writeCode(mood.getMoodword());
+        writeCode(mood.getIntensity());
+        writeDouble(mood.xgetPleasure());
+        writeDouble(mood.xgetArousal());
+        writeDouble(mood.xgetDominance());
+      }
+    }
+  }
+
+  /**
+   * The <code>Decoder</code> class reads the values of one message.
+   */
+  private static class Decoder {
+
+    final DataInputStream fIn;
+    final ArrayList<String> fStrings = new ArrayList<String>();
+    XmlCursor fCursor = null;
+
+    Decoder(InputStream in, int message) throws IOException {
+      fIn = new DataInputStream(in);
+      if (fIn.readUnsignedByte() != sMAGIC) {
+        throw new IOException("No affect message!");
+      }
+      int version = fIn.readUnsignedByte();
+      if (version != sVERSION) {
+        throw new IOException("Unsupported affect message version " + version);
+      }
+      if (fIn.readUnsignedByte() != message) {
+        throw new IOException("Unexpected affect message type!");
+      }
+    }
+
+    int readCode() throws IOException {
+      int code = 0;
+      for (int shift = 0; shift < 32; shift += 7) {
+        int b = fIn.readUnsignedByte();
+        code |= (b & 0x7F) << shift;
+        if ((b & 0x80) == 0) {
+          return code;
+        }
+      }
+      throw new IOException("Invalid code!");
+    }
+
+    StringEnumAbstractBase readEnum(StringEnumAbstractBase.Table table) throws IOException {
+      return readEnum(table, readCode());
+    }
+
+    StringEnumAbstractBase readEnum(StringEnumAbstractBase.Table table, int code) throws IOException {
+      StringEnumAbstractBase e = table.forInt(code);
+      if (e == null) {
+        throw new IOException("Invalid enumeration code " + code);
+      }
+      return e;
+    }
+
+    String readString() throws IOException {
+      int code = readCode();
+      if (code == 0) {
+        return null;
+      }
+      if (code == 1) {
+        String s = fIn.readUTF();
+        fStrings.add(s);
+        return s;
+      }
+      if (code - 2 >= fStrings.size()) {
+        throw new IOException("Invalid string reference " + code);
+      }
+      return fStrings.get(code - 2);
+    }
+
+    /** Reads a float and returns its shortest decimal form as double */
+    double readFloat() throws IOException {
+      return Double.parseDouble(Float.toString(fIn.readFloat()));
+    }
+
+    String readIntensity() throws IOException {
+      int tag = fIn.readUnsignedByte();
+      if (tag < sIntensityWords.length) {
+        return sIntensityWords[tag];
+      }
+      if (tag == sSTRING) {
+        return fIn.readUTF();
+      }
+      if (tag == sSTRING - 1) {
+        return null;
+      }
+      if (tag < sDECIMAL) {
+        throw new IOException("Invalid intensity " + tag);
+      }
+      int scale = tag - sDECIMAL;
+      if (scale >= sPOWERS.length) {
+        throw new IOException("Invalid intensity " + tag);
+      }
+      return decimal(fIn.readFloat(), scale);
+    }
+
+    /** Reads an optional float and returns its shortest decimal form */
+    String readDouble() throws IOException {
+      return (fIn.readBoolean()) ? Float.toString(fIn.readFloat()) : null;
+    }
+
+    void begin(String element) {
+      fCursor.beginElement(element, sNAMESPACE);
+    }
+
+    void attribute(String name, String value) {
+      if (value != null) {
+        fCursor.insertAttributeWithValue(name, value);
+      }
+    }
+
+    void end() {
+      fCursor.toNextToken();
+    }
+
+    void readEmotion(String element) throws IOException {
+      begin(element);
+      int code = readCode();
+      attribute("name", (code > 0) ? readEnum(EmotionName.Enum.table, code).toString() : null);
+      attribute("value", readIntensity());
+      end();
+    }
+
+    void readMood(String element) throws IOException {
+      if (!fIn.readBoolean()) {
+        return;
+      }
+      begin(element);
+      int code = readCode();
+      attribute("moodword", (code > 0) ? readEnum(MoodWord.Enum.table, code).toString() : null);
+      code = readCode();
+      attribute("intensity", (code > 0) ? readEnum(MoodType.Intensity.Enum.table, code).toString() : null);
+      attribute("pleasure", readDouble());
+      attribute("arousal", readDouble());
+      attribute("dominance", readDouble());
+      end();
+    }
+  }
+
+  /** Returns the decimal form of a float with the given fraction digits */
+  private static String decimal(float f, int scale) {
+    long unscaled = Math.round(Math.abs((double) f) * sPOWERS[scale]);
+    StringBuilder sb = new StringBuilder(10);
+    if ((f < 0.0f) || ((f == 0.0f) && (1.0f / f < 0.0f))) {
+      sb.append('-');
+    }
+    String digits = Long.toString(unscaled);
+    for (int i = digits.length(); i <= scale; i++) {
+      sb.append('0');
+    }
+    sb.append(digits);
+    if (scale > 0) {
+      sb.insert(sb.length() - scale, '.');
+    }
+    return sb.toString();
+  }
+}
@@ -0,0 +1,336 @@
+/*
+ * AffectInputReader.java
+ *
+ * Copyright (c) 2008 by Patrick Gebhard
+ * All rights reserved.
+ *
+ */
+package de.affect.xml.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.StringReader;
+import java.util.HashSet;
+import javax.xml.XMLConstants;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import de.affect.xml.ActionTypes;
+import de.affect.xml.AffectInputDocument.AffectInput.BasicEEC;
+import de.affect.xml.EmotionName;
+import de.affect.xml.EventTypes;
+import de.affect.xml.MoodWord;
+import de.affect.xml.ObjectTypes;
+
+/**
+ * The <code>AffectInputReader</code> class reads AffectInput elements defined
+ * by the Affect.xsd with a StAX stream reader directly into
+ * <code>AffectSignal</code> objects, without building an xml bean tree and
+ * without schema validation.
+ *
+ * The reader only accepts the usual form of an input: an AffectInput element
+ * that contains a Character element followed by one signal element, both
+ * without content, and only attributes that are defined by the schema. All
+ * attribute values are checked against their schema types. For every other
+ * document, be it unusual or invalid, null is returned and the input has to
+ * be parsed and validated by xml beans.
+ *
+ * @author Patrick Gebhard
+ *
+ * @version 1.0
+ */
+public class AffectInputReader {
+
+  private static final String sNAMESPACE = "xml.affect.de";
+  private static final XMLInputFactory sFactory = XMLInputFactory.newInstance();
+  private static final HashSet<String> sIntensityWords = new HashSet<String>();
+
+  static {
+    sFactory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, Boolean.TRUE);
+    sFactory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+    sFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+    for (String word : new String[]{"null", "little", "mild", "medium", "strong", "immense", "full"}) {
+      sIntensityWords.add(word);
+    }
+  }
+
+  protected AffectInputReader() {
+  }
+
+  /**
+   * Reads an AffectInput element from a character sequence.
+   *
+   * @param xmlDoc the AffectInput element
+   *
+   * @return the signal, null if the input has to be parsed by xml beans
+   */
+  public static AffectSignal read(CharSequence xmlDoc) {
+    try {
+      return read(sFactory.createXMLStreamReader(new StringReader(xmlDoc.toString())));
+    } catch (XMLStreamException xse) {
+      return null;
+    }
+  }
+
+  /**
+   * Reads an AffectInput element from an encoded byte buffer. The encoding is
+   * taken from the xml declaration.
+   *
+   * @param data the buffer
+   * @param offset the start of the AffectInput element in the buffer
+   * @param length the length of the AffectInput element
+   *
+   * @return the signal, null if the input has to be parsed by xml beans
+   */
+  public static AffectSignal read(byte[] data, int offset, int length) {
+    try {
+      return read(sFactory.createXMLStreamReader(new ByteArrayInputStream(data, offset, length)));
+    } catch (XMLStreamException xse) {
+      return null;
+    }
+  }
+
+  private static AffectSignal read(XMLStreamReader reader) throws XMLStreamException {
+    try {
+      if (!nextElement(reader, "AffectInput") || !checkRootAttributes(reader)) {
+        return null;
+      }
+      if (!nextElement(reader, "Character") || (reader.getAttributeCount() != 1)) {
+        return null;
+      }
+      String character = collapsed(attribute(reader, "name"));
+      if ((character == null) || !endElement(reader) || (nextElement(reader) != XMLStreamConstants.START_ELEMENT)) {
+        return null;
+      }
+      AffectSignal signal = readSignal(reader, character);
+      if ((signal == null) || !endElement(reader)) {
+        return null;
+      }
+      // end of AffectInput and document
+      if ((nextElement(reader) != XMLStreamConstants.END_ELEMENT)
+        || (nextElement(reader) != XMLStreamConstants.END_DOCUMENT)) {
+        return null;
+      }
+      return signal;
+    } finally {
+      reader.close();
+    }
+  }
+
+  @SuppressWarnings("fallthrough")
+  private static AffectSignal readSignal(XMLStreamReader reader, String character) {
+    if (!sNAMESPACE.equals(reader.getNamespaceURI())) {
+      return null;
+    }
+    String name = reader.getLocalName();
+    AffectSignal.Kind kind = null;
+    for (AffectSignal.Kind k : AffectSignal.Kind.values()) {
+      if (k.name().equals(name)) {
+        kind = k;
+      }
+    }
+    if (kind == null) {
+      return null;
+    }
+    String type = null;
+    String addressee = null;
+    String listener = null;
+    String intensity = null;
+    String elicitor = null;
+    double[] values = null;
+    String agency = null;
+    String description = null;
+    int attributes = 0;
+    switch (kind) {
+      case Act:
+      case EmotionDisplay:
+      case MoodDisplay:
+        addressee = attribute(reader, "addressee");
+        listener = attribute(reader, "listener");
+        attributes += ((addressee != null) ? 1 : 0) + ((listener != null) ? 1 : 0);
+        // fall through to the attributes all of them have
+      case Action:
+      case Event:
+      case Object:
+        type = attribute(reader, "type");
+        intensity = attribute(reader, "intensity");
+        elicitor = attribute(reader, "elicitor");
+        if ((type == null) || !isType(kind, type)
+          || ((intensity != null) && !isIntensity(intensity))) {
+          return null;
+        }
+        attributes += 1 + ((intensity != null) ? 1 : 0) + ((elicitor != null) ? 1 : 0);
+        break;
+      case BasicEEC:
+        values = doubles(reader, -1.0d, "desirability", "praiseworthiness",
+          "appealingness", "likelihood", "realization", "liking");
+        agency = attribute(reader, "agency");
+        elicitor = attribute(reader, "elicitor");
+        if ((values == null) || (agency == null) || (BasicEEC.Agency.Enum.forString(agency) == null)) {
+          return null;
+        }
+        attributes += 7 + ((elicitor != null) ? 1 : 0);
+        break;
+      case PAD:
+        values = doubles(reader, -1.0d, "pleasure", "arousal", "dominance");
+        intensity = attribute(reader, "intensity");
+        description = attribute(reader, "description");
+        if ((values == null) || ((intensity != null) && (doubleValue(intensity, 0.0d) == null))) {
+          return null;
+        }
+        attributes += 3 + ((intensity != null) ? 1 : 0) + ((description != null) ? 1 : 0);
+        break;
+    }
+    // unknown attributes
+    if (attributes != reader.getAttributeCount()) {
+      return null;
+    }
+    return new AffectSignal(kind, character, type, addressee, listener, intensity,
+      elicitor, values, agency, description);
+  }
+
+  /**
+   * Moves to the next start or end element or to the end of the document.
+   * Text other than whitespace, processing instructions and dtds are reported
+   * as unusual content by returning -1.
+   */
+  private static int nextElement(XMLStreamReader reader) {
+    try {
+      while (reader.hasNext()) {
+        int event = reader.next();
+        switch (event) {
+          case XMLStreamConstants.START_ELEMENT:
+          case XMLStreamConstants.END_ELEMENT:
+          case XMLStreamConstants.END_DOCUMENT:
+            return event;
+          case XMLStreamConstants.COMMENT:
+          case XMLStreamConstants.SPACE:
+            break;
+          case XMLStreamConstants.CHARACTERS:
+            if (!reader.isWhiteSpace()) {
+              return -1;
+            }
+            break;
+          default:
+            return -1;
+        }
+      }
+      return XMLStreamConstants.END_DOCUMENT;
+    } catch (XMLStreamException xse) {
+      return -1;
+    }
+  }
+
+  private static boolean nextElement(XMLStreamReader reader, String name) {
+    return (nextElement(reader) == XMLStreamConstants.START_ELEMENT)
+      && sNAMESPACE.equals(reader.getNamespaceURI()) && name.equals(reader.getLocalName());
+  }
+
+  private static boolean endElement(XMLStreamReader reader) {
+    return nextElement(reader) == XMLStreamConstants.END_ELEMENT;
+  }
+
+  /** Accepts attributes of the schema instance namespace only */
+  private static boolean checkRootAttributes(XMLStreamReader reader) {
+    for (int i = 0; i < reader.getAttributeCount(); i++) {
+      if (!XMLConstants.W3C_XML_SCHEMA_INSTANCE_NS_URI.equals(reader.getAttributeNamespace(i))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /** Returns the value of an unqualified attribute, null if not set */
+  private static String attribute(XMLStreamReader reader, String name) {
+    return reader.getAttributeValue(XMLConstants.NULL_NS_URI, name);
+  }
+
+  private static double[] doubles(XMLStreamReader reader, double min, String... names) {
+    double[] values = new double[names.length];
+    for (int i = 0; i < names.length; i++) {
+      Double value = doubleValue(attribute(reader, names[i]), min);
+      if (value == null) {
+        return null;
+      }
+      values[i] = value.doubleValue();
+    }
+    return values;
+  }
+
+  /**
+   * Returns the value of an xs:double in the range min to 1.0, null if the
+   * value is not set, not in decimal or scientific notation or out of range.
+   */
+  private static Double doubleValue(String value, double min) {
+    if ((value == null) || (value.length() == 0)) {
+      return null;
+    }
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      if (((c < '0') || (c > '9')) && (c != '.') && (c != '-') && (c != '+') && (c != 'e') && (c != 'E')) {
+        return null;
+      }
+    }
+    try {
+      double d = Double.parseDouble(value);
+      return ((d >= min) && (d <= 1.0d)) ? d : null;
+    } catch (NumberFormatException nfe) {
+      return null;
+    }
+  }
+
+  /** Checks an Intensity value: an intensity word, 1.0 or 0.[0-9]+ */
+  private static boolean isIntensity(String value) {
+    if (sIntensityWords.contains(value) || value.equals("1.0")) {
+      return true;
+    }
+    if ((value.length() < 3) || (value.charAt(0) != '0') || (value.charAt(1) != '.')) {
+      return false;
+    }
+    for (int i = 2; i < value.length(); i++) {
+      if ((value.charAt(i) < '0') || (value.charAt(i) > '9')) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /** Checks the type of a signal element against its enumeration */
+  private static boolean isType(AffectSignal.Kind kind, String type) {
+    switch (kind) {
+      case Act:
+        return true;
+      case EmotionDisplay:
+        return EmotionName.Enum.forString(type) != null;
+      case MoodDisplay:
+        return MoodWord.Enum.forString(type) != null;
+      case Action:
+        return ActionTypes.Enum.forString(type) != null;
+      case Event:
+        return EventTypes.Enum.forString(type) != null;
+      case Object:
+        return ObjectTypes.Enum.forString(type) != null;
+      default:
+        return false;
+    }
+  }
+
+  /**
+   * Returns a value of a whitespace collapsing type, null if the value is
+   * not in collapsed form.
+   */
+  private static String collapsed(String value) {
+    if (value == null) {
+      return null;
+    }
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      if ((c == '\t') || (c == '\n') || (c == '\r')
+        || ((c == ' ') && ((i == 0) || (i == value.length() - 1) || (value.charAt(i - 1) == ' ')))) {
+        return null;
+      }
+    }
+    return value;
+  }
+}
@@ -0,0 +1,366 @@
+/*
+ * AffectSignal.java
+ *
+ * Copyright (c) 2008 by Patrick Gebhard
+ * All rights reserved.
+ *
+ */
+package de.affect.xml.util;
+
+import de.affect.xml.ActionTypes;
+import de.affect.xml.AffectInputDocument;
+import de.affect.xml.AffectInputDocument.AffectInput;
+import de.affect.xml.AffectInputDocument.AffectInput.Act;
+import de.affect.xml.AffectInputDocument.AffectInput.Action;
+import de.affect.xml.AffectInputDocument.AffectInput.BasicEEC;
+import de.affect.xml.AffectInputDocument.AffectInput.EmotionDisplay;
+import de.affect.xml.AffectInputDocument.AffectInput.Event;
+import de.affect.xml.AffectInputDocument.AffectInput.MoodDisplay;
+import de.affect.xml.AffectInputDocument.AffectInput.Object;
+import de.affect.xml.AffectInputDocument.AffectInput.PAD;
+import de.affect.xml.EmotionName;
+import de.affect.xml.EventTypes;
+import de.affect.xml.MoodWord;
+import de.affect.xml.ObjectTypes;
+
+/**
+ * The <code>AffectSignal</code> class is an immutable, lightweight form of
+ * an AffectInput element defined by the Affect.xsd. It holds the performing
+ * character and the attributes of the one signal element (Act,
+ * EmotionDisplay, MoodDisplay, Action, Event, Object, BasicEEC or PAD) as
+ * plain values.
+ *
+ * Signals are read without building an xml bean tree by the
+ * <code>AffectInputReader</code>, or converted from an existing AffectInput
+ * object. The related AffectInput object is only created if it is asked for.
+ *
+ * @author Patrick Gebhard
+ *
+ * @version 1.0
+ */
+public final class AffectSignal {
+
+  /** The kinds of signal elements */
+  public enum Kind {
+    Act, EmotionDisplay, MoodDisplay, Action, Event, Object, BasicEEC, PAD
+  }
+
+  private final Kind fKind;
+  private final String fCharacter;
+  private final String fType;
+  private final String fAddressee;
+  private final String fListener;
+  private final String fIntensity;
+  private final String fElicitor;
+  private final double[] fValues;
+  private final String fAgency;
+  private final String fDescription;
+  private volatile AffectInput fAffectInput = null;
+
+  /**
+   * Constructs a signal. Attributes that are not set are null.
+   *
+   * @param values the six BasicEEC values (desirability, praiseworthiness,
+   * appealingness, likelihood, realization, liking) or the three PAD values
+   * (pleasure, arousal, dominance), null for other kinds
+   */
+  AffectSignal(Kind kind, String character, String type, String addressee,
+    String listener, String intensity, String elicitor, double[] values,
+    String agency, String description) {
+    fKind = kind;
+    fCharacter = character;
+    fType = type;
+    fAddressee = addressee;
+    fListener = listener;
+    fIntensity = intensity;
+    fElicitor = elicitor;
+    fValues = values;
+    fAgency = agency;
+    fDescription = description;
+  }
+
+  /**
+   * Returns the signal of an AffectInput object. The object must be valid
+   * according to the Affect.xsd.
+   *
+   * @param ai a Java object related to an AffectInput-Element defined by the
+   * Affect.xsd
+   *
+   * @return the signal
+   * @throws IllegalArgumentException if the input contains no signal element
+   */
+  public static AffectSignal valueOf(AffectInput ai) {
+    String character = ai.getCharacter().getName();
+    AffectSignal signal = null;
+    if (ai.isSetAct()) {
+      Act a = ai.getAct();
+      signal = new AffectSignal(Kind.Act, character, a.getType(),
+        (a.isSetAddressee()) ? a.getAddressee() : null,
+        (a.isSetListener()) ? a.getListener() : null,
+        (a.isSetIntensity()) ? a.getIntensity() : null,
+        (a.isSetElicitor()) ? a.getElicitor() : null, null, null, null);
+    } else if (ai.isSetEmotionDisplay()) {
+      EmotionDisplay e = ai.getEmotionDisplay();
+      signal = new AffectSignal(Kind.EmotionDisplay, character, e.getType().toString(),
+        (e.isSetAddressee()) ? e.getAddressee() : null,
+        (e.isSetListener()) ? e.getListener() : null,
+        (e.isSetIntensity()) ? e.getIntensity() : null,
+        (e.isSetElicitor()) ? e.getElicitor() : null, null, null, null);
+    } else if (ai.isSetMoodDisplay()) {
+      MoodDisplay m = ai.getMoodDisplay();
+      signal = new AffectSignal(Kind.MoodDisplay, character, m.getType().toString(),
+        (m.isSetAddressee()) ? m.getAddressee() : null,
+        (m.isSetListener()) ? m.getListener() : null,
+        (m.isSetIntensity()) ? m.getIntensity() : null,
+        (m.isSetElicitor()) ? m.getElicitor() : null, null, null, null);
+    } else if (ai.isSetAction()) {
+      Action a = ai.getAction();
+      signal = new AffectSignal(Kind.Action, character, a.getType().toString(), null, null,
+        (a.isSetIntensity()) ? a.getIntensity() : null,
+        (a.isSetElicitor()) ? a.getElicitor() : null, null, null, null);
+    } else if (ai.isSetEvent()) {
+      Event e = ai.getEvent();
+      signal = new AffectSignal(Kind.Event, character, e.getType().toString(), null, null,
+        (e.isSetIntensity()) ? e.getIntensity() : null,
+        (e.isSetElicitor()) ? e.getElicitor() : null, null, null, null);
+    } else if (ai.isSetObject()) {
+      Object o = ai.getObject();
+      signal = new AffectSignal(Kind.Object, character, o.getType().toString(), null, null,
+        (o.isSetIntensity()) ? o.getIntensity() : null,
+        (o.isSetElicitor()) ? o.getElicitor() : null, null, null, null);
+    } else if (ai.isSetBasicEEC()) {
+      BasicEEC b = ai.getBasicEEC();
+      double[] values = new double[]{b.getDesirability(), b.getPraiseworthiness(),
+        b.getAppealingness(), b.getLikelihood(), b.getRealization(), b.getLiking()};
+      signal = new AffectSignal(Kind.BasicEEC, character, null, null, null, null,
+        (b.isSetElicitor()) ? b.getElicitor() : null, values,
+        b.getAgency().toString(), null);
+    } else if (ai.isSetPAD()) {
+      PAD p = ai.getPAD();
+      double[] values = new double[]{p.getPleasure(), p.getArousal(), p.getDominance()};
+      signal = new AffectSignal(Kind.PAD, character, null, null, null,
+        (p.isSetIntensity()) ? Double.toString(p.getIntensity()) : null, null, values, null,
+        (p.isSetDescription()) ? p.getDescription() : null);
+    } else {
+      throw new IllegalArgumentException("Affect input without signal element!");
+    }
+    signal.fAffectInput = ai;
+    return signal;
+  }
+
+  /** Returns the kind of the signal element */
+  public Kind getKind() {
+    return fKind;
+  }
+
+  /** Returns the name of the performing character */
+  public String getCharacter() {
+    return fCharacter;
+  }
+
+  /**
+   * Returns the type of an Act, EmotionDisplay, MoodDisplay, Action, Event or
+   * Object, null for BasicEEC and PAD signals
+   */
+  public String getType() {
+    return fType;
+  }
+
+  /** Returns the addressee list of a display or act, null if not set */
+  public String getAddressee() {
+    return fAddressee;
+  }
+
+  /** Returns the listener list of a display or act, null if not set */
+  public String getListener() {
+    return fListener;
+  }
+
+  /** Returns the intensity word or value, null if not set */
+  public String getIntensity() {
+    return fIntensity;
+  }
+
+  /** Returns the elicitor, null if not set */
+  public String getElicitor() {
+    return fElicitor;
+  }
+
+  /** Returns the desirability of a BasicEEC signal */
+  public double getDesirability() {
+    return value(Kind.BasicEEC, 0);
+  }
+
+  /** Returns the praiseworthiness of a BasicEEC signal */
+  public double getPraiseworthiness() {
+    return value(Kind.BasicEEC, 1);
+  }
+
+  /** Returns the appealingness of a BasicEEC signal */
+  public double getAppealingness() {
+    return value(Kind.BasicEEC, 2);
+  }
+
+  /** Returns the likelihood of a BasicEEC signal */
+  public double getLikelihood() {
+    return value(Kind.BasicEEC, 3);
+  }
+
+  /** Returns the realization of a BasicEEC signal */
+  public double getRealization() {
+    return value(Kind.BasicEEC, 4);
+  }
+
+  /** Returns the liking of a BasicEEC signal */
+  public double getLiking() {
+    return value(Kind.BasicEEC, 5);
+  }
+
+  /** Returns the agency (self or other) of a BasicEEC signal */
+  public String getAgency() {
+    return fAgency;
+  }
+
+  /** Returns the pleasure of a PAD signal */
+  public double getPleasure() {
+    return value(Kind.PAD, 0);
+  }
+
+  /** Returns the arousal of a PAD signal */
+  public double getArousal() {
+    return value(Kind.PAD, 1);
+  }
+
+  /** Returns the dominance of a PAD signal */
+  public double getDominance() {
+    return value(Kind.PAD, 2);
+  }
+
+  /** Returns the description of a PAD signal, null if not set */
+  public String getDescription() {
+    return fDescription;
+  }
+
+  private double value(Kind kind, int index) {
+    if (fKind != kind) {
+      throw new IllegalStateException("No " + kind + " signal!");
+    }
+    return fValues[index];
+  }
+
+  /**
+   * Returns the AffectInput object of this signal. If the signal has been
+   * read without xml beans, the object is created on the first call.
+   *
+   * @return a Java object related to an AffectInput-Element defined by the
+   * Affect.xsd
+   */
+  public AffectInput toAffectInput() {
+    AffectInput ai = fAffectInput;
+    if (ai == null) {
+      ai = createAffectInput();
+      fAffectInput = ai;
+    }
+    return ai;
+  }
+
+  private AffectInput createAffectInput() {
+    AffectInput ai = AffectInputDocument.Factory.newInstance().addNewAffectInput();
+    ai.addNewCharacter().setName(fCharacter);
+    switch (fKind) {
+      case Act:
+        Act act = ai.addNewAct();
+        act.setType(fType);
+        if (fAddressee != null) act.setAddressee(fAddressee);
+        if (fListener != null) act.setListener(fListener);
+        if (fIntensity != null) act.setIntensity(fIntensity);
+        if (fElicitor != null) act.setElicitor(fElicitor);
+        break;
+      case EmotionDisplay:
+        EmotionDisplay ed = ai.addNewEmotionDisplay();
+        ed.setType(EmotionName.Enum.forString(fType));
+        if (fAddressee != null) ed.setAddressee(fAddressee);
+        if (fListener != null) ed.setListener(fListener);
+        if (fIntensity != null) ed.setIntensity(fIntensity);
+        if (fElicitor != null) ed.setElicitor(fElicitor);
+        break;
+      case MoodDisplay:
+        MoodDisplay md = ai.addNewMoodDisplay();
+        md.setType(MoodWord.Enum.forString(fType));
+        if (fAddressee != null) md.setAddressee(fAddressee);
+        if (fListener != null) md.setListener(fListener);
+        if (fIntensity != null) md.setIntensity(fIntensity);
+        if (fElicitor != null) md.setElicitor(fElicitor);
+        break;
+      case Action:
+        Action action = ai.addNewAction();
+        action.setType(ActionTypes.Enum.forString(fType));
+        if (fIntensity != null) action.setIntensity(fIntensity);
+        if (fElicitor != null) action.setElicitor(fElicitor);
+        break;
+      case Event:
+        Event event = ai.addNewEvent();
+        event.setType(EventTypes.Enum.forString(fType));
+        if (fIntensity != null) event.setIntensity(fIntensity);
+        if (fElicitor != null) event.setElicitor(fElicitor);
+        break;
+      case Object:
+        Object object = ai.addNewObject();
+        object.setType(ObjectTypes.Enum.forString(fType));
+        if (fIntensity != null) object.setIntensity(fIntensity);
+        if (fElicitor != null) object.setElicitor(fElicitor);
+        break;
+      case BasicEEC:
+        BasicEEC eec = ai.addNewBasicEEC();
+        eec.setDesirability(fValues[0]);
+        eec.setPraiseworthiness(fValues[1]);
+        eec.setAppealingness(fValues[2]);
+        eec.setLikelihood(fValues[3]);
+        eec.setRealization(fValues[4]);
+        eec.setLiking(fValues[5]);
+        eec.setAgency(BasicEEC.Agency.Enum.forString(fAgency));
+        if (fElicitor != null) eec.setElicitor(fElicitor);
+        break;
+      case PAD:
+        PAD pad = ai.addNewPAD();
+        pad.setPleasure(fValues[0]);
+        pad.setArousal(fValues[1]);
+        pad.setDominance(fValues[2]);
+        if (fIntensity != null) pad.setIntensity(Double.parseDouble(fIntensity));
+        if (fDescription != null) pad.setDescription(fDescription);
+        break;
+    }
+    return ai;
+  }
+
+  public String toString() {
+    StringBuilder sb = new StringBuilder();
+    sb.append("AffectSignal: ").append(fCharacter).append(" ").append(fKind);
+    append(sb, "type", fType);
+    append(sb, "addressee", fAddressee);
+    append(sb, "listener", fListener);
+    if (fKind == Kind.BasicEEC) {
+      append(sb, "desirability", Double.toString(fValues[0]));
+      append(sb, "praiseworthiness", Double.toString(fValues[1]));
+      append(sb, "appealingness", Double.toString(fValues[2]));
+      append(sb, "likelihood", Double.toString(fValues[3]));
+      append(sb, "realization", Double.toString(fValues[4]));
+      append(sb, "liking", Double.toString(fValues[5]));
+      append(sb, "agency", fAgency);
+    } else if (fKind == Kind.PAD) {
+      append(sb, "pleasure", Double.toString(fValues[0]));
+      append(sb, "arousal", Double.toString(fValues[1]));
+      append(sb, "dominance", Double.toString(fValues[2]));
+    }
+    append(sb, "intensity", fIntensity);
+    append(sb, "elicitor", fElicitor);
+    append(sb, "description", fDescription);
+    return sb.toString();
+  }
+
+  private static void append(StringBuilder sb, String name, String value) {
+    if (value != null) {
+      sb.append(" ").append(name).append("=\"").append(value).append("\"");
+    }
+  }
+}